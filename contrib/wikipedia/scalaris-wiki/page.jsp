@@ -166,6 +166,9 @@ Iterator<String> iter = pageBean.getCategoryPages().iterator();
 </tr>
 </table>
 </div>
+<% } %>
+<% if (!pageBean.getCategoryContinue().isEmpty()) { %>
+<p>(<a href="wiki?title=<%= safePageTitle %>&amp;limit=<%= pageBean.getPageListLimit() %>&amp;continue=<%= StringEscapeUtils.escapeHtml(URLEncoder.encode(pageBean.getCategoryContinue(), "UTF-8")) %><%= andServiceUser %>">next <%= pageBean.getPageListLimit() %></a>)</p>
 <% } %>
 
                 <!-- /bodytext -->
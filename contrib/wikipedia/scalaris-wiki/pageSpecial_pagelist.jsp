@@ -191,6 +191,9 @@ ${ pageBean.page }
   }
 %>
                 </table>
+<% if (!pageBean.getContinueFrom().isEmpty()) { %>
+                <p class="mw-allpages-nav">(<a href="wiki?title=<%= StringEscapeUtils.escapeHtml(pageBean.nextPartTitleWithParameters()) %><%= andServiceUser %>">next <%= pageBean.getLimit() %></a>)</p>
+<% } %>
                 <hr />
 <% /*           <p class="mw-allpages-nav"><a href="wiki?title=Special:AllPages<%= andServiceUser >" title="Special:AllPages">All pages</a></p> */ %>
                 <div class="printfooter">
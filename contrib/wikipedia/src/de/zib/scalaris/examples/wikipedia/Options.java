@@ -40,6 +40,7 @@ import org.xml.sax.helpers.XMLReaderFactory;
 import de.zib.scalaris.ErlangValue;
 import de.zib.scalaris.examples.wikipedia.bliki.ExistingPagesCache;
 import de.zib.scalaris.examples.wikipedia.bliki.ExistingPagesCache.ExistingPagesCacheBloom;
+import de.zib.scalaris.examples.wikipedia.bliki.ExistingPagesCache.ExistingPagesCacheCountingBloom;
 import de.zib.scalaris.examples.wikipedia.bliki.ExistingPagesCache.ExistingPagesCacheFull;
 
 
@@ -85,19 +86,100 @@ public class Options {
     /**
      * Which implementation to use for the pages cache.
      * 
+     * Implementations supporting {@link ExistingPagesCache#remove(de.zib.scalaris.examples.wikipedia.bliki.NormalisedTitle)}
+     * are kept up to date incrementally with the pages created by all wiki
+     * servlets, others need to be re-created periodically.
+     * 
      * @see #WIKI_REBUILD_PAGES_CACHE
      */
-    public Class<? extends ExistingPagesCache> WIKI_PAGES_CACHE_IMPL = ExistingPagesCacheBloom.class;
+    public Class<? extends ExistingPagesCache> WIKI_PAGES_CACHE_IMPL = ExistingPagesCacheCountingBloom.class;
     
     /**
      * How often to re-create the pages cache with the existing pages (in
-     * seconds). The pages cache will be disabled if a value less than or equal
-     * to 0 is provided.
+     * seconds). Caches which are updated incrementally are only re-created if
+     * their initial creation failed, if they grew too large or every
+     * {@link #WIKI_PAGES_CACHE_FULL_REBUILD} seconds. The pages cache will be
+     * disabled if a value less than or equal to 0 is provided.
      * 
      * @see #WIKI_PAGES_CACHE_IMPL
      */
     public int WIKI_REBUILD_PAGES_CACHE = 10 * 60;
     
+    /**
+     * How often to re-create a pages cache which is updated incrementally
+     * anyway, e.g. to recover from missed updates (in seconds). Values less
+     * than or equal to 0 disable this fallback.
+     * 
+     * @see #WIKI_REBUILD_PAGES_CACHE
+     */
+    public int WIKI_PAGES_CACHE_FULL_REBUILD = 60 * 60;
+    
+    /**
+     * How often to check for pages created by other wiki servlets in order to
+     * add them to a pages cache which is updated incrementally (in seconds).
+     * 
+     * @see #WIKI_PAGES_CACHE_MAX_AGE
+     */
+    public int WIKI_PAGES_CACHE_POLL = 5;
+    
+    /**
+     * How long to keep created pages in the list of changed pages for other
+     * wiki servlets to add them to their pages caches (in seconds).
+     * 
+     * @see #WIKI_PAGES_CACHE_POLL
+     */
+    public int WIKI_PAGES_CACHE_MAX_AGE = 10 * 60;
+    
+    /**
+     * Maximum size of the cache of rendered pages shared by all requests (in
+     * megabytes). The cache will be disabled if a value less than or equal
+     * to 0 is provided.
+     * 
+     * @see #WIKI_RENDER_CACHE_MAX_AGE
+     * @see #WIKI_RENDER_CACHE_POLL
+     */
+    public int WIKI_RENDER_CACHE_SIZE = 64;
+    
+    /**
+     * Maximum age of a rendered page in the cache (in seconds).
+     * 
+     * @see #WIKI_RENDER_CACHE_SIZE
+     */
+    public int WIKI_RENDER_CACHE_MAX_AGE = 10 * 60;
+    
+    /**
+     * How often to check for pages changed by other wiki servlets in order to
+     * invalidate their rendered pages in the cache (in seconds).
+     * 
+     * @see #WIKI_RENDER_CACHE_SIZE
+     */
+    public int WIKI_RENDER_CACHE_POLL = 5;
+    
+    /**
+     * Maximum size of the cache of templates and magic words shared by all
+     * requests (in megabytes). The cache will be disabled if a value less than
+     * or equal to 0 is provided.
+     * 
+     * @see #WIKI_TEMPLATE_CACHE_TTL
+     */
+    public int WIKI_TEMPLATE_CACHE_SIZE = 32;
+    
+    /**
+     * Time after which cached templates are re-validated and cached magic
+     * words expire (in seconds).
+     * 
+     * @see #WIKI_TEMPLATE_CACHE_SIZE
+     */
+    public int WIKI_TEMPLATE_CACHE_TTL = 60;
+    
+    /**
+     * Number of revisions after which a full copy of a revision's text
+     * (keyframe) is stored. Other revisions only store a binary diff against
+     * their previous revision. The default, <tt>0</tt>, stores the full text
+     * of every revision without diffs.
+     */
+    public int WIKI_REVISION_KEYFRAME_INTERVAL = 0;
+    
     /**
      * Whether and how to store user contributions in the DB.
      */
@@ -109,6 +191,25 @@ public class Options {
     final public EnumMap<ScalarisOpType, Optimisation> OPTIMISATIONS = new EnumMap<ScalarisOpType, Options.Optimisation>(
             ScalarisOpType.class);
     
+    /**
+     * How often to fold the write buckets of lists and counters using
+     * {@link APPEND_INCREMENT_BUCKETS_WITH_WCACHE} or
+     * {@link APPEND_INCREMENT_BUCKETS_WITH_WCACHE_ADDONLY} into their read
+     * buckets (in seconds). The compaction will be disabled if a value less
+     * than or equal to 0 is provided.
+     * 
+     * @see #WIKI_COMPACT_WRITE_CACHE_RATE
+     */
+    public int WIKI_COMPACT_WRITE_CACHE = 10 * 60;
+    
+    /**
+     * Maximum number of keys to compact per second during a compaction of the
+     * write buckets (<tt>0</tt> for no limit).
+     * 
+     * @see #WIKI_COMPACT_WRITE_CACHE
+     */
+    public int WIKI_COMPACT_WRITE_CACHE_RATE = 20;
+    
     /**
      * Store user requests in a log for the last x minutes before the last
      * request.
@@ -831,10 +932,32 @@ public class Options {
      *            {@link Options#WIKI_PAGES_CACHE_IMPL}
      * @param WIKI_REBUILD_PAGES_CACHE
      *            {@link Options#WIKI_REBUILD_PAGES_CACHE}
+     * @param WIKI_PAGES_CACHE_FULL_REBUILD
+     *            {@link Options#WIKI_PAGES_CACHE_FULL_REBUILD}
+     * @param WIKI_PAGES_CACHE_POLL
+     *            {@link Options#WIKI_PAGES_CACHE_POLL}
+     * @param WIKI_PAGES_CACHE_MAX_AGE
+     *            {@link Options#WIKI_PAGES_CACHE_MAX_AGE}
+     * @param WIKI_RENDER_CACHE_SIZE
+     *            {@link Options#WIKI_RENDER_CACHE_SIZE}
+     * @param WIKI_RENDER_CACHE_MAX_AGE
+     *            {@link Options#WIKI_RENDER_CACHE_MAX_AGE}
+     * @param WIKI_RENDER_CACHE_POLL
+     *            {@link Options#WIKI_RENDER_CACHE_POLL}
+     * @param WIKI_TEMPLATE_CACHE_SIZE
+     *            {@link Options#WIKI_TEMPLATE_CACHE_SIZE}
+     * @param WIKI_TEMPLATE_CACHE_TTL
+     *            {@link Options#WIKI_TEMPLATE_CACHE_TTL}
+     * @param WIKI_REVISION_KEYFRAME_INTERVAL
+     *            {@link Options#WIKI_REVISION_KEYFRAME_INTERVAL}
      * @param WIKI_STORE_CONTRIBUTIONS
      *            {@link Options#WIKI_STORE_CONTRIBUTIONS}
      * @param OPTIMISATIONS
      *            {@link Options#OPTIMISATIONS}
+     * @param WIKI_COMPACT_WRITE_CACHE
+     *            {@link Options#WIKI_COMPACT_WRITE_CACHE}
+     * @param WIKI_COMPACT_WRITE_CACHE_RATE
+     *            {@link Options#WIKI_COMPACT_WRITE_CACHE_RATE}
      * @param LOG_USER_REQS
      *            {@link Options#LOG_USER_REQS}
      * @param SCALARIS_NODE_DISCOVERY
@@ -846,7 +969,18 @@ public class Options {
             final String WIKI_SAVEPAGE_RETRY_DELAY,
             final String WIKI_PAGES_CACHE_IMPL,
             final String WIKI_REBUILD_PAGES_CACHE,
+            final String WIKI_PAGES_CACHE_FULL_REBUILD,
+            final String WIKI_PAGES_CACHE_POLL,
+            final String WIKI_PAGES_CACHE_MAX_AGE,
+            final String WIKI_RENDER_CACHE_SIZE,
+            final String WIKI_RENDER_CACHE_MAX_AGE,
+            final String WIKI_RENDER_CACHE_POLL,
+            final String WIKI_TEMPLATE_CACHE_SIZE,
+            final String WIKI_TEMPLATE_CACHE_TTL,
+            final String WIKI_REVISION_KEYFRAME_INTERVAL,
             final String WIKI_STORE_CONTRIBUTIONS, final String OPTIMISATIONS,
+            final String WIKI_COMPACT_WRITE_CACHE,
+            final String WIKI_COMPACT_WRITE_CACHE_RATE,
             final String LOG_USER_REQS, final String SCALARIS_NODE_DISCOVERY) {
         if (SERVERNAME != null) {
             options.SERVERNAME = SERVERNAME;
@@ -866,6 +1000,8 @@ public class Options {
         if (WIKI_PAGES_CACHE_IMPL != null) {
             if (WIKI_PAGES_CACHE_IMPL.equals("BLOOM")) {
                 options.WIKI_PAGES_CACHE_IMPL = ExistingPagesCacheBloom.class;
+            } else if (WIKI_PAGES_CACHE_IMPL.equals("COUNTING_BLOOM")) {
+                options.WIKI_PAGES_CACHE_IMPL = ExistingPagesCacheCountingBloom.class;
             } else if (WIKI_PAGES_CACHE_IMPL.equals("FULL_SET")) {
                 options.WIKI_PAGES_CACHE_IMPL = ExistingPagesCacheFull.class;
             } else {
@@ -875,6 +1011,33 @@ public class Options {
         if (WIKI_REBUILD_PAGES_CACHE != null) {
             options.WIKI_REBUILD_PAGES_CACHE = Integer.parseInt(WIKI_REBUILD_PAGES_CACHE);
         }
+        if (WIKI_PAGES_CACHE_FULL_REBUILD != null) {
+            options.WIKI_PAGES_CACHE_FULL_REBUILD = Integer.parseInt(WIKI_PAGES_CACHE_FULL_REBUILD);
+        }
+        if (WIKI_PAGES_CACHE_POLL != null) {
+            options.WIKI_PAGES_CACHE_POLL = Integer.parseInt(WIKI_PAGES_CACHE_POLL);
+        }
+        if (WIKI_PAGES_CACHE_MAX_AGE != null) {
+            options.WIKI_PAGES_CACHE_MAX_AGE = Integer.parseInt(WIKI_PAGES_CACHE_MAX_AGE);
+        }
+        if (WIKI_RENDER_CACHE_SIZE != null) {
+            options.WIKI_RENDER_CACHE_SIZE = Integer.parseInt(WIKI_RENDER_CACHE_SIZE);
+        }
+        if (WIKI_RENDER_CACHE_MAX_AGE != null) {
+            options.WIKI_RENDER_CACHE_MAX_AGE = Integer.parseInt(WIKI_RENDER_CACHE_MAX_AGE);
+        }
+        if (WIKI_RENDER_CACHE_POLL != null) {
+            options.WIKI_RENDER_CACHE_POLL = Integer.parseInt(WIKI_RENDER_CACHE_POLL);
+        }
+        if (WIKI_TEMPLATE_CACHE_SIZE != null) {
+            options.WIKI_TEMPLATE_CACHE_SIZE = Integer.parseInt(WIKI_TEMPLATE_CACHE_SIZE);
+        }
+        if (WIKI_TEMPLATE_CACHE_TTL != null) {
+            options.WIKI_TEMPLATE_CACHE_TTL = Integer.parseInt(WIKI_TEMPLATE_CACHE_TTL);
+        }
+        if (WIKI_REVISION_KEYFRAME_INTERVAL != null) {
+            options.WIKI_REVISION_KEYFRAME_INTERVAL = Integer.parseInt(WIKI_REVISION_KEYFRAME_INTERVAL);
+        }
         if (WIKI_STORE_CONTRIBUTIONS != null) {
             options.WIKI_STORE_CONTRIBUTIONS = STORE_CONTRIB_TYPE.fromString(WIKI_STORE_CONTRIBUTIONS);
         }
@@ -905,6 +1068,12 @@ public class Options {
                 }
             }
         }
+        if (WIKI_COMPACT_WRITE_CACHE != null) {
+            options.WIKI_COMPACT_WRITE_CACHE = Integer.parseInt(WIKI_COMPACT_WRITE_CACHE);
+        }
+        if (WIKI_COMPACT_WRITE_CACHE_RATE != null) {
+            options.WIKI_COMPACT_WRITE_CACHE_RATE = Integer.parseInt(WIKI_COMPACT_WRITE_CACHE_RATE);
+        }
         if (LOG_USER_REQS != null) {
             options.LOG_USER_REQS = Integer.parseInt(LOG_USER_REQS);
         }
@@ -1010,8 +1179,14 @@ public class Options {
              *    <param-name>
              *     SERVERNAME|LOG_USER_REQS|SCALARIS_NODE_DISCOVERY|SERVERPATH|
              *     WIKI_USE_BACKLINKS|WIKI_SAVEPAGE_RETRIES|WIKI_SAVEPAGE_RETRY_DELAY|
-             *     WIKI_PAGES_CACHE_IMPL|WIKI_REBUILD_PAGES_CACHE|WIKI_STORE_CONTRIBUTIONS|
-             *     WIKI_OPTIMISATIONS|...
+             *     WIKI_PAGES_CACHE_IMPL|WIKI_REBUILD_PAGES_CACHE|
+             *     WIKI_PAGES_CACHE_FULL_REBUILD|WIKI_PAGES_CACHE_POLL|
+             *     WIKI_PAGES_CACHE_MAX_AGE|WIKI_RENDER_CACHE_SIZE|
+             *     WIKI_RENDER_CACHE_MAX_AGE|WIKI_RENDER_CACHE_POLL|WIKI_TEMPLATE_CACHE_SIZE|
+             *     WIKI_TEMPLATE_CACHE_TTL|WIKI_REVISION_KEYFRAME_INTERVAL|
+             *     WIKI_STORE_CONTRIBUTIONS|
+             *     WIKI_OPTIMISATIONS|WIKI_COMPACT_WRITE_CACHE|
+             *     WIKI_COMPACT_WRITE_CACHE_RATE|...
              *    </param-name>
              *    <param-value>...</param-value>
              *   </init-param>
@@ -1138,8 +1313,19 @@ public class Options {
                     handler.initParams.get("WIKI_SAVEPAGE_RETRY_DELAY"),
                     handler.initParams.get("WIKI_PAGES_CACHE_IMPL"),
                     handler.initParams.get("WIKI_REBUILD_PAGES_CACHE"),
+                    handler.initParams.get("WIKI_PAGES_CACHE_FULL_REBUILD"),
+                    handler.initParams.get("WIKI_PAGES_CACHE_POLL"),
+                    handler.initParams.get("WIKI_PAGES_CACHE_MAX_AGE"),
+                    handler.initParams.get("WIKI_RENDER_CACHE_SIZE"),
+                    handler.initParams.get("WIKI_RENDER_CACHE_MAX_AGE"),
+                    handler.initParams.get("WIKI_RENDER_CACHE_POLL"),
+                    handler.initParams.get("WIKI_TEMPLATE_CACHE_SIZE"),
+                    handler.initParams.get("WIKI_TEMPLATE_CACHE_TTL"),
+                    handler.initParams.get("WIKI_REVISION_KEYFRAME_INTERVAL"),
                     handler.initParams.get("WIKI_STORE_CONTRIBUTIONS"),
                     handler.initParams.get("WIKI_OPTIMISATIONS"),
+                    handler.initParams.get("WIKI_COMPACT_WRITE_CACHE"),
+                    handler.initParams.get("WIKI_COMPACT_WRITE_CACHE_RATE"),
                     handler.initParams.get("LOG_USER_REQS"),
                     handler.initParams.get("SCALARIS_NODE_DISCOVERY"));
         } catch (Exception e) {
@@ -0,0 +1,61 @@
+package de.zib.scalaris.examples.wikipedia;
+
+import java.util.List;
+
+import de.zib.scalaris.examples.wikipedia.bliki.NormalisedTitle;
+
+/**
+ * Result of an operation getting a part of a page list.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ */
+public class PageListResult extends ValueResult<List<NormalisedTitle>> {
+    /**
+     * Continuation token of the next part of the list (<tt>null</tt> if there
+     * are no more pages).
+     */
+    public String continueFrom = null;
+
+    /**
+     * Creates a new successful result with the given part of a page list.
+     *
+     * @param involvedKeys
+     *            all keys that have been read or written during the operation
+     * @param value
+     *            the retrieved pages
+     * @param continueFrom
+     *            continuation token of the next part of the list
+     *            (<tt>null</tt> if there are no more pages)
+     * @param name
+     *            the name of the operation (for the stats - see {@link #stats})
+     * @param time
+     *            time in milliseconds for this operation
+     */
+    public PageListResult(List<InvolvedKey> involvedKeys,
+            List<NormalisedTitle> value, String continueFrom, String name,
+            long time) {
+        super(involvedKeys, value, name, time);
+        this.continueFrom = continueFrom;
+    }
+
+    /**
+     * Creates a new custom result (value = <tt>null</tt>).
+     *
+     * @param success
+     *            the success status
+     * @param involvedKeys
+     *            all keys that have been read or written during the operation
+     * @param message
+     *            the message to use
+     * @param connectFailed
+     *            whether the connection to the DB failed or not
+     * @param name
+     *            the name of the operation (for the stats - see {@link #stats})
+     * @param time
+     *            time in milliseconds for this operation
+     */
+    public PageListResult(boolean success, List<InvolvedKey> involvedKeys,
+            String message, boolean connectFailed, String name, long time) {
+        super(success, involvedKeys, message, connectFailed, name, time);
+    }
+}
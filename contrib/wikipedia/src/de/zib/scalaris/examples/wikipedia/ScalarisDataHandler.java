@@ -28,18 +28,31 @@ import de.zib.scalaris.Connection;
 import de.zib.scalaris.ConnectionException;
 import de.zib.scalaris.ErlangValue;
 import de.zib.scalaris.ErlangValue.ListElementConverter;
+import de.zib.scalaris.RequestList;
+import de.zib.scalaris.NotFoundException;
 import de.zib.scalaris.ScalarisVM;
+import de.zib.scalaris.Transaction;
 import de.zib.scalaris.TransactionSingleOp;
 import de.zib.scalaris.UnknownException;
+import de.zib.scalaris.examples.wikipedia.InvolvedKey.OP;
+import de.zib.scalaris.examples.wikipedia.Options.APPEND_INCREMENT_BUCKETS_WITH_WCACHE;
+import de.zib.scalaris.examples.wikipedia.Options.APPEND_INCREMENT_BUCKETS_WITH_WCACHE_ADDONLY;
+import de.zib.scalaris.examples.wikipedia.Options.IReadBuckets;
 import de.zib.scalaris.examples.wikipedia.Options.Optimisation;
 import de.zib.scalaris.examples.wikipedia.Options.STORE_CONTRIB_TYPE;
 import de.zib.scalaris.examples.wikipedia.bliki.MyNamespace.NamespaceEnum;
 import de.zib.scalaris.examples.wikipedia.bliki.NormalisedTitle;
 import de.zib.scalaris.examples.wikipedia.data.Contribution;
 import de.zib.scalaris.examples.wikipedia.data.SiteInfo;
+import de.zib.scalaris.examples.wikipedia.data.TextCompression;
+import de.zib.scalaris.executor.ScalarisOp;
+import de.zib.scalaris.executor.ScalarisReadOp;
+import de.zib.scalaris.operations.AddDelOnListOp;
 import de.zib.scalaris.operations.Operation;
 import de.zib.scalaris.operations.PartialReadOp;
 import de.zib.scalaris.operations.ReadOp;
+import de.zib.scalaris.operations.WriteOp;
+import de.zib.tools.LinkedMultiHashMap;
 
 /**
  * Retrieves and writes values from/to Scalaris.
@@ -109,6 +122,53 @@ public class ScalarisDataHandler {
     public final static String getContributionListKey(String contributor) {
         return contributor + ":user:contrib";
     }
+    
+    /**
+     * Number of keys the list of recently changed pages is split into so that
+     * concurrent page edits do not all update the same key.
+     * 
+     * @see #getChangedPagesKey(int)
+     */
+    public final static int CHANGED_PAGES_BUCKETS = 16;
+    
+    /**
+     * Gets the key to store a part of the list of recently changed pages at
+     * (used to invalidate caches of other wiki servlets).
+     * 
+     * Each entry has the form <tt>&lt;time in ms&gt;:&lt;normalised
+     * title&gt;</tt>. Titles of created pages are prefixed with <tt>+</tt>.
+     * 
+     * @param bucket
+     *            the part of the list (<tt>0</tt> to
+     *            {@link #CHANGED_PAGES_BUCKETS}<tt> - 1</tt>)
+     * 
+     * @return Scalaris key
+     */
+    public final static String getChangedPagesKey(int bucket) {
+        return "pages:changed:" + bucket;
+    }
+    
+    /**
+     * Gets the key to store the dictionary with the given version at (see
+     * {@link TextCompression}).
+     * 
+     * @param version  the dictionary's version
+     * 
+     * @return Scalaris key
+     */
+    public final static String getTextDictionaryKey(int version) {
+        return "textdict:" + version;
+    }
+    
+    /**
+     * Gets the key to store the version of the dictionary to pack new texts
+     * with at.
+     * 
+     * @return Scalaris key
+     */
+    public final static String getTextDictionaryVersionKey() {
+        return "textdict:current";
+    }
 
     /**
      * Retrieves the Scalaris version string.
@@ -338,6 +398,84 @@ public class ScalarisDataHandler {
                 System.currentTimeMillis() - timeAtStart);
     }
 
+    /**
+     * Retrieves a part of a list of pages from Scalaris.
+     * 
+     * @param connection
+     *            the connection to Scalaris
+     * @param opType
+     *            operation type indicating what is being read
+     * @param scalaris_key
+     *            the key under which the page list is stored in Scalaris
+     * @param continueFrom
+     *            the continuation token of a previous part (<tt>null</tt> for
+     *            the first part)
+     * @param limit
+     *            the maximum number of pages to retrieve
+     * @param timeAtStart
+     *            the start time of the method using this method
+     * @param statName
+     *            name for the time measurement statistics
+     * 
+     * @return a result object with the part of the page list on success
+     * 
+     * @see ScalarisReadSublistOp1
+     */
+    protected final static PageListResult getPageListPart2(
+            Connection connection, ScalarisOpType opType,
+            String scalaris_key, String continueFrom, int limit,
+            final long timeAtStart, String statName) {
+        List<InvolvedKey> involvedKeys = new ArrayList<InvolvedKey>();
+        
+        if (connection == null) {
+            return new PageListResult(false, involvedKeys,
+                    "no connection to Scalaris", true, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+        
+        final MyScalarisSingleOpExecutor executor = new MyScalarisSingleOpExecutor(
+                new TransactionSingleOp(connection), involvedKeys);
+
+        final ScalarisReadSublistOp1<NormalisedTitle> readOp = new ScalarisReadSublistOp1<NormalisedTitle>(
+                scalaris_key, Options.getInstance().OPTIMISATIONS.get(opType),
+                continueFrom, limit,
+                new ErlangConverter<List<NormalisedTitle>>() {
+                    @Override
+                    public List<NormalisedTitle> convert(ErlangValue v)
+                            throws ClassCastException {
+                        return v.listValue(new ListElementConverter<NormalisedTitle>() {
+                            public NormalisedTitle convert(final int i,
+                                    final ErlangValue v) {
+                                return NormalisedTitle.fromNormalised(v
+                                        .stringValue());
+                            }
+                        });
+                    }
+                },
+                new ErlangConverter<NormalisedTitle>() {
+                    @Override
+                    public NormalisedTitle convert(ErlangValue v)
+                            throws ClassCastException {
+                        return NormalisedTitle.fromNormalised(v
+                                        .stringValue());
+                    }
+                });
+        executor.addOp(readOp);
+        try {
+            executor.run();
+        } catch (Exception e) {
+            return new PageListResult(false, involvedKeys,
+                    e.getClass().getCanonicalName() + " reading page list at \""
+                            + involvedKeys.toString() + "\" from Scalaris: "
+                            + e.getMessage(), e instanceof ConnectionException,
+                    statName, System.currentTimeMillis() - timeAtStart);
+        }
+        
+        return new PageListResult(involvedKeys, readOp.getValue(),
+                readOp.getContinueFrom(), statName,
+                System.currentTimeMillis() - timeAtStart);
+    }
+
     /**
      * Retrieves the number of all available pages from Scalaris.
      * 
@@ -407,6 +545,157 @@ public class ScalarisDataHandler {
                 getStatsPageEditsKey(), false, timeAtStart, statName);
     }
 
+    /**
+     * Retrieves all text dictionaries from Scalaris, registers them with
+     * {@link TextCompression} and uses the current one to pack new texts.
+     * 
+     * @param connection
+     *            the connection to Scalaris
+     * 
+     * @return a result object with the current dictionary version on success
+     *         (<tt>0</tt> if there is no dictionary)
+     */
+    public final static ValueResult<Integer> loadTextDictionaries(Connection connection) {
+        final long timeAtStart = System.currentTimeMillis();
+        final String statName = "TEXT_DICT";
+        List<InvolvedKey> involvedKeys = new ArrayList<InvolvedKey>();
+        if (connection == null) {
+            return new ValueResult<Integer>(false, involvedKeys,
+                    "no connection to Scalaris", true, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+        
+        final TransactionSingleOp scalaris_single = new TransactionSingleOp(connection);
+        String scalaris_key = getTextDictionaryVersionKey();
+        try {
+            int version;
+            try {
+                involvedKeys.add(new InvolvedKey(OP.READ, scalaris_key));
+                version = scalaris_single.read(scalaris_key).intValue();
+            } catch (NotFoundException e) {
+                version = 0;
+            }
+            // old dictionaries are still needed to unpack existing texts
+            final TransactionSingleOp.RequestList requests = new TransactionSingleOp.RequestList();
+            final List<Integer> versions = new ArrayList<Integer>(version);
+            for (int i = 1; i <= version; ++i) {
+                if (!TextCompression.hasDictionary(i)) {
+                    requests.addOp(new ReadOp(getTextDictionaryKey(i)));
+                    versions.add(i);
+                }
+            }
+            if (!requests.isEmpty()) {
+                scalaris_key = getTextDictionaryKey(versions.get(0)) + ".."
+                        + getTextDictionaryKey(version);
+                addInvolvedKeys(involvedKeys, requests.getRequests());
+                final TransactionSingleOp.ResultList results = scalaris_single.req_list(requests);
+                for (int i = 0; i < versions.size(); ++i) {
+                    try {
+                        TextCompression.addDictionary(versions.get(i),
+                                results.processReadAt(i).binaryValue());
+                    } catch (NotFoundException e) {
+                        // a concurrent store failed -> not used by any text
+                    }
+                }
+            }
+            if (TextCompression.hasDictionary(version)) {
+                TextCompression.setCurrentVersion(version);
+            }
+            return new ValueResult<Integer>(involvedKeys, version, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        } catch (Exception e) {
+            return new ValueResult<Integer>(false, involvedKeys,
+                    e.getClass().getCanonicalName() + " reading \"" + scalaris_key
+                            + "\" from Scalaris: " + e.getMessage(),
+                    e instanceof ConnectionException, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+    }
+
+    /**
+     * Retrieves the dictionary of the given (packed) text from Scalaris
+     * unless it is already registered with {@link TextCompression}.
+     * 
+     * @param connection
+     *            the connection to Scalaris
+     * @param packedText
+     *            a packed text
+     * 
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if the dictionary does not exist or any other error occurs
+     */
+    protected static void ensureTextDictionary(Connection connection,
+            byte[] packedText) throws ConnectionException, UnknownException {
+        final int version = TextCompression.getDictionaryVersion(packedText);
+        if (version > 0 && !TextCompression.hasDictionary(version)) {
+            final String scalaris_key = getTextDictionaryKey(version);
+            try {
+                TextCompression.addDictionary(version,
+                        new TransactionSingleOp(connection).read(scalaris_key)
+                                .binaryValue());
+            } catch (NotFoundException e) {
+                throw new UnknownException("text dictionary not found at \""
+                        + scalaris_key + "\"");
+            }
+        }
+    }
+
+    /**
+     * Stores a new text dictionary in Scalaris and makes it the current one,
+     * i.e. all wiki instances will pack new texts with it after loading it
+     * with {@link #loadTextDictionaries(Connection)}.
+     * 
+     * @param connection
+     *            the connection to Scalaris
+     * @param dictionary
+     *            the new dictionary, e.g. from
+     *            {@link TextCompression#train(Collection, int)}
+     * 
+     * @return a result object with the new dictionary version on success
+     */
+    public final static ValueResult<Integer> storeTextDictionary(
+            Connection connection, byte[] dictionary) {
+        final long timeAtStart = System.currentTimeMillis();
+        final String statName = "TEXT_DICT_STORE";
+        List<InvolvedKey> involvedKeys = new ArrayList<InvolvedKey>();
+        if (connection == null) {
+            return new ValueResult<Integer>(false, involvedKeys,
+                    "no connection to Scalaris", true, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+        
+        final Transaction scalaris_tx = new Transaction(connection);
+        final String scalaris_key = getTextDictionaryVersionKey();
+        try {
+            int version;
+            try {
+                involvedKeys.add(new InvolvedKey(OP.READ, scalaris_key));
+                version = scalaris_tx.read(scalaris_key).intValue() + 1;
+            } catch (NotFoundException e) {
+                version = 1;
+            }
+            involvedKeys.add(new InvolvedKey(OP.WRITE, getTextDictionaryKey(version)));
+            scalaris_tx.write(getTextDictionaryKey(version), dictionary);
+            involvedKeys.add(new InvolvedKey(OP.WRITE, scalaris_key));
+            scalaris_tx.write(scalaris_key, version);
+            scalaris_tx.commit();
+            TextCompression.addDictionary(version, dictionary);
+            TextCompression.setCurrentVersion(version);
+            return new ValueResult<Integer>(involvedKeys, version, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        } catch (Exception e) {
+            return new ValueResult<Integer>(false, involvedKeys,
+                    e.getClass().getCanonicalName() + " storing a text dictionary in Scalaris: "
+                            + e.getMessage(),
+                    e instanceof ConnectionException, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+    }
+
     /**
      * Retrieves a random page title from Scalaris.
      * 
@@ -534,6 +823,33 @@ public class ScalarisDataHandler {
         final MyScalarisSingleOpExecutor executor = new MyScalarisSingleOpExecutor(
                 new TransactionSingleOp(connection), involvedKeys);
 
+        final ScalarisReadNumberOp1 readOp = new ScalarisReadNumberOp1(scalaris_keys,
+                getNumberOptimisation(opType), failNotFound);
+        executor.addOp(readOp);
+        try {
+            executor.run();
+        } catch (Exception e) {
+            return new ValueResult<BigInteger>(false, involvedKeys,
+                    e.getClass().getCanonicalName() + " reading page list at \""
+                            + involvedKeys.toString() + "\" from Scalaris: "
+                            + e.getMessage(), e instanceof ConnectionException,
+                    statName, System.currentTimeMillis() - timeAtStart);
+        }
+        
+        return new ValueResult<BigInteger>(involvedKeys, readOp.getValue(), statName,
+                System.currentTimeMillis() - timeAtStart);
+    }
+
+    /**
+     * Gets the optimisation used for numbers of the given operation type.
+     * 
+     * @param opType
+     *            operation type indicating what is being read
+     * 
+     * @return the configured optimisation or, for counters without an own
+     *         optimisation, the optimisation of their list
+     */
+    protected final static Optimisation getNumberOptimisation(ScalarisOpType opType) {
         Optimisation optimisation = Options.getInstance().OPTIMISATIONS.get(opType);
         if (optimisation == null) {
             switch (opType) {
@@ -551,21 +867,238 @@ public class ScalarisDataHandler {
                     break;
             }
         }
-        final ScalarisReadNumberOp1 readOp = new ScalarisReadNumberOp1(scalaris_keys,
-                optimisation, failNotFound);
-        executor.addOp(readOp);
+        return optimisation;
+    }
+
+    /**
+     * Checks whether values of the given operation type use write buckets
+     * which may be compacted with {@link #compactWriteCache(Connection, ScalarisOpType, String)}
+     * or {@link #compactWriteCacheNumber(Connection, ScalarisOpType, String)}.
+     * 
+     * @param opType
+     *            operation type of the list or number
+     * 
+     * @return whether the (effective) optimisation uses read and write buckets
+     */
+    public final static boolean hasWriteCache(ScalarisOpType opType) {
+        return getNumberOptimisation(opType) instanceof IReadBuckets;
+    }
+
+    /**
+     * Folds the write buckets of a list into its read buckets.
+     * 
+     * All write buckets are read in a single transaction. Added elements are
+     * appended to their read buckets, deleted elements are removed from all
+     * read buckets and the write buckets are emptied. The transaction fails
+     * if any of these keys has been changed concurrently, e.g. by a page
+     * edit, in which case the list stays as it is and may be compacted
+     * later.
+     * 
+     * @param connection
+     *            the connection to Scalaris
+     * @param opType
+     *            operation type of the list
+     * @param scalaris_key
+     *            the key under which the list is stored in Scalaris
+     * 
+     * @return a result object with the number of compacted write buckets on
+     *         success
+     */
+    public final static ValueResult<Integer> compactWriteCache(
+            Connection connection, ScalarisOpType opType, String scalaris_key) {
+        final long timeAtStart = System.currentTimeMillis();
+        final String statName = "COMPACT:" + scalaris_key;
+        List<InvolvedKey> involvedKeys = new ArrayList<InvolvedKey>();
+        if (connection == null) {
+            return new ValueResult<Integer>(false, involvedKeys,
+                    "no connection to Scalaris", true, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+        final Optimisation optimisation = Options.getInstance().OPTIMISATIONS.get(opType);
+        if (!(optimisation instanceof IReadBuckets)) {
+            return new ValueResult<Integer>(involvedKeys, 0, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+        final int readBuckets = ((IReadBuckets) optimisation).getReadBuckets();
+        final int buckets = ((IReadBuckets) optimisation).getBuckets();
+        
+        final Transaction scalaris_tx = new Transaction(connection);
         try {
-            executor.run();
+            Transaction.RequestList requests = new Transaction.RequestList();
+            for (int i = readBuckets; i < buckets; ++i) {
+                requests.addOp(new ReadOp(scalaris_key + ":" + i));
+            }
+            addInvolvedKeys(involvedKeys, requests.getRequests());
+            Transaction.ResultList results = scalaris_tx.req_list(requests);
+            
+            final List<String> writeBucketKeys = new ArrayList<String>(buckets - readBuckets);
+            final LinkedMultiHashMap<String, ErlangValue> kvAdd = new LinkedMultiHashMap<String, ErlangValue>();
+            final List<ErlangValue> toDelete = new ArrayList<ErlangValue>();
+            for (int i = readBuckets; i < buckets; ++i) {
+                final List<ErlangValue> writeBucket;
+                try {
+                    writeBucket = results.processReadAt(i - readBuckets).listValue();
+                } catch (NotFoundException e) {
+                    continue;
+                }
+                if (writeBucket.isEmpty()) {
+                    continue;
+                }
+                writeBucketKeys.add(scalaris_key + ":" + i);
+                if (optimisation instanceof APPEND_INCREMENT_BUCKETS_WITH_WCACHE) {
+                    final APPEND_INCREMENT_BUCKETS_WITH_WCACHE optimisation2 = (APPEND_INCREMENT_BUCKETS_WITH_WCACHE) optimisation;
+                    for (ErlangValue elem : writeBucket) {
+                        // see APPEND_INCREMENT_BUCKETS_WITH_WCACHE.WriteCacheDiffConv
+                        final List<ErlangValue> diffObj = elem.listValue();
+                        if (diffObj.size() != 2) {
+                            throw new ClassCastException();
+                        }
+                        final ErlangValue value = diffObj.get(1);
+                        switch (diffObj.get(0).intValue()) {
+                            case 1:
+                                kvAdd.put1(scalaris_key + optimisation2.getReadBucketString(value), value);
+                                break;
+                            case -1:
+                                toDelete.add(value);
+                                break;
+                            default:
+                                throw new ClassCastException();
+                        }
+                    }
+                } else if (optimisation instanceof APPEND_INCREMENT_BUCKETS_WITH_WCACHE_ADDONLY) {
+                    final APPEND_INCREMENT_BUCKETS_WITH_WCACHE_ADDONLY optimisation2 = (APPEND_INCREMENT_BUCKETS_WITH_WCACHE_ADDONLY) optimisation;
+                    final String key2 = scalaris_key + optimisation2.getReadBucketString();
+                    for (ErlangValue value : writeBucket) {
+                        kvAdd.put1(key2, value);
+                    }
+                } else {
+                    throw new RuntimeException("unsupported optimisation: " + optimisation);
+                }
+            }
+            if (writeBucketKeys.isEmpty()) {
+                scalaris_tx.abort();
+                return new ValueResult<Integer>(involvedKeys, 0, statName,
+                        System.currentTimeMillis() - timeAtStart);
+            }
+            
+            requests = new Transaction.RequestList();
+            for (int i = 0; i < readBuckets; ++i) {
+                final String key2 = scalaris_key + ":" + i;
+                List<ErlangValue> toAdd2 = kvAdd.get(key2);
+                if (toAdd2 == null) {
+                    if (toDelete.isEmpty()) {
+                        continue;
+                    }
+                    toAdd2 = new ArrayList<ErlangValue>(0);
+                }
+                // note: read buckets are not hashed consistently among
+                //       importers and writers - remove from all of them
+                requests.addOp(new AddDelOnListOp(key2, toAdd2, toDelete));
+            }
+            for (String key2 : writeBucketKeys) {
+                requests.addOp(new WriteOp(key2, new ArrayList<ErlangValue>(0)));
+            }
+            addInvolvedKeys(involvedKeys, requests.getRequests());
+            requests.addCommit();
+            results = scalaris_tx.req_list(requests);
+            final int commitOp = requests.size() - 1;
+            for (int i = 0; i < commitOp; ++i) {
+                if (i < commitOp - writeBucketKeys.size()) {
+                    results.processAddDelOnListAt(i);
+                } else {
+                    results.processWriteAt(i);
+                }
+            }
+            results.processCommitAt(commitOp);
+            return new ValueResult<Integer>(involvedKeys,
+                    writeBucketKeys.size(), statName,
+                    System.currentTimeMillis() - timeAtStart);
         } catch (Exception e) {
-            return new ValueResult<BigInteger>(false, involvedKeys,
-                    e.getClass().getCanonicalName() + " reading page list at \""
-                            + involvedKeys.toString() + "\" from Scalaris: "
-                            + e.getMessage(), e instanceof ConnectionException,
-                    statName, System.currentTimeMillis() - timeAtStart);
+            return new ValueResult<Integer>(false, involvedKeys,
+                    e.getClass().getCanonicalName() + " compacting the write cache of \""
+                            + scalaris_key + "\" in Scalaris: " + e.getMessage(),
+                    e instanceof ConnectionException, statName,
+                    System.currentTimeMillis() - timeAtStart);
         }
+    }
+
+    /**
+     * Folds the write buckets of a number into its first read bucket.
+     * 
+     * The values of all write buckets are read and added to the first read
+     * bucket and the write buckets are reset to <tt>0</tt> in a single
+     * transaction.
+     * 
+     * @param connection
+     *            the connection to Scalaris
+     * @param opType
+     *            operation type of the number
+     * @param scalaris_key
+     *            the key under which the number is stored in Scalaris
+     * 
+     * @return a result object with the number of compacted write buckets on
+     *         success
+     * 
+     * @see #compactWriteCache(Connection, ScalarisOpType, String)
+     */
+    public final static ValueResult<Integer> compactWriteCacheNumber(
+            Connection connection, ScalarisOpType opType, String scalaris_key) {
+        final long timeAtStart = System.currentTimeMillis();
+        final String statName = "COMPACT:" + scalaris_key;
+        List<InvolvedKey> involvedKeys = new ArrayList<InvolvedKey>();
+        if (connection == null) {
+            return new ValueResult<Integer>(false, involvedKeys,
+                    "no connection to Scalaris", true, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+        final Optimisation optimisation = getNumberOptimisation(opType);
+        if (!(optimisation instanceof IReadBuckets)) {
+            return new ValueResult<Integer>(involvedKeys, 0, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+        final int readBuckets = ((IReadBuckets) optimisation).getReadBuckets();
+        final int buckets = ((IReadBuckets) optimisation).getBuckets();
         
-        return new ValueResult<BigInteger>(involvedKeys, readOp.getValue(), statName,
-                System.currentTimeMillis() - timeAtStart);
+        final List<ScalarisReadOp> writeBucketReads = new ArrayList<ScalarisReadOp>(buckets - readBuckets);
+        for (int i = readBuckets; i < buckets; ++i) {
+            writeBucketReads.add(new ScalarisReadOp(scalaris_key + ":" + i));
+        }
+        final ScalarisFoldNumberOp1 foldOp = new ScalarisFoldNumberOp1(
+                scalaris_key + ":0", writeBucketReads);
+        final Transaction scalaris_tx = new Transaction(connection);
+        final MyScalarisTxOpExecutor executor = new MyScalarisTxOpExecutor(
+                scalaris_tx, involvedKeys) {
+            @Override
+            protected void endWorkPhase(int phase, RequestList requests) {
+                // nothing to fold -> abort instead of committing an empty
+                // transaction (see below)
+                if (!requests.isEmpty()) {
+                    super.endWorkPhase(phase, requests);
+                }
+            }
+        };
+        executor.setCommitLast(true);
+        for (ScalarisReadOp readOp : writeBucketReads) {
+            executor.addOp(readOp);
+        }
+        // fold in the same transaction as soon as the write buckets are read
+        executor.addOp(foldOp, writeBucketReads
+                .toArray(new ScalarisOp[writeBucketReads.size()]));
+        try {
+            executor.run();
+            if (foldOp.getWriteBucketKeys().isEmpty()) {
+                scalaris_tx.abort();
+            }
+            return new ValueResult<Integer>(involvedKeys,
+                    foldOp.getWriteBucketKeys().size(), statName,
+                    System.currentTimeMillis() - timeAtStart);
+        } catch (Exception e) {
+            return new ValueResult<Integer>(false, involvedKeys,
+                    e.getClass().getCanonicalName() + " compacting the write cache of \""
+                            + scalaris_key + "\" in Scalaris: " + e.getMessage(),
+                    e instanceof ConnectionException, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
     }
 
     /**
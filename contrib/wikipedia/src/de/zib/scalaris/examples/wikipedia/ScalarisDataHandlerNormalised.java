@@ -19,20 +19,27 @@ import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
+import org.apache.commons.codec.binary.Base64;
+
 import de.zib.scalaris.Connection;
 import de.zib.scalaris.ConnectionException;
+import de.zib.scalaris.ErlangValue;
 import de.zib.scalaris.NotFoundException;
+import de.zib.scalaris.ResultList;
 import de.zib.scalaris.Transaction;
 import de.zib.scalaris.TransactionSingleOp;
+import de.zib.scalaris.UnknownException;
 import de.zib.scalaris.examples.wikipedia.InvolvedKey.OP;
 import de.zib.scalaris.examples.wikipedia.bliki.NormalisedTitle;
 import de.zib.scalaris.examples.wikipedia.data.Page;
 import de.zib.scalaris.examples.wikipedia.data.Revision;
 import de.zib.scalaris.examples.wikipedia.data.ShortRevision;
-import de.zib.scalaris.executor.ScalarisOp;
+import de.zib.scalaris.examples.wikipedia.data.TextCompression;
+import de.zib.scalaris.examples.wikipedia.data.TextDelta;
 import de.zib.scalaris.executor.ScalarisReadOp;
 import de.zib.scalaris.operations.ReadOp;
 
@@ -64,6 +71,31 @@ public class ScalarisDataHandlerNormalised extends ScalarisDataHandler {
         return title + ":page";
     }
     
+    /**
+     * Gets the key to store the (packed) text of the current revision of a
+     * page at (the {@link Page} object only contains the page's metadata).
+     * 
+     * @param title     the title of the page
+     * 
+     * @return Scalaris key
+     */
+    public final static String getPageTextKey(NormalisedTitle title) {
+        return title + ":text";
+    }
+    
+    /**
+     * Gets the key to store the categories, templates and links of the
+     * current revision of a page at (see
+     * {@link de.zib.scalaris.examples.wikipedia.data.PageLinks}).
+     * 
+     * @param title     the title of the page
+     * 
+     * @return Scalaris key
+     */
+    public final static String getPageLinksKey(NormalisedTitle title) {
+        return title + ":links";
+    }
+    
     /**
      * Gets the key to store the list of revisions of a page at.
      * 
@@ -237,55 +269,491 @@ public class ScalarisDataHandlerNormalised extends ScalarisDataHandler {
                     false, statName, System.currentTimeMillis() - timeAtStart);
         }
         
-        TransactionSingleOp scalaris_single;
-        String scalaris_key;
+        // the page's metadata and the current text need to be read
+        // atomically, otherwise a concurrent save may pair the metadata of one
+        // revision with the text of another one
+        final Transaction scalaris_tx = new Transaction(connection);
+        final String pageKey = getPageKey(title);
+        final String textKey = getPageTextKey(title);
+        String scalaris_key = (id >= 0) ? getRevKey(title, id) : textKey;
+        Transaction.RequestList requests = new Transaction.RequestList();
+        requests.addOp(new ReadOp(pageKey));
+        requests.addOp(new ReadOp(scalaris_key));
+        if (id < 0) {
+            requests.addCommit();
+        }
         
-        scalaris_single = new TransactionSingleOp(connection);
+        Transaction.ResultList results;
+        try {
+            addInvolvedKeys(involvedKeys, requests.getRequests());
+            results = scalaris_tx.req_list(requests);
+        } catch (Exception e) {
+            return new RevisionResult(false, involvedKeys,
+                    e.getClass().getCanonicalName() + " reading \"" + pageKey
+                            + "\" or \"" + scalaris_key + "\" from Scalaris: "
+                            + e.getMessage(),
+                    e instanceof ConnectionException, title, page, revision, false,
+                    false, statName, System.currentTimeMillis() - timeAtStart);
+        }
 
-        scalaris_key = getPageKey(title);
         try {
-            involvedKeys.add(new InvolvedKey(OP.READ, scalaris_key));
-            page = scalaris_single.read(scalaris_key).jsonValue(Page.class);
+            page = results.processReadAt(0).jsonValue(Page.class);
         } catch (NotFoundException e) {
             return new RevisionResult(false, involvedKeys,
-                    "page not found at \"" + scalaris_key + "\"", false, title,
+                    "page not found at \"" + pageKey + "\"", false, title,
                     page, revision, true, false, statName,
                     System.currentTimeMillis() - timeAtStart);
         } catch (Exception e) {
             return new RevisionResult(false, involvedKeys,
-                    e.getClass().getCanonicalName() + " reading \"" + scalaris_key
+                    e.getClass().getCanonicalName() + " reading \"" + pageKey
                             + "\" from Scalaris: " + e.getMessage(),
                     e instanceof ConnectionException, title, page, revision, false,
                     false, statName, System.currentTimeMillis() - timeAtStart);
         }
 
-        // load requested version if it is not the current one cached in the Page object
-        if (id != page.getCurRev().getId() && id >= 0) {
-            scalaris_key = getRevKey(title, id);
+        try {
+            if (id >= 0 && id != page.getCurRev().getId()) {
+                // old revisions do not change -> no need to commit
+                scalaris_tx.abort();
+                revision = results.processReadAt(1).jsonValue(Revision.class);
+                if (TextDelta.isDelta(revision.packedText())) {
+                    revision.setUnpackedText(getDeltaRevisionText(connection,
+                            title, revision, involvedKeys));
+                } else {
+                    ensureTextDictionary(connection, revision.packedText());
+                }
+            } else {
+                revision = page.getCurRev();
+                scalaris_key = textKey;
+                if (id >= 0) {
+                    // the current revision is not stored at its revision key
+                    // -> read the current text in the same transaction
+                    requests = new Transaction.RequestList();
+                    requests.addOp(new ReadOp(textKey));
+                    requests.addCommit();
+                    addInvolvedKeys(involvedKeys, requests.getRequests());
+                    setCurRevText(connection, revision, scalaris_tx.req_list(requests), 0);
+                } else {
+                    setCurRevText(connection, revision, results, 1);
+                }
+            }
+        } catch (NotFoundException e) {
+            return new RevisionResult(false, involvedKeys,
+                    "revision not found at \"" + scalaris_key + "\"",
+                    false, title, page, revision, false, true, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        } catch (Exception e) {
+            return new RevisionResult(false, involvedKeys,
+                    e.getClass().getCanonicalName() + " reading \"" + scalaris_key
+                            + "\" from Scalaris: " + e.getMessage(),
+                    e instanceof ConnectionException, title, page,
+                    revision, false, false, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+
+        return new RevisionResult(involvedKeys, title, page, revision, statName,
+                System.currentTimeMillis() - timeAtStart);
+    }
+
+    /**
+     * Reconstructs the text of a delta-encoded revision (see
+     * {@link Options#WIKI_REVISION_KEYFRAME_INTERVAL}) by reading its
+     * keyframe and all diffs in between with a single request list.
+     * 
+     * @param connection
+     *            the connection to Scalaris
+     * @param title
+     *            the title of the page
+     * @param revision
+     *            the revision with a delta-encoded text
+     * @param involvedKeys
+     *            list of all involved keys
+     * 
+     * @return the revision's (un-compressed) text
+     * 
+     * @throws ConnectionException
+     *             if the connection to Scalaris failed
+     * @throws NotFoundException
+     *             if a revision of the chain was not found
+     * @throws UnknownException
+     *             if any other error occurs
+     * @throws ClassCastException
+     *             if a revision key contains an invalid value
+     */
+    protected static String getDeltaRevisionText(Connection connection,
+            NormalisedTitle title, Revision revision,
+            List<InvolvedKey> involvedKeys) throws ConnectionException,
+            NotFoundException, UnknownException, ClassCastException {
+        final List<Integer> chain = TextDelta.getChain(revision.packedText());
+        TransactionSingleOp.RequestList requests = new TransactionSingleOp.RequestList();
+        for (int id : chain) {
+            requests.addOp(new ReadOp(getRevKey(title, id)));
+        }
+        addInvolvedKeys(involvedKeys, requests.getRequests());
+        TransactionSingleOp.ResultList results = new TransactionSingleOp(
+                connection).req_list(requests);
+        String text = null;
+        for (int i = 0; i < chain.size(); ++i) {
+            final Revision chainRev = results.processReadAt(i).jsonValue(Revision.class);
+            final byte[] packedText = chainRev.packedText();
+            if (TextDelta.isDelta(packedText)) {
+                if (text == null) {
+                    throw new UnknownException("no keyframe for revision "
+                            + revision.getId() + " of " + title);
+                }
+                text = TextDelta.decode(text, packedText);
+            } else {
+                // keyframe (or a revision stored without delta later on)
+                ensureTextDictionary(connection, packedText);
+                text = chainRev.unpackedText();
+            }
+        }
+        if (text == null) {
+            throw new UnknownException("no keyframe for revision "
+                    + revision.getId() + " of " + title);
+        }
+        return TextDelta.decode(text, revision.packedText());
+    }
+
+    /**
+     * Gets the ids of the revisions needed to reconstruct the text of the
+     * given revision as stored at its revision key.
+     * 
+     * @param stored
+     *            the revision as stored at its revision key
+     * 
+     * @return revision ids, starting with the keyframe and ending with the
+     *         given revision
+     */
+    public static List<Integer> getDeltaChain(Revision stored) {
+        List<Integer> chain;
+        if (TextDelta.isDelta(stored.packedText())) {
+            chain = TextDelta.getChain(stored.packedText());
+        } else {
+            chain = new ArrayList<Integer>(1);
+        }
+        chain.add(stored.getId());
+        return chain;
+    }
+
+    /**
+     * Creates the revision to store at the revision key of the given
+     * revision, i.e. a keyframe with the full text or a binary diff against
+     * the previous revision's text.
+     * 
+     * @param revision
+     *            the revision to store
+     * @param prevChain
+     *            the result of {@link #getDeltaChain(Revision)} for the
+     *            previous revision (empty if there is none)
+     * @param prevText
+     *            the (un-compressed) text of the previous revision (may be
+     *            <tt>null</tt> if there is none)
+     * @param keyframeInterval
+     *            the number of revisions after which a keyframe is stored
+     * 
+     * @return the revision to store
+     */
+    public static Revision toDeltaRevision(Revision revision,
+            List<Integer> prevChain, String prevText, int keyframeInterval) {
+        final Revision stored = revision.toMetadata();
+        final String text = revision.unpackedText();
+        if (prevChain.isEmpty() || prevChain.size() >= keyframeInterval) {
+            stored.setPackedText(TextCompression.pack(text));
+        } else {
+            stored.setPackedText(TextDelta.encode(prevChain, prevText, text));
+        }
+        return stored;
+    }
+
+    /**
+     * Creates the revisions to store at the revision keys of all given
+     * revisions of a page (see {@link #toDeltaRevision(Revision, List, String, int)}).
+     * 
+     * @param revisions
+     *            all revisions of a page (in any order)
+     * @param keyframeInterval
+     *            the number of revisions after which a keyframe is stored
+     * 
+     * @return the revisions to store, ordered by their ids
+     */
+    public static List<Revision> toDeltaRevisions(Collection<Revision> revisions,
+            int keyframeInterval) {
+        final List<Revision> sorted = new ArrayList<Revision>(revisions);
+        Collections.sort(sorted, new Comparator<Revision>() {
+            @Override
+            public int compare(Revision o1, Revision o2) {
+                return Integer.valueOf(o1.getId()).compareTo(o2.getId());
+            }
+        });
+        final List<Revision> result = new ArrayList<Revision>(sorted.size());
+        List<Integer> chain = new ArrayList<Integer>(0);
+        String prevText = null;
+        for (Revision revision : sorted) {
+            final Revision stored = toDeltaRevision(revision, chain,
+                    prevText, keyframeInterval);
+            result.add(stored);
+            chain = getDeltaChain(stored);
+            prevText = revision.unpackedText();
+        }
+        return result;
+    }
+
+    /**
+     * Sets the text of the current revision of a page from the result of
+     * reading the page's text key.
+     * 
+     * Pages written before the text was stored separately do not have a text
+     * key but contain the text in their {@link Page} object.
+     * 
+     * @param connection
+     *            the connection to Scalaris (to retrieve a missing text
+     *            dictionary)
+     * @param curRev
+     *            the page's current revision
+     * @param results
+     *            the results of a request list
+     * @param pos
+     *            the position of the read operation of the text key
+     * 
+     * @throws ConnectionException
+     *             if the connection to Scalaris failed
+     * @throws UnknownException
+     *             if reading the text key failed
+     * @throws ClassCastException
+     *             if the text key contains an invalid value
+     */
+    protected static void setCurRevText(Connection connection, Revision curRev,
+            ResultList results, int pos) throws ConnectionException,
+            UnknownException, ClassCastException {
+        try {
+            curRev.setPackedText(getPackedText(connection,
+                    results.processReadAt(pos)));
+        } catch (NotFoundException e) {
+            // old format with the text inside the page object
+        }
+    }
+
+    /**
+     * Converts the value of a page's text key to the packed text.
+     * 
+     * Texts are stored as binaries packed by {@link TextCompression}. Older
+     * texts may still be stored as base64-encoded strings of their
+     * gzip-compressed text (see {@link Revision#getB64pText()}).
+     * 
+     * @param connection
+     *            the connection to Scalaris (to retrieve a missing text
+     *            dictionary)
+     * @param value
+     *            the value read from the text key
+     * 
+     * @return the packed text (see {@link Revision#setPackedText(byte[])})
+     * 
+     * @throws ConnectionException
+     *             if the connection to Scalaris failed
+     * @throws UnknownException
+     *             if the text's dictionary could not be retrieved
+     * @throws ClassCastException
+     *             if the value is no valid text
+     */
+    protected static byte[] getPackedText(Connection connection,
+            ErlangValue value) throws ConnectionException, UnknownException,
+            ClassCastException {
+        byte[] packedText;
+        try {
+            packedText = value.binaryValue();
+        } catch (ClassCastException e) {
+            packedText = new Base64(0).decode(value.stringValue());
+        }
+        ensureTextDictionary(connection, packedText);
+        return packedText;
+    }
+
+    /**
+     * Re-packs the text of the current revision of a page with the current
+     * text dictionary (see {@link TextCompression}) unless it already uses
+     * it. Also moves the text of pages in the old format, i.e. with the text
+     * inside the {@link Page} object, to the page's text key.
+     * 
+     * The page is read and written inside a single transaction, i.e.
+     * concurrent edits are not lost (the migration fails instead).
+     * 
+     * @param connection
+     *            the connection to Scalaris
+     * @param title
+     *            the title of the page
+     * 
+     * @return a result object with whether the page has been changed on
+     *         success
+     */
+    public static ValueResult<Boolean> migratePageText(Connection connection,
+            NormalisedTitle title) {
+        final long timeAtStart = System.currentTimeMillis();
+        List<InvolvedKey> involvedKeys = new ArrayList<InvolvedKey>();
+        final String statName = "MIGRATE_TEXT:" + title.toString();
+        if (connection == null) {
+            return new ValueResult<Boolean>(false, involvedKeys,
+                    "no connection to Scalaris", true, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+        
+        final Transaction scalaris_tx = new Transaction(connection);
+        final String pageKey = getPageKey(title);
+        final String textKey = getPageTextKey(title);
+        Transaction.RequestList requests = new Transaction.RequestList();
+        requests.addOp(new ReadOp(pageKey));
+        requests.addOp(new ReadOp(textKey));
+        try {
+            addInvolvedKeys(involvedKeys, requests.getRequests());
+            Transaction.ResultList results = scalaris_tx.req_list(requests);
+            Page page = results.processReadAt(0).jsonValue(Page.class);
+            boolean oldFormat;
             try {
-                involvedKeys.add(new InvolvedKey(OP.READ, scalaris_key));
-                revision = scalaris_single.read(scalaris_key).jsonValue(Revision.class);
+                byte[] packedText = getPackedText(connection, results.processReadAt(1));
+                page.getCurRev().setPackedText(packedText);
+                oldFormat = TextCompression.getDictionaryVersion(packedText) != TextCompression.getCurrentVersion();
             } catch (NotFoundException e) {
-                return new RevisionResult(false, involvedKeys,
-                        "revision not found at \"" + scalaris_key + "\"",
-                        false, title, page, revision, false, true, statName,
-                        System.currentTimeMillis() - timeAtStart);
-            } catch (Exception e) {
-                return new RevisionResult(false, involvedKeys,
-                        e.getClass().getCanonicalName() + " reading \"" + scalaris_key
-                                + "\" from Scalaris: " + e.getMessage(),
-                        e instanceof ConnectionException, title, page,
-                        revision, false, false, statName,
+                oldFormat = true;
+                ensureTextDictionary(connection, page.getCurRev().packedText());
+                involvedKeys.add(new InvolvedKey(OP.WRITE, pageKey));
+                scalaris_tx.write(pageKey, page.toMetadata());
+            }
+            if (!oldFormat) {
+                scalaris_tx.abort();
+                return new ValueResult<Boolean>(involvedKeys, false, statName,
                         System.currentTimeMillis() - timeAtStart);
             }
-        } else {
-            revision = page.getCurRev();
+            involvedKeys.add(new InvolvedKey(OP.WRITE, textKey));
+            scalaris_tx.write(textKey, TextCompression.pack(page.getCurRev().unpackedText()));
+            scalaris_tx.commit();
+        } catch (NotFoundException e) {
+            return new ValueResult<Boolean>(false, involvedKeys,
+                    "page not found at \"" + pageKey + "\"", false, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        } catch (Exception e) {
+            return new ValueResult<Boolean>(false, involvedKeys,
+                    e.getClass().getCanonicalName() + " migrating \"" + textKey
+                            + "\": " + e.getMessage(),
+                    e instanceof ConnectionException, statName,
+                    System.currentTimeMillis() - timeAtStart);
         }
+        return new ValueResult<Boolean>(involvedKeys, true, statName,
+                System.currentTimeMillis() - timeAtStart);
+    }
 
-        return new RevisionResult(involvedKeys, title, page, revision, statName,
+    /**
+     * Retrieves the metadata of a page, i.e. its {@link Page} object
+     * without the text of the current revision, from Scalaris.
+     * 
+     * @param connection
+     *            the connection to Scalaris
+     * @param title
+     *            the title of the page
+     * 
+     * @return a result object with the page on success (the result's
+     *         revision is <tt>null</tt>)
+     */
+    public static RevisionResult getPageMetadata(Connection connection,
+            NormalisedTitle title) {
+        final long timeAtStart = System.currentTimeMillis();
+        Page page = null;
+        List<InvolvedKey> involvedKeys = new ArrayList<InvolvedKey>();
+        final String statName = "PAGE_META:" + title.toString();
+        if (connection == null) {
+            return new RevisionResult(false, involvedKeys,
+                    "no connection to Scalaris", true, title, page, null, false,
+                    false, statName, System.currentTimeMillis() - timeAtStart);
+        }
+        
+        final String scalaris_key = getPageKey(title);
+        try {
+            involvedKeys.add(new InvolvedKey(OP.READ, scalaris_key));
+            page = new TransactionSingleOp(connection).read(scalaris_key).jsonValue(Page.class);
+        } catch (NotFoundException e) {
+            return new RevisionResult(false, involvedKeys,
+                    "page not found at \"" + scalaris_key + "\"", false, title,
+                    page, null, true, false, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        } catch (Exception e) {
+            return new RevisionResult(false, involvedKeys,
+                    e.getClass().getCanonicalName() + " reading \"" + scalaris_key
+                            + "\" from Scalaris: " + e.getMessage(),
+                    e instanceof ConnectionException, title, page, null, false,
+                    false, statName, System.currentTimeMillis() - timeAtStart);
+        }
+        return new RevisionResult(involvedKeys, title, page, null, statName,
                 System.currentTimeMillis() - timeAtStart);
     }
 
+    /**
+     * Retrieves the metadata of all given pages, i.e. their {@link Page}
+     * objects without the text of the current revision, from Scalaris.
+     * 
+     * @param connection
+     *            the connection to Scalaris
+     * @param titles
+     *            the titles of the pages
+     * @param statName
+     *            name of the statistic to collect
+     * 
+     * @return a result object with the pages on success (the revisions of
+     *         the contained results are <tt>null</tt>)
+     * 
+     * @see #getPageMetadata(Connection, NormalisedTitle)
+     */
+    public static ValueResult<List<RevisionResult>> getPagesMetadata(Connection connection,
+            Collection<NormalisedTitle> titles, final String statName) {
+        final long timeAtStart = System.currentTimeMillis();
+        List<InvolvedKey> involvedKeys = new ArrayList<InvolvedKey>();
+        if (connection == null) {
+            return new ValueResult<List<RevisionResult>>(false, involvedKeys,
+                    "no connection to Scalaris", true, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+        
+        final MyScalarisSingleOpExecutor executor0 = new MyScalarisSingleOpExecutor(
+                new TransactionSingleOp(connection), involvedKeys);
+        final List<NormalisedTitle> titleList = new ArrayList<NormalisedTitle>(titles);
+        final List<ScalarisReadOp> pageOps = new ArrayList<ScalarisReadOp>(titles.size());
+        for (NormalisedTitle title : titleList) {
+            ScalarisReadOp pageOp = new ScalarisReadOp(getPageKey(title));
+            executor0.addOp(pageOp);
+            pageOps.add(pageOp);
+        }
+        try {
+            executor0.run();
+        } catch (Exception e) {
+            return new ValueResult<List<RevisionResult>>(false, involvedKeys,
+                    e.getClass().getCanonicalName() + " reading " + titles + " from Scalaris",
+                    e instanceof ConnectionException, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+        
+        List<RevisionResult> results = new ArrayList<RevisionResult>(titles.size());
+        for (int i = 0; i < titleList.size(); ++i) {
+            final ScalarisReadOp pageOp = pageOps.get(i);
+            if (pageOp.getValue() != null) {
+                try {
+                    final Page page = pageOp.getValue().jsonValue(Page.class);
+                    results.add(new RevisionResult(involvedKeys,
+                            titleList.get(i), page, null));
+                } catch (Exception e) {
+                    results.add(new RevisionResult(false, involvedKeys,
+                            e.getClass().getCanonicalName() + " reading \""
+                                    + pageOp.getKey() + "\" from Scalaris: "
+                                    + e.getMessage(), false,
+                            titleList.get(i), null, null, false, false));
+                }
+            } else {
+                results.add(new RevisionResult(false, involvedKeys,
+                        "page not found at \"" + pageOp.getKey() + "\"",
+                        false, titleList.get(i), null, null, true, false));
+            }
+        }
+        return new ValueResult<List<RevisionResult>>(involvedKeys, results,
+                statName, System.currentTimeMillis() - timeAtStart);
+    }
+
     /**
      * Retrieves the current version of all given pages from Scalaris.
      * 
@@ -308,14 +776,20 @@ public class ScalarisDataHandlerNormalised extends ScalarisDataHandler {
                     System.currentTimeMillis() - timeAtStart);
         }
         
-        TransactionSingleOp scalaris_single = new TransactionSingleOp(connection);
-        final MyScalarisSingleOpExecutor executor0 = new MyScalarisSingleOpExecutor(
-                scalaris_single, involvedKeys);
-        HashMap<ScalarisReadOp, NormalisedTitle> opToTitleN = new HashMap<ScalarisReadOp, NormalisedTitle>(titles.size());
-        for (NormalisedTitle title : titles) {
-            ScalarisReadOp readOp = new ScalarisReadOp(getPageKey(title));
-            executor0.addOp(readOp);
-            opToTitleN.put(readOp, title);
+        // read all pages and texts atomically (see getRevision())
+        final MyScalarisTxOpExecutor executor0 = new MyScalarisTxOpExecutor(
+                new Transaction(connection), involvedKeys);
+        executor0.setCommitLast(true);
+        final List<NormalisedTitle> titleList = new ArrayList<NormalisedTitle>(titles);
+        final List<ScalarisReadOp> pageOps = new ArrayList<ScalarisReadOp>(titles.size());
+        final List<ScalarisReadOp> textOps = new ArrayList<ScalarisReadOp>(titles.size());
+        for (NormalisedTitle title : titleList) {
+            ScalarisReadOp pageOp = new ScalarisReadOp(getPageKey(title));
+            ScalarisReadOp textOp = new ScalarisReadOp(getPageTextKey(title));
+            executor0.addOp(pageOp);
+            executor0.addOp(textOp);
+            pageOps.add(pageOp);
+            textOps.add(textOp);
         }
         try {
             executor0.run();
@@ -327,22 +801,37 @@ public class ScalarisDataHandlerNormalised extends ScalarisDataHandler {
         }
         
         List<RevisionResult> results = new ArrayList<RevisionResult>(titles.size());
-        for (ScalarisOp op : executor0.getOps()) {
-            if (op instanceof ScalarisReadOp) {
-                ScalarisReadOp readOp = (ScalarisReadOp) op;
-                RevisionResult curResult;
-                if (readOp.getValue() != null) {
-                    Page page = readOp.getValue().jsonValue(Page.class);
-                    curResult = new RevisionResult(involvedKeys,
-                            opToTitleN.get(readOp), page, page.getCurRev());
-                    
-                } else {
-                    curResult = new RevisionResult(false, involvedKeys,
-                            "page not found at \"" + readOp.getKey() + "\"",
-                            false, opToTitleN.get(readOp), null, null, true, false);
+        for (int i = 0; i < titleList.size(); ++i) {
+            final ScalarisReadOp pageOp = pageOps.get(i);
+            final ScalarisReadOp textOp = textOps.get(i);
+            RevisionResult curResult;
+            if (pageOp.getValue() != null) {
+                Page page = null;
+                String scalaris_key = pageOp.getKey();
+                try {
+                    page = pageOp.getValue().jsonValue(Page.class);
+                    if (textOp.getValue() != null) {
+                        scalaris_key = textOp.getKey();
+                        page.getCurRev().setPackedText(getPackedText(
+                                connection, textOp.getValue()));
+                    } // else: old format with the text inside the page object
+                } catch (Exception e) {
+                    results.add(new RevisionResult(false, involvedKeys,
+                            e.getClass().getCanonicalName() + " reading \""
+                                    + scalaris_key + "\" from Scalaris: "
+                                    + e.getMessage(),
+                            e instanceof ConnectionException,
+                            titleList.get(i), page, null, false, false));
+                    continue;
                 }
-                results.add(curResult);
+                curResult = new RevisionResult(involvedKeys,
+                        titleList.get(i), page, page.getCurRev());
+            } else {
+                curResult = new RevisionResult(false, involvedKeys,
+                        "page not found at \"" + pageOp.getKey() + "\"",
+                        false, titleList.get(i), null, null, true, false);
             }
+            results.add(curResult);
         }
         return new ValueResult<List<RevisionResult>>(involvedKeys, results,
                 statName, System.currentTimeMillis() - timeAtStart);
@@ -386,6 +875,56 @@ public class ScalarisDataHandlerNormalised extends ScalarisDataHandler {
                 timeAtStart, statName);
     }
 
+    /**
+     * Retrieves a part of the list of pages in the given category from
+     * Scalaris.
+     * 
+     * @param connection
+     *            the connection to Scalaris
+     * @param title
+     *            the title of the category
+     * @param continueFrom
+     *            the continuation token of a previous part (<tt>null</tt> for
+     *            the first part)
+     * @param limit
+     *            the maximum number of pages to retrieve
+     * 
+     * @return a result object with the part of the page list on success
+     */
+    public static PageListResult getPagesInCategory(Connection connection,
+            NormalisedTitle title, String continueFrom, int limit) {
+        final long timeAtStart = System.currentTimeMillis();
+        final String statName = "CAT_LIST:" + title;
+        return getPageListPart2(connection, ScalarisOpType.CATEGORY_PAGE_LIST,
+                getCatPageListKey(title), continueFrom, limit, timeAtStart,
+                statName);
+    }
+
+    /**
+     * Retrieves a part of the list of pages using the given template from
+     * Scalaris.
+     * 
+     * @param connection
+     *            the connection to Scalaris
+     * @param title
+     *            the title of the template
+     * @param continueFrom
+     *            the continuation token of a previous part (<tt>null</tt> for
+     *            the first part)
+     * @param limit
+     *            the maximum number of pages to retrieve
+     * 
+     * @return a result object with the part of the page list on success
+     */
+    public static PageListResult getPagesInTemplate(Connection connection,
+            NormalisedTitle title, String continueFrom, int limit) {
+        final long timeAtStart = System.currentTimeMillis();
+        final String statName = "TPL_LIST:" + title;
+        return getPageListPart2(connection, ScalarisOpType.TEMPLATE_PAGE_LIST,
+                getTplPageListKey(title), continueFrom, limit, timeAtStart,
+                statName);
+    }
+
     /**
      * Retrieves a list of pages using the given templates from Scalaris.
      * 
@@ -435,6 +974,37 @@ public class ScalarisDataHandlerNormalised extends ScalarisDataHandler {
         }
     }
 
+    /**
+     * Retrieves a part of the list of pages linking to the given page from
+     * Scalaris.
+     * 
+     * @param connection
+     *            the connection to Scalaris
+     * @param title
+     *            the title of the page
+     * @param continueFrom
+     *            the continuation token of a previous part (<tt>null</tt> for
+     *            the first part)
+     * @param limit
+     *            the maximum number of pages to retrieve
+     * 
+     * @return a result object with the part of the page list on success
+     */
+    public static PageListResult getPagesLinkingTo(Connection connection,
+            NormalisedTitle title, String continueFrom, int limit) {
+        final long timeAtStart = System.currentTimeMillis();
+        final String statName = "LINKS:" + title;
+        if (Options.getInstance().WIKI_USE_BACKLINKS) {
+            return getPageListPart2(connection, ScalarisOpType.BACKLINK_PAGE_LIST,
+                    getBackLinksPageListKey(title), continueFrom, limit,
+                    timeAtStart, statName);
+        } else {
+            return new PageListResult(new ArrayList<InvolvedKey>(0),
+                    new ArrayList<NormalisedTitle>(0), null, statName,
+                    System.currentTimeMillis() - timeAtStart);
+        }
+    }
+
     /**
      * Retrieves the number of pages in the given category from Scalaris.
      * 
@@ -30,15 +30,18 @@ import de.zib.scalaris.Connection;
 import de.zib.scalaris.ConnectionException;
 import de.zib.scalaris.NotFoundException;
 import de.zib.scalaris.Transaction;
+import de.zib.scalaris.examples.wikipedia.InvolvedKey.OP;
 import de.zib.scalaris.examples.wikipedia.Options.STORE_CONTRIB_TYPE;
 import de.zib.scalaris.examples.wikipedia.bliki.MyNamespace;
 import de.zib.scalaris.examples.wikipedia.bliki.MyWikiModel;
 import de.zib.scalaris.examples.wikipedia.bliki.NormalisedTitle;
 import de.zib.scalaris.examples.wikipedia.data.Contribution;
 import de.zib.scalaris.examples.wikipedia.data.Page;
+import de.zib.scalaris.examples.wikipedia.data.PageLinks;
 import de.zib.scalaris.examples.wikipedia.data.Revision;
 import de.zib.scalaris.examples.wikipedia.data.ShortRevision;
 import de.zib.scalaris.examples.wikipedia.data.SiteInfo;
+import de.zib.scalaris.examples.wikipedia.data.TextCompression;
 import de.zib.scalaris.operations.ReadOp;
 
 /**
@@ -72,6 +75,32 @@ public class ScalarisDataHandlerUnnormalised extends ScalarisDataHandler {
         return ScalarisDataHandlerNormalised.getPageKey(NormalisedTitle.fromUnnormalised(title, nsObject));
     }
     
+    /**
+     * Gets the key to store the (packed) text of the current revision of a
+     * page at (the {@link Page} object only contains the page's metadata).
+     * 
+     * @param title     the title of the page
+     * @param nsObject  the namespace for page title normalisation
+     * 
+     * @return Scalaris key
+     */
+    public final static String getPageTextKey(String title, final MyNamespace nsObject) {
+        return ScalarisDataHandlerNormalised.getPageTextKey(NormalisedTitle.fromUnnormalised(title, nsObject));
+    }
+    
+    /**
+     * Gets the key to store the categories, templates and links of the
+     * current revision of a page at (see {@link PageLinks}).
+     * 
+     * @param title     the title of the page
+     * @param nsObject  the namespace for page title normalisation
+     * 
+     * @return Scalaris key
+     */
+    public final static String getPageLinksKey(String title, final MyNamespace nsObject) {
+        return ScalarisDataHandlerNormalised.getPageLinksKey(NormalisedTitle.fromUnnormalised(title, nsObject));
+    }
+    
     /**
      * Gets the key to store the list of revisions of a page at.
      * 
@@ -224,6 +253,31 @@ public class ScalarisDataHandlerUnnormalised extends ScalarisDataHandler {
         return ScalarisDataHandlerNormalised.getPagesInCategory(connection, NormalisedTitle.fromUnnormalised(title, nsObject));
     }
 
+    /**
+     * Retrieves a part of the list of pages in the given category from Scalaris.
+     * 
+     * @param connection
+     *            the connection to Scalaris
+     * @param title
+     *            the title of the category
+     * @param nsObject
+     *            the namespace for page title normalisation
+     * @param continueFrom
+     *            the continuation token of a previous part (<tt>null</tt> for
+     *            the first part)
+     * @param limit
+     *            the maximum number of pages to retrieve
+     * 
+     * @return a result object with the part of the page list on success
+     */
+    public static PageListResult getPagesInCategory(Connection connection,
+            String title, final MyNamespace nsObject, String continueFrom,
+            int limit) {
+        return ScalarisDataHandlerNormalised.getPagesInCategory(connection,
+                NormalisedTitle.fromUnnormalised(title, nsObject),
+                continueFrom, limit);
+    }
+
     /**
      * Retrieves a list of pages using the given template from Scalaris.
      * 
@@ -241,6 +295,31 @@ public class ScalarisDataHandlerUnnormalised extends ScalarisDataHandler {
         return ScalarisDataHandlerNormalised.getPagesInTemplate(connection, NormalisedTitle.fromUnnormalised(title, nsObject));
     }
 
+    /**
+     * Retrieves a part of the list of pages using the given template from Scalaris.
+     * 
+     * @param connection
+     *            the connection to Scalaris
+     * @param title
+     *            the title of the template
+     * @param nsObject
+     *            the namespace for page title normalisation
+     * @param continueFrom
+     *            the continuation token of a previous part (<tt>null</tt> for
+     *            the first part)
+     * @param limit
+     *            the maximum number of pages to retrieve
+     * 
+     * @return a result object with the part of the page list on success
+     */
+    public static PageListResult getPagesInTemplate(Connection connection,
+            String title, final MyNamespace nsObject, String continueFrom,
+            int limit) {
+        return ScalarisDataHandlerNormalised.getPagesInTemplate(connection,
+                NormalisedTitle.fromUnnormalised(title, nsObject),
+                continueFrom, limit);
+    }
+
     /**
      * Retrieves a list of pages linking to the given page from Scalaris.
      * 
@@ -258,6 +337,31 @@ public class ScalarisDataHandlerUnnormalised extends ScalarisDataHandler {
         return ScalarisDataHandlerNormalised.getPagesLinkingTo(connection, NormalisedTitle.fromUnnormalised(title, nsObject));
     }
 
+    /**
+     * Retrieves a part of the list of pages linking to the given page from Scalaris.
+     * 
+     * @param connection
+     *            the connection to Scalaris
+     * @param title
+     *            the title of the page
+     * @param nsObject
+     *            the namespace for page title normalisation
+     * @param continueFrom
+     *            the continuation token of a previous part (<tt>null</tt> for
+     *            the first part)
+     * @param limit
+     *            the maximum number of pages to retrieve
+     * 
+     * @return a result object with the part of the page list on success
+     */
+    public static PageListResult getPagesLinkingTo(Connection connection,
+            String title, final MyNamespace nsObject, String continueFrom,
+            int limit) {
+        return ScalarisDataHandlerNormalised.getPagesLinkingTo(connection,
+                NormalisedTitle.fromUnnormalised(title, nsObject),
+                continueFrom, limit);
+    }
+
     /**
      * Retrieves the number of pages in the given category from Scalaris.
      * 
@@ -323,10 +427,23 @@ public class ScalarisDataHandlerUnnormalised extends ScalarisDataHandler {
 
         // check that the current version is still up-to-date:
         // read old version first, then write
+        // note: the old text is needed to archive the old revision
+        // note: the old categories, templates and links are stored with the
+        //       page and do not need to be extracted from the old text
         String pageInfoKey = getPageKey(title0, nsObject);
+        String pageTextKey = getPageTextKey(title0, nsObject);
+        String pageLinksKey = getPageLinksKey(title0, nsObject);
         
+        // with delta-encoded revisions, the stored previous revision is
+        // needed for its chain of diffs
+        final int keyframeInterval = Options.getInstance().WIKI_REVISION_KEYFRAME_INTERVAL;
         Transaction.RequestList requests = new Transaction.RequestList();
         requests.addOp(new ReadOp(pageInfoKey));
+        requests.addOp(new ReadOp(pageTextKey));
+        requests.addOp(new ReadOp(pageLinksKey));
+        if (keyframeInterval > 0 && prevRevId > 0) {
+            requests.addOp(new ReadOp(getRevKey(title0, prevRevId, nsObject)));
+        }
         
         Transaction.ResultList results;
         try {
@@ -344,6 +461,7 @@ public class ScalarisDataHandlerUnnormalised extends ScalarisDataHandler {
         int oldRevId;
         try {
             oldPage = results.processReadAt(0).jsonValue(Page.class);
+            ScalarisDataHandlerNormalised.setCurRevText(connection, oldPage.getCurRev(), results, 1);
             newPage = new Page(oldPage.getTitle(), oldPage.getId(),
                     oldPage.isRedirect(), new LinkedHashMap<String, String>(
                             oldPage.getRestrictions()), newRev);
@@ -381,6 +499,46 @@ public class ScalarisDataHandlerUnnormalised extends ScalarisDataHandler {
                     System.currentTimeMillis() - timeAtStart);
         }
 
+        // the stored previous revision (delta-encoded revisions only):
+        Revision oldRevStored = null;
+        if (keyframeInterval > 0 && oldPage != null) {
+            final String oldRevKey = getRevKey(title0, oldRevId, nsObject);
+            try {
+                if (results.size() > 3) {
+                    oldRevStored = results.processReadAt(3).jsonValue(Revision.class);
+                } else {
+                    involvedKeys.add(new InvolvedKey(OP.READ, oldRevKey));
+                    oldRevStored = scalaris_tx.read(oldRevKey).jsonValue(Revision.class);
+                }
+            } catch (NotFoundException e) {
+                // the revision was stored without delta-encoding
+            } catch (Exception e) {
+                return new SavePageResult(false, involvedKeys,
+                        e.getClass().getCanonicalName() + " reading \"" + oldRevKey
+                                + "\" from Scalaris: " + e.getMessage(),
+                        e instanceof ConnectionException, oldPage, newPage,
+                        newShortRevs, pageEdits, statName,
+                        System.currentTimeMillis() - timeAtStart);
+            }
+        }
+
+        // the stored categories, templates and links of the old revision:
+        PageLinks oldPageLinks = null;
+        if (oldPage != null) {
+            try {
+                oldPageLinks = PageLinks.fromErlangValue(results.processReadAt(2));
+            } catch (NotFoundException e) {
+                // page stored without them -> extract them from the old text
+            } catch (Exception e) {
+                return new SavePageResult(false, involvedKeys,
+                        e.getClass().getCanonicalName() + " reading \"" + pageLinksKey
+                                + "\" from Scalaris: " + e.getMessage(),
+                        e instanceof ConnectionException, oldPage, newPage,
+                        newShortRevs, pageEdits, statName,
+                        System.currentTimeMillis() - timeAtStart);
+            }
+        }
+
         // write:
         // get previous categories, templates and backlinks:
         final MyWikiModel wikiModel = new MyWikiModel("", "", nsObject);
@@ -389,7 +547,16 @@ public class ScalarisDataHandlerUnnormalised extends ScalarisDataHandler {
         Set<String> oldCats;
         Set<String> oldTpls;
         Set<String> oldLnks;
-        if (oldPage != null && oldPage.getCurRev() != null) {
+        if (oldPageLinks != null) {
+            oldCats = oldPageLinks.getCategories();
+            oldTpls = oldPageLinks.getTemplates();
+            if (Options.getInstance().WIKI_USE_BACKLINKS) {
+                oldLnks = oldPageLinks.getLinks();
+            } else {
+                // use empty link lists to turn back-links off
+                oldLnks = new HashSet<String>();
+            }
+        } else if (oldPage != null && oldPage.getCurRev() != null) {
             // get a list of previous categories and templates:
             wikiModel.setUp();
             final long timeAtRenderStart = System.currentTimeMillis();
@@ -502,8 +669,28 @@ public class ScalarisDataHandlerUnnormalised extends ScalarisDataHandler {
                 executor.addAppend(ScalarisOpType.PAGE_LIST, pageListKey, normTitleStr, ScalarisOpType.PAGE_COUNT, pageCountKey);
             }
 
-            executor.addWrite(ScalarisOpType.PAGE, getPageKey(title0, nsObject), newPage);
-            if (oldPage != null) {
+            executor.addWrite(ScalarisOpType.PAGE, getPageKey(title0, nsObject), newPage.toMetadata());
+            executor.addWrite(ScalarisOpType.PAGE, pageTextKey, TextCompression.pack(newRev.unpackedText()));
+            executor.addWrite(ScalarisOpType.PAGE, pageLinksKey,
+                    new PageLinks(newCats, newTpls, wikiModel.getLinks()).toList());
+            if (keyframeInterval > 0) {
+                // store the new revision as a diff against the old one (the
+                // old one is already stored unless it was stored without
+                // delta-encoding -> archive it as a keyframe)
+                List<Integer> oldChain = new ArrayList<Integer>(1);
+                String oldText = null;
+                if (oldPage != null) {
+                    oldText = oldPage.getCurRev().unpackedText();
+                    if (oldRevStored != null) {
+                        oldChain = ScalarisDataHandlerNormalised.getDeltaChain(oldRevStored);
+                    } else {
+                        executor.addWrite(ScalarisOpType.REVISION, getRevKey(title0, oldRevId, nsObject), oldPage.getCurRev());
+                        oldChain.add(oldRevId);
+                    }
+                }
+                executor.addWrite(ScalarisOpType.REVISION, getRevKey(title0, newRev.getId(), nsObject),
+                        ScalarisDataHandlerNormalised.toDeltaRevision(newRev, oldChain, oldText, keyframeInterval));
+            } else if (oldPage != null) {
                 executor.addWrite(ScalarisOpType.REVISION, getRevKey(title0, oldPage.getCurRev().getId(), nsObject), oldPage.getCurRev());
             }
 
@@ -0,0 +1,142 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris.examples.wikipedia;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ericsson.otp.erlang.OtpErlangException;
+
+import de.zib.scalaris.RequestList;
+import de.zib.scalaris.ResultList;
+import de.zib.scalaris.UnknownException;
+import de.zib.scalaris.executor.ScalarisOp;
+import de.zib.scalaris.executor.ScalarisReadOp;
+import de.zib.scalaris.operations.AddOnNrOp;
+import de.zib.scalaris.operations.WriteOp;
+
+/**
+ * Folds the write buckets of a number into one of its read buckets, i.e.
+ * adds the values of the write buckets to the read bucket and resets the
+ * write buckets to <tt>0</tt>.
+ *
+ * The write buckets are read by separate {@link ScalarisReadOp} operations
+ * this operation needs to depend on, see
+ * {@link de.zib.scalaris.executor.ScalarisOpExecutor#addOp(ScalarisOp, ScalarisOp...)}.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ */
+public class ScalarisFoldNumberOp1 implements ScalarisOp {
+    final String readBucketKey;
+    final List<ScalarisReadOp> writeBucketReads;
+    final List<String> writeBucketKeys = new ArrayList<String>();
+
+    /**
+     * Creates a new fold operation.
+     *
+     * @param readBucketKey
+     *            the key of the read bucket to add the values to
+     * @param writeBucketReads
+     *            the read operations of the write buckets
+     */
+    public ScalarisFoldNumberOp1(final String readBucketKey,
+            final List<ScalarisReadOp> writeBucketReads) {
+        this.readBucketKey = readBucketKey;
+        this.writeBucketReads = writeBucketReads;
+    }
+
+    public int workPhases() {
+        return 1;
+    }
+
+    public final int doPhase(final int phase, final int firstOp,
+            final ResultList results, final RequestList requests)
+            throws OtpErlangException, UnknownException,
+            IllegalArgumentException {
+        switch (phase) {
+            case 0: return prepareFold(requests);
+            case 1: return checkFold(firstOp, results);
+            default:
+                throw new IllegalArgumentException("No phase " + phase);
+        }
+    }
+
+    /**
+     * Adds the sum of all non-empty write buckets to the read bucket and
+     * resets these write buckets.
+     *
+     * @param requests the request list
+     *
+     * @return <tt>0</tt> (no operation processed since no results are used)
+     */
+    protected int prepareFold(final RequestList requests) {
+        BigInteger sum = BigInteger.ZERO;
+        for (ScalarisReadOp readOp : writeBucketReads) {
+            if (readOp.getValue() != null) {
+                final BigInteger value = readOp.getValue().bigIntValue();
+                if (!value.equals(BigInteger.ZERO)) {
+                    writeBucketKeys.add(readOp.getKey());
+                    sum = sum.add(value);
+                }
+            }
+        }
+        if (!writeBucketKeys.isEmpty()) {
+            requests.addOp(new AddOnNrOp(readBucketKey, sum));
+            for (String key : writeBucketKeys) {
+                requests.addOp(new WriteOp(key, 0));
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Verifies the increment and write operations.
+     *
+     * @param firstOp   the first operation to process inside the result list
+     * @param results   the result list
+     *
+     * @return number of processed operations
+     */
+    protected int checkFold(int firstOp, final ResultList results)
+            throws OtpErlangException, UnknownException {
+        if (writeBucketKeys.isEmpty()) {
+            return 0;
+        }
+        results.processAddOnNrAt(firstOp++);
+        for (int i = 0; i < writeBucketKeys.size(); ++i) {
+            results.processWriteAt(firstOp++);
+        }
+        return writeBucketKeys.size() + 1;
+    }
+
+    /**
+     * Gets the keys of the write buckets which have been folded.
+     *
+     * @return the write bucket keys (empty if all write buckets were empty)
+     */
+    public List<String> getWriteBucketKeys() {
+        return writeBucketKeys;
+    }
+
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.executor.ScalarisOp#toString()
+     */
+    @Override
+    public String toString() {
+        return "Scalaris.foldNumber(" + readBucketKey + ", " + writeBucketReads + ")";
+    }
+}
@@ -0,0 +1,283 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris.examples.wikipedia;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.ericsson.otp.erlang.OtpErlangException;
+
+import de.zib.scalaris.ErlangValue;
+import de.zib.scalaris.NotFoundException;
+import de.zib.scalaris.RequestList;
+import de.zib.scalaris.ResultList;
+import de.zib.scalaris.UnknownException;
+import de.zib.scalaris.examples.wikipedia.Options.APPEND_INCREMENT_BUCKETS_WITH_WCACHE;
+import de.zib.scalaris.examples.wikipedia.Options.APPEND_INCREMENT_BUCKETS_WITH_WCACHE.WriteCacheDiff;
+import de.zib.scalaris.examples.wikipedia.Options.APPEND_INCREMENT_BUCKETS_WITH_WCACHE.WriteCacheDiffConv;
+import de.zib.scalaris.examples.wikipedia.Options.IBuckets;
+import de.zib.scalaris.examples.wikipedia.Options.IPartialRead;
+import de.zib.scalaris.examples.wikipedia.Options.IReadBuckets;
+import de.zib.scalaris.examples.wikipedia.Options.Optimisation;
+import de.zib.scalaris.executor.ScalarisOp;
+import de.zib.scalaris.operations.ReadOp;
+import de.zib.scalaris.operations.ReadSublistOp;
+
+/**
+ * Implements a read operation for a part of a list.
+ *
+ * The elements of a list are ordered by the bucket they are stored in and
+ * their position inside the bucket. A part is identified by a continuation
+ * token of the form <tt>bucket:offset</tt> pointing at its first element
+ * (<tt>null</tt> for the beginning of the list). If the optimisation supports
+ * partial reads, only up to <tt>limit</tt> elements of each bucket starting at
+ * the token are read with {@link ReadSublistOp}, otherwise the buckets from
+ * the token on are read completely. The write buckets of
+ * {@link APPEND_INCREMENT_BUCKETS_WITH_WCACHE} are always read completely and
+ * their deleted elements are omitted from the result.
+ *
+ * Note: elements removed from a bucket between reading two parts shift the
+ * following elements of the bucket, so that some of them may be skipped.
+ * Elements added in the meantime are appended and thus included in a later
+ * part.
+ *
+ * @param <T> the type of objects in the list
+ *
+ * @author Nico Kruber, kruber@zib.de
+ */
+public class ScalarisReadSublistOp1<T> implements ScalarisOp {
+    final String key;
+    final int buckets;
+    final int readBuckets;
+    final int startBucket;
+    final int startOffset;
+    final int limit;
+    final ErlangConverter<List<T>> listConv;
+    final ErlangConverter<T> elemConv;
+    final ArrayList<T> value = new ArrayList<T>();
+    String continueFrom = null;
+    final private Optimisation optimisation;
+
+    /**
+     * Creates a new sublist read operation.
+     *
+     * @param key
+     *            the key under which the list is stored in Scalaris
+     * @param optimisation
+     *            the list optimisation to use
+     * @param continueFrom
+     *            the continuation token of the part to read (<tt>null</tt> or
+     *            an invalid token for the first part)
+     * @param limit
+     *            the maximum number of elements to read (positive)
+     * @param listConv
+     *            converter to make an {@link ErlangValue} to a {@link List} of
+     *            <tt>T</tt>
+     * @param elemConv
+     *            converter to make an {@link ErlangValue} to a <tt>T</tt>
+     */
+    public ScalarisReadSublistOp1(final String key,
+            final Optimisation optimisation, final String continueFrom,
+            final int limit, ErlangConverter<List<T>> listConv,
+            ErlangConverter<T> elemConv) {
+        assert (limit > 0);
+        this.key = key;
+        if (optimisation instanceof IBuckets) {
+            this.buckets = ((IBuckets) optimisation).getBuckets();
+        } else {
+            this.buckets = 1;
+        }
+        if (optimisation instanceof APPEND_INCREMENT_BUCKETS_WITH_WCACHE) {
+            this.readBuckets = ((IReadBuckets) optimisation).getReadBuckets();
+        } else {
+            this.readBuckets = this.buckets;
+        }
+        final int[] start = parseContinueFrom(continueFrom, this.buckets);
+        this.startBucket = start[0];
+        this.startOffset = start[1];
+        this.limit = limit;
+        this.listConv = listConv;
+        this.elemConv = elemConv;
+        this.optimisation = optimisation;
+    }
+
+    /**
+     * Parses a continuation token.
+     *
+     * @param continueFrom
+     *            the token
+     * @param buckets
+     *            the number of buckets of the list
+     *
+     * @return the bucket and offset to start at (<tt>{0, 0}</tt> for invalid
+     *         tokens)
+     */
+    protected static int[] parseContinueFrom(String continueFrom, int buckets) {
+        if (continueFrom != null) {
+            final int colon = continueFrom.indexOf(':');
+            if (colon > 0) {
+                try {
+                    final int bucket = Integer.parseInt(continueFrom.substring(0, colon));
+                    final int offset = Integer.parseInt(continueFrom.substring(colon + 1));
+                    if (bucket >= 0 && bucket < buckets && offset >= 0) {
+                        return new int[] {bucket, offset};
+                    }
+                } catch (NumberFormatException e) {
+                }
+            }
+        }
+        return new int[] {0, 0};
+    }
+
+    private String getBucketKey(int bucket) {
+        if (!(optimisation instanceof IBuckets)) {
+            return key;
+        } else {
+            return key + ":" + bucket;
+        }
+    }
+
+    public int workPhases() {
+        return 1;
+    }
+
+    public final int doPhase(final int phase, final int firstOp,
+            final ResultList results, final RequestList requests)
+            throws OtpErlangException, UnknownException,
+            IllegalArgumentException {
+        switch (phase) {
+            case 0: return prepareRead(requests);
+            case 1: return checkRead(firstOp, results);
+            default:
+                throw new IllegalArgumentException("No phase " + phase);
+        }
+    }
+
+    /**
+     * Adds the read operations for the list's buckets to the request list.
+     *
+     * @param requests the request list
+     *
+     * @return <tt>0</tt> (no operation processed since no results are used)
+     */
+    protected int prepareRead(final RequestList requests) {
+        for (int i = startBucket; i < readBuckets; ++i) {
+            final int offset = (i == startBucket) ? startOffset : 0;
+            if (optimisation instanceof IPartialRead) {
+                requests.addOp(new ReadSublistOp(getBucketKey(i), offset + 1, limit));
+            } else {
+                requests.addOp(new ReadOp(getBucketKey(i)));
+            }
+        }
+        // the write cache is always needed for its deleted elements
+        for (int i = readBuckets; i < buckets; ++i) {
+            requests.addOp(new ReadOp(getBucketKey(i)));
+        }
+        return 0;
+    }
+
+    /**
+     * Verifies the read operation(s) and creates the part of the list.
+     *
+     * @param firstOp   the first operation to process inside the result list
+     * @param results   the result list
+     *
+     * @return number of processed operations
+     */
+    protected int checkRead(int firstOp, final ResultList results) throws OtpErlangException,
+            UnknownException {
+        final int firstBucket = Math.min(startBucket, readBuckets);
+        // elements of the buckets starting at the offset and the full lengths
+        final List<List<T>> bucketValues = new ArrayList<List<T>>(buckets - firstBucket);
+        final int[] bucketLengths = new int[buckets];
+        final Set<T> toDelete = new HashSet<T>();
+        final ErlangConverter<WriteCacheDiff<T>> writeCacheDiffConv =
+                (readBuckets < buckets) ? new WriteCacheDiffConv<T>(elemConv) : null;
+        for (int i = firstBucket; i < buckets; ++i) {
+            final int offset = (i == startBucket) ? startOffset : 0;
+            List<T> list;
+            try {
+                if (i >= readBuckets) {
+                    final WriteCacheDiff<T> diff = writeCacheDiffConv.convert(results.processReadAt(firstOp++));
+                    toDelete.addAll(diff.toDelete);
+                    list = diff.toAdd;
+                } else if (optimisation instanceof IPartialRead) {
+                    final ReadSublistOp.Result res = ((ReadSublistOp) results.get(firstOp++)).processResult();
+                    bucketLengths[i] = res.listLength;
+                    bucketValues.add(listConv.convert(res.subList));
+                    continue;
+                } else {
+                    list = listConv.convert(results.processReadAt(firstOp++));
+                }
+            } catch (NotFoundException e) {
+                list = new ArrayList<T>(0);
+            }
+            bucketLengths[i] = list.size();
+            if (i < startBucket || offset >= list.size()) {
+                bucketValues.add(new ArrayList<T>(0));
+            } else {
+                bucketValues.add(list.subList(offset, list.size()));
+            }
+        }
+
+        for (int i = startBucket; i < buckets; ++i) {
+            final List<T> list = bucketValues.get(i - firstBucket);
+            int pos = (i == startBucket) ? startOffset : 0;
+            for (T elem : list) {
+                if (value.size() == limit) {
+                    break;
+                }
+                ++pos;
+                if (!toDelete.contains(elem)) {
+                    value.add(elem);
+                }
+            }
+            if (value.size() == limit) {
+                // more elements in this or one of the following buckets?
+                for (int j = i; j < buckets; ++j) {
+                    if (pos < bucketLengths[j]) {
+                        continueFrom = j + ":" + pos;
+                        break;
+                    }
+                    pos = 0;
+                }
+                break;
+            }
+        }
+        return buckets - firstBucket;
+    }
+
+    /**
+     * The part of the list that has been read (if no bucket was found, an
+     * empty list is returned).
+     *
+     * @return the value from Scalaris or an empty list
+     */
+    public List<T> getValue() {
+        return value;
+    }
+
+    /**
+     * The continuation token of the next part of the list.
+     *
+     * @return a token or <tt>null</tt> if there are no more elements
+     */
+    public String getContinueFrom() {
+        return continueFrom;
+    }
+}
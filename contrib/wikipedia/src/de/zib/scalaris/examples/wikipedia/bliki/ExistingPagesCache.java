@@ -17,9 +17,11 @@ package de.zib.scalaris.examples.wikipedia.bliki;
 
 import java.security.InvalidParameterException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.skjegstad.utils.BloomFilter;
 
@@ -59,6 +61,8 @@ public class ExistingPagesCache {
         // note: cannot use reflection as the constructors are not public (and should not be)
         if (clazz.equals(ExistingPagesCacheBloom.class)) {
             return new ExistingPagesCacheBloom(size);
+        } else if (clazz.equals(ExistingPagesCacheCountingBloom.class)) {
+            return new ExistingPagesCacheCountingBloom(size);
         } else if (clazz.equals(ExistingPagesCacheFull.class)) {
             return new ExistingPagesCacheFull(size);
         } else {
@@ -80,6 +84,8 @@ public class ExistingPagesCache {
         // note: cannot use reflection as the constructors are not public (and should not be)
         if (clazz.equals(ExistingPagesCacheBloom.class)) {
             return new ExistingPagesCacheBloom(elements);
+        } else if (clazz.equals(ExistingPagesCacheCountingBloom.class)) {
+            return new ExistingPagesCacheCountingBloom(elements);
         } else if (clazz.equals(ExistingPagesCacheFull.class)) {
             return new ExistingPagesCacheFull(elements);
         } else {
@@ -105,6 +111,63 @@ public class ExistingPagesCache {
     public void addAll(Collection<? extends NormalisedTitle> elements) {
     }
 
+    /**
+     * Removes the given page title from the pages cache.
+     * 
+     * Be sure to check for this capability with {@link #hasRemove()}!
+     * 
+     * @param element
+     *            page title to remove
+     * 
+     * @see #hasRemove()
+     */
+    public void remove(NormalisedTitle element) {
+    }
+
+    /**
+     * Gets whether the pages cache implementation supports
+     * {@link #remove(NormalisedTitle)}, i.e. whether it can be kept up to
+     * date incrementally instead of being re-created.
+     * 
+     * @return support for {@link #remove(NormalisedTitle)}
+     */
+    public boolean hasRemove() {
+        return false;
+    }
+
+    /**
+     * Gets whether the pages cache should be re-created, e.g. because it
+     * contains more elements than it has been created for.
+     * 
+     * @return whether to re-create the cache
+     */
+    public boolean needsRebuild() {
+        return false;
+    }
+
+    /**
+     * Gets whether the pages cache should be re-created from the list of all
+     * pages. Caches without support for {@link #remove(NormalisedTitle)} are
+     * always re-created, others only if they have not been loaded yet, if
+     * {@link #needsRebuild()} is set or if they are older than
+     * {@link Options#WIKI_PAGES_CACHE_FULL_REBUILD} seconds.
+     * 
+     * @param loadedAt
+     *            time the cache has been created from the list of all pages
+     *            at (in milliseconds, 0 if never)
+     * @param now
+     *            the current time (in milliseconds)
+     * 
+     * @return whether to re-create the cache
+     */
+    public boolean needsRebuild(long loadedAt, long now) {
+        if (loadedAt <= 0 || !hasRemove() || needsRebuild()) {
+            return true;
+        }
+        final int fullRebuild = Options.getInstance().WIKI_PAGES_CACHE_FULL_REBUILD;
+        return fullRebuild > 0 && (now - loadedAt) >= fullRebuild * 1000l;
+    }
+
     /**
      * Gets whether the pages cache implementation supports
      * {@link #contains(NormalisedTitle)}.
@@ -201,9 +264,144 @@ public class ExistingPagesCache {
         }
     }
 
+    /**
+     * Existing pages cache using a counting bloom filter which, in contrast
+     * to {@link ExistingPagesCacheBloom}, supports removing elements.
+     * 
+     * Uses 4-bit counters which stay at their maximum once they overflowed.
+     * Every title must only be added once (and removed at most once after
+     * being added), otherwise removing it does not clear its counters.
+     * 
+     * @author Nico Kruber, kruber@zib.de
+     */
+    public static class ExistingPagesCacheCountingBloom extends ExistingPagesCache {
+        /**
+         * False positive rate of the bloom filter for the existing pages checks.
+         */
+        protected static final double existingPagesFPR = 0.01;
+        
+        protected static final int COUNTER_MAX = 0x0f;
+
+        /**
+         * Two 4-bit counters per byte.
+         */
+        protected final byte[] counters;
+        protected final int numCounters;
+        protected final int numHashes;
+        protected final int capacity;
+        protected int size = 0;
+
+        protected ExistingPagesCacheCountingBloom(int size) {
+            this.capacity = Math.max(100, size);
+            final double ln2 = Math.log(2);
+            this.numCounters = (int) Math.ceil(-capacity * Math.log(existingPagesFPR) / (ln2 * ln2));
+            this.numHashes = Math.max(1, (int) Math.round(((double) numCounters / capacity) * ln2));
+            this.counters = new byte[(numCounters + 1) / 2];
+        }
+
+        protected ExistingPagesCacheCountingBloom(
+                Collection<? extends NormalisedTitle> elements) {
+            this(elements.size() + Math.max(10, elements.size() / 10));
+            addAll(elements);
+        }
+
+        /**
+         * Gets the counter positions of an element (double hashing).
+         */
+        protected int[] getPositions(NormalisedTitle element) {
+            final String str = element.toString();
+            final int h1 = str.hashCode();
+            // FNV-1a as the second hash function
+            int h2 = 0x811c9dc5;
+            for (int i = 0; i < str.length(); ++i) {
+                h2 = (h2 ^ str.charAt(i)) * 0x01000193;
+            }
+            h2 |= 1;
+            final int[] positions = new int[numHashes];
+            for (int i = 0; i < numHashes; ++i) {
+                positions[i] = (int) (((h1 + (long) i * h2) & 0x7fffffffl) % numCounters);
+            }
+            return positions;
+        }
+
+        protected int getCounter(int pos) {
+            return (counters[pos >> 1] >> ((pos & 1) << 2)) & COUNTER_MAX;
+        }
+
+        protected void setCounter(int pos, int value) {
+            final int shift = (pos & 1) << 2;
+            counters[pos >> 1] = (byte) ((counters[pos >> 1] & ~(COUNTER_MAX << shift)) | (value << shift));
+        }
+
+        @Override
+        public synchronized void add(NormalisedTitle element) {
+            for (int pos : getPositions(element)) {
+                final int counter = getCounter(pos);
+                if (counter < COUNTER_MAX) {
+                    setCounter(pos, counter + 1);
+                }
+            }
+            ++size;
+        }
+
+        @Override
+        public void addAll(Collection<? extends NormalisedTitle> elements) {
+            for (NormalisedTitle element : elements) {
+                add(element);
+            }
+        }
+
+        @Override
+        public synchronized void remove(NormalisedTitle element) {
+            final int[] positions = getPositions(element);
+            for (int pos : positions) {
+                if (getCounter(pos) == 0) {
+                    // not contained
+                    return;
+                }
+            }
+            for (int pos : positions) {
+                final int counter = getCounter(pos);
+                // overflowed counters do not know their real value any more
+                if (counter < COUNTER_MAX) {
+                    setCounter(pos, counter - 1);
+                }
+            }
+            --size;
+        }
+
+        @Override
+        public boolean hasRemove() {
+            return true;
+        }
+
+        @Override
+        public boolean needsRebuild() {
+            return size > capacity;
+        }
+
+        @Override
+        public boolean hasContains() {
+            return true;
+        }
+        
+        @Override
+        public synchronized boolean contains(NormalisedTitle element) {
+            for (int pos : getPositions(element)) {
+                if (getCounter(pos) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     /**
      * Existing pages cache using a hash set to cache the full list.
      * 
+     * Uses concurrent sets so that pages may be added and removed while
+     * others check or iterate over them.
+     * 
      * @author Nico Kruber, kruber@zib.de
      */
     public static class ExistingPagesCacheFull extends ExistingPagesCache {
@@ -212,7 +410,7 @@ public class ExistingPagesCache {
 
         protected ExistingPagesCacheFull(int size) {
             for (NamespaceEnum ns : NamespaceEnum.values()) {
-                cache.put(ns, new HashSet<NormalisedTitle>());
+                cache.put(ns, Collections.newSetFromMap(new ConcurrentHashMap<NormalisedTitle, Boolean>()));
             }
         }
 
@@ -234,6 +432,16 @@ public class ExistingPagesCache {
             }
         }
 
+        @Override
+        public void remove(NormalisedTitle element) {
+            cache.get(NamespaceEnum.fromId(element.namespace)).remove(element);
+        }
+
+        @Override
+        public boolean hasRemove() {
+            return true;
+        }
+
         @Override
         public boolean hasContains() {
             return true;
@@ -15,9 +15,13 @@
  */
 package de.zib.scalaris.examples.wikipedia.bliki;
 
+import java.util.Collection;
+import java.util.List;
+
 import de.zib.scalaris.Connection;
 import de.zib.scalaris.examples.wikipedia.RevisionResult;
 import de.zib.scalaris.examples.wikipedia.ScalarisDataHandlerNormalised;
+import de.zib.scalaris.examples.wikipedia.ValueResult;
 
 /**
  * Wiki model using Scalaris to fetch (new) data, e.g. templates.
@@ -83,6 +87,23 @@ public class MyScalarisWikiModel extends MyWikiModel {
         return MyScalarisMagicWord.processMagicWord(magicWord, parameter, this, hasParameter);
     }
     
+    /**
+     * Determines whether the value of the given magic word is independent of
+     * the rendered page, i.e. the wiki's statistics.
+     * 
+     * @param magicWord
+     *            the magic word (without parameters)
+     * 
+     * @return whether the magic word's value may be shared
+     */
+    @Override
+    protected boolean isSharedMagicWord(String magicWord) {
+        return magicWord.equals(MyScalarisMagicWord.MAGIC_NUMBER_PAGES)
+                || magicWord.equals(MyScalarisMagicWord.MAGIC_NUMBER_ARTICLES)
+                || magicWord.equals(MyScalarisMagicWord.MAGIC_PAGES_IN_CATEGORY)
+                || magicWord.equals(MyScalarisMagicWord.MAGIC_PAGES_IN_CAT);
+    }
+    
     @Override
     protected boolean hasDBConnection() {
         return connection != null;
@@ -93,4 +114,21 @@ public class MyScalarisWikiModel extends MyWikiModel {
         return ScalarisDataHandlerNormalised.getRevision(connection, pageName);
     }
 
+    @Override
+    protected RevisionResult getPageFromDB(NormalisedTitle pageName) {
+        return ScalarisDataHandlerNormalised.getPageMetadata(connection, pageName);
+    }
+
+    @Override
+    protected ValueResult<List<RevisionResult>> getRevsFromDB(
+            Collection<NormalisedTitle> titles, String statName) {
+        return ScalarisDataHandlerNormalised.getRevisions(connection, titles, statName);
+    }
+
+    @Override
+    protected ValueResult<List<RevisionResult>> getPagesFromDB(
+            Collection<NormalisedTitle> titles, String statName) {
+        return ScalarisDataHandlerNormalised.getPagesMetadata(connection, titles, statName);
+    }
+
 }
@@ -44,6 +44,7 @@ import org.apache.commons.lang.StringEscapeUtils;
 
 import de.zib.scalaris.examples.wikipedia.InvolvedKey;
 import de.zib.scalaris.examples.wikipedia.RevisionResult;
+import de.zib.scalaris.examples.wikipedia.ValueResult;
 import de.zib.tools.LinkedMultiHashMap;
 
 /**
@@ -159,6 +160,24 @@ public class MyWikiModel extends WikiModel {
 
     protected Map<NormalisedTitle, String> pageCache = new HashMap<NormalisedTitle, String>();
 
+    /**
+     * Pages fetched in advance by {@link #prefetchPages(String)} (survives
+     * {@link #setUp()}).
+     */
+    protected Map<NormalisedTitle, TemplateCache.Entry> prefetchedPages = new HashMap<NormalisedTitle, TemplateCache.Entry>();
+
+    /**
+     * Cache of included pages and magic words shared by all requests
+     * (<tt>null</tt> if not used).
+     */
+    protected TemplateCache templateCache = null;
+
+    /**
+     * Maximum number of rounds in {@link #prefetchPages(String)}, i.e. the
+     * maximum template depth to prefetch.
+     */
+    protected static final int MAX_PREFETCH_ROUNDS = 10;
+
     /**
      * Text of the page to render, i.e. given to
      * {@link #renderPageWithCache(String)} or
@@ -169,6 +188,12 @@ public class MyWikiModel extends WikiModel {
     protected static final Pattern MATCH_WIKI_FORBIDDEN_TITLE_CHARS =
             Pattern.compile("^.*?([\\p{Cc}\\p{Cn}\\p{Co}#<>\\[\\]|{}\\n\\r]).*$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
 
+    /**
+     * Matches the name of a template inclusion, e.g. <tt>{{name|...}}</tt>
+     * (but not template parameters like <tt>{{{1}}}</tt>).
+     */
+    protected static final Pattern MATCH_WIKI_TEMPLATE_NAME =
+            Pattern.compile("(?<!\\{)\\{\\{(?!\\{)\\s*([^{}|\\[\\]<>\\n]+?)\\s*(?:\\||\\}\\})");
     /**
      * Pattern to check whether a wikitext is redirecting or not.
      */
@@ -328,7 +353,14 @@ public class MyWikiModel extends WikiModel {
             if (magicWordCache.containsKey(templateName)) {
                 return magicWordCache.get(templateName);
             } else {
-                String value = retrieveMagicWord(templateName, magicWord, parameter, hasParameter);
+                final boolean shared = templateCache != null && isSharedMagicWord(magicWord);
+                String value = shared ? templateCache.getMagicWord(templateName) : null;
+                if (value == null) {
+                    value = retrieveMagicWord(templateName, magicWord, parameter, hasParameter);
+                    if (shared) {
+                        templateCache.putMagicWord(templateName, value);
+                    }
+                }
                 magicWordCache.put(templateName, value);
                 return value;
             }
@@ -351,6 +383,20 @@ public class MyWikiModel extends WikiModel {
         return MyMagicWord.isMagicWord(name);
     }
 
+    /**
+     * Determines whether the value of the given magic word is independent of
+     * the rendered page and may thus be cached in the {@link #templateCache}
+     * for all requests.
+     * 
+     * @param magicWord
+     *            the magic word (without parameters)
+     * 
+     * @return whether the magic word's value may be shared
+     */
+    protected boolean isSharedMagicWord(String magicWord) {
+        return false;
+    }
+
     /**
      * Determines if a template name corresponds to a magic word using
      * {@link #isMagicWord(String)} (also recognises magic
@@ -487,7 +533,8 @@ public class MyWikiModel extends WikiModel {
      * Retrieves the contents of the given page.
      * 
      * If {@link #hasDBConnection()} is <tt>true</tt>, uses
-     * {@link #getRevFromDB(NormalisedTitle)} to get the content from the DB. If
+     * {@link #getRevFromDB(NormalisedTitle)} to get the content from the DB
+     * (unless prefetched or cached in the {@link #templateCache}). If
      * <tt>followRedirect</tt> is set, resolves redirects by including the
      * redirected content instead.
      * 
@@ -520,12 +567,10 @@ public class MyWikiModel extends WikiModel {
         } else if (hasDBConnection()) {
             String text = null;
             // System.out.println("retrievePage(" + namespace + ", " + articleName + ")");
-            RevisionResult getRevResult = getRevFromDB(pageName);
-            addStats(getRevResult.stats);
-            addInvolvedKeys(getRevResult.involvedKeys);
-            if (getRevResult.success) {
-                text = getRevResult.revision.unpackedText();
-                if (getRevResult.page.isRedirect()) {
+            TemplateCache.Entry entry = getPageEntry(pageName);
+            if (entry != null && entry.text != null) {
+                text = entry.text;
+                if (entry.redirect) {
                     final Matcher matcher = MATCH_WIKI_REDIRECT.matcher(text);
                     if (matcher.matches()) {
                         String[] redirFullName = splitNsTitle(matcher.group(1));
@@ -561,8 +606,6 @@ public class MyWikiModel extends WikiModel {
                 }
             } else {
                 // NOTE: must return null for non-existing pages in order for #ifexist to work correctly!
-                // System.err.println(getRevResult.message);
-                // text = "<b>ERROR: template " + pageName + " not available: " + getRevResult.message + "</b>";
             }
             pageCache.put(pageName, text);
             return text;
@@ -570,6 +613,99 @@ public class MyWikiModel extends WikiModel {
         return null;
     }
     
+    /**
+     * Gets the contents of the given page from the prefetched pages, the
+     * {@link #templateCache} or the DB (in this order).
+     * 
+     * @param pageName
+     *            the page's title
+     * 
+     * @return the page or <tt>null</tt> if it could not be retrieved
+     */
+    private TemplateCache.Entry getPageEntry(NormalisedTitle pageName) {
+        TemplateCache.Entry cached = prefetchedPages.get(pageName);
+        if (cached != null) {
+            return cached;
+        }
+        long readStamp = 0;
+        if (templateCache != null) {
+            readStamp = templateCache.getReadStamp();
+            cached = templateCache.get(pageName);
+            if (cached != null) {
+                if (templateCache.isValid(cached)) {
+                    return cached;
+                }
+                // re-validate with the page's metadata only
+                RevisionResult getPageResult = getPageFromDB(pageName);
+                addStats(getPageResult.stats);
+                addInvolvedKeys(getPageResult.involvedKeys);
+                if ((getPageResult.success && templateCache.revalidate(cached,
+                        getPageResult.page.getCurRev().getId()))
+                        || (getPageResult.page_not_existing && templateCache
+                                .revalidate(cached, -1))) {
+                    return cached;
+                }
+            }
+        }
+        RevisionResult getRevResult = getRevFromDB(pageName);
+        addStats(getRevResult.stats);
+        addInvolvedKeys(getRevResult.involvedKeys);
+        return toPageEntry(pageName, getRevResult, cached, readStamp);
+    }
+
+    /**
+     * Converts the result of reading a page into a page entry and updates the
+     * {@link #templateCache} with it.
+     * 
+     * @param pageName
+     *            the page's title
+     * @param getRevResult
+     *            the result of reading the page
+     * @param cached
+     *            an outdated entry of the page from the {@link #templateCache}
+     *            (may be <tt>null</tt>)
+     * @param readStamp
+     *            the {@link TemplateCache#getReadStamp()} before reading the
+     *            page
+     * 
+     * @return the page or <tt>null</tt> if it could not be retrieved
+     */
+    private TemplateCache.Entry toPageEntry(NormalisedTitle pageName,
+            RevisionResult getRevResult, TemplateCache.Entry cached,
+            long readStamp) {
+        TemplateCache.Entry entry;
+        if (getRevResult.success) {
+            if (cached != null
+                    && templateCache.revalidate(cached, getRevResult.revision.getId())) {
+                // no need to unpack the text again
+                return cached;
+            }
+            entry = new TemplateCache.Entry(
+                    getRevResult.revision.unpackedText(),
+                    getRevResult.revision.getId(),
+                    getRevResult.page.isRedirect());
+        } else if (getRevResult.page_not_existing) {
+            entry = new TemplateCache.Entry(null, -1, false);
+        } else {
+            // do not cache errors
+            return null;
+        }
+        if (templateCache != null) {
+            templateCache.put(pageName, entry, readStamp);
+        }
+        return entry;
+    }
+    
+    /**
+     * Gets all pages retrieved during rendering, e.g. templates and the
+     * rendered page itself.
+     * 
+     * @return normalised page titles
+     */
+    public Set<NormalisedTitle> getRetrievedPages() {
+        return pageCache.keySet();
+    }
+    
     protected boolean hasDBConnection() {
         return false;
     }
@@ -579,6 +715,218 @@ public class MyWikiModel extends WikiModel {
                 "no DB connection", true, title, null, null, false,
                 false, title.toString(), 0l);
     }
+    
+    /**
+     * Retrieves the metadata of the given page, i.e. without the text of its
+     * current revision, from the DB.
+     * 
+     * @param title
+     *            the page to retrieve
+     * 
+     * @return a result object with the page on success
+     */
+    protected RevisionResult getPageFromDB(NormalisedTitle title) {
+        return getRevFromDB(title);
+    }
+    
+    /**
+     * Retrieves the current revisions of all given pages from the DB with a
+     * single request.
+     * 
+     * @param titles
+     *            the pages to retrieve
+     * @param statName
+     *            name of the statistic to collect
+     * 
+     * @return a result object with the revisions on success
+     */
+    protected ValueResult<List<RevisionResult>> getRevsFromDB(
+            Collection<NormalisedTitle> titles, String statName) {
+        return new ValueResult<List<RevisionResult>>(false,
+                new ArrayList<InvolvedKey>(), "no DB connection", true,
+                statName, 0l);
+    }
+
+    /**
+     * Retrieves the metadata of all given pages, i.e. without the texts of
+     * their current revisions, from the DB with a single request.
+     * 
+     * @param titles
+     *            the pages to retrieve
+     * @param statName
+     *            name of the statistic to collect
+     * 
+     * @return a result object with the pages on success
+     */
+    protected ValueResult<List<RevisionResult>> getPagesFromDB(
+            Collection<NormalisedTitle> titles, String statName) {
+        return getRevsFromDB(titles, statName);
+    }
+
+    /**
+     * Fetches all pages the given wiki text includes (recursively) before
+     * rendering it.
+     * 
+     * Collects the names of all included templates and fetches them with a
+     * single {@link #getRevsFromDB(Collection, String)} request. The same is
+     * then done with the templates and redirect targets of the fetched pages
+     * until no new page is found (or {@link #MAX_PREFETCH_ROUNDS} is reached).
+     * The number of DB requests is thus bounded by the nesting depth of the
+     * templates rather than their number. Pages which are (still) valid in
+     * the {@link #templateCache} are not fetched again and outdated ones are
+     * re-validated with a single {@link #getPagesFromDB(Collection, String)}
+     * request first. Pages not found here, e.g. with names created by parser
+     * functions, are retrieved separately by
+     * {@link #retrievePage(String, String, Map, boolean)} during rendering.
+     * 
+     * @param rawWikiText
+     *            the wiki text to render
+     */
+    protected void prefetchPages(String rawWikiText) {
+        final Set<NormalisedTitle> seen = new HashSet<NormalisedTitle>(pageCache.keySet());
+        Set<NormalisedTitle> toCheck = new HashSet<NormalisedTitle>();
+        extractIncludedPages(rawWikiText, toCheck);
+        toCheck.removeAll(seen);
+        for (int round = 0; round < MAX_PREFETCH_ROUNDS && !toCheck.isEmpty(); ++round) {
+            seen.addAll(toCheck);
+            final Set<NormalisedTitle> next = new HashSet<NormalisedTitle>();
+            final List<NormalisedTitle> toFetch = new ArrayList<NormalisedTitle>(toCheck.size());
+            final Map<NormalisedTitle, TemplateCache.Entry> outdated = new HashMap<NormalisedTitle, TemplateCache.Entry>();
+            for (NormalisedTitle title : toCheck) {
+                TemplateCache.Entry entry = prefetchedPages.get(title);
+                if (entry == null && templateCache != null) {
+                    entry = templateCache.get(title);
+                    if (entry != null && !templateCache.isValid(entry)) {
+                        outdated.put(title, entry);
+                        entry = null;
+                    }
+                }
+                if (entry == null) {
+                    if (!outdated.containsKey(title)) {
+                        toFetch.add(title);
+                    }
+                } else {
+                    extractIncludedPages(entry, next);
+                }
+            }
+            if (!outdated.isEmpty()) {
+                revalidatePages(outdated, toFetch, next);
+            }
+            if (!toFetch.isEmpty()) {
+                final long readStamp = (templateCache == null) ? 0 : templateCache.getReadStamp();
+                ValueResult<List<RevisionResult>> result = getRevsFromDB(toFetch,
+                        "PREFETCH:" + getPageName());
+                addStats(result.stats);
+                addInvolvedKeys(result.involvedKeys);
+                if (!result.success) {
+                    return;
+                }
+                for (RevisionResult revResult : result.value) {
+                    final NormalisedTitle title = revResult.normalisedTitle;
+                    final TemplateCache.Entry entry = toPageEntry(title,
+                            revResult, outdated.get(title), readStamp);
+                    if (entry != null) {
+                        prefetchedPages.put(title, entry);
+                        extractIncludedPages(entry, next);
+                    }
+                }
+            }
+            next.removeAll(seen);
+            toCheck = next;
+        }
+    }
+
+    /**
+     * Re-validates outdated entries of the {@link #templateCache} with the
+     * current revision ids of their pages.
+     * 
+     * @param outdated
+     *            outdated entries from the {@link #templateCache}
+     * @param toFetch
+     *            the collection to add the titles of changed pages to (these
+     *            need to be fetched again)
+     * @param next
+     *            the collection to add the titles of the pages included by
+     *            still valid entries to
+     */
+    private void revalidatePages(Map<NormalisedTitle, TemplateCache.Entry> outdated,
+            Collection<NormalisedTitle> toFetch, Collection<NormalisedTitle> next) {
+        ValueResult<List<RevisionResult>> result = getPagesFromDB(
+                outdated.keySet(), "PREFETCH_META:" + getPageName());
+        addStats(result.stats);
+        addInvolvedKeys(result.involvedKeys);
+        if (!result.success) {
+            toFetch.addAll(outdated.keySet());
+            return;
+        }
+        for (RevisionResult pageResult : result.value) {
+            final NormalisedTitle title = pageResult.normalisedTitle;
+            final TemplateCache.Entry cached = outdated.get(title);
+            if ((pageResult.success && templateCache.revalidate(cached,
+                    pageResult.page.getCurRev().getId()))
+                    || (pageResult.page_not_existing && templateCache
+                            .revalidate(cached, -1))) {
+                prefetchedPages.put(title, cached);
+                extractIncludedPages(cached, next);
+            } else {
+                toFetch.add(title);
+            }
+        }
+    }
+
+    /**
+     * Adds the titles of all pages included by the given page, i.e. its
+     * templates or its redirect target.
+     * 
+     * @param entry
+     *            the page
+     * @param titles
+     *            the collection to add the (normalised) page titles to
+     */
+    private void extractIncludedPages(TemplateCache.Entry entry, Collection<NormalisedTitle> titles) {
+        if (entry.text == null) {
+            return;
+        } else if (entry.redirect) {
+            final Matcher matcher = MATCH_WIKI_REDIRECT.matcher(entry.text);
+            if (matcher.matches()) {
+                titles.add(normalisePageTitle(matcher.group(1)));
+            }
+        } else {
+            extractIncludedPages(entry.text, titles);
+        }
+    }
+
+    /**
+     * Adds the titles of all pages included as templates by the given wiki
+     * text (excluding magic words and parser functions).
+     * 
+     * @param wikiText
+     *            the wiki text
+     * @param titles
+     *            the collection to add the (normalised) page titles to
+     */
+    protected void extractIncludedPages(String wikiText, Collection<NormalisedTitle> titles) {
+        final Matcher matcher = MATCH_WIKI_TEMPLATE_NAME.matcher(wikiText);
+        while (matcher.find()) {
+            String name = matcher.group(1);
+            if (name.startsWith("#") || isMagicWordFull(name)) {
+                continue;
+            }
+            final boolean mainNamespace = name.startsWith(":");
+            if (mainNamespace) {
+                name = name.substring(1);
+            }
+            if (name.isEmpty() || !isValidTitle(name)) {
+                continue;
+            }
+            NormalisedTitle title = normalisePageTitle(name);
+            if (!mainNamespace && title.namespace == 0) {
+                // no (known) namespace prefix -> template namespace
+                title = normalisePageTitle(getTemplateNamespace(), name);
+            }
+            titles.add(title);
+        }
+    }
 
     /* (non-Javadoc)
      * @see info.bliki.wiki.model.AbstractWikiModel#encodeTitleToUrl(java.lang.String, boolean)
@@ -955,6 +1303,23 @@ public class MyWikiModel extends WikiModel {
     public void setExistingPages(ExistingPagesCache existingPages) {
         this.existingPages = existingPages;
     }
+
+    /**
+     * @return the cache of included pages and magic words shared by all
+     *         requests (<tt>null</tt> if not used)
+     */
+    public TemplateCache getTemplateCache() {
+        return templateCache;
+    }
+
+    /**
+     * @param templateCache
+     *            the cache of included pages and magic words shared by all
+     *            requests to use (<tt>null</tt> to disable)
+     */
+    public void setTemplateCache(TemplateCache templateCache) {
+        this.templateCache = templateCache;
+    }
     
     /**
      * The following characters are forbidden in page titles:
@@ -1081,6 +1446,9 @@ public class MyWikiModel extends WikiModel {
      */
     public String renderPageWithCache(ITextConverter converter, String rawWikiText) {
         renderWikiText = rawWikiText;
+        if (hasDBConnection()) {
+            prefetchPages(rawWikiText);
+        }
         return super.render(converter, rawWikiText, true);
     }
 
@@ -1098,6 +1466,9 @@ public class MyWikiModel extends WikiModel {
      */
     public String renderPageWithCache(String rawWikiText) {
         renderWikiText = rawWikiText;
+        if (hasDBConnection()) {
+            prefetchPages(rawWikiText);
+        }
         return super.render(new HTMLConverter(), rawWikiText, true);
     }
 }
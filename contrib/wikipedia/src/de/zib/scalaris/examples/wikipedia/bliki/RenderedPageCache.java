@@ -0,0 +1,361 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris.examples.wikipedia.bliki;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Process-wide cache of rendered pages shared by all requests.
+ *
+ * Entries are identified by the page title, its revision id and the render
+ * options (see {@link #createKey(NormalisedTitle, int, int, String, String)}).
+ * The cache is bounded by the (approximate) number of bytes of its entries
+ * and uses a segmented LRU eviction: new entries are put into a probation
+ * segment and promoted into a protected segment on their second hit. Only
+ * pages which are requested frequently thus survive a scan of rarely
+ * requested pages.
+ *
+ * Since the rendered content also depends on other pages, e.g. templates and
+ * the existence of linked pages, every entry records the pages it depends on
+ * and is dropped by {@link #invalidate(NormalisedTitle)} if any of them
+ * changes. Entries older than the maximum age are not returned any more (to
+ * refresh magic words).
+ *
+ * @author Nico Kruber, kruber@zib.de
+ */
+public class RenderedPageCache {
+    /**
+     * Fraction of the cache's size reserved for the protected segment.
+     */
+    protected static final double PROTECTED_RATIO = 0.8;
+
+    /**
+     * A rendered page.
+     *
+     * @author Nico Kruber, kruber@zib.de
+     */
+    public static class Entry {
+        /**
+         * The rendered page's content.
+         */
+        public final String html;
+        /**
+         * The page redirected to (<tt>null</tt> if no redirect).
+         */
+        public final String redirectLink;
+        /**
+         * The page's categories.
+         */
+        public final Set<String> categories;
+        /**
+         * The page itself, all pages included during rendering and all
+         * pages linked to.
+         */
+        protected final Set<NormalisedTitle> dependencies;
+        protected final long created;
+        protected final long size;
+        protected String key = null;
+        protected boolean isProtected = false;
+
+        /**
+         * Creates a new cache entry.
+         *
+         * @param html
+         *            the rendered page's content
+         * @param redirectLink
+         *            the page redirected to (<tt>null</tt> if no redirect)
+         * @param categories
+         *            the page's categories
+         * @param dependencies
+         *            the page itself, all pages included during rendering
+         *            and all pages linked to
+         */
+        public Entry(String html, String redirectLink,
+                Collection<String> categories,
+                Collection<NormalisedTitle> dependencies) {
+            this.html = html;
+            this.redirectLink = redirectLink;
+            this.categories = new HashSet<String>(categories);
+            this.dependencies = new HashSet<NormalisedTitle>(dependencies);
+            this.created = System.currentTimeMillis();
+            long size = 64 + 2 * (long) html.length();
+            for (String category : categories) {
+                size += 2 * category.length();
+            }
+            this.size = size + 32 * dependencies.size();
+        }
+    }
+
+    protected final long maxBytes;
+    protected final long maxAge;
+    protected final LinkedHashMap<String, Entry> probation = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    protected final LinkedHashMap<String, Entry> protectedSegment = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    protected long probationBytes = 0;
+    protected long protectedBytes = 0;
+    /**
+     * Keys of the entries depending on a page.
+     */
+    protected final Map<NormalisedTitle, Set<String>> dependents = new HashMap<NormalisedTitle, Set<String>>();
+
+    protected long hits = 0;
+    protected long misses = 0;
+    protected long evictions = 0;
+    protected long invalidations = 0;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxBytes
+     *            maximum (approximate) size of all entries in bytes
+     * @param maxAge
+     *            maximum age of an entry in milliseconds
+     */
+    public RenderedPageCache(long maxBytes, long maxAge) {
+        this.maxBytes = maxBytes;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Creates the key of a rendered page.
+     *
+     * @param title
+     *            the page's title
+     * @param revId
+     *            the rendered revision's id
+     * @param renderer
+     *            the renderer used
+     * @param wikiBaseURL
+     *            the base URL of links
+     * @param imageBaseURL
+     *            the base URL of images
+     *
+     * @return a key for {@link #get(String)} and {@link #put(String, Entry)}
+     */
+    public static String createKey(NormalisedTitle title, int revId,
+            int renderer, String wikiBaseURL, String imageBaseURL) {
+        return title + "\n" + revId + "\n" + renderer + "\n" + wikiBaseURL
+                + "\n" + imageBaseURL;
+    }
+
+    /**
+     * Gets a rendered page from the cache.
+     *
+     * @param key
+     *            the key of the page
+     *
+     * @return the rendered page or <tt>null</tt> if not cached
+     */
+    public synchronized Entry get(String key) {
+        Entry entry = probation.get(key);
+        if (entry == null) {
+            entry = protectedSegment.get(key);
+        }
+        if (entry == null) {
+            ++misses;
+            return null;
+        }
+        if ((System.currentTimeMillis() - entry.created) > maxAge) {
+            remove(entry);
+            ++misses;
+            return null;
+        }
+        ++hits;
+        if (!entry.isProtected) {
+            // second hit -> promote
+            probation.remove(key);
+            probationBytes -= entry.size;
+            entry.isProtected = true;
+            protectedSegment.put(key, entry);
+            protectedBytes += entry.size;
+            // demote the least recently used protected entries
+            final long maxProtectedBytes = (long) (maxBytes * PROTECTED_RATIO);
+            final Iterator<Entry> iter = protectedSegment.values().iterator();
+            while (protectedBytes > maxProtectedBytes && iter.hasNext()) {
+                final Entry demoted = iter.next();
+                if (demoted == entry) {
+                    break;
+                }
+                iter.remove();
+                protectedBytes -= demoted.size;
+                demoted.isProtected = false;
+                probation.put(demoted.key, demoted);
+                probationBytes += demoted.size;
+            }
+            evict();
+        }
+        return entry;
+    }
+
+    /**
+     * Puts a rendered page into the cache (into the probation segment).
+     *
+     * @param key
+     *            the key of the page
+     * @param entry
+     *            the rendered page
+     */
+    public synchronized void put(String key, Entry entry) {
+        if (entry.size > maxBytes * (1.0 - PROTECTED_RATIO)) {
+            // would evict everything from the probation segment
+            return;
+        }
+        Entry old = probation.get(key);
+        if (old == null) {
+            old = protectedSegment.get(key);
+        }
+        if (old != null) {
+            remove(old);
+        }
+        entry.key = key;
+        probation.put(key, entry);
+        probationBytes += entry.size;
+        for (NormalisedTitle dependency : entry.dependencies) {
+            Set<String> keys = dependents.get(dependency);
+            if (keys == null) {
+                keys = new HashSet<String>();
+                dependents.put(dependency, keys);
+            }
+            keys.add(key);
+        }
+        evict();
+    }
+
+    /**
+     * Evicts the least recently used probation entries until the cache fits
+     * into its size.
+     */
+    private void evict() {
+        final Iterator<Entry> iter = probation.values().iterator();
+        while ((probationBytes + protectedBytes) > maxBytes && iter.hasNext()) {
+            final Entry entry = iter.next();
+            iter.remove();
+            probationBytes -= entry.size;
+            removeDependencies(entry);
+            ++evictions;
+        }
+    }
+
+    private void remove(Entry entry) {
+        if (entry.isProtected) {
+            protectedSegment.remove(entry.key);
+            protectedBytes -= entry.size;
+        } else {
+            probation.remove(entry.key);
+            probationBytes -= entry.size;
+        }
+        removeDependencies(entry);
+    }
+
+    private void removeDependencies(Entry entry) {
+        for (NormalisedTitle dependency : entry.dependencies) {
+            final Set<String> keys = dependents.get(dependency);
+            if (keys != null) {
+                keys.remove(entry.key);
+                if (keys.isEmpty()) {
+                    dependents.remove(dependency);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all rendered pages depending on the given page, e.g. after it
+     * has been changed.
+     *
+     * @param title
+     *            the changed page
+     *
+     * @return the number of removed entries
+     */
+    public synchronized int invalidate(NormalisedTitle title) {
+        final Set<String> keys = dependents.remove(title);
+        if (keys == null) {
+            return 0;
+        }
+        int removed = 0;
+        for (String key : keys.toArray(new String[keys.size()])) {
+            Entry entry = probation.get(key);
+            if (entry == null) {
+                entry = protectedSegment.get(key);
+            }
+            if (entry != null) {
+                remove(entry);
+                ++removed;
+            }
+        }
+        invalidations += removed;
+        return removed;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public synchronized void clear() {
+        probation.clear();
+        protectedSegment.clear();
+        dependents.clear();
+        probationBytes = 0;
+        protectedBytes = 0;
+    }
+
+    /**
+     * @return the number of cached pages
+     */
+    public synchronized int size() {
+        return probation.size() + protectedSegment.size();
+    }
+
+    /**
+     * @return the (approximate) number of bytes of all cached pages
+     */
+    public synchronized long getBytes() {
+        return probationBytes + protectedBytes;
+    }
+
+    /**
+     * @return the number of cache hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of cache misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of entries evicted due to the size limit
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the number of entries removed due to changed pages
+     */
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+}
@@ -0,0 +1,401 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris.examples.wikipedia.bliki;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide cache of included pages, e.g. templates, and magic words
+ * shared by all requests (in contrast to the per-request caches of
+ * {@link MyWikiModel}).
+ *
+ * Pages are stored with their unpacked text and revision id. An entry is
+ * valid for a given time after it has been (re-)validated. After that, the
+ * wiki model only reads the page's metadata and compares the revision id with
+ * {@link #revalidate(Entry, int)} in order to keep using the cached text.
+ * Magic words simply expire after this time. Changed pages should be removed
+ * with {@link #invalidate(NormalisedTitle)}. Pages read before their
+ * invalidation are not put back into the cache, see
+ * {@link #put(NormalisedTitle, Entry, long)}.
+ *
+ * The cache is bounded by the (approximate) number of bytes of its entries.
+ * If exceeded, the least recently used entries are evicted.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ */
+public class TemplateCache {
+    /**
+     * Fraction of the cache's size to shrink to when evicting entries.
+     */
+    protected static final double EVICT_RATIO = 0.75;
+
+    /**
+     * Number of stripes of page titles to track invalidations for.
+     */
+    protected static final int INVALIDATION_STRIPES = 1024;
+
+    /**
+     * A cached page or magic word.
+     *
+     * @author Nico Kruber, kruber@zib.de
+     */
+    public static class Entry {
+        /**
+         * The page's (unpacked) text or the magic word's value (<tt>null</tt>
+         * if the page does not exist).
+         */
+        public final String text;
+        /**
+         * The id of the page's revision (<tt>-1</tt> for magic words and
+         * non-existing pages).
+         */
+        public final int revId;
+        /**
+         * Whether the page is a redirect.
+         */
+        public final boolean redirect;
+        protected final long size;
+        protected volatile long validated;
+        protected volatile long lastUsed;
+
+        /**
+         * Creates a new cache entry.
+         *
+         * @param text
+         *            the page's (unpacked) text or the magic word's value
+         *            (<tt>null</tt> if the page does not exist)
+         * @param revId
+         *            the id of the page's revision (<tt>-1</tt> for magic
+         *            words and non-existing pages)
+         * @param redirect
+         *            whether the page is a redirect
+         */
+        public Entry(String text, int revId, boolean redirect) {
+            this.text = text;
+            this.revId = revId;
+            this.redirect = redirect;
+            this.size = 64 + ((text == null) ? 0 : 2 * (long) text.length());
+            this.validated = System.currentTimeMillis();
+            this.lastUsed = this.validated;
+        }
+    }
+
+    /**
+     * Key of a cached magic word (separates them from page titles).
+     */
+    private static class MagicWordKey {
+        protected final String name;
+
+        protected MagicWordKey(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof MagicWordKey)
+                    && name.equals(((MagicWordKey) obj).name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+    }
+
+    protected final long maxBytes;
+    protected final long ttl;
+    protected final ConcurrentHashMap<Object, Entry> entries = new ConcurrentHashMap<Object, Entry>();
+    protected final AtomicLong bytes = new AtomicLong(0);
+    /**
+     * Logical clock advanced by every invalidation.
+     */
+    protected final AtomicLong clock = new AtomicLong(0);
+    /**
+     * Clock value of the last invalidation of any page in each stripe.
+     */
+    protected final AtomicLongArray invalidated = new AtomicLongArray(INVALIDATION_STRIPES);
+
+    protected final AtomicLong hits = new AtomicLong(0);
+    protected final AtomicLong misses = new AtomicLong(0);
+    protected final AtomicLong revalidations = new AtomicLong(0);
+    protected final AtomicLong evictions = new AtomicLong(0);
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxBytes
+     *            maximum (approximate) size of all entries in bytes
+     * @param ttl
+     *            time (in milliseconds) after which entries need to be
+     *            re-validated
+     */
+    public TemplateCache(long maxBytes, long ttl) {
+        this.maxBytes = maxBytes;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Gets a cached page.
+     *
+     * @param title
+     *            the page's title
+     *
+     * @return the page (which may need re-validation, see
+     *         {@link #isValid(Entry)}) or <tt>null</tt> if not cached
+     */
+    public Entry get(NormalisedTitle title) {
+        final Entry entry = entries.get(title);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        entry.lastUsed = System.currentTimeMillis();
+        if (isValid(entry)) {
+            hits.incrementAndGet();
+        }
+        return entry;
+    }
+
+    /**
+     * Checks whether the given entry can be used without re-validation.
+     *
+     * @param entry
+     *            a cached entry
+     *
+     * @return <tt>true</tt> if the entry has been validated within the TTL
+     */
+    public boolean isValid(Entry entry) {
+        return (System.currentTimeMillis() - entry.validated) <= ttl;
+    }
+
+    /**
+     * Re-validates a cached page by comparing its revision id with the
+     * current one.
+     *
+     * @param entry
+     *            the cached page
+     * @param curRevId
+     *            the id of the page's current revision (<tt>-1</tt> if the
+     *            page does not exist)
+     *
+     * @return <tt>true</tt> if the entry is still up-to-date (and valid for
+     *         another TTL), <tt>false</tt> otherwise
+     */
+    public boolean revalidate(Entry entry, int curRevId) {
+        if (entry.revId != curRevId) {
+            return false;
+        }
+        entry.validated = System.currentTimeMillis();
+        revalidations.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Gets a stamp to read a page with which may then be put into the cache,
+     * see {@link #put(NormalisedTitle, Entry, long)}.
+     *
+     * @return the current stamp
+     */
+    public long getReadStamp() {
+        return clock.get();
+    }
+
+    /**
+     * Puts a page into the cache unless it has been invalidated after it was
+     * read, i.e. it may be outdated.
+     *
+     * @param title
+     *            the page's title
+     * @param entry
+     *            the page
+     * @param readStamp
+     *            the value of {@link #getReadStamp()} before reading the page
+     *
+     * @return whether the page has been put into the cache
+     */
+    public boolean put(NormalisedTitle title, Entry entry, long readStamp) {
+        if (invalidated.get(getStripe(title)) > readStamp) {
+            return false;
+        }
+        put2(title, entry);
+        return true;
+    }
+
+    private static int getStripe(NormalisedTitle title) {
+        return (title.hashCode() & Integer.MAX_VALUE) % INVALIDATION_STRIPES;
+    }
+
+    /**
+     * Gets a cached magic word.
+     *
+     * @param name
+     *            the magic word including its parameters
+     *
+     * @return the magic word's value or <tt>null</tt> if not cached or expired
+     */
+    public String getMagicWord(String name) {
+        final Entry entry = entries.get(new MagicWordKey(name));
+        if (entry == null || !isValid(entry)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        entry.lastUsed = System.currentTimeMillis();
+        return entry.text;
+    }
+
+    /**
+     * Puts a magic word into the cache.
+     *
+     * @param name
+     *            the magic word including its parameters
+     * @param value
+     *            the magic word's value
+     */
+    public void putMagicWord(String name, String value) {
+        if (value != null) {
+            put2(new MagicWordKey(name), new Entry(value, -1, false));
+        }
+    }
+
+    private void put2(Object key, Entry entry) {
+        if (entry.size > maxBytes * (1.0 - EVICT_RATIO)) {
+            // too large for this cache
+            remove(key);
+            return;
+        }
+        final Entry old = entries.put(key, entry);
+        bytes.addAndGet(entry.size - ((old == null) ? 0 : old.size));
+        if (bytes.get() > maxBytes) {
+            evict();
+        }
+    }
+
+    private void remove(Object key) {
+        final Entry old = entries.remove(key);
+        if (old != null) {
+            bytes.addAndGet(-old.size);
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache is shrunk to
+     * {@link #EVICT_RATIO} of its size.
+     */
+    private synchronized void evict() {
+        if (bytes.get() <= maxBytes) {
+            // another thread was faster
+            return;
+        }
+        final List<Map.Entry<Object, Entry>> all = new ArrayList<Map.Entry<Object, Entry>>(entries.entrySet());
+        Collections.sort(all, new Comparator<Map.Entry<Object, Entry>>() {
+            @Override
+            public int compare(Map.Entry<Object, Entry> o1, Map.Entry<Object, Entry> o2) {
+                final long t1 = o1.getValue().lastUsed;
+                final long t2 = o2.getValue().lastUsed;
+                return (t1 < t2) ? -1 : ((t1 == t2) ? 0 : 1);
+            }
+        });
+        final long targetBytes = (long) (maxBytes * EVICT_RATIO);
+        for (Map.Entry<Object, Entry> entry : all) {
+            if (bytes.get() <= targetBytes) {
+                break;
+            }
+            if (entries.remove(entry.getKey(), entry.getValue())) {
+                bytes.addAndGet(-entry.getValue().size);
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes the given page, e.g. after it has been changed.
+     *
+     * Requests which read the (old) page before cannot put it back into the
+     * cache any more. Since invalidations are tracked per stripe of titles,
+     * this also applies to pages sharing the stripe which are then simply
+     * read again by the next request.
+     *
+     * @param title
+     *            the changed page
+     */
+    public void invalidate(NormalisedTitle title) {
+        final long stamp = clock.incrementAndGet();
+        final int stripe = getStripe(title);
+        long last;
+        do {
+            last = invalidated.get(stripe);
+        } while (last < stamp && !invalidated.compareAndSet(stripe, last, stamp));
+        remove(title);
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes.set(0);
+    }
+
+    /**
+     * @return the number of cached pages and magic words
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the (approximate) number of bytes of all cached entries
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * @return the number of cache hits (not needing re-validation)
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of successfully re-validated pages
+     */
+    public long getRevalidations() {
+        return revalidations.get();
+    }
+
+    /**
+     * @return the number of entries evicted due to the size limit
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+}
@@ -48,6 +48,12 @@ public class WikiPageBean extends WikiPageBeanBase {
     
     private Collection<String> subCategories = new LinkedList<String>();
     private Collection<String> categoryPages = new LinkedList<String>();
+    /**
+     * Continuation token of the next part of the category's pages (empty if
+     * there are no more pages).
+     */
+    private String categoryContinue = "";
+    private int pageListLimit = 0;
     
     private String contentSub = "";
 
@@ -171,6 +177,36 @@ public class WikiPageBean extends WikiPageBeanBase {
     public void setCategoryPages(Collection<String> categoryPages) {
         this.categoryPages = categoryPages;
     }
+
+    /**
+     * @return the continuation token of the next part of the category's
+     *         pages (empty if there are no more pages)
+     */
+    public String getCategoryContinue() {
+        return categoryContinue;
+    }
+
+    /**
+     * @param categoryContinue the categoryContinue to set (<tt>null</tt> if
+     *                         there are no more pages)
+     */
+    public void setCategoryContinue(String categoryContinue) {
+        this.categoryContinue = (categoryContinue == null) ? "" : categoryContinue;
+    }
+
+    /**
+     * @return the maximum number of pages of a category shown at once
+     */
+    public int getPageListLimit() {
+        return pageListLimit;
+    }
+
+    /**
+     * @param pageListLimit the pageListLimit to set
+     */
+    public void setPageListLimit(int pageListLimit) {
+        this.pageListLimit = pageListLimit;
+    }
     
     /**
      * @return the contentSub
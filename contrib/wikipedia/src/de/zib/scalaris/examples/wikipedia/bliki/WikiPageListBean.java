@@ -70,6 +70,12 @@ public class WikiPageListBean extends WikiPageBeanBase {
     private boolean foundFullMatch = false;
     private int namespaceId = 0;
     private boolean showAllPages = false;
+    /**
+     * Continuation token of the next part of the page list (empty if there
+     * are no more pages).
+     */
+    private String continueFrom = "";
+    private int limit = 0;
 
     /**
      * Creates a new (empty) bean.
@@ -306,6 +312,57 @@ public class WikiPageListBean extends WikiPageBeanBase {
         }
     }
 
+    /**
+     * Gets a version of the title string with all parameters needed to show
+     * the next part of the page list.
+     * 
+     * Note: Form parameters are URL-encoded, the "&" connecting them are not!
+     * 
+     * @return a title string with all parameters to be used in a URL or an
+     *         empty string if there are no more pages
+     */
+    public String nextPartTitleWithParameters() {
+        if (continueFrom.isEmpty()) {
+            return "";
+        }
+        try {
+            return titleWithParameters() + "&limit=" + limit + "&continue="
+                    + URLEncoder.encode(continueFrom, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return "";
+        }
+    }
+
+    /**
+     * @return the continuation token of the next part of the page list
+     *         (empty if there are no more pages)
+     */
+    public String getContinueFrom() {
+        return continueFrom;
+    }
+
+    /**
+     * @param continueFrom the continueFrom to set (<tt>null</tt> if there are
+     *                     no more pages)
+     */
+    public void setContinueFrom(String continueFrom) {
+        this.continueFrom = (continueFrom == null) ? "" : continueFrom;
+    }
+
+    /**
+     * @return the maximum number of pages shown at once
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @param limit the limit to set
+     */
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
     /**
      * @return the searchFoundMatch
      */
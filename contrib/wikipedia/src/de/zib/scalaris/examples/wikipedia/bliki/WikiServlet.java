@@ -22,6 +22,7 @@ import info.bliki.wiki.model.Configuration;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.lang.management.ManagementFactory;
 import java.math.BigInteger;
 import java.net.URLEncoder;
 import java.util.ArrayList;
@@ -30,6 +31,7 @@ import java.util.Calendar;
 import java.util.EnumMap;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -46,6 +48,13 @@ import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
 import javax.servlet.RequestDispatcher;
 import javax.servlet.Servlet;
 import javax.servlet.ServletConfig;
@@ -61,6 +70,7 @@ import de.zib.scalaris.examples.wikipedia.InvolvedKey;
 import de.zib.scalaris.examples.wikipedia.NamespaceUtils;
 import de.zib.scalaris.examples.wikipedia.Options;
 import de.zib.scalaris.examples.wikipedia.PageHistoryResult;
+import de.zib.scalaris.examples.wikipedia.PageListResult;
 import de.zib.scalaris.examples.wikipedia.RevisionResult;
 import de.zib.scalaris.examples.wikipedia.SavePageResult;
 import de.zib.scalaris.examples.wikipedia.ValueResult;
@@ -77,6 +87,7 @@ import de.zib.scalaris.examples.wikipedia.plugin.PluginClassLoader;
 import de.zib.scalaris.examples.wikipedia.plugin.WikiEventHandler;
 import de.zib.scalaris.examples.wikipedia.plugin.WikiPlugin;
 import de.zib.scalaris.examples.wikipedia.tomcat.URLParamEncoder;
+import de.zib.scalaris.jmx.TransactionStatistics;
 import de.zib.tools.CircularByteArrayOutputStream;
 
 /**
@@ -90,6 +101,16 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
         Servlet, WikiServletContext, WikiServletDataHandler<Connection> {
     protected static final String MAIN_PAGE = "Main Page";
     protected static final int IMPORT_REDIRECT_EVERY = 5; // seconds
+    /**
+     * Default number of pages shown at once on category pages and partial
+     * page lists (the "limit" parameter).
+     */
+    protected static final int PAGE_LIST_DEFAULT_LIMIT = 200;
+    /**
+     * Maximum number of pages shown at once on category pages and partial
+     * page lists.
+     */
+    protected static final int PAGE_LIST_MAX_LIMIT = 5000;
 
     private static final long serialVersionUID = 1L;
     
@@ -122,6 +143,33 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
     protected List<WikiEventHandler> eventHandlers = new LinkedList<WikiEventHandler>();
     
     protected ExistingPagesCache existingPages = ExistingPagesCache.createCache(100);
+    
+    /**
+     * Time {@link #existingPages} has been created from the list of all pages
+     * at (in milliseconds, 0 if not created yet).
+     */
+    protected volatile long existingPagesLoadedAt = 0;
+
+    /**
+     * Cache of rendered pages shared by all requests (<tt>null</tt> if
+     * disabled).
+     */
+    protected RenderedPageCache renderedPages = null;
+    /**
+     * Cache of templates and magic words shared by all requests
+     * (<tt>null</tt> if disabled).
+     */
+    protected TemplateCache templateCache = null;
+
+    /**
+     * Commits, aborts and retries of page saves (exposed via JMX).
+     */
+    protected final TransactionStatistics saveStatistics = new TransactionStatistics();
+    /**
+     * Name {@link #saveStatistics} has been registered with (<tt>null</tt>
+     * if not registered).
+     */
+    protected ObjectName saveStatisticsName = null;
 
     protected static final EnumMap<SpecialPage, String> SPECIAL_SUFFIX_EN = MyWikiModel.SPECIAL_SUFFIX.get("en");
     protected EnumMap<SpecialPage, String> SPECIAL_SUFFIX_LANG;
@@ -164,8 +212,22 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
     public final void init(ServletConfig config) throws ServletException {
         super.init(config);
         readOptionsFromConfig(config);
+        final Options options = Options.getInstance();
+        // use the configured implementation until the pages are loaded
+        existingPages = ExistingPagesCache.createCache(100);
+        if (options.WIKI_RENDER_CACHE_SIZE > 0) {
+            renderedPages = new RenderedPageCache(
+                    options.WIKI_RENDER_CACHE_SIZE * 1024l * 1024l,
+                    options.WIKI_RENDER_CACHE_MAX_AGE * 1000l);
+        }
+        if (options.WIKI_TEMPLATE_CACHE_SIZE > 0) {
+            templateCache = new TemplateCache(
+                    options.WIKI_TEMPLATE_CACHE_SIZE * 1024l * 1024l,
+                    options.WIKI_TEMPLATE_CACHE_TTL * 1000l);
+        }
         
         init2(config);
+        registerSaveStatistics(config);
         
         loadSiteInfo();
         loadPlugins(config);
@@ -207,8 +269,19 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
                 config.getInitParameter("WIKI_SAVEPAGE_RETRY_DELAY"),
                 config.getInitParameter("WIKI_PAGES_CACHE_IMPL"),
                 config.getInitParameter("WIKI_REBUILD_PAGES_CACHE"),
+                config.getInitParameter("WIKI_PAGES_CACHE_FULL_REBUILD"),
+                config.getInitParameter("WIKI_PAGES_CACHE_POLL"),
+                config.getInitParameter("WIKI_PAGES_CACHE_MAX_AGE"),
+                config.getInitParameter("WIKI_RENDER_CACHE_SIZE"),
+                config.getInitParameter("WIKI_RENDER_CACHE_MAX_AGE"),
+                config.getInitParameter("WIKI_RENDER_CACHE_POLL"),
+                config.getInitParameter("WIKI_TEMPLATE_CACHE_SIZE"),
+                config.getInitParameter("WIKI_TEMPLATE_CACHE_TTL"),
+                config.getInitParameter("WIKI_REVISION_KEYFRAME_INTERVAL"),
                 config.getInitParameter("WIKI_STORE_CONTRIBUTIONS"),
                 config.getInitParameter("WIKI_OPTIMISATIONS"),
+                config.getInitParameter("WIKI_COMPACT_WRITE_CACHE"),
+                config.getInitParameter("WIKI_COMPACT_WRITE_CACHE_RATE"),
                 config.getInitParameter("LOG_USER_REQS"),
                 config.getInitParameter("SCALARIS_NODE_DISCOVERY"));
         System.out.println("Effective optimisations: " + options.OPTIMISATIONS.toString());
@@ -268,6 +341,11 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
 
     /**
      * Starts the service updating the bloom filter for existing pages.
+     * 
+     * Caches supporting {@link ExistingPagesCache#remove(NormalisedTitle)}
+     * are updated incrementally with {@link #onPageCreated(NormalisedTitle)}
+     * and are only re-created as a fallback, see
+     * {@link ExistingPagesCache#needsRebuild(long, long)}.
      */
     protected void startExistingPagesUpdate() {
         final int rebuildDelay = Options.getInstance().WIKI_REBUILD_PAGES_CACHE;
@@ -277,12 +355,50 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
             ses.scheduleWithFixedDelay(new Runnable() {
                 @Override
                 public void run() {
-                    updateExistingPages();
+                    if (existingPages.needsRebuild(existingPagesLoadedAt,
+                            System.currentTimeMillis())) {
+                        updateExistingPages();
+                    }
                 }
             }, rebuildDelay, rebuildDelay, TimeUnit.SECONDS);
         }
     }
     
+    /**
+     * Called after a page has been changed successfully. Removes all cached
+     * rendered pages depending on it and the page itself from the template
+     * cache.
+     * 
+     * @param title
+     *            the changed page
+     */
+    protected void onPageChanged(NormalisedTitle title) {
+        if (renderedPages != null) {
+            renderedPages.invalidate(title);
+        }
+        if (templateCache != null) {
+            templateCache.invalidate(title);
+        }
+    }
+    
+    /**
+     * Called after a page has been created successfully. Adds it to the
+     * existing pages and removes all cached rendered pages depending on it
+     * (see {@link #onPageChanged(NormalisedTitle)}).
+     * 
+     * @param title
+     *            the new page
+     */
+    protected void onPageCreated(NormalisedTitle title) {
+        existingPages.add(title);
+        if (renderedPages != null) {
+            renderedPages.invalidate(title);
+        }
+        if (templateCache != null) {
+            templateCache.invalidate(title);
+        }
+    }
+    
     /**
      * Sets localised special page names by using the information provided by
      * the {@link #siteinfo} object.
@@ -329,8 +445,43 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
      */
     abstract protected void releaseConnection(HttpServletRequest request, Connection conn);
 
+    /**
+     * Registers {@link #saveStatistics} with the platform MBean server.
+     * 
+     * @param config
+     *            servlet config
+     */
+    protected void registerSaveStatistics(ServletConfig config) {
+        final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName name = new ObjectName(
+                    "de.zib.scalaris.examples.wikipedia:type=TransactionStatistics,name="
+                            + ObjectName.quote(config.getServletContext().getContextPath()
+                                    + "/" + config.getServletName()));
+            mbs.registerMBean(saveStatistics, name);
+            saveStatisticsName = name;
+        } catch (MalformedObjectNameException e) {
+            e.printStackTrace();
+        } catch (InstanceAlreadyExistsException e) {
+            e.printStackTrace();
+        } catch (MBeanRegistrationException e) {
+            e.printStackTrace();
+        } catch (NotCompliantMBeanException e) {
+            e.printStackTrace();
+        }
+    }
+
     @Override
     public void destroy() {
+        if (saveStatisticsName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(saveStatisticsName);
+            } catch (InstanceNotFoundException e) {
+            } catch (MBeanRegistrationException e) {
+                e.printStackTrace();
+            }
+            saveStatisticsName = null;
+        }
     }
 
     /*
@@ -704,7 +855,12 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
             page.setShowAllPages(true);
             page.setPageHeading("Pages that link to \"" + req_target + "\"");
             page.setTarget(req_target);
-            result = getPagesLinkingTo(connection, req_target, namespace);
+            final int limit = getPageListLimit(request);
+            final PageListResult linksResult = getPagesLinkingTo(connection,
+                    req_target, namespace, request.getParameter("continue"), limit);
+            page.setLimit(limit);
+            page.setContinueFrom(linksResult.continueFrom);
+            result = linksResult;
         }
         page.addStats(result.stats);
         page.getInvolvedKeys().addAll(result.involvedKeys);
@@ -898,8 +1054,13 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
             return;
         } else if (result.rev_not_existing) {
             if (result.page != null) {
-                result.revision = result.page.getCurRev();
-                result.success = true;
+                // note: the page object does not contain the current text
+                RevisionResult curResult = getRevision(connection, title, -1, namespace);
+                page.addStats(curResult.stats);
+                page.getInvolvedKeys().addAll(curResult.involvedKeys);
+                if (curResult.success) {
+                    result = curResult;
+                }
             }
             addToParam_notice(request, "revision " + req_oldid + " not found - loaded current revision instead");
         }
@@ -964,9 +1125,38 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
         wikiModel.setNamespaceName(namespace.getNamespaceByNumber(titleN.namespace));
         wikiModel.setPageName(titleN.title);
         if (renderer > 0) {
-            String mainText = wikiModel.renderPageWithCache(result.revision.unpackedText());
+            String mainText;
+            final String redirectedPageName;
+            final Set<String> categories;
+            final String renderKey = (renderedPages == null) ? null
+                    : RenderedPageCache.createKey(titleN, result.revision.getId(),
+                            renderer, wikiModel.getWikiBaseURL(), wikiModel.getImageBaseURL());
+            final RenderedPageCache.Entry rendered = (renderKey == null) ? null
+                    : renderedPages.get(renderKey);
+            if (rendered != null) {
+                mainText = rendered.html;
+                redirectedPageName = rendered.redirectLink;
+                categories = rendered.categories;
+            } else {
+                mainText = wikiModel.renderPageWithCache(result.revision.unpackedText());
+                redirectedPageName = wikiModel.getRedirectLink();
+                categories = wikiModel.getCategories().keySet();
+                if (renderKey != null) {
+                    final Set<NormalisedTitle> dependencies = new HashSet<NormalisedTitle>(wikiModel.getRetrievedPages());
+                    dependencies.add(titleN);
+                    // links to (non-)existing pages change their style once
+                    // the page is created or deleted
+                    for (String link : wikiModel.getLinks()) {
+                        dependencies.add(NormalisedTitle.fromUnnormalised(link, namespace));
+                    }
+                    renderedPages.put(renderKey, new RenderedPageCache.Entry(
+                            mainText, redirectedPageName, categories, dependencies));
+                }
+            }
             if (titleN.namespace.equals(MyNamespace.CATEGORY_NAMESPACE_KEY)) {
-                ValueResult<List<NormalisedTitle>> catPagesResult = getPagesInCategory(connection, titleN);
+                final int limit = getPageListLimit(request);
+                final PageListResult catPagesResult = getPagesInCategory(
+                        connection, titleN, request.getParameter("continue"), limit);
                 page.addStats(catPagesResult.stats);
                 page.getInvolvedKeys().addAll(catPagesResult.involvedKeys);
                 if (catPagesResult.success) {
@@ -1012,6 +1202,8 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
                     }
                     page.setSubCategories(subCategories);
                     page.setCategoryPages(categoryPages);
+                    page.setCategoryContinue(catPagesResult.continueFrom);
+                    page.setPageListLimit(limit);
                 } else {
                     if (catPagesResult.connect_failed) {
                         setParam_error(request, "ERROR: DB connection failed");
@@ -1023,7 +1215,6 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
             }
             page.setTitle(title);
             page.setVersion(result.revision.getId());
-            String redirectedPageName = wikiModel.getRedirectLink();
             if (redirectedPageName != null) {
                 if (noRedirect) {
                     if (topLevel) {
@@ -1058,7 +1249,7 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
                 setSubPageNav(title, page, wikiModel);
             }
             page.setPage(mainText);
-            page.setCategories(wikiModel.getCategories().keySet());
+            page.setCategories(categories);
             page.addStats(wikiModel.getStats());
             page.getInvolvedKeys().addAll(wikiModel.getInvolvedKeys());
         } else if (renderer == 0) {
@@ -1907,6 +2098,7 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
                 page.getInvolvedKeys().addAll(result.involvedKeys);
                 if (!result.failedKeys.isEmpty()) {
                     page.getFailedKeys().put(retries + 1, result.failedKeys);
+                    saveStatistics.addAbort(result.failedKeys);
                 }
                 if (!result.success && retries < Options.getInstance().WIKI_SAVEPAGE_RETRIES) {
                     // check for conflicting edit on same page, do not retry in this case
@@ -1918,11 +2110,17 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
                         Thread.sleep(Options.getInstance().WIKI_SAVEPAGE_RETRY_DELAY);
                     } catch (InterruptedException e) {
                     }
+                    saveStatistics.addRetry();
                     ++retries;
                 } else {
                     break;
                 }
             }
+            if (result.success) {
+                saveStatistics.addCommit();
+            } else {
+                saveStatistics.addFailure();
+            }
             page.setSaveAttempts(retries + 1);
             for (WikiEventHandler handler: eventHandlers) {
                 handler.onPageSaved(page, result, connection);
@@ -1930,7 +2128,12 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
             if (result.success) {
                 // successfully saved -> show page with a notice of the successful operation
                 // also actively update the bloom filter of existing pages
-                existingPages.add(NormalisedTitle.fromUnnormalised(title, namespace));
+                final NormalisedTitle titleN = NormalisedTitle.fromUnnormalised(title, namespace);
+                if (result.oldPage == null) {
+                    onPageCreated(titleN);
+                } else {
+                    onPageChanged(titleN);
+                }
                 ArrayList<Long> times = new ArrayList<Long>();
                 for (List<Long> time : page.getStats().values()) {
                     times.addAll(time);
@@ -2198,6 +2401,20 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
         return parseInt(req_redlink, 0) == 1;
     }
     
+    /**
+     * Gets the maximum number of pages to show from a partial page list.
+     * 
+     * @param request
+     *            the request of the current operation (with an optional
+     *            "limit" parameter)
+     * 
+     * @return a number between 1 and {@link #PAGE_LIST_MAX_LIMIT}
+     */
+    protected final static int getPageListLimit(HttpServletRequest request) {
+        final int limit = parseInt(request.getParameter("limit"), PAGE_LIST_DEFAULT_LIMIT);
+        return Math.max(1, Math.min(limit, PAGE_LIST_MAX_LIMIT));
+    }
+
     protected final static int parseInt(String value, int def) {
         if (value == null) {
             return def;
@@ -2298,6 +2515,21 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
         eventHandlers.add(handler);
     }
 
+    /**
+     * Replaces {@link #existingPages} with a cache re-created from the list
+     * of all pages. Overwrite in sub-classes if needed, e.g. to add pages
+     * created while reading the list.
+     * 
+     * @param cache
+     *            the new cache
+     * @param pages
+     *            the list of all pages the cache has been created from
+     */
+    protected void replaceExistingPages(ExistingPagesCache cache,
+            List<NormalisedTitle> pages) {
+        existingPages = cache;
+    }
+
     /**
      * Updates the bloom filter of existing pages for quick checks.
      */
@@ -2306,12 +2538,14 @@ public abstract class WikiServlet<Connection> extends HttpServlet implements
             Connection connection = getConnection(null);
             if (connection != null) {
                 try {
+                    final long loadedAt = System.currentTimeMillis();
                     ValueResult<List<NormalisedTitle>> result = getPageList(connection);
                     if (result.success) {
                         List<NormalisedTitle> pages = result.value;
                         pages.addAll(specialPages);
                         ExistingPagesCache filter = ExistingPagesCache.createCache(pages);
-                        existingPages = filter;
+                        replaceExistingPages(filter, pages);
+                        existingPagesLoadedAt = loadedAt;
                     }
                 } finally {
                     releaseConnection(null, connection);
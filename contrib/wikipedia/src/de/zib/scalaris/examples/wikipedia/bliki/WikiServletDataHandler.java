@@ -21,6 +21,7 @@ import java.util.Map;
 import java.util.Random;
 
 import de.zib.scalaris.examples.wikipedia.PageHistoryResult;
+import de.zib.scalaris.examples.wikipedia.PageListResult;
 import de.zib.scalaris.examples.wikipedia.RevisionResult;
 import de.zib.scalaris.examples.wikipedia.SavePageResult;
 import de.zib.scalaris.examples.wikipedia.ValueResult;
@@ -267,6 +268,25 @@ public interface WikiServletDataHandler<Connection> {
     public ValueResult<List<NormalisedTitle>> getPagesInCategory(Connection connection,
             NormalisedTitle title);
     
+    /**
+     * Retrieves a part of the list of pages in the given category from the
+     * DB.
+     * 
+     * @param connection
+     *            the connection to the DB
+     * @param title
+     *            the title of the category
+     * @param continueFrom
+     *            the continuation token of a previous part (<tt>null</tt> for
+     *            the first part)
+     * @param limit
+     *            the maximum number of pages to retrieve
+     * 
+     * @return a result object with the part of the page list on success
+     */
+    public PageListResult getPagesInCategory(Connection connection,
+            NormalisedTitle title, String continueFrom, int limit);
+    
     /**
      * Retrieves a list of pages using the given template from the DB.
      * 
@@ -311,6 +331,28 @@ public interface WikiServletDataHandler<Connection> {
     public ValueResult<List<NormalisedTitle>> getPagesLinkingTo(Connection connection,
             String title, final MyNamespace nsObject);
 
+    /**
+     * Retrieves a part of the list of pages linking to the given page from
+     * the DB.
+     * 
+     * @param connection
+     *            the connection to the DB
+     * @param title
+     *            the title of the page
+     * @param nsObject
+     *            the namespace for page title normalisation
+     * @param continueFrom
+     *            the continuation token of a previous part (<tt>null</tt> for
+     *            the first part)
+     * @param limit
+     *            the maximum number of pages to retrieve
+     * 
+     * @return a result object with the part of the page list on success
+     */
+    public PageListResult getPagesLinkingTo(Connection connection,
+            String title, final MyNamespace nsObject, String continueFrom,
+            int limit);
+
     /**
      * Retrieves a list of pages linking to the given page from the DB.
      * 
@@ -21,13 +21,22 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
+import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -39,17 +48,24 @@ import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLReaderFactory;
 
 import de.zib.scalaris.Connection;
+import de.zib.scalaris.ConnectionException;
 import de.zib.scalaris.ConnectionFactory;
 import de.zib.scalaris.ConnectionPool;
 import de.zib.scalaris.NodeDiscovery;
+import de.zib.scalaris.NotFoundException;
 import de.zib.scalaris.TransactionSingleOp;
+import de.zib.scalaris.UnknownException;
 import de.zib.scalaris.examples.wikipedia.Options;
 import de.zib.scalaris.examples.wikipedia.PageHistoryResult;
+import de.zib.scalaris.examples.wikipedia.PageListResult;
 import de.zib.scalaris.examples.wikipedia.RevisionResult;
 import de.zib.scalaris.examples.wikipedia.SavePageResult;
+import de.zib.scalaris.examples.wikipedia.ScalarisDataHandler;
 import de.zib.scalaris.examples.wikipedia.ScalarisDataHandlerNormalised;
 import de.zib.scalaris.examples.wikipedia.ScalarisDataHandlerUnnormalised;
+import de.zib.scalaris.examples.wikipedia.ScalarisOpType;
 import de.zib.scalaris.examples.wikipedia.ValueResult;
+import de.zib.scalaris.examples.wikipedia.bliki.MyNamespace.NamespaceEnum;
 import de.zib.scalaris.examples.wikipedia.data.Contribution;
 import de.zib.scalaris.examples.wikipedia.data.Revision;
 import de.zib.scalaris.examples.wikipedia.data.SiteInfo;
@@ -58,6 +74,8 @@ import de.zib.scalaris.examples.wikipedia.data.xml.WikiDump;
 import de.zib.scalaris.examples.wikipedia.data.xml.WikiDumpHandler;
 import de.zib.scalaris.examples.wikipedia.data.xml.WikiDumpPreparedSQLiteToScalaris;
 import de.zib.scalaris.examples.wikipedia.data.xml.WikiDumpToScalarisHandler;
+import de.zib.scalaris.operations.AddDelOnListOp;
+import de.zib.scalaris.operations.ReadOp;
 import de.zib.tools.CircularByteArrayOutputStream;
 
 /**
@@ -74,6 +92,98 @@ public class WikiServletScalaris extends WikiServlet<Connection> {
     private ConnectionPool cPool;
     protected NodeDiscovery nodeDiscovery;
     private boolean autoImport;
+    
+    /**
+     * Guards {@link #seenPageChanges}, {@link #appliedPageCreations},
+     * {@link #pageChangesAtLoad} and the updates of the existing pages.
+     */
+    private final Object pageChangesLock = new Object();
+    
+    /**
+     * Entries of the changed pages list whose rendered pages and templates
+     * have already been invalidated (including the ones published by this
+     * servlet).
+     */
+    private final Set<String> seenPageChanges = new HashSet<String>();
+    
+    /**
+     * Entries of the changed pages list for created pages which are already
+     * contained in the existing pages.
+     */
+    private final Set<String> appliedPageCreations = new HashSet<String>();
+    
+    /**
+     * Entries of the changed pages list before the list of all pages has been
+     * read for re-creating the existing pages (<tt>null</tt> if unknown).
+     */
+    private Set<String> pageChangesAtLoad = null;
+    
+    /**
+     * Whether {@link #pollChangedPages()} runs periodically (and thus cleans up
+     * {@link #seenPageChanges}).
+     */
+    private boolean pollsPageChanges = false;
+    
+    /**
+     * Serialises re-creations of the existing pages.
+     */
+    private final Object existingPagesUpdateLock = new Object();
+    
+    /**
+     * Number of keys visited in the current compaction of the write buckets,
+     * i.e. its position.
+     */
+    private int compactionPosition = 0;
+    
+    /**
+     * Stage of the compaction of the write buckets, i.e. the global keys
+     * (<tt>0</tt>), the category lists (<tt>1</tt>), the template lists
+     * (<tt>2</tt>) or the back-links of a namespace (<tt>3</tt> and above).
+     */
+    private int compactionStage = 0;
+    
+    /**
+     * Page currently compacted in {@link #compactionStage} (<tt>null</tt> for
+     * the global keys).
+     */
+    private NormalisedTitle compactionTitle = null;
+    
+    /**
+     * Stage to continue an interrupted compaction of the write buckets at.
+     */
+    private int compactionResumeStage = 0;
+    
+    /**
+     * Page to continue an interrupted compaction of the write buckets at
+     * inside {@link #compactionResumeStage} (<tt>null</tt> to start with its
+     * first page). Pages are compacted in the order of their titles so that
+     * pages created or deleted in the meantime do not shift this position.
+     */
+    private String compactionResumeTitle = null;
+    
+    /**
+     * Number of keys whose write buckets have been folded into their read
+     * buckets in the current compaction.
+     */
+    private int compactionCompacted = 0;
+    
+    /**
+     * Number of keys which could not be compacted in the current compaction,
+     * e.g. due to concurrent edits.
+     */
+    private int compactionFailed = 0;
+
+    /**
+     * Operation types of the lists and counters compacted by
+     * {@link #compactWriteCaches()}.
+     */
+    protected static final ScalarisOpType[] COMPACTED_OP_TYPES = {
+            ScalarisOpType.PAGE_LIST, ScalarisOpType.PAGE_COUNT,
+            ScalarisOpType.CATEGORY_PAGE_LIST,
+            ScalarisOpType.CATEGORY_PAGE_COUNT,
+            ScalarisOpType.TEMPLATE_PAGE_LIST,
+            ScalarisOpType.BACKLINK_PAGE_LIST, ScalarisOpType.ARTICLE_COUNT,
+            ScalarisOpType.EDIT_STAT };
 
     /**
      * Default constructor creating the servlet.
@@ -122,6 +232,600 @@ public class WikiServletScalaris extends WikiServlet<Connection> {
             nodeDiscovery = new NodeDiscovery(cPool);
             nodeDiscovery.startWithFixedDelay(Options.getInstance().SCALARIS_NODE_DISCOVERY);
         }
+        final Options options = Options.getInstance();
+        int pollDelay = 0;
+        if (renderedPages != null || templateCache != null) {
+            pollDelay = options.WIKI_RENDER_CACHE_POLL;
+        }
+        if (updatesExistingPages() && options.WIKI_PAGES_CACHE_POLL > 0
+                && (pollDelay <= 0 || options.WIKI_PAGES_CACHE_POLL < pollDelay)) {
+            pollDelay = options.WIKI_PAGES_CACHE_POLL;
+        }
+        if (pollDelay > 0) {
+            pollsPageChanges = true;
+            ScheduledExecutorService ses = Executors.newScheduledThreadPool(1);
+            ses.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    pollChangedPages();
+                }
+            }, pollDelay, pollDelay, TimeUnit.SECONDS);
+        }
+        final int compactDelay = Options.getInstance().WIKI_COMPACT_WRITE_CACHE;
+        if (compactDelay > 0 && hasWriteCaches()) {
+            ScheduledExecutorService ses = Executors.newScheduledThreadPool(1);
+            ses.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    compactWriteCaches();
+                }
+            }, compactDelay, compactDelay, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Checks whether any of the lists and counters compacted by
+     * {@link #compactWriteCaches()} uses write buckets.
+     * 
+     * @return <tt>true</tt> if there is something to compact
+     */
+    protected static boolean hasWriteCaches() {
+        for (ScalarisOpType opType : COMPACTED_OP_TYPES) {
+            if (ScalarisDataHandler.hasWriteCache(opType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Folds the write buckets of all page lists and counters into their read
+     * buckets so that readers only need to merge small write caches.
+     * 
+     * Visits the global page lists and counters first, then the lists of all
+     * existing categories and templates and the back-links of all existing
+     * pages. Each key is compacted in its own transaction at a rate of at most
+     * {@link Options#WIKI_COMPACT_WRITE_CACHE_RATE} keys per second. If the
+     * connection fails, the next compaction continues at the page which was
+     * compacted at this time. Keys which fail otherwise, e.g. due to
+     * concurrent edits, are compacted during the next run.
+     * 
+     * Note: lists of revisions and contributions are not compacted since the
+     * order of their elements matters.
+     */
+    protected synchronized void compactWriteCaches() {
+        Connection conn = getConnection(null);
+        if (conn == null) {
+            return;
+        }
+        final long timeAtStart = System.currentTimeMillis();
+        compactionPosition = 0;
+        compactionCompacted = 0;
+        compactionFailed = 0;
+        try {
+            boolean ok = true;
+            compactionStage = 0;
+            compactionTitle = null;
+            if (compactionResumeStage == 0) {
+                for (NamespaceEnum ns : NamespaceEnum.values()) {
+                    ok = ok && compactWriteCache(conn, ScalarisOpType.PAGE_LIST,
+                            ScalarisDataHandler.getPageListKey(ns.getId()), false)
+                            && compactWriteCache(conn, ScalarisOpType.PAGE_COUNT,
+                                    ScalarisDataHandler.getPageCountKey(ns.getId()), true);
+                }
+                ok = ok && compactWriteCache(conn, ScalarisOpType.ARTICLE_COUNT,
+                                ScalarisDataHandler.getArticleCountKey(), true)
+                        && compactWriteCache(conn, ScalarisOpType.EDIT_STAT,
+                                ScalarisDataHandler.getStatsPageEditsKey(), true);
+            }
+            compactionStage = 1;
+            if (ok && (ScalarisDataHandler.hasWriteCache(ScalarisOpType.CATEGORY_PAGE_LIST)
+                    || ScalarisDataHandler.hasWriteCache(ScalarisOpType.CATEGORY_PAGE_COUNT))) {
+                for (NormalisedTitle title : getCompactionPageList(conn, MyNamespace.CATEGORY_NAMESPACE_KEY)) {
+                    compactionTitle = title;
+                    ok = ok && compactWriteCache(conn, ScalarisOpType.CATEGORY_PAGE_LIST,
+                                    ScalarisDataHandlerNormalised.getCatPageListKey(title), false)
+                            && compactWriteCache(conn, ScalarisOpType.CATEGORY_PAGE_COUNT,
+                                    ScalarisDataHandlerNormalised.getCatPageCountKey(title), true);
+                }
+            }
+            compactionStage = 2;
+            if (ok && ScalarisDataHandler.hasWriteCache(ScalarisOpType.TEMPLATE_PAGE_LIST)) {
+                for (NormalisedTitle title : getCompactionPageList(conn, MyNamespace.TEMPLATE_NAMESPACE_KEY)) {
+                    compactionTitle = title;
+                    ok = ok && compactWriteCache(conn, ScalarisOpType.TEMPLATE_PAGE_LIST,
+                                    ScalarisDataHandlerNormalised.getTplPageListKey(title), false);
+                }
+            }
+            if (ok && Options.getInstance().WIKI_USE_BACKLINKS
+                    && ScalarisDataHandler.hasWriteCache(ScalarisOpType.BACKLINK_PAGE_LIST)) {
+                for (NamespaceEnum ns : NamespaceEnum.values()) {
+                    compactionStage = 3 + ns.ordinal();
+                    for (NormalisedTitle title : getCompactionPageList(conn, ns.getId())) {
+                        compactionTitle = title;
+                        ok = ok && compactWriteCache(conn, ScalarisOpType.BACKLINK_PAGE_LIST,
+                                ScalarisDataHandlerNormalised.getBackLinksPageListKey(title), false);
+                    }
+                }
+            }
+            if (ok) {
+                compactionResumeStage = 0;
+                compactionResumeTitle = null;
+                System.out.println("Compacted the write caches of "
+                        + compactionCompacted + " of " + compactionPosition
+                        + " keys (" + compactionFailed + " failed) in "
+                        + (System.currentTimeMillis() - timeAtStart) + "ms");
+            } else {
+                setCompactionResumePoint();
+                System.err.println("Interrupted compacting the write caches after "
+                        + compactionPosition + " keys (connection failed)");
+            }
+        } catch (InterruptedException e) {
+            setCompactionResumePoint();
+            Thread.currentThread().interrupt();
+        } finally {
+            releaseConnection(null, conn);
+        }
+    }
+
+    /**
+     * Lets the next compaction continue at the page currently compacted.
+     */
+    private void setCompactionResumePoint() {
+        compactionResumeStage = compactionStage;
+        compactionResumeTitle = (compactionTitle == null) ? null : compactionTitle.title;
+    }
+
+    /**
+     * Gets the pages of a namespace whose lists are compacted by
+     * {@link #compactWriteCaches()} in the current stage, sorted by their
+     * titles. If an interrupted compaction is continued, only pages starting
+     * at the one it was interrupted at are returned.
+     * 
+     * @param conn
+     *            the connection to use
+     * @param namespace
+     *            the namespace ID
+     * 
+     * @return the pages or an empty list if reading failed or the stage has
+     *         already been compacted
+     */
+    private List<NormalisedTitle> getCompactionPageList(Connection conn, int namespace) {
+        if (compactionStage < compactionResumeStage) {
+            // already visited before the last compaction was interrupted
+            return new ArrayList<NormalisedTitle>(0);
+        }
+        final ValueResult<List<NormalisedTitle>> result = ScalarisDataHandler
+                .getPageList(namespace, conn);
+        if (result.success) {
+            final String resumeTitle = (compactionStage == compactionResumeStage)
+                    ? compactionResumeTitle : null;
+            final List<NormalisedTitle> pages = new ArrayList<NormalisedTitle>(result.value.size());
+            for (NormalisedTitle title : result.value) {
+                if (resumeTitle == null || title.title.compareTo(resumeTitle) >= 0) {
+                    pages.add(title);
+                }
+            }
+            Collections.sort(pages, new Comparator<NormalisedTitle>() {
+                @Override
+                public int compare(NormalisedTitle o1, NormalisedTitle o2) {
+                    return o1.title.compareTo(o2.title);
+                }
+            });
+            return pages;
+        }
+        System.err.println("Could not read the pages to compact: " + result.message);
+        return new ArrayList<NormalisedTitle>(0);
+    }
+
+    /**
+     * Compacts the write buckets of a single list or counter (if its
+     * optimisation uses write buckets) and throttles the compaction.
+     * 
+     * @param conn
+     *            the connection to use
+     * @param opType
+     *            operation type of the list or counter
+     * @param key
+     *            the key of the list or counter
+     * @param number
+     *            whether the key contains a counter or a list
+     * 
+     * @return <tt>false</tt> if the connection failed, <tt>true</tt>
+     *         otherwise
+     * 
+     * @throws InterruptedException
+     *             if the thread was interrupted while waiting
+     */
+    private boolean compactWriteCache(Connection conn, ScalarisOpType opType,
+            String key, boolean number) throws InterruptedException {
+        if (!ScalarisDataHandler.hasWriteCache(opType)) {
+            return true;
+        }
+        ++compactionPosition;
+        final int rate = Options.getInstance().WIKI_COMPACT_WRITE_CACHE_RATE;
+        if (rate > 0) {
+            Thread.sleep(1000 / rate);
+        }
+        final ValueResult<Integer> result;
+        if (number) {
+            result = ScalarisDataHandler.compactWriteCacheNumber(conn, opType, key);
+        } else {
+            result = ScalarisDataHandler.compactWriteCache(conn, opType, key);
+        }
+        if (result.success) {
+            if (result.value > 0) {
+                ++compactionCompacted;
+            }
+        } else {
+            ++compactionFailed;
+            if (result.connect_failed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Publishes the changed page in the list of changed pages so that other
+     * wiki servlets can invalidate their caches.
+     */
+    @Override
+    protected void onPageChanged(NormalisedTitle title) {
+        super.onPageChanged(title);
+        final String change = createPageChange(title, "");
+        if (change != null) {
+            if (pollsPageChanges) {
+                synchronized (pageChangesLock) {
+                    seenPageChanges.add(change);
+                }
+            }
+            publishPageChange(change);
+        }
+    }
+
+    /**
+     * Publishes the new page in the list of changed pages so that other wiki
+     * servlets can add it to their existing pages and invalidate their
+     * caches.
+     */
+    @Override
+    protected void onPageCreated(NormalisedTitle title) {
+        final String change = createPageChange(title, "+");
+        // note: add the page and remember its entry atomically so that a
+        //       concurrent re-creation of the existing pages does not lose it
+        synchronized (pageChangesLock) {
+            super.onPageCreated(title);
+            if (change != null) {
+                if (pollsPageChanges) {
+                    seenPageChanges.add(change);
+                }
+                if (updatesExistingPages()) {
+                    appliedPageCreations.add(change);
+                }
+            }
+        }
+        if (change != null) {
+            publishPageChange(change);
+        }
+    }
+
+    /**
+     * Gets whether the existing pages are updated incrementally with the
+     * pages created by all wiki servlets.
+     * 
+     * @return whether created pages need to be published and polled
+     */
+    private boolean updatesExistingPages() {
+        return Options.getInstance().WIKI_REBUILD_PAGES_CACHE > 0
+                && existingPages.hasRemove();
+    }
+
+    /**
+     * Creates an entry of the form
+     * <tt>&lt;time&gt;:&lt;tag&gt;&lt;title&gt;</tt> for the list of changed
+     * pages if any cache depends on it.
+     * 
+     * @param title
+     *            the changed page
+     * @param tag
+     *            <tt>+</tt> for new pages or an empty string for other
+     *            changes
+     * 
+     * @return the entry or <tt>null</tt> if it does not need to be published
+     */
+    private String createPageChange(NormalisedTitle title, String tag) {
+        if (renderedPages == null && templateCache == null
+                && !updatesExistingPages()) {
+            return null;
+        }
+        return System.currentTimeMillis() + ":" + tag + title;
+    }
+
+    /**
+     * Adds the given entry to the list of changed pages.
+     * 
+     * @param change
+     *            the entry (see {@link #createPageChange(NormalisedTitle, String)})
+     */
+    private void publishPageChange(String change) {
+        Connection conn = getConnection(null);
+        if (conn == null) {
+            return;
+        }
+        try {
+            final int bucket = (change.hashCode() & Integer.MAX_VALUE)
+                    % ScalarisDataHandler.CHANGED_PAGES_BUCKETS;
+            new TransactionSingleOp(conn).addDelOnList(
+                    ScalarisDataHandler.getChangedPagesKey(bucket),
+                    Arrays.asList(change), new ArrayList<String>(0));
+        } catch (Exception e) {
+            System.err.println("Could not publish page change " + change + ": " + e.getMessage());
+        } finally {
+            releaseConnection(null, conn);
+        }
+    }
+
+    /**
+     * Reads the list of changed pages.
+     * 
+     * @return the entries or <tt>null</tt> if the list could not be read
+     */
+    private List<String> readPageChanges() {
+        Connection conn = getConnection(null);
+        if (conn == null) {
+            return null;
+        }
+        try {
+            final List<String> changes = new ArrayList<String>();
+            for (List<String> bucket : readPageChanges(new TransactionSingleOp(conn))) {
+                changes.addAll(bucket);
+            }
+            return changes;
+        } catch (Exception e) {
+            System.err.println("Could not read changed pages: " + e.getMessage());
+            return null;
+        } finally {
+            releaseConnection(null, conn);
+        }
+    }
+
+    /**
+     * Reads all parts of the list of changed pages with a single request.
+     * 
+     * @param scalaris_single
+     *            the transaction object to use
+     * 
+     * @return the entries of each part (see
+     *         {@link ScalarisDataHandler#getChangedPagesKey(int)})
+     * 
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    private static List<List<String>> readPageChanges(
+            final TransactionSingleOp scalaris_single)
+            throws ConnectionException, UnknownException {
+        final TransactionSingleOp.RequestList requests = new TransactionSingleOp.RequestList();
+        for (int i = 0; i < ScalarisDataHandler.CHANGED_PAGES_BUCKETS; ++i) {
+            requests.addOp(new ReadOp(ScalarisDataHandler.getChangedPagesKey(i)));
+        }
+        final TransactionSingleOp.ResultList results = scalaris_single.req_list(requests);
+        final List<List<String>> changes = new ArrayList<List<String>>(requests.size());
+        for (int i = 0; i < requests.size(); ++i) {
+            try {
+                changes.add(results.processReadAt(i).stringListValue());
+            } catch (NotFoundException e) {
+                changes.add(new ArrayList<String>(0));
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Gets whether an entry of the list of changed pages is for a created
+     * page.
+     */
+    private static boolean isPageCreation(String change) {
+        final int colonIndex = change.indexOf(':');
+        return colonIndex + 1 < change.length() && change.charAt(colonIndex + 1) == '+';
+    }
+
+    /**
+     * Gets the page of an entry of the list of changed pages.
+     * 
+     * @throws RuntimeException
+     *             if the entry is invalid
+     */
+    private static NormalisedTitle getChangedPage(String change) {
+        final int titleIndex = change.indexOf(':') + (isPageCreation(change) ? 2 : 1);
+        return NormalisedTitle.fromNormalised(change.substring(titleIndex));
+    }
+
+    /**
+     * Gets whether an entry of the list of changed pages is not needed any
+     * more, i.e. older than {@link Options#WIKI_RENDER_CACHE_MAX_AGE} (and
+     * {@link Options#WIKI_PAGES_CACHE_MAX_AGE} for created pages). Pages
+     * rendered before have expired anyway.
+     * 
+     * @throws RuntimeException
+     *             if the entry is invalid
+     */
+    private static boolean isOutdated(String change, long now) {
+        final Options options = Options.getInstance();
+        int maxAge = options.WIKI_RENDER_CACHE_MAX_AGE;
+        if (isPageCreation(change)) {
+            maxAge = Math.max(maxAge, options.WIKI_PAGES_CACHE_MAX_AGE);
+        }
+        return Long.parseLong(change.substring(0, change.indexOf(':'))) < now - maxAge * 1000l;
+    }
+
+    /**
+     * Removes all outdated and invalid entries from the given set.
+     */
+    private static void removeOutdated(Set<String> changes, long now) {
+        for (Iterator<String> iter = changes.iterator(); iter.hasNext();) {
+            try {
+                if (isOutdated(iter.next(), now)) {
+                    iter.remove();
+                }
+            } catch (RuntimeException e) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Remembers the entries of the list of changed pages before reading the
+     * list of all pages so that only newer entries need to be applied to the
+     * re-created existing pages, see
+     * {@link #replaceExistingPages(ExistingPagesCache, List)}.
+     */
+    @Override
+    protected void updateExistingPages() {
+        synchronized (existingPagesUpdateLock) {
+            Set<String> changesAtLoad = null;
+            if (updatesExistingPages()) {
+                final List<String> changes = readPageChanges();
+                if (changes != null) {
+                    changesAtLoad = new HashSet<String>(changes);
+                }
+            }
+            synchronized (pageChangesLock) {
+                pageChangesAtLoad = changesAtLoad;
+            }
+            super.updateExistingPages();
+        }
+    }
+
+    /**
+     * Adds pages created after the list of all pages has been read to the
+     * re-created existing pages before replacing the current ones, i.e. the
+     * pages of all entries of the list of changed pages newer than the ones
+     * remembered by {@link #updateExistingPages()} and the pages created by
+     * this servlet. Pages already in the list are not added twice.
+     */
+    @Override
+    protected void replaceExistingPages(ExistingPagesCache cache,
+            List<NormalisedTitle> pages) {
+        if (!updatesExistingPages() || !cache.hasRemove()) {
+            super.replaceExistingPages(cache, pages);
+            return;
+        }
+        final List<String> changes = readPageChanges();
+        synchronized (pageChangesLock) {
+            final Set<String> newer = new HashSet<String>(appliedPageCreations);
+            if (changes != null) {
+                newer.addAll(changes);
+            }
+            if (pageChangesAtLoad != null) {
+                newer.removeAll(pageChangesAtLoad);
+            }
+            final Set<NormalisedTitle> created = new HashSet<NormalisedTitle>();
+            for (String change : newer) {
+                try {
+                    if (isPageCreation(change)) {
+                        created.add(getChangedPage(change));
+                    }
+                } catch (RuntimeException e) {
+                    // invalid entry
+                }
+            }
+            for (NormalisedTitle page : pages) {
+                if (created.isEmpty()) {
+                    break;
+                }
+                created.remove(page);
+            }
+            for (NormalisedTitle page : created) {
+                cache.add(page);
+            }
+            super.replaceExistingPages(cache, pages);
+            // all current entries are contained now
+            // note: if the list could not be read, newer entries may be added
+            //       twice by pollChangedPages() which only leads to false
+            //       positives of a counting bloom filter after removals
+            if (pageChangesAtLoad != null) {
+                newer.addAll(pageChangesAtLoad);
+            }
+            for (String change : newer) {
+                if (isPageCreation(change)) {
+                    appliedPageCreations.add(change);
+                }
+            }
+            removeOutdated(appliedPageCreations, System.currentTimeMillis());
+            pageChangesAtLoad = null;
+        }
+    }
+
+    /**
+     * Applies all pages created by other wiki servlets since the last poll to
+     * the existing pages (if they are updated incrementally), invalidates the
+     * rendered pages and cached templates of all pages changed by them and
+     * removes outdated entries from the list of changed pages (see
+     * {@link #isOutdated(String, long)}).
+     */
+    protected void pollChangedPages() {
+        Connection conn = getConnection(null);
+        if (conn == null) {
+            return;
+        }
+        try {
+            final TransactionSingleOp scalaris_single = new TransactionSingleOp(conn);
+            final List<List<String>> buckets = readPageChanges(scalaris_single);
+            final long now = System.currentTimeMillis();
+            final boolean updateExistingPages = updatesExistingPages();
+            final TransactionSingleOp.RequestList requests = new TransactionSingleOp.RequestList();
+            synchronized (pageChangesLock) {
+                for (int i = 0; i < buckets.size(); ++i) {
+                    final List<String> outdated = new ArrayList<String>();
+                    for (String change : buckets.get(i)) {
+                        try {
+                            if (isOutdated(change, now)) {
+                                outdated.add(change);
+                                continue;
+                            }
+                            final NormalisedTitle title = getChangedPage(change);
+                            if (seenPageChanges.add(change)) {
+                                if (renderedPages != null) {
+                                    renderedPages.invalidate(title);
+                                }
+                                if (templateCache != null) {
+                                    templateCache.invalidate(title);
+                                }
+                            }
+                            if (updateExistingPages && isPageCreation(change)
+                                    && appliedPageCreations.add(change)) {
+                                existingPages.add(title);
+                            }
+                        } catch (RuntimeException e) {
+                            // invalid entry
+                            outdated.add(change);
+                        }
+                    }
+                    if (!outdated.isEmpty()) {
+                        requests.addOp(new AddDelOnListOp(
+                                ScalarisDataHandler.getChangedPagesKey(i),
+                                new ArrayList<String>(0), outdated));
+                    }
+                }
+                removeOutdated(seenPageChanges, now);
+                removeOutdated(appliedPageCreations, now);
+            }
+            if (!requests.isEmpty()) {
+                final TransactionSingleOp.ResultList results = scalaris_single.req_list(requests);
+                for (int i = 0; i < requests.size(); ++i) {
+                    results.processAddDelOnListAt(i);
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Could not poll changed pages: " + e.getMessage());
+        } finally {
+            releaseConnection(null, conn);
+        }
     }
 
     @Override
@@ -168,6 +872,12 @@ public class WikiServletScalaris extends WikiServlet<Connection> {
             scalaris_single = new TransactionSingleOp(conn);
             try {
                 siteinfo = scalaris_single.read("siteinfo").jsonValue(SiteInfo.class);
+                // pack new texts with the current dictionary (older ones are
+                // loaded on demand)
+                ValueResult<Integer> dictResult = ScalarisDataHandler.loadTextDictionaries(conn);
+                if (!dictResult.success) {
+                    System.err.println("Could not load the text dictionaries: " + dictResult.message);
+                }
                 // TODO: fix siteinfo's base url
                 namespace = new MyNamespace(siteinfo);
                 initialized = true;
@@ -453,6 +1163,7 @@ public class WikiServletScalaris extends WikiServlet<Connection> {
         final MyScalarisWikiModel model = new MyScalarisWikiModel(getImagebaseurl(page),
                 getLinkbaseurl(page), connection, namespace);
         model.setExistingPages(existingPages);
+        model.setTemplateCache(templateCache);
         return model;
     }
 
@@ -556,6 +1267,11 @@ public class WikiServletScalaris extends WikiServlet<Connection> {
         return ScalarisDataHandlerNormalised.getPagesInCategory(connection, title);
     }
 
+    @Override
+    public PageListResult getPagesInCategory(Connection connection, NormalisedTitle title, String continueFrom, int limit) {
+        return ScalarisDataHandlerNormalised.getPagesInCategory(connection, title, continueFrom, limit);
+    }
+
     @Override
     public ValueResult<List<NormalisedTitle>> getPagesInTemplate(Connection connection, NormalisedTitle title) {
         return ScalarisDataHandlerNormalised.getPagesInTemplate(connection, title);
@@ -571,6 +1287,11 @@ public class WikiServletScalaris extends WikiServlet<Connection> {
         return ScalarisDataHandlerUnnormalised.getPagesLinkingTo(connection, title, nsObject);
     }
 
+    @Override
+    public PageListResult getPagesLinkingTo(Connection connection, String title, final MyNamespace nsObject, String continueFrom, int limit) {
+        return ScalarisDataHandlerUnnormalised.getPagesLinkingTo(connection, title, nsObject, continueFrom, limit);
+    }
+
     @Override
     public ValueResult<List<Contribution>> getContributions(
             Connection connection, String contributor) {
@@ -130,6 +130,19 @@ public class Page implements Serializable {
         return curRev;
     }
 
+    /**
+     * Creates a copy of this page whose current revision does not contain
+     * the text, i.e. the page's metadata.
+     * 
+     * @return the page's metadata
+     * 
+     * @see Revision#toMetadata()
+     */
+    public Page toMetadata() {
+        return new Page(title, id, redirect, restrictions,
+                (curRev == null) ? null : curRev.toMetadata());
+    }
+
     /**
      * Sets the current revision.
      * 
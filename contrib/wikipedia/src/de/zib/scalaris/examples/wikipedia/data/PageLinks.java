@@ -0,0 +1,113 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris.examples.wikipedia.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import de.zib.scalaris.ErlangValue;
+
+/**
+ * The categories, templates and links extracted from the current revision of
+ * a page.
+ *
+ * Stored alongside the page so that saving a new revision does not need to
+ * render the old one again. All names are stored as found in the text, i.e.
+ * not normalised, in a compact form: a list of three lists of strings (see
+ * {@link #toList()}).
+ *
+ * @author Nico Kruber, kruber@zib.de
+ */
+public class PageLinks {
+    protected final Set<String> categories;
+    protected final Set<String> templates;
+    protected final Set<String> links;
+
+    /**
+     * Creates a new object with the given sets.
+     *
+     * @param categories
+     *            the page's categories (without namespace)
+     * @param templates
+     *            the page's templates (without namespace and magic words)
+     * @param links
+     *            the pages linked to
+     */
+    public PageLinks(Collection<String> categories,
+            Collection<String> templates, Collection<String> links) {
+        this.categories = new HashSet<String>(categories);
+        this.templates = new HashSet<String>(templates);
+        this.links = new HashSet<String>(links);
+    }
+
+    /**
+     * @return the page's categories (without namespace)
+     */
+    public Set<String> getCategories() {
+        return categories;
+    }
+
+    /**
+     * @return the page's templates (without namespace and magic words)
+     */
+    public Set<String> getTemplates() {
+        return templates;
+    }
+
+    /**
+     * @return the pages linked to
+     */
+    public Set<String> getLinks() {
+        return links;
+    }
+
+    /**
+     * Converts the object to the form stored in Scalaris.
+     *
+     * @return a list with the categories, templates and links
+     */
+    public List<List<String>> toList() {
+        final List<List<String>> result = new ArrayList<List<String>>(3);
+        result.add(new ArrayList<String>(categories));
+        result.add(new ArrayList<String>(templates));
+        result.add(new ArrayList<String>(links));
+        return result;
+    }
+
+    /**
+     * Converts a value stored in Scalaris (see {@link #toList()}) back.
+     *
+     * @param value
+     *            the stored value
+     *
+     * @return the page's categories, templates and links
+     *
+     * @throws ClassCastException
+     *             if the value is not in the expected form
+     */
+    public static PageLinks fromErlangValue(ErlangValue value)
+            throws ClassCastException {
+        final List<ErlangValue> lists = value.listValue();
+        if (lists.size() != 3) {
+            throw new ClassCastException("expected 3 lists, got " + lists.size());
+        }
+        return new PageLinks(lists.get(0).stringListValue(),
+                lists.get(1).stringListValue(), lists.get(2).stringListValue());
+    }
+}
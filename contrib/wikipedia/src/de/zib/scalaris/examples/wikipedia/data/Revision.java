@@ -155,6 +155,9 @@ public class Revision implements Serializable {
     /**
      * De-compresses the given text and returns it as a string.
      * 
+     * Besides gzip-compressed texts (see {@link #packText(String)}), this
+     * also supports texts packed by {@link TextCompression}.
+     * 
      * @param text
      *            the compressed text
      * 
@@ -164,6 +167,13 @@ public class Revision implements Serializable {
      *             if de-compressing the text did not work
      */
     protected static String unpackText(byte[] text) throws RuntimeException {
+        if (TextDelta.isDelta(text)) {
+            throw new IllegalStateException(
+                    "delta-encoded text needs to be reconstructed first");
+        }
+        if (TextCompression.isDeflated(text)) {
+            return TextCompression.unpack(text);
+        }
         try {
             ByteArrayOutputStream unpacked = new ByteArrayOutputStream();
             ByteArrayInputStream bis = new ByteArrayInputStream(text);
@@ -204,6 +214,16 @@ public class Revision implements Serializable {
         }
     }
 
+    /**
+     * Creates a copy of this revision without its text (the text of the copy
+     * is empty).
+     * 
+     * @return the revision's metadata
+     */
+    public Revision toMetadata() {
+        return new Revision(id, timestamp, minor, contributor, comment);
+    }
+
     /**
      * Gets whether the change is a minor change or not.
      * 
@@ -265,7 +285,8 @@ public class Revision implements Serializable {
 
     /**
      * @param text
-     *            the (packed) text to set
+     *            the (packed) text to set (gzip-compressed or packed by
+     *            {@link TextCompression})
      */
     public void setPackedText(byte[] text) {
         this.pText = text;
@@ -0,0 +1,363 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris.examples.wikipedia.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses page texts with a raw {@link Deflater} stream using a preset
+ * dictionary trained from wiki texts.
+ *
+ * Packed texts start with a header of three bytes: the format
+ * ({@link #FORMAT_DEFLATE}) and the version of the dictionary used (unsigned,
+ * big endian, <tt>0</tt> for no dictionary). Since texts are never
+ * re-compressed, dictionaries are versioned and all versions still used by
+ * some text need to be registered with {@link #addDictionary(int, byte[])}
+ * before unpacking. New texts are packed with the dictionary set by
+ * {@link #setCurrentVersion(int)}.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ */
+public class TextCompression {
+    /**
+     * Format identifier of texts packed by this class (the first byte of
+     * gzip-compressed texts is <tt>0x1f</tt>).
+     */
+    public static final byte FORMAT_DEFLATE = 0x01;
+
+    /**
+     * Default (maximum) size of a trained dictionary (the maximum window size
+     * of Deflate).
+     */
+    public static final int DEFAULT_DICTIONARY_SIZE = 32 * 1024;
+
+    /**
+     * Maximum number of distinct fragments to count during training before
+     * the ones only seen once are dropped.
+     */
+    protected static final int MAX_TRAINING_FRAGMENTS = 1000000;
+
+    /**
+     * Maximum length of a fragment in a dictionary.
+     */
+    protected static final int MAX_FRAGMENT_LENGTH = 512;
+
+    private static final Map<Integer, byte[]> dictionaries = new ConcurrentHashMap<Integer, byte[]>();
+    private static volatile int currentVersion = 0;
+
+    private TextCompression() {
+    }
+
+    /**
+     * Registers a dictionary.
+     *
+     * @param version
+     *            the dictionary's version (<tt>1..65535</tt>)
+     * @param dictionary
+     *            the dictionary (not empty)
+     */
+    public static void addDictionary(int version, byte[] dictionary) {
+        if (version <= 0 || version > 0xffff) {
+            throw new IllegalArgumentException("invalid dictionary version: " + version);
+        }
+        if (dictionary.length == 0) {
+            throw new IllegalArgumentException("empty dictionary");
+        }
+        dictionaries.put(version, dictionary);
+    }
+
+    /**
+     * Checks whether the dictionary with the given version is registered.
+     *
+     * @param version
+     *            the dictionary's version
+     *
+     * @return <tt>true</tt> if texts using this dictionary can be unpacked
+     */
+    public static boolean hasDictionary(int version) {
+        return version == 0 || dictionaries.containsKey(version);
+    }
+
+    /**
+     * @return the version of the dictionary used to pack new texts
+     *         (<tt>0</tt> if none)
+     */
+    public static int getCurrentVersion() {
+        return currentVersion;
+    }
+
+    /**
+     * Sets the dictionary to pack new texts with.
+     *
+     * @param version
+     *            the version of a registered dictionary (<tt>0</tt> for no
+     *            dictionary)
+     */
+    public static void setCurrentVersion(int version) {
+        if (!hasDictionary(version)) {
+            throw new IllegalArgumentException("unknown dictionary version: " + version);
+        }
+        currentVersion = version;
+    }
+
+    /**
+     * Checks whether the given text has been packed by this class.
+     *
+     * @param packed
+     *            the packed text
+     *
+     * @return <tt>true</tt> for texts packed by this class, <tt>false</tt>
+     *         otherwise, e.g. for gzip-compressed texts
+     */
+    public static boolean isDeflated(byte[] packed) {
+        return packed.length >= 3 && packed[0] == FORMAT_DEFLATE;
+    }
+
+    /**
+     * Gets the version of the dictionary the given text has been packed with.
+     *
+     * @param packed
+     *            the packed text
+     *
+     * @return the dictionary's version (<tt>0</tt> for no dictionary) or
+     *         <tt>-1</tt> if the text has not been packed by this class
+     */
+    public static int getDictionaryVersion(byte[] packed) {
+        if (!isDeflated(packed)) {
+            return -1;
+        }
+        return ((packed[1] & 0xff) << 8) | (packed[2] & 0xff);
+    }
+
+    /**
+     * Compresses the given text with the current dictionary.
+     *
+     * @param text
+     *            the un-compressed text
+     *
+     * @return the compressed text
+     */
+    public static byte[] pack(String text) {
+        return pack(text, currentVersion);
+    }
+
+    /**
+     * Compresses the given text with the given dictionary.
+     *
+     * @param text
+     *            the un-compressed text
+     * @param version
+     *            the version of a registered dictionary (<tt>0</tt> for no
+     *            dictionary)
+     *
+     * @return the compressed text
+     *
+     * @throws IllegalArgumentException
+     *             if the dictionary is unknown
+     */
+    public static byte[] pack(String text, int version) throws IllegalArgumentException {
+        final byte[] dictionary = getDictionary(version);
+        final byte[] input = toUTF8(text);
+        final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(input);
+            deflater.finish();
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream(input.length / 3 + 16);
+            bos.write(FORMAT_DEFLATE);
+            bos.write((version >> 8) & 0xff);
+            bos.write(version & 0xff);
+            final byte[] buf = new byte[4096];
+            while (!deflater.finished()) {
+                final int len = deflater.deflate(buf);
+                bos.write(buf, 0, len);
+            }
+            return bos.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * De-compresses the given text.
+     *
+     * @param packed
+     *            the compressed text (see {@link #isDeflated(byte[])})
+     *
+     * @return the de-compressed text
+     *
+     * @throws IllegalArgumentException
+     *             if the text is not in the expected format or its dictionary
+     *             is unknown
+     * @throws RuntimeException
+     *             if de-compressing the text did not work
+     */
+    public static String unpack(byte[] packed) throws IllegalArgumentException,
+            RuntimeException {
+        final int version = getDictionaryVersion(packed);
+        if (version < 0) {
+            throw new IllegalArgumentException("unknown text format");
+        }
+        final byte[] dictionary = getDictionary(version);
+        final Inflater inflater = new Inflater(true);
+        try {
+            if (dictionary != null) {
+                inflater.setDictionary(dictionary);
+            }
+            // raw inflate needs an extra dummy byte at the end
+            final byte[] input = new byte[packed.length - 2];
+            System.arraycopy(packed, 3, input, 0, packed.length - 3);
+            inflater.setInput(input);
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream(packed.length * 3);
+            final byte[] buf = new byte[4096];
+            while (!inflater.finished()) {
+                final int len = inflater.inflate(buf);
+                if (len == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new RuntimeException("truncated text");
+                }
+                bos.write(buf, 0, len);
+            }
+            return bos.toString("UTF-8");
+        } catch (DataFormatException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] getDictionary(int version) throws IllegalArgumentException {
+        if (version == 0) {
+            return null;
+        }
+        final byte[] dictionary = dictionaries.get(version);
+        if (dictionary == null) {
+            throw new IllegalArgumentException("unknown dictionary version: " + version);
+        }
+        return dictionary;
+    }
+
+    private static byte[] toUTF8(String text) {
+        try {
+            return text.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Trains a dictionary from the given sample texts.
+     *
+     * Uses complete lines and the parameter names of template calls, e.g.
+     * <tt>| birth_date = </tt>, which occur in several texts. Fragments are
+     * chosen by their number of occurrences times their length and the most
+     * valuable ones are put at the end of the dictionary (Deflate references
+     * closer data with fewer bits).
+     *
+     * @param samples
+     *            the (un-compressed) sample texts
+     * @param maxSize
+     *            the maximum size of the dictionary in bytes
+     *
+     * @return the dictionary (may be empty if there are no common fragments)
+     */
+    public static byte[] train(Collection<String> samples, int maxSize) {
+        final Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (String sample : samples) {
+            // count each fragment only once per text
+            final Set<String> fragments = new HashSet<String>();
+            for (String line : sample.split("\n")) {
+                if (line.length() < 4 || line.length() > MAX_FRAGMENT_LENGTH) {
+                    continue;
+                }
+                fragments.add(line + "\n");
+                if (line.startsWith("|")) {
+                    final int eq = line.indexOf('=');
+                    if (eq > 1) {
+                        fragments.add(line.substring(0, eq + 1)
+                                + ((line.length() > eq + 1 && line.charAt(eq + 1) == ' ') ? " " : ""));
+                    }
+                }
+            }
+            for (String fragment : fragments) {
+                final Integer count = counts.get(fragment);
+                counts.put(fragment, (count == null) ? 1 : (count + 1));
+            }
+            if (counts.size() > MAX_TRAINING_FRAGMENTS) {
+                for (Iterator<Integer> iter = counts.values().iterator(); iter.hasNext();) {
+                    if (iter.next() <= 1) {
+                        iter.remove();
+                    }
+                }
+            }
+        }
+
+        final List<Map.Entry<String, Integer>> candidates = new ArrayList<Map.Entry<String, Integer>>();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (entry.getValue() > 1) {
+                candidates.add(entry);
+            }
+        }
+        // most valuable first:
+        Collections.sort(candidates, new Comparator<Map.Entry<String, Integer>>() {
+            @Override
+            public int compare(Map.Entry<String, Integer> o1, Map.Entry<String, Integer> o2) {
+                final long v1 = (long) o1.getValue() * o1.getKey().length();
+                final long v2 = (long) o2.getValue() * o2.getKey().length();
+                if (v1 != v2) {
+                    return (v1 > v2) ? -1 : 1;
+                }
+                return o1.getKey().compareTo(o2.getKey());
+            }
+        });
+        final List<byte[]> chosen = new ArrayList<byte[]>();
+        int size = 0;
+        for (Map.Entry<String, Integer> entry : candidates) {
+            final byte[] fragment = toUTF8(entry.getKey());
+            if (size + fragment.length > maxSize) {
+                continue;
+            }
+            chosen.add(fragment);
+            size += fragment.length;
+        }
+        // ... but most valuable last in the dictionary:
+        final byte[] dictionary = new byte[size];
+        int pos = size;
+        for (byte[] fragment : chosen) {
+            pos -= fragment.length;
+            System.arraycopy(fragment, 0, dictionary, pos, fragment.length);
+        }
+        return dictionary;
+    }
+}
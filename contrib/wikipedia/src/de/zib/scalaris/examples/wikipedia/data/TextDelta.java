@@ -0,0 +1,297 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris.examples.wikipedia.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes the text of a revision as a binary diff against the text of its
+ * previous revision.
+ *
+ * Delta-encoded texts form chains starting at a keyframe, i.e. a revision
+ * with a full text. Every delta contains the ids of all revisions of its
+ * chain (keyframe first, up to its previous revision) so that the texts of
+ * all of them can be read at once. A delta-encoded text starts with
+ * {@link #FORMAT_DELTA}, followed by the number of ids in the chain and the
+ * ids themselves (as variable-length integers) and the compressed copy and
+ * insert operations transforming the previous text into the new one.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ */
+public class TextDelta {
+    /**
+     * Format identifier of delta-encoded texts (see
+     * {@link TextCompression#FORMAT_DEFLATE}).
+     */
+    public static final byte FORMAT_DELTA = 0x02;
+
+    /**
+     * Size of the blocks of the previous text used to find matches.
+     */
+    protected static final int BLOCK_SIZE = 16;
+
+    private static final int OP_COPY = 0;
+    private static final int OP_INSERT = 1;
+
+    private TextDelta() {
+    }
+
+    /**
+     * Checks whether the given text is delta-encoded.
+     *
+     * @param packed
+     *            the packed text
+     *
+     * @return <tt>true</tt> for delta-encoded texts, <tt>false</tt> otherwise
+     */
+    public static boolean isDelta(byte[] packed) {
+        return packed.length >= 2 && packed[0] == FORMAT_DELTA;
+    }
+
+    /**
+     * Creates a delta-encoded text.
+     *
+     * @param chain
+     *            ids of the revisions needed to reconstruct the previous
+     *            text (the keyframe first, the previous revision last)
+     * @param prevText
+     *            the (un-compressed) text of the previous revision
+     * @param text
+     *            the (un-compressed) text to encode
+     *
+     * @return the delta-encoded text
+     */
+    public static byte[] encode(List<Integer> chain, String prevText,
+            String text) {
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        header.write(FORMAT_DELTA);
+        writeVarInt(header, chain.size());
+        for (int id : chain) {
+            writeVarInt(header, id);
+        }
+        final byte[] ops = diff(toUTF8(prevText), toUTF8(text));
+
+        final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setInput(ops);
+            deflater.finish();
+            final byte[] buf = new byte[4096];
+            while (!deflater.finished()) {
+                final int len = deflater.deflate(buf);
+                header.write(buf, 0, len);
+            }
+        } finally {
+            deflater.end();
+        }
+        return header.toByteArray();
+    }
+
+    /**
+     * Gets the ids of the revisions needed to reconstruct the previous text
+     * of a delta-encoded text.
+     *
+     * @param packed
+     *            the delta-encoded text
+     *
+     * @return revision ids (the keyframe first, the previous revision last)
+     */
+    public static List<Integer> getChain(byte[] packed) {
+        final int[] pos = {1};
+        final int count = readVarInt(packed, pos);
+        final List<Integer> chain = new ArrayList<Integer>(count);
+        for (int i = 0; i < count; ++i) {
+            chain.add(readVarInt(packed, pos));
+        }
+        return chain;
+    }
+
+    /**
+     * Reconstructs a text from the text of its previous revision.
+     *
+     * @param prevText
+     *            the (un-compressed) text of the previous revision
+     * @param packed
+     *            the delta-encoded text
+     *
+     * @return the (un-compressed) text
+     *
+     * @throws RuntimeException
+     *             if the delta is invalid
+     */
+    public static String decode(String prevText, byte[] packed)
+            throws RuntimeException {
+        final int[] pos = {1};
+        final int count = readVarInt(packed, pos);
+        for (int i = 0; i < count; ++i) {
+            readVarInt(packed, pos);
+        }
+
+        final Inflater inflater = new Inflater(true);
+        final byte[] ops;
+        try {
+            // raw inflate needs an extra dummy byte at the end
+            inflater.setInput(Arrays.copyOfRange(packed, pos[0], packed.length + 1));
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream(packed.length * 3);
+            final byte[] buf = new byte[4096];
+            while (!inflater.finished()) {
+                final int len = inflater.inflate(buf);
+                if (len == 0 && inflater.needsInput()) {
+                    throw new RuntimeException("truncated delta");
+                }
+                bos.write(buf, 0, len);
+            }
+            ops = bos.toByteArray();
+        } catch (DataFormatException e) {
+            throw new RuntimeException(e);
+        } finally {
+            inflater.end();
+        }
+
+        final byte[] prev = toUTF8(prevText);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(prev.length + ops.length);
+        pos[0] = 0;
+        try {
+            while (pos[0] < ops.length) {
+                final int op = readVarInt(ops, pos);
+                final int len = op >>> 1;
+                if ((op & 1) == OP_COPY) {
+                    final int offset = readVarInt(ops, pos);
+                    out.write(prev, offset, len);
+                } else {
+                    out.write(ops, pos[0], len);
+                    pos[0] += len;
+                }
+            }
+            return out.toString("UTF-8");
+        } catch (IndexOutOfBoundsException e) {
+            throw new RuntimeException("invalid delta", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Creates copy and insert operations transforming <tt>prev</tt> into
+     * <tt>cur</tt> by greedily extending matches of blocks of
+     * <tt>prev</tt>.
+     */
+    private static byte[] diff(byte[] prev, byte[] cur) {
+        // hash table of block positions in prev
+        int tableSize = 16;
+        while (tableSize < 2 * (prev.length / BLOCK_SIZE)) {
+            tableSize <<= 1;
+        }
+        final int[] table = new int[tableSize];
+        Arrays.fill(table, -1);
+        for (int p = 0; p + BLOCK_SIZE <= prev.length; p += BLOCK_SIZE) {
+            table[hash(prev, p) & (tableSize - 1)] = p;
+        }
+
+        final ByteArrayOutputStream ops = new ByteArrayOutputStream();
+        int literalStart = 0;
+        int i = 0;
+        while (i + BLOCK_SIZE <= cur.length) {
+            final int p = table[hash(cur, i) & (tableSize - 1)];
+            if (p < 0 || !regionMatches(prev, p, cur, i, BLOCK_SIZE)) {
+                ++i;
+                continue;
+            }
+            // extend the match in both directions
+            int start = i;
+            int prevStart = p;
+            while (start > literalStart && prevStart > 0
+                    && cur[start - 1] == prev[prevStart - 1]) {
+                --start;
+                --prevStart;
+            }
+            int end = i + BLOCK_SIZE;
+            int prevEnd = p + BLOCK_SIZE;
+            while (end < cur.length && prevEnd < prev.length
+                    && cur[end] == prev[prevEnd]) {
+                ++end;
+                ++prevEnd;
+            }
+            writeInsert(ops, cur, literalStart, start);
+            writeVarInt(ops, ((end - start) << 1) | OP_COPY);
+            writeVarInt(ops, prevStart);
+            i = end;
+            literalStart = end;
+        }
+        writeInsert(ops, cur, literalStart, cur.length);
+        return ops.toByteArray();
+    }
+
+    private static void writeInsert(ByteArrayOutputStream ops, byte[] cur,
+            int from, int to) {
+        if (to > from) {
+            writeVarInt(ops, ((to - from) << 1) | OP_INSERT);
+            ops.write(cur, from, to - from);
+        }
+    }
+
+    private static int hash(byte[] data, int pos) {
+        int h = 0;
+        for (int i = pos; i < pos + BLOCK_SIZE; ++i) {
+            h = 31 * h + data[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean regionMatches(byte[] a, int aPos, byte[] b,
+            int bPos, int len) {
+        for (int i = 0; i < len; ++i) {
+            if (a[aPos + i] != b[bPos + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(byte[] data, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[pos[0]++];
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static byte[] toUTF8(String text) {
+        try {
+            return text.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
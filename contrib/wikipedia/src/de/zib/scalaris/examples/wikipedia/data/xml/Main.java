@@ -31,6 +31,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
@@ -44,9 +45,16 @@ import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLReaderFactory;
 
+import de.zib.scalaris.Connection;
+import de.zib.scalaris.ConnectionException;
+import de.zib.scalaris.ConnectionFactory;
 import de.zib.scalaris.examples.wikipedia.Options;
+import de.zib.scalaris.examples.wikipedia.ScalarisDataHandler;
+import de.zib.scalaris.examples.wikipedia.ScalarisDataHandlerNormalised;
+import de.zib.scalaris.examples.wikipedia.ValueResult;
 import de.zib.scalaris.examples.wikipedia.bliki.NormalisedTitle;
 import de.zib.scalaris.examples.wikipedia.data.Revision;
+import de.zib.scalaris.examples.wikipedia.data.TextCompression;
 import de.zib.scalaris.examples.wikipedia.data.xml.WikiDumpHandler.ReportAtShutDown;
 
 /**
@@ -96,6 +104,10 @@ public class Main {
                     doDumpdbAddlinks(filename, Arrays.copyOfRange(args, 2, args.length));
                 } else if (args[1].equals("dumpdb-filter")) {
                     doDumpdbFilter(filename, Arrays.copyOfRange(args, 2, args.length));
+                } else if (args[1].equals("train-dict")) {
+                    doTrainDict(filename, Arrays.copyOfRange(args, 2, args.length));
+                } else if (args[1].equals("migrate-text")) {
+                    doMigrateText(Arrays.copyOfRange(args, 2, args.length));
                 }
             }
         } catch (SAXException e) {
@@ -310,7 +322,7 @@ public class Main {
         Options dbWriteOptions = new Options();
         if (args.length > i) {
             dbWriteOptionsStr = args[i];
-            Options.parseOptions(dbWriteOptions, null, null, null, null, null, null, null, null, dbWriteOptionsStr, null, null);
+            Options.parseOptions(dbWriteOptions, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, dbWriteOptionsStr, null, null, null, null);
         } else {
             System.err.println("need a new optimisation scheme for convert; arguments given: " + Arrays.toString(args));
             System.exit(-1);
@@ -361,6 +373,150 @@ public class Main {
         exitCheckHandler(handler);
     }
 
+    /**
+     * Trains a text dictionary from the pages in the Wikipedia XML dump from
+     * the given file and stores it in Scalaris as the new current dictionary.
+     * 
+     * @param filename
+     * @param args
+     * 
+     * @throws RuntimeException
+     * @throws IOException
+     * @throws SAXException
+     * @throws FileNotFoundException
+     */
+    private static void doTrainDict(String filename, String[] args)
+            throws RuntimeException, IOException, SAXException,
+            FileNotFoundException {
+        int i = 0;
+        int maxPages = 10000;
+        if (args.length > i) {
+            try {
+                maxPages = Integer.parseInt(args[i]);
+            } catch (NumberFormatException e) {
+                System.err.println("no number: " + args[i]);
+                System.exit(-1);
+            }
+        }
+        ++i;
+        int dictSize = TextCompression.DEFAULT_DICTIONARY_SIZE;
+        if (args.length > i) {
+            try {
+                dictSize = Integer.parseInt(args[i]);
+            } catch (NumberFormatException e) {
+                System.err.println("no number: " + args[i]);
+                System.exit(-1);
+            }
+        }
+        ++i;
+        
+        WikiDumpTextDictionaryHandler handler = new WikiDumpTextDictionaryHandler(blacklist, maxPages);
+        XMLReader reader = XMLReaderFactory.createXMLReader();
+        handler.setUp();
+        reader.setContentHandler(handler);
+        try {
+            for (InputSource file : getFileReader(filename)) {
+                reader.parse(file);
+            }
+        } catch (SAXParsingInterruptedException e) {
+            // enough pages collected
+        }
+        handler.tearDown();
+        
+        byte[] dictionary = handler.train(dictSize);
+        if (dictionary.length == 0) {
+            System.err.println("no common text fragments found");
+            System.exit(-1);
+        }
+        Connection connection = null;
+        try {
+            connection = ConnectionFactory.getInstance().createConnection("wiki_import", true);
+            ValueResult<Integer> result = ScalarisDataHandler.storeTextDictionary(connection, dictionary);
+            if (!result.success) {
+                System.err.println(result.message);
+                System.exit(-1);
+            }
+            WikiDumpHandler.println(System.out, "stored text dictionary version "
+                    + result.value + " (" + dictionary.length + " bytes)");
+            long gzipSize = 0l;
+            long packedSize = 0l;
+            Revision rev = new Revision();
+            for (String text : handler.getSamples()) {
+                rev.setUnpackedText(text);
+                gzipSize += rev.packedText().length;
+                packedSize += TextCompression.pack(text).length;
+            }
+            WikiDumpHandler.println(System.out, "size of the sample texts: "
+                    + gzipSize + " bytes (gzip), " + packedSize
+                    + " bytes (dictionary)");
+        } catch (ConnectionException e) {
+            System.err.println("Connection to Scalaris failed: " + e.getMessage());
+            System.exit(-1);
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Re-packs the texts of all pages in Scalaris with the current text
+     * dictionary (and converts pages storing their text inside the page
+     * object).
+     * 
+     * @param args
+     * 
+     * @throws RuntimeException
+     */
+    private static void doMigrateText(String[] args) throws RuntimeException {
+        Connection connection = null;
+        try {
+            connection = ConnectionFactory.getInstance().createConnection("wiki_import", true);
+            ValueResult<Integer> dictResult = ScalarisDataHandler.loadTextDictionaries(connection);
+            if (!dictResult.success) {
+                System.err.println(dictResult.message);
+                System.exit(-1);
+            }
+            ValueResult<List<NormalisedTitle>> pageList = ScalarisDataHandler.getPageList(connection);
+            if (!pageList.success) {
+                System.err.println(pageList.message);
+                System.exit(-1);
+            }
+            WikiDumpHandler.println(System.out, "migrating " + pageList.value.size()
+                    + " pages to text dictionary version " + dictResult.value);
+            int migrated = 0;
+            int failed = 0;
+            for (NormalisedTitle title : pageList.value) {
+                ValueResult<Boolean> result = null;
+                // retry if a concurrent edit aborted the migration
+                for (int retry = 0; retry < 3; ++retry) {
+                    result = ScalarisDataHandlerNormalised.migratePageText(connection, title);
+                    if (result.success || result.connect_failed) {
+                        break;
+                    }
+                }
+                if (!result.success) {
+                    System.err.println(result.message);
+                    ++failed;
+                } else if (result.value) {
+                    ++migrated;
+                }
+            }
+            WikiDumpHandler.println(System.out, "migrated pages: " + migrated
+                    + ", failed: " + failed);
+            if (failed > 0) {
+                System.exit(-1);
+            }
+        } catch (ConnectionException e) {
+            System.err.println("Connection to Scalaris failed: " + e.getMessage());
+            System.exit(-1);
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+
     /**
      * Filters all pages in the Wikipedia XML2DB dump from the given file and
      * creates a list of page names belonging to certain categories.
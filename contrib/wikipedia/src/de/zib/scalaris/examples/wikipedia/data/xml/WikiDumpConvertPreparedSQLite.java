@@ -537,6 +537,8 @@ public class WikiDumpConvertPreparedSQLite implements WikiDump {
         assert ScalarisDataHandler.getPageCountKey(0).equals("pages:0:count");
         assert ScalarisDataHandlerUnnormalised.getRevKey("foobar", 0, new MyNamespace()).equals("foobar:rev:0");
         assert ScalarisDataHandlerUnnormalised.getPageKey("foobar", new MyNamespace()).equals("foobar:page");
+        assert ScalarisDataHandlerUnnormalised.getPageTextKey("foobar", new MyNamespace()).equals("foobar:text");
+        assert ScalarisDataHandlerUnnormalised.getPageLinksKey("foobar", new MyNamespace()).equals("foobar:links");
         assert ScalarisDataHandlerUnnormalised.getRevListKey("foobar", new MyNamespace()).equals("foobar:revs");
         assert ScalarisDataHandlerUnnormalised.getCatPageListKey("foobar", new MyNamespace()).equals("foobar:cpages");
         assert ScalarisDataHandlerUnnormalised.getCatPageCountKey("foobar", new MyNamespace()).equals("foobar:cpages:count");
@@ -549,6 +551,8 @@ public class WikiDumpConvertPreparedSQLite implements WikiDump {
     protected static final Pattern pageCountPattern = Pattern.compile("^pages:([+-]?[0-9]+):count$", Pattern.DOTALL);
     protected static final Pattern revPattern = Pattern.compile("^(.*):rev:([0-9]+)$", Pattern.DOTALL);
     protected static final Pattern pagePattern = Pattern.compile("^(.*):page$", Pattern.DOTALL);
+    protected static final Pattern pageTextPattern = Pattern.compile("^(.*):text$", Pattern.DOTALL);
+    protected static final Pattern pageLinksPattern = Pattern.compile("^(.*):links$", Pattern.DOTALL);
     protected static final Pattern revListPattern = Pattern.compile("^(.*):revs$", Pattern.DOTALL);
     protected static final Pattern catPageListPattern = Pattern.compile("^(.*):cpages$", Pattern.DOTALL);
     protected static final Pattern catPageCountPattern = Pattern.compile("^(.*):cpages:count$", Pattern.DOTALL);
@@ -679,6 +683,8 @@ public class WikiDumpConvertPreparedSQLite implements WikiDump {
         final Matcher pageCountMatcher = pageCountPattern.matcher(key);
         final Matcher revMatcher = revPattern.matcher(key);
         final Matcher pageMatcher = pagePattern.matcher(key);
+        final Matcher pageTextMatcher = pageTextPattern.matcher(key);
+        final Matcher pageLinksMatcher = pageLinksPattern.matcher(key);
         final Matcher revListMatcher = revListPattern.matcher(key);
         final Matcher catPageListMatcher = catPageListPattern.matcher(key);
         final Matcher catPageCountMatcher = catPageCountPattern.matcher(key);
@@ -703,7 +709,8 @@ public class WikiDumpConvertPreparedSQLite implements WikiDump {
             convOp.listOrCount = ListOrCountOp.COUNTER;
         } else if (revMatcher.matches()) {
             opType = ScalarisOpType.REVISION;
-        } else if (pageMatcher.matches()) {
+        } else if (pageMatcher.matches() || pageTextMatcher.matches()
+                || pageLinksMatcher.matches()) {
             opType = ScalarisOpType.PAGE;
         } else if (revListMatcher.matches()) {
             convOp.countKey = null;
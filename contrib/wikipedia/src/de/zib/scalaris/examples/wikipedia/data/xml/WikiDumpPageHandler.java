@@ -12,6 +12,7 @@ import de.zib.scalaris.examples.wikipedia.bliki.MyNamespace.NamespaceEnum;
 import de.zib.scalaris.examples.wikipedia.bliki.MyWikiModel;
 import de.zib.scalaris.examples.wikipedia.bliki.NormalisedTitle;
 import de.zib.scalaris.examples.wikipedia.data.Page;
+import de.zib.scalaris.examples.wikipedia.data.PageLinks;
 import de.zib.scalaris.examples.wikipedia.data.Revision;
 import de.zib.scalaris.examples.wikipedia.data.ShortRevision;
 import de.zib.scalaris.examples.wikipedia.data.SiteInfo;
@@ -125,6 +126,8 @@ public abstract class WikiDumpPageHandler extends WikiDumpHandler {
 
             assert(wikiModel != null);
             final NormalisedTitle normTitle = wikiModel.normalisePageTitle(page.getTitle());
+            PageLinks pageLinks = new PageLinks(new ArrayList<String>(0),
+                    new ArrayList<String>(0), new ArrayList<String>(0));
             if (!revisions.isEmpty()) {
                 wikiModel.setUp();
                 wikiModel.setNamespaceName(wikiModel.getNamespace().getNamespaceByNumber(normTitle.namespace));
@@ -150,10 +153,12 @@ public abstract class WikiDumpPageHandler extends WikiDumpHandler {
                         .getLinks(), wikiModel.getCategories().keySet())) {
                     ++articleCount;
                 }
+                pageLinks = new PageLinks(wikiModel.getCategories().keySet(),
+                        wikiModel.getTemplatesNoMagicWords(), wikiModel.getLinks());
                 wikiModel.tearDown();
             }
     
-            doExport(page, revisions, revisions_short, normTitle);
+            doExport(page, revisions, revisions_short, pageLinks, normTitle);
         }
         if ((pageCount % UPDATE_PAGELIST_EVERY) == 0) {
             println("processed pages: " + pageCount);
@@ -163,7 +168,8 @@ public abstract class WikiDumpPageHandler extends WikiDumpHandler {
     abstract protected void doExport(SiteInfo siteInfo);
 
     abstract protected void doExport(Page page, List<Revision> revisions,
-            List<ShortRevision> revisions_short, NormalisedTitle title);
+            List<ShortRevision> revisions_short, PageLinks pageLinks,
+            NormalisedTitle title);
 
     /**
      * Provides a comparator for sorting {@link Revision} objects by their IDs.
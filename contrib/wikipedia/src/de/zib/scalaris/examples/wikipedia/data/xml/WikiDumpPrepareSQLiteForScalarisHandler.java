@@ -34,15 +34,18 @@ import com.ericsson.otp.erlang.OtpErlangObject;
 
 import de.zib.scalaris.CommonErlangObjects;
 import de.zib.scalaris.ErlangValue;
+import de.zib.scalaris.examples.wikipedia.Options;
 import de.zib.scalaris.examples.wikipedia.SQLiteDataHandler;
 import de.zib.scalaris.examples.wikipedia.ScalarisDataHandler;
 import de.zib.scalaris.examples.wikipedia.ScalarisDataHandlerNormalised;
 import de.zib.scalaris.examples.wikipedia.bliki.MyNamespace.NamespaceEnum;
 import de.zib.scalaris.examples.wikipedia.bliki.NormalisedTitle;
 import de.zib.scalaris.examples.wikipedia.data.Page;
+import de.zib.scalaris.examples.wikipedia.data.PageLinks;
 import de.zib.scalaris.examples.wikipedia.data.Revision;
 import de.zib.scalaris.examples.wikipedia.data.ShortRevision;
 import de.zib.scalaris.examples.wikipedia.data.SiteInfo;
+import de.zib.scalaris.examples.wikipedia.data.TextCompression;
 import de.zib.tools.MultiHashMap;
 
 /**
@@ -283,20 +286,37 @@ public class WikiDumpPrepareSQLiteForScalarisHandler extends WikiDumpPageHandler
 
     @Override
     protected void doExport(Page page, List<Revision> revisions,
-            List<ShortRevision> revisions_short, NormalisedTitle title)
+            List<ShortRevision> revisions_short, PageLinks pageLinks,
+            NormalisedTitle title)
             throws UnsupportedOperationException {
-        for (Revision rev : revisions) {
-            if (rev.getId() != page.getCurRev().getId()) {
+        final int keyframeInterval = Options.getInstance().WIKI_REVISION_KEYFRAME_INTERVAL;
+        if (keyframeInterval > 0) {
+            // note: includes the current revision (for the next diff)
+            for (Revision rev : ScalarisDataHandlerNormalised.toDeltaRevisions(revisions, keyframeInterval)) {
                 addSQLiteJob(new SQLiteWriteObjectJob<Revision>(
                         ScalarisDataHandlerNormalised.getRevKey(title,
                                 rev.getId()), rev, stWrite));
             }
+        } else {
+            for (Revision rev : revisions) {
+                if (rev.getId() != page.getCurRev().getId()) {
+                    addSQLiteJob(new SQLiteWriteObjectJob<Revision>(
+                            ScalarisDataHandlerNormalised.getRevKey(title,
+                                    rev.getId()), rev, stWrite));
+                }
+            }
         }
         addSQLiteJob(new SQLiteWriteObjectJob<List<ShortRevision>>(
                 ScalarisDataHandlerNormalised.getRevListKey(title),
                 revisions_short, stWrite));
         addSQLiteJob(new SQLiteWriteObjectJob<Page>(
-                ScalarisDataHandlerNormalised.getPageKey(title), page, stWrite));
+                ScalarisDataHandlerNormalised.getPageKey(title), page.toMetadata(), stWrite));
+        addSQLiteJob(new SQLiteWriteObjectJob<byte[]>(
+                ScalarisDataHandlerNormalised.getPageTextKey(title),
+                TextCompression.pack(page.getCurRev().unpackedText()), stWrite));
+        addSQLiteJob(new SQLiteWriteObjectJob<List<List<String>>>(
+                ScalarisDataHandlerNormalised.getPageLinksKey(title),
+                pageLinks.toList(), stWrite));
 
         // note: do not normalise page titles (this will be done later)
         newPages.get(NamespaceEnum.fromId(title.namespace)).add(title);
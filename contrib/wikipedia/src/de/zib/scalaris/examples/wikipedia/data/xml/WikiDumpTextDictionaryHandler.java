@@ -0,0 +1,116 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris.examples.wikipedia.data.xml;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import de.zib.scalaris.examples.wikipedia.data.Page;
+import de.zib.scalaris.examples.wikipedia.data.TextCompression;
+
+/**
+ * Provides abilities to read an xml wiki dump file and train a text
+ * dictionary (see {@link TextCompression}) from the current revisions of its
+ * first pages.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ */
+public class WikiDumpTextDictionaryHandler extends WikiDumpHandler {
+    protected final int maxPages;
+    protected final List<String> samples;
+
+    /**
+     * Sets up a SAX XmlHandler collecting the texts of the first pages
+     * except the ones in a blacklist.
+     *
+     * @param blacklist
+     *            a number of page titles to ignore
+     * @param maxPages
+     *            the number of pages to collect (parsing stops afterwards)
+     */
+    public WikiDumpTextDictionaryHandler(Set<String> blacklist, int maxPages) {
+        super(blacklist, null, 1, null, null);
+        this.maxPages = maxPages;
+        this.samples = new ArrayList<String>(maxPages);
+    }
+
+    /**
+     * Exports the given siteinfo (nothing to do here).
+     *
+     * @param siteinfo_xml
+     *            the siteinfo to export
+     */
+    @Override
+    protected void export(XmlSiteInfo siteinfo_xml) {
+    }
+
+    /**
+     * Collects the text of the given page's current revision.
+     *
+     * @param page_xml
+     *            the page object extracted from XML
+     */
+    @Override
+    protected void export(XmlPage page_xml) {
+        Page page = page_xml.getPage();
+        if (page.getCurRev() != null && samples.size() < maxPages) {
+            samples.add(page.getCurRev().unpackedText());
+            ++pageCount;
+        }
+        if (samples.size() >= maxPages) {
+            stopParsing();
+        }
+    }
+
+    /**
+     * Trains a dictionary from the collected texts.
+     *
+     * @param maxSize
+     *            the maximum size of the dictionary in bytes
+     *
+     * @return the dictionary
+     */
+    public byte[] train(int maxSize) {
+        return TextCompression.train(samples, maxSize);
+    }
+
+    /**
+     * @return the collected texts
+     */
+    public List<String> getSamples() {
+        return samples;
+    }
+
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.examples.wikipedia.data.xml.WikiDumpHandler#setUp()
+     */
+    @Override
+    public void setUp() {
+        super.setUp();
+        println("Collecting texts for a dictionary from the first " + maxPages + " pages ...");
+        importStart();
+    }
+
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.examples.wikipedia.data.xml.WikiDumpHandler#tearDown()
+     */
+    @Override
+    public void tearDown() {
+        super.tearDown();
+        importEnd();
+    }
+}
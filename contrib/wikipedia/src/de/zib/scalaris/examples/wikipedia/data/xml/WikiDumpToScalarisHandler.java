@@ -32,6 +32,7 @@ import de.zib.scalaris.ConnectionFactory;
 import de.zib.scalaris.Transaction;
 import de.zib.scalaris.TransactionSingleOp;
 import de.zib.scalaris.UnknownException;
+import de.zib.scalaris.examples.wikipedia.Options;
 import de.zib.scalaris.examples.wikipedia.ScalarisDataHandler;
 import de.zib.scalaris.examples.wikipedia.ScalarisDataHandlerNormalised;
 import de.zib.scalaris.examples.wikipedia.ScalarisDataHandlerUnnormalised;
@@ -40,9 +41,11 @@ import de.zib.scalaris.examples.wikipedia.ValueResult;
 import de.zib.scalaris.examples.wikipedia.bliki.MyNamespace.NamespaceEnum;
 import de.zib.scalaris.examples.wikipedia.bliki.NormalisedTitle;
 import de.zib.scalaris.examples.wikipedia.data.Page;
+import de.zib.scalaris.examples.wikipedia.data.PageLinks;
 import de.zib.scalaris.examples.wikipedia.data.Revision;
 import de.zib.scalaris.examples.wikipedia.data.ShortRevision;
 import de.zib.scalaris.examples.wikipedia.data.SiteInfo;
+import de.zib.scalaris.examples.wikipedia.data.TextCompression;
 import de.zib.scalaris.operations.WriteOp;
 
 /**
@@ -134,6 +137,14 @@ public class WikiDumpToScalarisHandler extends WikiDumpPageHandler {
      */
     private void init(ConnectionFactory cFactory) throws RuntimeException {
         try {
+            // pack texts with the current dictionary:
+            Connection dictConnection = cFactory.createConnection("wiki_import", true);
+            ValueResult<Integer> dictResult = ScalarisDataHandler.loadTextDictionaries(dictConnection);
+            dictConnection.close();
+            if (!dictResult.success) {
+                error("Loading the text dictionaries failed: " + dictResult.message);
+                throw new RuntimeException(dictResult.message);
+            }
             for (int i = 0; i < MAX_SCALARIS_CONNECTIONS; ++i) {
                 Connection connection = cFactory.createConnection(
                         "wiki_import", true);
@@ -200,19 +211,31 @@ public class WikiDumpToScalarisHandler extends WikiDumpPageHandler {
     
     @Override
     protected void doExport(Page page, List<Revision> revisions,
-            List<ShortRevision> revisions_short, NormalisedTitle title)
+            List<ShortRevision> revisions_short, PageLinks pageLinks,
+            NormalisedTitle title)
             throws UnsupportedOperationException {
         // do not make the translog too full -> write revisions beforehand,
         // ignore the (rest of the) page if a failure occured
         TransactionSingleOp.RequestList requests = new TransactionSingleOp.RequestList();
-        for (Revision rev : revisions) {
-            if (rev.getId() != page.getCurRev().getId()) {
+        final int keyframeInterval = Options.getInstance().WIKI_REVISION_KEYFRAME_INTERVAL;
+        if (keyframeInterval > 0) {
+            // note: includes the current revision (for the next diff)
+            for (Revision rev : ScalarisDataHandlerNormalised.toDeltaRevisions(revisions, keyframeInterval)) {
                 String key = ScalarisDataHandlerUnnormalised.getRevKey(page.getTitle(), rev.getId(), wikiModel.getNamespace());
                 requests.addOp(new WriteOp(key, rev));
             }
+        } else {
+            for (Revision rev : revisions) {
+                if (rev.getId() != page.getCurRev().getId()) {
+                    String key = ScalarisDataHandlerUnnormalised.getRevKey(page.getTitle(), rev.getId(), wikiModel.getNamespace());
+                    requests.addOp(new WriteOp(key, rev));
+                }
+            }
         }
         requests.addOp(new WriteOp(ScalarisDataHandlerUnnormalised.getRevListKey(page.getTitle(), wikiModel.getNamespace()), revisions_short));
-        requests.addOp(new WriteOp(ScalarisDataHandlerUnnormalised.getPageKey(page.getTitle(), wikiModel.getNamespace()), page));
+        requests.addOp(new WriteOp(ScalarisDataHandlerUnnormalised.getPageKey(page.getTitle(), wikiModel.getNamespace()), page.toMetadata()));
+        requests.addOp(new WriteOp(ScalarisDataHandlerUnnormalised.getPageTextKey(page.getTitle(), wikiModel.getNamespace()), TextCompression.pack(page.getCurRev().unpackedText())));
+        requests.addOp(new WriteOp(ScalarisDataHandlerUnnormalised.getPageLinksKey(page.getTitle(), wikiModel.getNamespace()), pageLinks.toList()));
         Runnable worker = new MyScalarisSingleRunnable(this, requests,
                 scalaris_single, "revisions and page of " + page.getTitle());
         executor.execute(worker);
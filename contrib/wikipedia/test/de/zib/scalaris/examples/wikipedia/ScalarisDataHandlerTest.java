@@ -0,0 +1,223 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris.examples.wikipedia;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.zib.scalaris.Connection;
+import de.zib.scalaris.ConnectionFactory;
+import de.zib.scalaris.DefaultConnectionPolicy;
+import de.zib.scalaris.NotFoundException;
+import de.zib.scalaris.Transaction;
+import de.zib.scalaris.TransactionSingleOp;
+import de.zib.scalaris.examples.wikipedia.Options.APPEND_INCREMENT_BUCKETS_WITH_WCACHE_ADDONLY_RANDOM;
+import de.zib.scalaris.examples.wikipedia.Options.APPEND_INCREMENT_BUCKETS_WITH_WCACHE_HASH;
+import de.zib.scalaris.examples.wikipedia.Options.IReadBuckets;
+import de.zib.scalaris.examples.wikipedia.Options.Optimisation;
+import de.zib.scalaris.examples.wikipedia.bliki.NormalisedTitle;
+
+/**
+ * Test class for the compaction of write caches in
+ * {@link ScalarisDataHandler}.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class ScalarisDataHandlerTest {
+    private final static long testTime = System.currentTimeMillis();
+
+    private Optimisation listOptimisation;
+    private Optimisation countOptimisation;
+
+    static {
+        // determine good/bad nodes:
+        final ConnectionFactory cf = ConnectionFactory.getInstance();
+        cf.testAllNodes();
+        // set not to automatically try reconnects (auto-retries prevent ConnectionException tests from working):
+        ((DefaultConnectionPolicy) cf.getConnectionPolicy()).setMaxRetries(0);
+    }
+
+    /**
+     * Sets optimisations with write caches for the page lists and counters.
+     */
+    @Before
+    public void setUp() {
+        final Options options = Options.getInstance();
+        listOptimisation = options.OPTIMISATIONS.get(ScalarisOpType.PAGE_LIST);
+        countOptimisation = options.OPTIMISATIONS.get(ScalarisOpType.PAGE_COUNT);
+        options.OPTIMISATIONS.put(ScalarisOpType.PAGE_LIST,
+                new APPEND_INCREMENT_BUCKETS_WITH_WCACHE_HASH(2, 2));
+        options.OPTIMISATIONS.put(ScalarisOpType.PAGE_COUNT,
+                new APPEND_INCREMENT_BUCKETS_WITH_WCACHE_ADDONLY_RANDOM(1, 3));
+    }
+
+    /**
+     * Restores the optimisations changed by the tests.
+     */
+    @After
+    public void tearDown() {
+        final Options options = Options.getInstance();
+        options.OPTIMISATIONS.put(ScalarisOpType.PAGE_LIST, listOptimisation);
+        options.OPTIMISATIONS.put(ScalarisOpType.PAGE_COUNT, countOptimisation);
+    }
+
+    /**
+     * Adds and removes pages to/from a page list and its counter in a single
+     * transaction, i.e. writes to their write caches.
+     */
+    private static void addRemove(final Connection conn, final String key,
+            final String countKey, final List<String> toAdd,
+            final List<String> toRemove) throws Exception {
+        final MyScalarisTxOpExecutor executor0 = new MyScalarisTxOpExecutor(
+                new Transaction(conn), new ArrayList<InvolvedKey>());
+        executor0.setCommitLast(true);
+        new MyScalarisOpExecWrapper(executor0).addAppendRemove(
+                ScalarisOpType.PAGE_LIST, key, toAdd, toRemove,
+                ScalarisOpType.PAGE_COUNT, countKey);
+        executor0.run();
+    }
+
+    private static List<String> readList(final Connection conn,
+            final String key) {
+        final ValueResult<List<NormalisedTitle>> result = ScalarisDataHandler
+                .getPageList2(conn, ScalarisOpType.PAGE_LIST,
+                        Arrays.asList(key), false, System.currentTimeMillis(),
+                        "test");
+        assertTrue(result.message, result.success);
+        final List<String> pages = new ArrayList<String>(result.value.size());
+        for (final NormalisedTitle page : result.value) {
+            pages.add(page.toString());
+        }
+        Collections.sort(pages);
+        return pages;
+    }
+
+    private static BigInteger readNumber(final Connection conn,
+            final String key) {
+        final ValueResult<BigInteger> result = ScalarisDataHandler
+                .getInteger2(conn, ScalarisOpType.PAGE_COUNT, key, false,
+                        System.currentTimeMillis(), "test");
+        assertTrue(result.message, result.success);
+        return result.value;
+    }
+
+    /**
+     * Checks that the write buckets of the given key are empty.
+     */
+    private static void checkWriteBucketsEmpty(final Connection conn,
+            final String key, final ScalarisOpType opType,
+            final boolean number) throws Exception {
+        final IReadBuckets optimisation = (IReadBuckets) ScalarisDataHandler
+                .getNumberOptimisation(opType);
+        final TransactionSingleOp scalaris_single = new TransactionSingleOp(conn);
+        for (int i = optimisation.getReadBuckets(); i < optimisation.getBuckets(); ++i) {
+            try {
+                if (number) {
+                    assertEquals(0, scalaris_single.read(key + ":" + i).intValue());
+                } else {
+                    assertTrue(scalaris_single.read(key + ":" + i).listValue().isEmpty());
+                }
+            } catch (final NotFoundException e) {
+                // never written
+            }
+        }
+    }
+
+    /**
+     * Test method for
+     * {@link ScalarisDataHandler#compactWriteCache(Connection, ScalarisOpType, String)}
+     * folding a write cache with added and deleted elements.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCompactWriteCache() throws Exception {
+        final String key = "_CompactWriteCache_" + testTime;
+        final Connection conn = ConnectionFactory.getInstance().createConnection("test");
+        try {
+            final List<String> none = new ArrayList<String>(0);
+            addRemove(conn, key, null, Arrays.asList("0:A", "0:B", "0:C"), none);
+            assertTrue(ScalarisDataHandler.compactWriteCache(conn,
+                    ScalarisOpType.PAGE_LIST, key).success);
+            checkWriteBucketsEmpty(conn, key, ScalarisOpType.PAGE_LIST, false);
+
+            // elements in the read and in the write buckets:
+            addRemove(conn, key, null, Arrays.asList("0:D", "0:E"), Arrays.asList("0:B"));
+            addRemove(conn, key, null, Arrays.asList("0:F"), Arrays.asList("0:E"));
+            final List<String> before = readList(conn, key);
+            assertEquals(Arrays.asList("0:A", "0:C", "0:D", "0:F"), before);
+
+            final ValueResult<Integer> result = ScalarisDataHandler
+                    .compactWriteCache(conn, ScalarisOpType.PAGE_LIST, key);
+            assertTrue(result.message, result.success);
+            assertTrue(result.value > 0);
+            checkWriteBucketsEmpty(conn, key, ScalarisOpType.PAGE_LIST, false);
+            assertEquals(before, readList(conn, key));
+
+            // nothing left to compact:
+            assertEquals(Integer.valueOf(0), ScalarisDataHandler
+                    .compactWriteCache(conn, ScalarisOpType.PAGE_LIST, key).value);
+        } finally {
+            conn.close();
+        }
+    }
+
+    /**
+     * Test method for
+     * {@link ScalarisDataHandler#compactWriteCacheNumber(Connection, ScalarisOpType, String)}
+     * folding a write cache with increments and decrements.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCompactWriteCacheNumber() throws Exception {
+        final String key = "_CompactWriteCacheNumber_" + testTime;
+        final String countKey = key + ":count";
+        final Connection conn = ConnectionFactory.getInstance().createConnection("test");
+        try {
+            final List<String> none = new ArrayList<String>(0);
+            addRemove(conn, key, countKey, Arrays.asList("0:A", "0:B", "0:C"), none);
+            addRemove(conn, key, countKey, Arrays.asList("0:D"), Arrays.asList("0:A", "0:B"));
+            addRemove(conn, key, countKey, none, Arrays.asList("0:C"));
+            final BigInteger before = readNumber(conn, countKey);
+            assertEquals(BigInteger.ONE, before);
+
+            final ValueResult<Integer> result = ScalarisDataHandler
+                    .compactWriteCacheNumber(conn, ScalarisOpType.PAGE_COUNT, countKey);
+            assertTrue(result.message, result.success);
+            assertTrue(result.value > 0);
+            checkWriteBucketsEmpty(conn, countKey, ScalarisOpType.PAGE_COUNT, true);
+            assertEquals(before, readNumber(conn, countKey));
+
+            // nothing left to compact:
+            assertEquals(Integer.valueOf(0), ScalarisDataHandler
+                    .compactWriteCacheNumber(conn, ScalarisOpType.PAGE_COUNT, countKey).value);
+        } finally {
+            conn.close();
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris.examples.wikipedia;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangInt;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+import de.zib.scalaris.CommonErlangObjects;
+import de.zib.scalaris.ErlangValue;
+import de.zib.scalaris.TransactionSingleOp;
+import de.zib.scalaris.examples.wikipedia.Options.APPEND_INCREMENT_BUCKETS_WITH_HASH;
+import de.zib.scalaris.examples.wikipedia.Options.APPEND_INCREMENT_BUCKETS_WITH_WCACHE_HASH;
+import de.zib.scalaris.examples.wikipedia.Options.APPEND_INCREMENT_PARTIALREAD_BUCKETS_WITH_HASH;
+import de.zib.scalaris.examples.wikipedia.Options.Optimisation;
+import de.zib.scalaris.examples.wikipedia.Options.TRADITIONAL;
+import de.zib.scalaris.operations.Operation;
+import de.zib.scalaris.operations.ReadSublistOp;
+
+/**
+ * Test class for {@link ScalarisReadSublistOp1}.
+ *
+ * Reads are answered from a local map instead of Scalaris.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class ScalarisReadSublistOp1Test {
+    private final static String key = "list";
+
+    private final static ErlangConverter<List<String>> listConv = new ErlangConverter<List<String>>() {
+        @Override
+        public List<String> convert(final ErlangValue v) throws ClassCastException {
+            return v.stringListValue();
+        }
+    };
+
+    private final static ErlangConverter<String> elemConv = new ErlangConverter<String>() {
+        @Override
+        public String convert(final ErlangValue v) throws ClassCastException {
+            return v.stringValue();
+        }
+    };
+
+    /**
+     * Values of the buckets (missing buckets are not found).
+     */
+    private final Map<String, OtpErlangObject> store = new HashMap<String, OtpErlangObject>();
+
+    private static OtpErlangList toList(final List<? extends OtpErlangObject> elems) {
+        return new OtpErlangList(elems.toArray(new OtpErlangObject[elems.size()]));
+    }
+
+    private static OtpErlangList toList(final String... elems) {
+        final List<OtpErlangString> list = new ArrayList<OtpErlangString>(elems.length);
+        for (final String elem : elems) {
+            list.add(new OtpErlangString(elem));
+        }
+        return toList(list);
+    }
+
+    /**
+     * Creates the value of a write bucket of
+     * {@link Options.APPEND_INCREMENT_BUCKETS_WITH_WCACHE}.
+     *
+     * @param diff
+     *            pairs of <tt>"+"</tt> or <tt>"-"</tt> and an element
+     */
+    private static OtpErlangList toDiff(final String... diff) {
+        final List<OtpErlangList> list = new ArrayList<OtpErlangList>(diff.length / 2);
+        for (int i = 0; i < diff.length; i += 2) {
+            list.add(new OtpErlangList(new OtpErlangObject[] {
+                    new OtpErlangLong(diff[i].equals("+") ? 1 : -1),
+                    new OtpErlangString(diff[i + 1]) }));
+        }
+        return toList(list);
+    }
+
+    private static OtpErlangTuple ok(final OtpErlangObject value) {
+        return new OtpErlangTuple(new OtpErlangObject[] {
+                CommonErlangObjects.okAtom, value });
+    }
+
+    /**
+     * Reads one part of the list.
+     */
+    private ScalarisReadSublistOp1<String> readPart(
+            final Optimisation optimisation, final String continueFrom,
+            final int limit) throws Exception {
+        final ScalarisReadSublistOp1<String> op = new ScalarisReadSublistOp1<String>(
+                key, optimisation, continueFrom, limit, listConv, elemConv);
+        final TransactionSingleOp.RequestList requests = new TransactionSingleOp.RequestList();
+        assertEquals(0, op.doPhase(0, 0, null, requests));
+        for (final Operation read : requests.getRequests()) {
+            final OtpErlangObject value = store.get(read.getKey().stringValue());
+            if (value == null) {
+                read.setResult(new OtpErlangTuple(new OtpErlangObject[] {
+                        CommonErlangObjects.failAtom,
+                        CommonErlangObjects.notFoundAtom }), false);
+            } else if (read instanceof ReadSublistOp) {
+                // {read, Key, {sublist, Start, Length}}
+                final OtpErlangTuple sublist = (OtpErlangTuple) ((OtpErlangTuple) read
+                        .getErlang(false)).elementAt(2);
+                final int start = ((OtpErlangInt) sublist.elementAt(1)).intValue();
+                final int length = ((OtpErlangInt) sublist.elementAt(2)).intValue();
+                final List<OtpErlangObject> list = Arrays.asList(((OtpErlangList) value).elements());
+                final int from = Math.min(start - 1, list.size());
+                final int to = Math.min(from + length, list.size());
+                read.setResult(ok(new OtpErlangTuple(new OtpErlangObject[] {
+                        toList(list.subList(from, to)),
+                        new OtpErlangLong(list.size()) })), false);
+            } else {
+                read.setResult(ok(value), false);
+            }
+        }
+        assertEquals(requests.size(), op.doPhase(1, 0,
+                new TransactionSingleOp.ResultList(requests), null));
+        assertTrue(op.getValue().size() <= limit);
+        if (op.getContinueFrom() != null) {
+            assertEquals(limit, op.getValue().size());
+        }
+        return op;
+    }
+
+    /**
+     * Reads all parts of the list.
+     */
+    private List<List<String>> readAll(final Optimisation optimisation,
+            final int limit) throws Exception {
+        final List<List<String>> parts = new ArrayList<List<String>>();
+        String continueFrom = null;
+        do {
+            final ScalarisReadSublistOp1<String> op = readPart(optimisation, continueFrom, limit);
+            parts.add(op.getValue());
+            continueFrom = op.getContinueFrom();
+            assertTrue(parts.size() < 100);
+        } while (continueFrom != null);
+        return parts;
+    }
+
+    private static List<String> concat(final List<List<String>> parts) {
+        final List<String> all = new ArrayList<String>();
+        for (final List<String> part : parts) {
+            all.addAll(part);
+        }
+        return all;
+    }
+
+    /**
+     * Test method for
+     * {@link ScalarisReadSublistOp1#parseContinueFrom(String, int)}.
+     */
+    @Test
+    public void testParseContinueFrom() {
+        assertArrayEquals(new int[] {0, 5}, ScalarisReadSublistOp1.parseContinueFrom("0:5", 3));
+        assertArrayEquals(new int[] {2, 0}, ScalarisReadSublistOp1.parseContinueFrom("2:0", 3));
+        assertArrayEquals(new int[] {1, 123456}, ScalarisReadSublistOp1.parseContinueFrom("1:123456", 3));
+        // invalid tokens start at the beginning
+        for (final String token : new String[] { null, "", "1", ":1", "1:",
+                "a:1", "1:b", "1:2:3", "-1:0", "1:-1", "3:0",
+                "99999999999:0", " 1:0" }) {
+            assertArrayEquals(token, new int[] {0, 0},
+                    ScalarisReadSublistOp1.parseContinueFrom(token, 3));
+        }
+    }
+
+    /**
+     * Test method for {@link ScalarisReadSublistOp1} with a list stored under
+     * a single key.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSingleKey() throws Exception {
+        final Optimisation optimisation = new TRADITIONAL();
+        // not found:
+        ScalarisReadSublistOp1<String> op = readPart(optimisation, null, 3);
+        assertTrue(op.getValue().isEmpty());
+        assertNull(op.getContinueFrom());
+
+        store.put(key, toList("a", "b", "c", "d", "e", "f", "g"));
+        op = readPart(optimisation, null, 3);
+        assertEquals(Arrays.asList("a", "b", "c"), op.getValue());
+        assertEquals("0:3", op.getContinueFrom());
+        op = readPart(optimisation, "0:6", 3);
+        assertEquals(Arrays.asList("g"), op.getValue());
+        assertNull(op.getContinueFrom());
+        // exactly at the end:
+        op = readPart(optimisation, "0:4", 3);
+        assertEquals(Arrays.asList("e", "f", "g"), op.getValue());
+        assertNull(op.getContinueFrom());
+        // behind the end, e.g. after removing elements:
+        op = readPart(optimisation, "0:10", 3);
+        assertTrue(op.getValue().isEmpty());
+        assertNull(op.getContinueFrom());
+        // invalid token:
+        op = readPart(optimisation, "x", 3);
+        assertEquals(Arrays.asList("a", "b", "c"), op.getValue());
+    }
+
+    private void putBuckets() {
+        store.put(key + ":0", toList("a", "b", "c", "d"));
+        // bucket 1 not found
+        store.put(key + ":2", toList("e", "f", "g", "h", "i"));
+    }
+
+    private void checkBuckets(final Optimisation optimisation) throws Exception {
+        putBuckets();
+        final List<String> all = Arrays.asList("a", "b", "c", "d", "e", "f", "g", "h", "i");
+
+        // continue inside a bucket and skip the missing bucket:
+        List<List<String>> parts = readAll(optimisation, 3);
+        assertEquals(3, parts.size());
+        assertEquals(Arrays.asList("a", "b", "c"), parts.get(0));
+        assertEquals(Arrays.asList("d", "e", "f"), parts.get(1));
+        assertEquals(Arrays.asList("g", "h", "i"), parts.get(2));
+        assertEquals("0:3", readPart(optimisation, null, 3).getContinueFrom());
+        assertEquals("2:2", readPart(optimisation, "0:3", 3).getContinueFrom());
+
+        // a part ending at the end of a bucket continues in the next one:
+        final ScalarisReadSublistOp1<String> op = readPart(optimisation, null, 4);
+        assertEquals(Arrays.asList("a", "b", "c", "d"), op.getValue());
+        assertEquals("2:0", op.getContinueFrom());
+
+        for (int limit = 1; limit <= all.size() + 1; ++limit) {
+            parts = readAll(optimisation, limit);
+            assertEquals(String.valueOf(limit), all, concat(parts));
+            assertEquals(String.valueOf(limit),
+                    (all.size() + limit - 1) / limit, parts.size());
+        }
+    }
+
+    /**
+     * Test method for {@link ScalarisReadSublistOp1} with buckets read by
+     * {@link ReadSublistOp}.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testBucketsPartialRead() throws Exception {
+        checkBuckets(new APPEND_INCREMENT_PARTIALREAD_BUCKETS_WITH_HASH(3));
+    }
+
+    /**
+     * Test method for {@link ScalarisReadSublistOp1} with buckets read
+     * completely.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testBucketsFullRead() throws Exception {
+        checkBuckets(new APPEND_INCREMENT_BUCKETS_WITH_HASH(3));
+    }
+
+    /**
+     * Test method for {@link ScalarisReadSublistOp1} with elements added to
+     * and deleted in the write buckets of
+     * {@link Options.APPEND_INCREMENT_BUCKETS_WITH_WCACHE}.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testWriteCache() throws Exception {
+        final Optimisation optimisation = new APPEND_INCREMENT_BUCKETS_WITH_WCACHE_HASH(2, 2);
+        store.put(key + ":0", toList("a", "b", "c", "d"));
+        store.put(key + ":1", toList("e", "f", "g"));
+        store.put(key + ":2", toDiff("+", "h", "-", "b"));
+        store.put(key + ":3", toDiff("-", "f", "+", "i"));
+        final List<String> all = Arrays.asList("a", "c", "d", "e", "g", "h", "i");
+
+        // deleted elements are skipped but count for the position in the bucket
+        ScalarisReadSublistOp1<String> op = readPart(optimisation, null, 2);
+        assertEquals(Arrays.asList("a", "c"), op.getValue());
+        assertEquals("0:3", op.getContinueFrom());
+        op = readPart(optimisation, "1:1", 2);
+        assertEquals(Arrays.asList("g", "h"), op.getValue());
+        assertEquals("3:0", op.getContinueFrom());
+
+        // tokens pointing into the write buckets:
+        op = readPart(optimisation, "3:0", 2);
+        assertEquals(Arrays.asList("i"), op.getValue());
+        assertNull(op.getContinueFrom());
+        op = readPart(optimisation, "2:1", 2);
+        assertEquals(Arrays.asList("i"), op.getValue());
+        assertNull(op.getContinueFrom());
+
+        for (int limit = 1; limit <= all.size() + 1; ++limit) {
+            assertEquals(String.valueOf(limit), all, concat(readAll(optimisation, limit)));
+        }
+
+        // all elements of the last read bucket deleted:
+        store.put(key + ":2", toDiff("-", "e", "-", "g"));
+        store.put(key + ":3", toDiff("-", "f"));
+        op = readPart(optimisation, null, 4);
+        assertEquals(Arrays.asList("a", "b", "c", "d"), op.getValue());
+        assertEquals("1:0", op.getContinueFrom());
+        op = readPart(optimisation, "1:0", 4);
+        assertTrue(op.getValue().isEmpty());
+        assertNull(op.getContinueFrom());
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris.examples.wikipedia.bliki;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.zib.scalaris.examples.wikipedia.Options;
+import de.zib.scalaris.examples.wikipedia.bliki.ExistingPagesCache.ExistingPagesCacheBloom;
+import de.zib.scalaris.examples.wikipedia.bliki.ExistingPagesCache.ExistingPagesCacheCountingBloom;
+import de.zib.scalaris.examples.wikipedia.bliki.ExistingPagesCache.ExistingPagesCacheFull;
+
+/**
+ * Test class for {@link ExistingPagesCache}.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class ExistingPagesCacheTest {
+    private int fullRebuild;
+
+    /**
+     * Saves the options changed by the tests.
+     */
+    @Before
+    public void setUp() {
+        fullRebuild = Options.getInstance().WIKI_PAGES_CACHE_FULL_REBUILD;
+    }
+
+    /**
+     * Restores the options changed by the tests.
+     */
+    @After
+    public void tearDown() {
+        Options.getInstance().WIKI_PAGES_CACHE_FULL_REBUILD = fullRebuild;
+    }
+
+    private static List<NormalisedTitle> createTitles(final String prefix,
+            final int count) {
+        final List<NormalisedTitle> result = new ArrayList<NormalisedTitle>(count);
+        for (int i = 0; i < count; ++i) {
+            result.add(new NormalisedTitle(i % 3, prefix + i));
+        }
+        return result;
+    }
+
+    /**
+     * Test method for
+     * {@link ExistingPagesCacheCountingBloom#add(NormalisedTitle)},
+     * {@link ExistingPagesCacheCountingBloom#contains(NormalisedTitle)} and
+     * {@link ExistingPagesCacheCountingBloom#remove(NormalisedTitle)}.
+     */
+    @Test
+    public void testCountingBloomAddRemove() {
+        final ExistingPagesCacheCountingBloom cache = new ExistingPagesCacheCountingBloom(100);
+        assertTrue(cache.hasContains());
+        assertTrue(cache.hasRemove());
+        final List<NormalisedTitle> pages = createTitles("Page", 100);
+        final List<NormalisedTitle> others = createTitles("Other", 100);
+        for (NormalisedTitle page : pages) {
+            assertFalse(cache.contains(page));
+        }
+
+        cache.addAll(pages);
+        for (NormalisedTitle page : pages) {
+            assertTrue(page.toString(), cache.contains(page));
+        }
+
+        // removing pages which have not been added must not remove others
+        for (NormalisedTitle other : others) {
+            if (!cache.contains(other)) {
+                cache.remove(other);
+            }
+        }
+        for (NormalisedTitle page : pages) {
+            assertTrue(page.toString(), cache.contains(page));
+        }
+
+        // remove every second page
+        for (int i = 0; i < pages.size(); i += 2) {
+            cache.remove(pages.get(i));
+        }
+        for (int i = 1; i < pages.size(); i += 2) {
+            assertTrue(pages.get(i).toString(), cache.contains(pages.get(i)));
+        }
+
+        // remove the rest (no counter overflows with this few elements)
+        for (int i = 1; i < pages.size(); i += 2) {
+            cache.remove(pages.get(i));
+        }
+        for (NormalisedTitle page : pages) {
+            assertFalse(page.toString(), cache.contains(page));
+        }
+
+        // the cache is re-usable afterwards
+        cache.add(pages.get(0));
+        assertTrue(cache.contains(pages.get(0)));
+    }
+
+    /**
+     * Test method for {@link ExistingPagesCacheCountingBloom#needsRebuild()}
+     * which should be set once the cache holds more elements than it has
+     * been created for.
+     */
+    @Test
+    public void testCountingBloomNeedsRebuild() {
+        final List<NormalisedTitle> pages = createTitles("Page", 1000);
+        final ExistingPagesCacheCountingBloom cache = new ExistingPagesCacheCountingBloom(pages);
+        assertFalse(cache.needsRebuild());
+        cache.addAll(createTitles("Other", 1000));
+        assertTrue(cache.needsRebuild());
+    }
+
+    /**
+     * Test method for {@link ExistingPagesCacheFull#add(NormalisedTitle)},
+     * {@link ExistingPagesCacheFull#contains(NormalisedTitle)} and
+     * {@link ExistingPagesCacheFull#remove(NormalisedTitle)}.
+     */
+    @Test
+    public void testFullAddRemove() {
+        final List<NormalisedTitle> pages = createTitles("Page", 10);
+        final ExistingPagesCacheFull cache = new ExistingPagesCacheFull(pages);
+        for (NormalisedTitle page : pages) {
+            assertTrue(cache.contains(page));
+        }
+        final NormalisedTitle page0 = pages.get(0);
+        cache.remove(page0);
+        assertFalse(cache.contains(page0));
+        assertFalse(cache.getList(MyNamespace.NamespaceEnum.fromId(page0.namespace)).contains(page0));
+        assertTrue(cache.contains(pages.get(1)));
+        assertFalse(cache.needsRebuild());
+    }
+
+    /**
+     * Test method for {@link ExistingPagesCache#needsRebuild(long, long)}.
+     */
+    @Test
+    public void testNeedsRebuild() {
+        Options.getInstance().WIKI_PAGES_CACHE_FULL_REBUILD = 60;
+        final long now = 1000000000l;
+        final List<NormalisedTitle> pages = createTitles("Page", 10);
+        final ExistingPagesCache bloom = new ExistingPagesCacheBloom(pages);
+        final ExistingPagesCache countingBloom = new ExistingPagesCacheCountingBloom(pages);
+        final ExistingPagesCache full = new ExistingPagesCacheFull(pages);
+
+        // not loaded yet:
+        assertTrue(bloom.needsRebuild(0, now));
+        assertTrue(countingBloom.needsRebuild(0, now));
+        assertTrue(full.needsRebuild(0, now));
+
+        // caches which cannot be updated incrementally are always re-created:
+        assertTrue(bloom.needsRebuild(now, now));
+
+        // others only after the full rebuild interval:
+        assertFalse(countingBloom.needsRebuild(now - 59999, now));
+        assertFalse(full.needsRebuild(now - 59999, now));
+        assertTrue(countingBloom.needsRebuild(now - 60000, now));
+        assertTrue(full.needsRebuild(now - 60000, now));
+
+        // unless this fallback is disabled:
+        Options.getInstance().WIKI_PAGES_CACHE_FULL_REBUILD = 0;
+        assertFalse(countingBloom.needsRebuild(now - 3600000, now));
+        assertFalse(full.needsRebuild(now - 3600000, now));
+
+        // or the cache is over its capacity:
+        countingBloom.addAll(createTitles("Other", 1000));
+        assertTrue(countingBloom.needsRebuild(now, now));
+    }
+}
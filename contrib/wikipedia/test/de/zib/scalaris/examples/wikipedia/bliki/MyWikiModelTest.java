@@ -0,0 +1,185 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris.examples.wikipedia.bliki;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import de.zib.scalaris.examples.wikipedia.InvolvedKey;
+import de.zib.scalaris.examples.wikipedia.RevisionResult;
+import de.zib.scalaris.examples.wikipedia.ValueResult;
+import de.zib.scalaris.examples.wikipedia.data.Contributor;
+import de.zib.scalaris.examples.wikipedia.data.Page;
+import de.zib.scalaris.examples.wikipedia.data.Revision;
+import de.zib.scalaris.examples.wikipedia.data.SiteInfo;
+
+/**
+ * Test class for the template prefetching of {@link MyWikiModel}.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class MyWikiModelTest {
+
+    /**
+     * Wiki model with an in-memory DB which records all page requests.
+     */
+    private static class TestWikiModel extends MyWikiModel {
+        final Map<NormalisedTitle, String> pages = new HashMap<NormalisedTitle, String>();
+        final List<Set<NormalisedTitle>> fetches = new ArrayList<Set<NormalisedTitle>>();
+
+        TestWikiModel() {
+            super("", "", new MyNamespace(new SiteInfo(
+                    "http://en.wikipedia.org/wiki/Main_Page", "Wikipedia",
+                    "MediaWiki", "first-letter",
+                    new HashMap<String, Map<String, String>>())));
+        }
+
+        void addPage(final String fullName, final String text) {
+            pages.put(normalisePageTitle(fullName), text);
+        }
+
+        @Override
+        protected boolean hasDBConnection() {
+            return true;
+        }
+
+        @Override
+        protected RevisionResult getRevFromDB(final NormalisedTitle title) {
+            fetches.add(Collections.singleton(title));
+            return createResult(title);
+        }
+
+        @Override
+        protected ValueResult<List<RevisionResult>> getRevsFromDB(
+                final Collection<NormalisedTitle> titles, final String statName) {
+            fetches.add(new HashSet<NormalisedTitle>(titles));
+            final List<RevisionResult> results = new ArrayList<RevisionResult>(titles.size());
+            for (final NormalisedTitle title : titles) {
+                results.add(createResult(title));
+            }
+            return new ValueResult<List<RevisionResult>>(
+                    new ArrayList<InvolvedKey>(), results, statName, 0l);
+        }
+
+        private RevisionResult createResult(final NormalisedTitle title) {
+            final String text = pages.get(title);
+            if (text == null) {
+                return new RevisionResult(false, new ArrayList<InvolvedKey>(),
+                        "page not found", false, title, null, null, true, false);
+            }
+            final Revision rev = new Revision(1, "", false, new Contributor(), "");
+            rev.setUnpackedText(text);
+            final Page page = new Page(title.toString(), 1,
+                    MATCH_WIKI_REDIRECT.matcher(text).matches(),
+                    new HashMap<String, String>(), rev);
+            return new RevisionResult(new ArrayList<InvolvedKey>(), title, page, rev);
+        }
+
+        Set<NormalisedTitle> titles(final String... fullNames) {
+            final Set<NormalisedTitle> result = new HashSet<NormalisedTitle>();
+            for (final String fullName : fullNames) {
+                result.add(normalisePageTitle(fullName));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Test method for
+     * {@link MyWikiModel#extractIncludedPages(String, Collection)}.
+     */
+    @Test
+    public void testExtractIncludedPages() {
+        final TestWikiModel model = new TestWikiModel();
+        final Set<NormalisedTitle> titles = new HashSet<NormalisedTitle>();
+        model.extractIncludedPages("{{Foo}} {{ foo bar |x=1}} {{{1}}} "
+                + "{{#if: a | {{Bar}} }} {{:Main Page}} {{PAGENAME}} "
+                + "{{User:Someone/box}} {{ {{#if:a|Dyn1|Dyn2}} }}", titles);
+        assertEquals(model.titles("Template:Foo", "Template:Foo bar",
+                "Template:Bar", "Main Page", "User:Someone/box"), titles);
+    }
+
+    /**
+     * Test method for {@link MyWikiModel#prefetchPages(String)} with nested
+     * templates and redirects which should be fetched with one request per
+     * nesting level.
+     */
+    @Test
+    public void testPrefetchPagesNested() {
+        final TestWikiModel model = new TestWikiModel();
+        model.addPage("Template:A", "a {{B}}");
+        model.addPage("Template:B", "b {{C|p}}");
+        model.addPage("Template:C", "c");
+        model.addPage("Template:R", "#REDIRECT [[Template:Target]]");
+        model.addPage("Template:Target", "target {{A}}");
+
+        model.prefetchPages("{{A}} {{R}} {{Missing}}");
+
+        assertEquals(Arrays.asList(
+                model.titles("Template:A", "Template:R", "Template:Missing"),
+                model.titles("Template:B", "Template:Target"),
+                model.titles("Template:C")), model.fetches);
+        for (final String fullName : Arrays.asList("Template:A", "Template:B",
+                "Template:C", "Template:R", "Template:Target")) {
+            final TemplateCache.Entry entry = model.prefetchedPages
+                    .get(model.normalisePageTitle(fullName));
+            assertNotNull(fullName, entry);
+            assertEquals(fullName, model.pages.get(model.normalisePageTitle(fullName)), entry.text);
+        }
+        assertTrue(model.prefetchedPages.get(model.normalisePageTitle("Template:R")).redirect);
+        // non-existing pages are remembered, too
+        assertNull(model.prefetchedPages.get(model.normalisePageTitle("Template:Missing")).text);
+
+        // rendering does not need to access the DB any more
+        model.fetches.clear();
+        assertEquals("c", model.retrievePage("Template", "C", null, false));
+        assertEquals("target {{A}}", model.retrievePage("Template", "R", null, true));
+        assertNull(model.retrievePage("Template", "Missing", null, false));
+        assertTrue(model.fetches.isEmpty());
+    }
+
+    /**
+     * Test method for {@link MyWikiModel#prefetchPages(String)} with template
+     * names created by parser functions which can only be retrieved during
+     * rendering.
+     */
+    @Test
+    public void testPrefetchPagesParserFunctions() {
+        final TestWikiModel model = new TestWikiModel();
+        model.addPage("Template:Bar", "bar");
+        model.addPage("Template:Dyn1", "dyn");
+
+        model.prefetchPages("{{#if: a | {{Bar}} }} {{ {{#if:a|Dyn1|Dyn2}} }}");
+        assertEquals(Arrays.asList(model.titles("Template:Bar")), model.fetches);
+
+        model.fetches.clear();
+        assertEquals("dyn", model.retrievePage("Template", "Dyn1", null, true));
+        assertEquals(Arrays.asList(model.titles("Template:Dyn1")), model.fetches);
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris.examples.wikipedia.bliki;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test class for {@link RenderedPageCache}.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class RenderedPageCacheTest {
+    private final static NormalisedTitle TEMPLATE = new NormalisedTitle(10, "Infobox");
+    private final static NormalisedTitle LINK = new NormalisedTitle(0, "Link");
+
+    private static NormalisedTitle title(final int i) {
+        return new NormalisedTitle(0, "Page" + i);
+    }
+
+    private static String key(final int i) {
+        return RenderedPageCache.createKey(title(i), 1, 0, "wiki", "images");
+    }
+
+    /**
+     * Creates an entry with a size of <tt>64 + 2 * 2 + 32 = 100</tt> bytes
+     * only depending on the page itself.
+     */
+    private static RenderedPageCache.Entry entry(final int i) {
+        return new RenderedPageCache.Entry("p" + (i % 10), null,
+                new ArrayList<String>(0), Arrays.asList(title(i)));
+    }
+
+    private static void put(final RenderedPageCache cache, final int i) {
+        cache.put(key(i), entry(i));
+    }
+
+    private static void checkBytes(final RenderedPageCache cache) {
+        long probationBytes = 0;
+        for (final RenderedPageCache.Entry entry : cache.probation.values()) {
+            assertFalse(entry.isProtected);
+            probationBytes += entry.size;
+        }
+        long protectedBytes = 0;
+        for (final RenderedPageCache.Entry entry : cache.protectedSegment.values()) {
+            assertTrue(entry.isProtected);
+            protectedBytes += entry.size;
+        }
+        assertEquals(probationBytes, cache.probationBytes);
+        assertEquals(protectedBytes, cache.protectedBytes);
+        assertEquals(probationBytes + protectedBytes, cache.getBytes());
+        assertTrue(cache.getBytes() <= cache.maxBytes);
+    }
+
+    /**
+     * Test method for {@link RenderedPageCache#get(String)} promoting entries
+     * into the protected segment on their second hit and demoting the least
+     * recently used protected entries if the segment is full.
+     */
+    @Test
+    public void testPromoteDemote() {
+        final RenderedPageCache cache = new RenderedPageCache(1000, 60000);
+        for (int i = 0; i < 10; ++i) {
+            put(cache, i);
+        }
+        assertEquals(10, cache.size());
+        assertEquals(10, cache.probation.size());
+        checkBytes(cache);
+
+        // second hit -> promote (the protected segment holds 800 bytes)
+        for (int i = 0; i < 8; ++i) {
+            assertNotNull(cache.get(key(i)));
+        }
+        assertEquals(8, cache.protectedSegment.size());
+        assertEquals(800, cache.protectedBytes);
+        checkBytes(cache);
+
+        // promoting another entry demotes the least recently used one (0)
+        assertNotNull(cache.get(key(8)));
+        assertTrue(cache.protectedSegment.containsKey(key(8)));
+        assertFalse(cache.protectedSegment.containsKey(key(0)));
+        assertTrue(cache.probation.containsKey(key(0)));
+        assertEquals(800, cache.protectedBytes);
+        assertEquals(0, cache.getEvictions());
+        checkBytes(cache);
+
+        // new entries evict from the probation segment only, starting with
+        // the least recently used one (9, then the demoted 0)
+        put(cache, 10);
+        assertEquals(1, cache.getEvictions());
+        assertFalse(cache.probation.containsKey(key(9)));
+        assertTrue(cache.probation.containsKey(key(0)));
+        put(cache, 11);
+        assertEquals(2, cache.getEvictions());
+        assertNull(cache.get(key(0)));
+        for (int i = 1; i < 9; ++i) {
+            assertTrue(cache.protectedSegment.containsKey(key(i)));
+        }
+        assertEquals(10, cache.size());
+        checkBytes(cache);
+
+        // a scan of pages only requested once does not touch the protected segment
+        for (int i = 12; i < 100; ++i) {
+            put(cache, i);
+        }
+        for (int i = 1; i < 9; ++i) {
+            assertTrue(cache.protectedSegment.containsKey(key(i)));
+        }
+        assertEquals(90, cache.getEvictions());
+        checkBytes(cache);
+        // no dependencies of evicted entries remain:
+        assertEquals(10, cache.dependents.size());
+    }
+
+    /**
+     * Test method for {@link RenderedPageCache#put(String, RenderedPageCache.Entry)}
+     * and {@link RenderedPageCache#getBytes()} with replaced and too large
+     * entries.
+     */
+    @Test
+    public void testByteAccounting() {
+        final RenderedPageCache cache = new RenderedPageCache(1000, 60000);
+        put(cache, 0);
+        put(cache, 1);
+        assertEquals(200, cache.getBytes());
+        cache.get(key(1));
+        checkBytes(cache);
+
+        // replace entries in both segments with larger ones
+        final List<String> categories = Arrays.asList("Category:A", "Category:B");
+        cache.put(key(0), new RenderedPageCache.Entry("page0", null,
+                categories, Arrays.asList(title(0), LINK)));
+        cache.put(key(1), new RenderedPageCache.Entry("page1", null,
+                categories, Arrays.asList(title(1))));
+        assertEquals(2, cache.size());
+        assertEquals((64 + 10 + 40 + 64) + (64 + 10 + 40 + 32), cache.getBytes());
+        assertEquals(categories.size(), cache.get(key(0)).categories.size());
+        checkBytes(cache);
+
+        // entries larger than the probation segment are not cached
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; ++i) {
+            sb.append('x');
+        }
+        cache.put(key(2), new RenderedPageCache.Entry(sb.toString(), null,
+                new ArrayList<String>(0), Arrays.asList(title(2))));
+        assertNull(cache.get(key(2)));
+        assertEquals(2, cache.size());
+        checkBytes(cache);
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+        assertTrue(cache.dependents.isEmpty());
+    }
+
+    /**
+     * Test method for {@link RenderedPageCache#invalidate(NormalisedTitle)}
+     * removing all entries depending on a changed page, i.e. included or
+     * linked pages.
+     */
+    @Test
+    public void testInvalidate() {
+        final RenderedPageCache cache = new RenderedPageCache(10000, 60000);
+        final List<String> none = new ArrayList<String>(0);
+        cache.put(key(0), new RenderedPageCache.Entry("p0", null, none,
+                Arrays.asList(title(0), TEMPLATE)));
+        cache.put(key(1), new RenderedPageCache.Entry("p1", null, none,
+                Arrays.asList(title(1), TEMPLATE, LINK)));
+        cache.put(key(2), new RenderedPageCache.Entry("p2", null, none,
+                Arrays.asList(title(2), LINK)));
+        put(cache, 3);
+        // one of them in the protected segment:
+        cache.get(key(1));
+
+        assertEquals(0, cache.invalidate(new NormalisedTitle(0, "Unknown")));
+        assertEquals(2, cache.invalidate(TEMPLATE));
+        assertNull(cache.get(key(0)));
+        assertNull(cache.get(key(1)));
+        assertNotNull(cache.get(key(2)));
+        assertEquals(2, cache.getInvalidations());
+        checkBytes(cache);
+
+        // a linked page was created or deleted:
+        assertEquals(1, cache.invalidate(LINK));
+        assertNull(cache.get(key(2)));
+        assertEquals(0, cache.invalidate(LINK));
+
+        // the page itself changed:
+        assertEquals(1, cache.invalidate(title(3)));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+        assertTrue(cache.dependents.isEmpty());
+        assertEquals(4, cache.getInvalidations());
+    }
+
+    /**
+     * Test method for {@link RenderedPageCache#get(String)} with entries
+     * older than the maximum age.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void testMaxAge() throws InterruptedException {
+        final RenderedPageCache cache = new RenderedPageCache(1000, 50);
+        put(cache, 0);
+        put(cache, 1);
+        assertNotNull(cache.get(key(1)));
+        Thread.sleep(100);
+        assertNull(cache.get(key(0)));
+        assertNull(cache.get(key(1)));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.size());
+        checkBytes(cache);
+        assertTrue(cache.dependents.isEmpty());
+    }
+}
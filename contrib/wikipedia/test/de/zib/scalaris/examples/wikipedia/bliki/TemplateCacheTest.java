@@ -0,0 +1,167 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris.examples.wikipedia.bliki;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Test class for {@link TemplateCache}.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class TemplateCacheTest {
+    private static NormalisedTitle title(final int i) {
+        return new NormalisedTitle(10, "Template" + i);
+    }
+
+    /**
+     * Creates an entry with a size of <tt>64 + 2 * 50 = 164</tt> bytes.
+     */
+    private static TemplateCache.Entry entry(final int revId) {
+        final StringBuilder sb = new StringBuilder();
+        while (sb.length() < 50) {
+            sb.append(revId).append(' ');
+        }
+        return new TemplateCache.Entry(sb.substring(0, 50), revId, false);
+    }
+
+    /**
+     * Test method for
+     * {@link TemplateCache#put(NormalisedTitle, TemplateCache.Entry, long)}
+     * evicting the least recently used entries once the size limit is
+     * exceeded.
+     */
+    @Test
+    public void testEviction() {
+        final TemplateCache cache = new TemplateCache(1000, 60000);
+        for (int i = 0; i < 6; ++i) {
+            assertTrue(cache.put(title(i), entry(i), cache.getReadStamp()));
+            cache.entries.get(title(i)).lastUsed = i;
+        }
+        assertEquals(6, cache.size());
+        assertEquals(6 * 164, cache.getBytes());
+        // use the oldest entries again:
+        cache.entries.get(title(0)).lastUsed = 10;
+        cache.entries.get(title(1)).lastUsed = 11;
+
+        // exceed the limit -> shrink to 750 bytes, i.e. 4 entries
+        assertTrue(cache.put(title(6), entry(6), cache.getReadStamp()));
+        assertEquals(4, cache.size());
+        assertEquals(4 * 164, cache.getBytes());
+        assertEquals(3, cache.getEvictions());
+        for (final int i : new int[] {0, 1, 5, 6}) {
+            assertNotNull(String.valueOf(i), cache.get(title(i)));
+        }
+
+        // entries larger than a quarter of the cache are not cached:
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; ++i) {
+            sb.append('x');
+        }
+        cache.put(title(0), new TemplateCache.Entry(sb.toString(), 1, false),
+                cache.getReadStamp());
+        assertNull(cache.get(title(0)));
+        assertEquals(3 * 164, cache.getBytes());
+    }
+
+    /**
+     * Test method for {@link TemplateCache#isValid(TemplateCache.Entry)} and
+     * {@link TemplateCache#getMagicWord(String)} with an expired TTL.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void testTTL() throws InterruptedException {
+        final TemplateCache cache = new TemplateCache(100000, 50);
+        cache.put(title(0), entry(1), cache.getReadStamp());
+        cache.putMagicWord("CURRENTYEAR", "2016");
+        assertTrue(cache.isValid(cache.get(title(0))));
+        assertEquals("2016", cache.getMagicWord("CURRENTYEAR"));
+        assertEquals(2, cache.getHits());
+
+        Thread.sleep(100);
+        // outdated pages are still returned for re-validation...
+        final TemplateCache.Entry entry = cache.get(title(0));
+        assertNotNull(entry);
+        assertFalse(cache.isValid(entry));
+        // ... but magic words simply expire
+        assertNull(cache.getMagicWord("CURRENTYEAR"));
+    }
+
+    /**
+     * Test method for
+     * {@link TemplateCache#revalidate(TemplateCache.Entry, int)}.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void testRevalidate() throws InterruptedException {
+        final TemplateCache cache = new TemplateCache(100000, 50);
+        cache.put(title(0), entry(1), cache.getReadStamp());
+        cache.put(title(1), new TemplateCache.Entry(null, -1, false), cache.getReadStamp());
+        Thread.sleep(100);
+
+        final TemplateCache.Entry entry0 = cache.get(title(0));
+        assertFalse(cache.isValid(entry0));
+        // changed page:
+        assertFalse(cache.revalidate(entry0, 2));
+        assertFalse(cache.isValid(entry0));
+        assertFalse(cache.revalidate(entry0, -1));
+        // same revision -> valid for another TTL:
+        assertTrue(cache.revalidate(entry0, 1));
+        assertTrue(cache.isValid(entry0));
+        assertEquals(1, cache.getRevalidations());
+
+        // non-existing page:
+        final TemplateCache.Entry entry1 = cache.get(title(1));
+        assertFalse(cache.revalidate(entry1, 1));
+        assertTrue(cache.revalidate(entry1, -1));
+        assertTrue(cache.isValid(entry1));
+        assertEquals(2, cache.getRevalidations());
+    }
+
+    /**
+     * Test method for {@link TemplateCache#invalidate(NormalisedTitle)}:
+     * pages read before their invalidation must not be put back into the
+     * cache.
+     */
+    @Test
+    public void testInvalidate() {
+        final TemplateCache cache = new TemplateCache(100000, 60000);
+        final long readStamp1 = cache.getReadStamp();
+        assertTrue(cache.put(title(0), entry(1), readStamp1));
+        assertTrue(cache.put(title(1), entry(1), readStamp1));
+
+        // a concurrent request read revision 1 before the page changed...
+        final long readStamp2 = cache.getReadStamp();
+        cache.invalidate(title(0));
+        assertNull(cache.get(title(0)));
+        assertEquals(164, cache.getBytes());
+        // ... and tries to put it back afterwards:
+        assertFalse(cache.put(title(0), entry(1), readStamp2));
+        assertNull(cache.get(title(0)));
+
+        // reads after the invalidation are cached again:
+        assertTrue(cache.put(title(0), entry(2), cache.getReadStamp()));
+        assertEquals(2, cache.get(title(0)).revId);
+        // other pages are not affected:
+        assertNotNull(cache.get(title(1)));
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris.examples.wikipedia.data;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test class for {@link TextCompression}.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class TextCompressionTest {
+    /**
+     * Dictionary versions which are not used by anything else.
+     */
+    private final static int VERSION1 = 0xfff0;
+    private final static int VERSION_UNKNOWN = 0xfff1;
+
+    private final static List<String> samples = new ArrayList<String>();
+
+    static {
+        for (int i = 0; i < 20; ++i) {
+            samples.add("{{Infobox person\n| name = Person " + i + "\n"
+                    + "| birth_date = {{birth date|19" + (10 + i) + "|1|1}}\n"
+                    + "| nationality = German\n}}\n"
+                    + "'''Person " + i + "''' was a scientist.\n"
+                    + "== References ==\n{{reflist}}\n"
+                    + "[[Category:Scientists]]\n");
+        }
+    }
+
+    private int oldVersion;
+
+    /**
+     * Remembers the current dictionary version.
+     */
+    @Before
+    public void setUp() {
+        oldVersion = TextCompression.getCurrentVersion();
+    }
+
+    /**
+     * Restores the current dictionary version.
+     */
+    @After
+    public void tearDown() {
+        TextCompression.setCurrentVersion(oldVersion);
+    }
+
+    /**
+     * Test method for {@link TextCompression#pack(String, int)} and
+     * {@link TextCompression#unpack(byte[])} without a dictionary.
+     */
+    @Test
+    public void testPackNoDictionary() {
+        for (final String text : Arrays.asList("", "a", samples.get(0),
+                "multi-byte: \u00e4\u00f6\u00fc \u7ae0\u8282 \ud83d\ude00")) {
+            final byte[] packed = TextCompression.pack(text, 0);
+            assertTrue(TextCompression.isDeflated(packed));
+            assertEquals(TextCompression.FORMAT_DEFLATE, packed[0]);
+            assertEquals(0, TextCompression.getDictionaryVersion(packed));
+            assertEquals(text, TextCompression.unpack(packed));
+        }
+        TextCompression.setCurrentVersion(0);
+        assertEquals(0, TextCompression.getDictionaryVersion(TextCompression.pack("a")));
+    }
+
+    /**
+     * Test method for {@link TextCompression#train(java.util.Collection, int)}
+     * and {@link TextCompression#pack(String, int)} with a dictionary.
+     */
+    @Test
+    public void testPackDictionary() {
+        final byte[] dictionary = TextCompression.train(samples,
+                TextCompression.DEFAULT_DICTIONARY_SIZE);
+        assertTrue(dictionary.length > 0);
+        assertTrue(dictionary.length <= TextCompression.DEFAULT_DICTIONARY_SIZE);
+        TextCompression.addDictionary(VERSION1, dictionary);
+        assertTrue(TextCompression.hasDictionary(VERSION1));
+
+        final String text = "{{Infobox person\n| name = Someone else\n"
+                + "| birth_date = {{birth date|1950|1|1}}\n"
+                + "| nationality = German\n}}\n"
+                + "'''Someone else''' was a scientist.\n"
+                + "== References ==\n{{reflist}}\n"
+                + "[[Category:Scientists]]\n";
+        final byte[] packed = TextCompression.pack(text, VERSION1);
+        assertEquals(VERSION1, TextCompression.getDictionaryVersion(packed));
+        assertEquals(text, TextCompression.unpack(packed));
+        // the dictionary helps compressing similar texts:
+        assertTrue(packed.length < TextCompression.pack(text, 0).length);
+
+        // packing with the current version:
+        TextCompression.setCurrentVersion(VERSION1);
+        assertEquals(VERSION1, TextCompression.getDictionaryVersion(TextCompression.pack(text)));
+    }
+
+    /**
+     * Test method for {@link TextCompression#train(java.util.Collection, int)}
+     * with a maximum dictionary size.
+     */
+    @Test
+    public void testTrainMaxSize() {
+        assertTrue(TextCompression.train(samples, 64).length <= 64);
+        // fragments need to occur in more than one text:
+        assertEquals(0, TextCompression.train(samples.subList(0, 1),
+                TextCompression.DEFAULT_DICTIONARY_SIZE).length);
+    }
+
+    /**
+     * Test method for {@link TextCompression#getDictionaryVersion(byte[])}.
+     */
+    @Test
+    public void testGetDictionaryVersion() {
+        assertEquals(-1, TextCompression.getDictionaryVersion(new byte[0]));
+        assertEquals(-1, TextCompression.getDictionaryVersion(
+                new byte[] {TextCompression.FORMAT_DEFLATE, 0}));
+        // gzip-compressed texts:
+        assertEquals(-1, TextCompression.getDictionaryVersion(
+                new byte[] {0x1f, (byte) 0x8b, 8, 0}));
+        // big endian, unsigned:
+        assertEquals(0x1234, TextCompression.getDictionaryVersion(
+                new byte[] {TextCompression.FORMAT_DEFLATE, 0x12, 0x34}));
+        assertEquals(0xffff, TextCompression.getDictionaryVersion(
+                new byte[] {TextCompression.FORMAT_DEFLATE, (byte) 0xff, (byte) 0xff}));
+    }
+
+    /**
+     * Test method for {@link TextCompression#unpack(byte[])},
+     * {@link TextCompression#pack(String, int)} and
+     * {@link TextCompression#setCurrentVersion(int)} with an unknown
+     * dictionary version.
+     */
+    @Test
+    public void testUnknownDictionary() {
+        assertFalse(TextCompression.hasDictionary(VERSION_UNKNOWN));
+        final byte[] packed = TextCompression.pack("text", 0);
+        packed[1] = (byte) (VERSION_UNKNOWN >> 8);
+        packed[2] = (byte) VERSION_UNKNOWN;
+        assertEquals(VERSION_UNKNOWN, TextCompression.getDictionaryVersion(packed));
+        try {
+            TextCompression.unpack(packed);
+            fail("expected IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+        }
+        try {
+            TextCompression.pack("text", VERSION_UNKNOWN);
+            fail("expected IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+        }
+        try {
+            TextCompression.setCurrentVersion(VERSION_UNKNOWN);
+            fail("expected IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+        }
+        // not packed by TextCompression:
+        try {
+            TextCompression.unpack(new byte[] {0x1f, (byte) 0x8b, 8, 0});
+            fail("expected IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+        }
+    }
+}
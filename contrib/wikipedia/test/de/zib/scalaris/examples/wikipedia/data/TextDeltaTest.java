@@ -0,0 +1,155 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris.examples.wikipedia.data;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test class for {@link TextDelta}.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class TextDeltaTest {
+    private final static String text1;
+    private final static String text2;
+
+    static {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50; ++i) {
+            sb.append("== Section ").append(i).append(" ==\n");
+            sb.append("Some text of section ").append(i)
+                    .append(" with a [[link]] and a {{template}}.\n");
+        }
+        text1 = sb.toString();
+        // change some sections, append and delete others
+        text2 = text1.replace("Section 7 ", "Changed section 7 ")
+                .replace("Some text of section 20 ", "")
+                + "== New section ==\nMore text.\n";
+    }
+
+    private static void checkRoundTrip(final String prevText, final String text) {
+        final List<Integer> chain = Arrays.asList(1);
+        final byte[] packed = TextDelta.encode(chain, prevText, text);
+        assertTrue(TextDelta.isDelta(packed));
+        assertEquals(TextDelta.FORMAT_DELTA, packed[0]);
+        assertEquals(chain, TextDelta.getChain(packed));
+        assertEquals(text, TextDelta.decode(prevText, packed));
+    }
+
+    /**
+     * Test method for {@link TextDelta#encode(List, String, String)} and
+     * {@link TextDelta#decode(String, byte[])} with changes in a larger text.
+     */
+    @Test
+    public void testRoundTrip() {
+        checkRoundTrip(text1, text2);
+        checkRoundTrip(text2, text1);
+        checkRoundTrip(text1, "completely different");
+        checkRoundTrip("short", text1);
+
+        // the unchanged parts are copied, i.e. not stored again:
+        assertTrue(TextDelta.encode(Arrays.asList(1), text1, text2).length < 200);
+    }
+
+    /**
+     * Test method for {@link TextDelta#encode(List, String, String)} and
+     * {@link TextDelta#decode(String, byte[])} with multi-byte UTF-8
+     * characters, also at the borders of copied blocks.
+     */
+    @Test
+    public void testRoundTripUTF8() {
+        final String umlauts = text1.replace("text", "T\u00e4xt \u00fc\u00f6");
+        checkRoundTrip(text1, umlauts);
+        checkRoundTrip(umlauts, text1);
+        final String cjk = umlauts.replace("Section", "\u7ae0\u8282 \u03a3\u03b5\u03ba");
+        checkRoundTrip(umlauts, cjk);
+        // surrogate pairs:
+        checkRoundTrip(cjk, cjk.replace("link", "\ud83d\ude00\ud83d\ude01"));
+        checkRoundTrip("", "\ud83d\ude00\u00e4");
+    }
+
+    /**
+     * Test method for {@link TextDelta#encode(List, String, String)} and
+     * {@link TextDelta#decode(String, byte[])} with empty and identical
+     * texts.
+     */
+    @Test
+    public void testEmptyAndIdentical() {
+        checkRoundTrip("", "");
+        checkRoundTrip("", text1);
+        checkRoundTrip(text1, "");
+        checkRoundTrip("a", "a");
+        checkRoundTrip(text1, text1);
+
+        // an identical text only consists of copy operations
+        final byte[] packed = TextDelta.encode(Arrays.asList(1), text1, text1);
+        assertTrue(String.valueOf(packed.length), packed.length < 64);
+    }
+
+    /**
+     * Test method for {@link TextDelta#getChain(byte[])} and
+     * {@link TextDelta#decode(String, byte[])} with a chain of several
+     * revisions starting at a keyframe.
+     */
+    @Test
+    public void testChain() {
+        // revision ids which need more than one byte as variable-length integers
+        final int[] ids = {5, 127, 128, 300, 70000, Integer.MAX_VALUE};
+        final List<String> texts = new ArrayList<String>(ids.length);
+        texts.add(text1);
+        final List<byte[]> deltas = new ArrayList<byte[]>(ids.length - 1);
+        final List<Integer> chain = new ArrayList<Integer>();
+        chain.add(ids[0]);
+        for (int i = 1; i < ids.length; ++i) {
+            final String text = texts.get(i - 1).replace("Section " + i + " ",
+                    "Section " + i + " (rev " + ids[i] + ") ");
+            texts.add(text);
+            deltas.add(TextDelta.encode(new ArrayList<Integer>(chain),
+                    texts.get(i - 1), text));
+            chain.add(ids[i]);
+        }
+
+        // reconstruct the last revision from the keyframe:
+        final byte[] last = deltas.get(deltas.size() - 1);
+        final List<Integer> lastChain = TextDelta.getChain(last);
+        assertEquals(chain.subList(0, ids.length - 1), lastChain);
+        String text = texts.get(0);
+        for (int i = 0; i < deltas.size(); ++i) {
+            assertEquals(lastChain.subList(0, i + 1), TextDelta.getChain(deltas.get(i)));
+            text = TextDelta.decode(text, deltas.get(i));
+            assertEquals(texts.get(i + 1), text);
+        }
+    }
+
+    /**
+     * Test method for {@link TextDelta#isDelta(byte[])}.
+     */
+    @Test
+    public void testIsDelta() {
+        assertFalse(TextDelta.isDelta(new byte[0]));
+        assertFalse(TextDelta.isDelta(new byte[] {TextDelta.FORMAT_DELTA}));
+        assertFalse(TextDelta.isDelta(new byte[] {TextCompression.FORMAT_DEFLATE, 0, 0}));
+        assertTrue(TextDelta.isDelta(TextDelta.encode(new ArrayList<Integer>(0), "", "")));
+    }
+}
@@ -25,7 +25,7 @@ import com.ericsson.otp.erlang.OtpErlangException;
  * scalaris ring fails.
  *
  * @author Nico Kruber, kruber@zib.de
- * @version 3.12
+ * @version 3.21
  * @since 2.5
  */
 public class AbortException extends OtpErlangException {
@@ -105,7 +105,7 @@ public class AbortException extends OtpErlangException {
      */
     public AbortException(final String msg, final List<String> responsibleKeys) {
         super(msg);
-        this.failedKeys = new ArrayList<String>(0);
+        this.failedKeys = responsibleKeys;
     }
 
     /**
@@ -0,0 +1,441 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+import de.zib.scalaris.operations.ReadOp;
+
+/**
+ * Base class of values which are spread among several keys (shards) in
+ * order to avoid a single hot key.
+ *
+ * <p>
+ * Shard <tt>i</tt> of a value at <tt>key</tt> is stored at
+ * <tt>key + ":" + i</tt>. The number of shards is stored at
+ * <tt>key + ":shards"</tt> as a list <tt>[writeShards, readShards]</tt>:
+ * modifications go to one of the first <tt>writeShards</tt> shards while
+ * reads aggregate the first <tt>readShards</tt> shards. Without this key,
+ * the shard count given to the constructor is used for both.
+ * </p>
+ *
+ * <p>
+ * {@link #resize(int)} re-distributes the value among a new number of shards
+ * online, i.e. inside a transaction. Since other clients may still use the
+ * old shard count until their next read, shrinking keeps reading the old
+ * shards until {@link #trim()} is called.
+ * </p>
+ *
+ * <p>
+ * Instances of this class are not thread-safe since the underlying
+ * {@link Connection} is not.
+ * </p>
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public abstract class AbstractShardedValue {
+    protected final static Random rand = new Random();
+
+    protected final Connection conn;
+    protected final String key;
+    protected boolean randomPlacement = true;
+    protected int writeShards;
+    protected int readShards;
+
+    /**
+     * Creates a new sharded value.
+     *
+     * @param conn
+     *            the connection to use
+     * @param key
+     *            the key of the value
+     * @param shards
+     *            the number of shards to use unless a shard count has been
+     *            set with {@link #resize(int)}
+     */
+    protected AbstractShardedValue(final Connection conn, final String key,
+            final int shards) {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("shards must be an integer > 0");
+        }
+        this.conn = conn;
+        this.key = key;
+        this.writeShards = shards;
+        this.readShards = shards;
+    }
+
+    /**
+     * Gets the key of the given shard.
+     *
+     * @param shard
+     *            the shard number
+     *
+     * @return the key of the shard
+     */
+    protected String getShardKey(final int shard) {
+        return key + ":" + shard;
+    }
+
+    /**
+     * Gets the key storing the shard counts.
+     *
+     * @return the key of the shard counts
+     */
+    protected String getShardsKey() {
+        return key + ":shards";
+    }
+
+    /**
+     * Selects the shard to modify.
+     *
+     * @param belongsTo
+     *            object to determine the shard from with hash placement
+     *            (ignored with random placement)
+     *
+     * @return a shard number between 0 and <tt>writeShards - 1</tt>
+     */
+    protected int selectShard(final Object belongsTo) {
+        return selectShard(belongsTo, writeShards);
+    }
+
+    protected int selectShard(final Object belongsTo, final int shards) {
+        if (randomPlacement || (belongsTo == null)) {
+            synchronized (rand) {
+                return rand.nextInt(shards);
+            }
+        }
+        return (belongsTo.hashCode() & Integer.MAX_VALUE) % shards;
+    }
+
+    /**
+     * Selects the shard of an element stored in the value. With hash
+     * placement, this is the same for all Erlang representations of the same
+     * term, e.g. for an element converted with
+     * {@link ErlangValue#convertToErlang(Object)} and the same element read
+     * back from Scalaris (see {@link #hashTerm(OtpErlangObject)}).
+     *
+     * @param element
+     *            the element
+     * @param shards
+     *            the number of shards to select from
+     *
+     * @return a shard number between 0 and <tt>shards - 1</tt>
+     */
+    protected int selectElementShard(final OtpErlangObject element,
+            final int shards) {
+        if (randomPlacement || (element == null)) {
+            return selectShard(null, shards);
+        }
+        return (hashTerm(element) & Integer.MAX_VALUE) % shards;
+    }
+
+    /**
+     * Creates a hash code of the given Erlang term which does not depend on
+     * its Java representation. Strings, for example, may be an
+     * {@link OtpErlangString} or an {@link OtpErlangList} of integers (if read
+     * back with characters outside the Latin-1 range) which have different
+     * hash codes.
+     *
+     * @param term
+     *            the term to hash
+     *
+     * @return the hash code
+     */
+    protected static int hashTerm(final OtpErlangObject term) {
+        if (term instanceof OtpErlangString) {
+            final String str = ((OtpErlangString) term).stringValue();
+            int hash = 1;
+            for (int i = 0; i < str.length(); i = str.offsetByCodePoints(i, 1)) {
+                hash = (31 * hash) + str.codePointAt(i);
+            }
+            return hash;
+        } else if (term instanceof OtpErlangList) {
+            final OtpErlangList list = (OtpErlangList) term;
+            int hash = 1;
+            for (final OtpErlangObject element : list.elements()) {
+                hash = (31 * hash) + hashTerm(element);
+            }
+            if (list.getLastTail() != null) {
+                hash = (31 * hash) + hashTerm(list.getLastTail());
+            }
+            return hash;
+        } else if (term instanceof OtpErlangTuple) {
+            int hash = 7;
+            for (final OtpErlangObject element : ((OtpErlangTuple) term).elements()) {
+                hash = (31 * hash) + hashTerm(element);
+            }
+            return hash;
+        } else if (term instanceof OtpErlangLong) {
+            // same for OtpErlangInt, OtpErlangLong, ... and string characters
+            final OtpErlangLong number = (OtpErlangLong) term;
+            if (number.isLong()) {
+                final long value = number.longValue();
+                return (int) (value ^ (value >>> 32));
+            }
+            return number.bigIntegerValue().hashCode();
+        }
+        return term.hashCode();
+    }
+
+    /**
+     * Reads the shard counts and all shards with a single request.
+     *
+     * @return the values of all shards (<tt>null</tt> for non-existing
+     *         shards)
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    protected List<ErlangValue> readShards() throws ConnectionException,
+            UnknownException {
+        final TransactionSingleOp t = new TransactionSingleOp(conn);
+        final TransactionSingleOp.RequestList reqs = new TransactionSingleOp.RequestList();
+        reqs.addOp(new ReadOp(getShardsKey()));
+        final int shards = readShards;
+        for (int i = 0; i < shards; ++i) {
+            reqs.addOp(new ReadOp(getShardKey(i)));
+        }
+        TransactionSingleOp.ResultList results = t.req_list(reqs);
+        final List<ErlangValue> values = new ArrayList<ErlangValue>(shards);
+        for (int i = 1; i < results.size(); ++i) {
+            values.add(processRead(results, i));
+        }
+        updateShards(processRead(results, 0));
+        if (readShards > shards) {
+            // another client increased the number of shards -> read the rest
+            final TransactionSingleOp.RequestList reqs2 = new TransactionSingleOp.RequestList();
+            for (int i = shards; i < readShards; ++i) {
+                reqs2.addOp(new ReadOp(getShardKey(i)));
+            }
+            results = t.req_list(reqs2);
+            for (int i = 0; i < results.size(); ++i) {
+                values.add(processRead(results, i));
+            }
+        }
+        return values;
+    }
+
+    private static ErlangValue processRead(final ResultList results,
+            final int pos) throws UnknownException {
+        try {
+            return results.processReadAt(pos);
+        } catch (final NotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Sets the shard counts from the given value of the shard counts key.
+     *
+     * @param value
+     *            the value (<tt>null</tt> if not found)
+     *
+     * @throws UnknownException
+     *             if the value is no valid shard count
+     */
+    private void updateShards(final ErlangValue value) throws UnknownException {
+        if (value != null) {
+            try {
+                final List<ErlangValue> counts = value.listValue();
+                writeShards = counts.get(0).intValue();
+                readShards = counts.get(1).intValue();
+            } catch (final ClassCastException e) {
+                throw new UnknownException(e, value.value());
+            } catch (final IndexOutOfBoundsException e) {
+                throw new UnknownException(e, value.value());
+            }
+        }
+    }
+
+    /**
+     * Re-reads the shard counts, e.g. after another client re-sized the
+     * value.
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    public void refreshShards() throws ConnectionException, UnknownException {
+        try {
+            updateShards(new TransactionSingleOp(conn).read(getShardsKey()));
+        } catch (final NotFoundException e) {
+            // shard counts not set yet
+        }
+    }
+
+    /**
+     * Re-distributes the value among the given number of shards.
+     *
+     * Other clients keep using the old number of shards for modifications
+     * until their next read or {@link #refreshShards()}. When shrinking, the
+     * old shards will therefore still be read until {@link #trim()} is called.
+     *
+     * @param shards
+     *            the new number of shards
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws AbortException
+     *             if the commit failed due to a concurrent modification (retry
+     *             in this case)
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    public void resize(final int shards) throws ConnectionException,
+            AbortException, UnknownException {
+        resize(shards, false);
+    }
+
+    private void resize(final int shards, final boolean trim)
+            throws ConnectionException, AbortException, UnknownException {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("shards must be an integer > 0");
+        }
+        final Transaction t = new Transaction(conn);
+        try {
+            updateShards(t.read(getShardsKey()));
+        } catch (final NotFoundException e) {
+            // shard counts not set yet
+        }
+        final List<ErlangValue> values = new ArrayList<ErlangValue>(readShards);
+        for (int i = 0; i < readShards; ++i) {
+            try {
+                values.add(t.read(getShardKey(i)));
+            } catch (final NotFoundException e) {
+                values.add(null);
+            }
+        }
+        // note: shards between the write and read shards are emptied
+        final List<Object> newValues = redistribute(values, shards,
+                Math.max(shards, readShards));
+        final int newReadShards = trim ? shards : Math.max(shards, readShards);
+        for (int i = 0; i < newValues.size(); ++i) {
+            t.write(getShardKey(i), newValues.get(i));
+        }
+        final List<Integer> counts = new ArrayList<Integer>(2);
+        counts.add(shards);
+        counts.add(newReadShards);
+        t.write(getShardsKey(), counts);
+        t.commit();
+        writeShards = shards;
+        readShards = newReadShards;
+    }
+
+    /**
+     * Stops reading the shards which are not written any more after
+     * shrinking with {@link #resize(int)}.
+     *
+     * Only call this method if all clients use the new shard count for
+     * modifications since their changes to these shards are lost otherwise.
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws AbortException
+     *             if the commit failed due to a concurrent modification (retry
+     *             in this case)
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    public void trim() throws ConnectionException, AbortException,
+            UnknownException {
+        refreshShards();
+        resize(writeShards, true);
+    }
+
+    /**
+     * Re-distributes the values of the shards among the given number of
+     * shards.
+     *
+     * @param values
+     *            the current shard values (<tt>null</tt> for non-existing
+     *            shards)
+     * @param writeShards
+     *            the new number of shards to write to
+     * @param readShards
+     *            the new number of shards to read from (&gt;=
+     *            <tt>writeShards</tt>), values of shards between these two
+     *            numbers should be moved to the first <tt>writeShards</tt>
+     *            shards
+     *
+     * @return the new shard values (<tt>readShards</tt> entries)
+     *
+     * @throws UnknownException
+     *             if a shard contains an invalid value
+     */
+    protected abstract List<Object> redistribute(List<ErlangValue> values,
+            int writeShards, int readShards) throws UnknownException;
+
+    /**
+     * @return the key of the value
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return the number of shards modifications are spread among
+     */
+    public int getWriteShards() {
+        return writeShards;
+    }
+
+    /**
+     * @return the number of shards aggregated by reads
+     */
+    public int getReadShards() {
+        return readShards;
+    }
+
+    /**
+     * @return whether modifications are spread randomly among the shards
+     *         (default) or by the hash code of the modified object
+     */
+    public boolean isRandomPlacement() {
+        return randomPlacement;
+    }
+
+    /**
+     * Sets whether to spread modifications randomly among the shards or by
+     * the hash code of the modified object.
+     *
+     * @param randomPlacement
+     *            <tt>true</tt> for random, <tt>false</tt> for hash placement
+     */
+    public void setRandomPlacement(final boolean randomPlacement) {
+        this.randomPlacement = randomPlacement;
+    }
+}
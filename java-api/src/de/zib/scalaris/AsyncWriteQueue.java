@@ -0,0 +1,440 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.zib.scalaris.operations.AddOnNrOp;
+import de.zib.scalaris.operations.TransactionSingleOpOperation;
+import de.zib.scalaris.operations.WriteOp;
+
+/**
+ * Queues writes and increments and executes them asynchronously in batches
+ * using {@link TransactionSingleOp#req_list(TransactionSingleOp.RequestList)},
+ * i.e. each operation is committed on its own.
+ *
+ * <p>
+ * Queuing an operation never blocks: if the queue is full, the operation is
+ * dropped. Increments of the same key are coalesced into a single
+ * {@link AddOnNrOp} and a write replaces any queued operation of its key.
+ * Failed operations are reported to an optional {@link FailureCallback}.
+ * This is intended for writes which do not need a synchronous result, e.g.
+ * view counters or access logs.
+ * </p>
+ *
+ * <p>
+ * Instances of this class are thread-safe.
+ * </p>
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class AsyncWriteQueue {
+    /**
+     * Callback for operations which could not be executed.
+     *
+     * @author Nico Kruber, kruber@zib.de
+     * @version 3.21
+     * @since 3.21
+     */
+    public static interface FailureCallback {
+        /**
+         * Called (from the flushing thread) for each failed operation.
+         *
+         * @param op
+         *            the failed operation, i.e. a {@link WriteOp} or
+         *            {@link AddOnNrOp} (possibly coalesced)
+         * @param e
+         *            the error
+         */
+        public void failed(TransactionSingleOpOperation op, Exception e);
+    }
+
+    /**
+     * A queued operation, i.e. either a write or an increment.
+     */
+    private static class Entry {
+        final boolean write;
+        Object value;
+        long increment;
+
+        Entry(final Object value) {
+            this.write = true;
+            this.value = value;
+        }
+
+        Entry(final long increment) {
+            this.write = false;
+            this.increment = increment;
+        }
+
+        TransactionSingleOpOperation toOp(final String key) {
+            if (write) {
+                return new WriteOp(key, value);
+            } else {
+                return new AddOnNrOp(key, increment);
+            }
+        }
+    }
+
+    private final ConnectionPool cPool;
+    private final long connTimeout;
+    private final int maxBatchSize;
+    private final int maxQueued;
+    private volatile FailureCallback callback = null;
+
+    /**
+     * Queued operations: operations of the same map have distinct keys and
+     * may be executed in any order, operations of different maps are
+     * executed one map after another.
+     */
+    private final LinkedList<LinkedHashMap<String, Entry>> queue =
+            new LinkedList<LinkedHashMap<String, Entry>>();
+    private int queued = 0;
+    private boolean flushScheduled = false;
+    private final Object flushLock = new Object();
+    private ScheduledExecutorService scheduler = null;
+
+    private final AtomicLong accepted = new AtomicLong(0);
+    private final AtomicLong coalesced = new AtomicLong(0);
+    private final AtomicLong dropped = new AtomicLong(0);
+    private final AtomicLong succeeded = new AtomicLong(0);
+    private final AtomicLong failed = new AtomicLong(0);
+    private final AtomicLong batches = new AtomicLong(0);
+
+    /**
+     * Creates a new queue. Call {@link #start(long)} to flush it
+     * periodically.
+     *
+     * @param cPool
+     *            the pool to get connections from
+     * @param connTimeout
+     *            maximum time (in milliseconds) to wait for a connection from
+     *            the pool
+     * @param maxBatchSize
+     *            maximum number of operations per request (a flush is
+     *            triggered as soon as this many operations are queued)
+     * @param maxQueued
+     *            maximum number of queued operations, further operations are
+     *            dropped
+     */
+    public AsyncWriteQueue(final ConnectionPool cPool, final long connTimeout,
+            final int maxBatchSize, final int maxQueued) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be an integer > 0");
+        }
+        this.cPool = cPool;
+        this.connTimeout = connTimeout;
+        this.maxBatchSize = maxBatchSize;
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * Queues a write of the given value.
+     *
+     * @param key
+     *            the key to write the value to
+     * @param value
+     *            the value to write
+     *
+     * @param <T>
+     *            type of the value
+     *
+     * @return <tt>true</tt> if queued, <tt>false</tt> if the queue is full
+     */
+    public <T> boolean write(final String key, final T value) {
+        synchronized (queue) {
+            final LinkedHashMap<String, Entry> last = queue.peekLast();
+            if ((last != null) && last.containsKey(key)) {
+                // overwrites any previous operation
+                last.put(key, new Entry(value));
+                coalesced.incrementAndGet();
+                accepted.incrementAndGet();
+                return true;
+            }
+            return enqueue(key, new Entry(value));
+        }
+    }
+
+    /**
+     * Queues an increment of the number at the given key.
+     *
+     * @param key
+     *            the key of the number
+     * @param toAdd
+     *            the value to add
+     *
+     * @return <tt>true</tt> if queued, <tt>false</tt> if the queue is full
+     */
+    public boolean addOnNr(final String key, final long toAdd) {
+        synchronized (queue) {
+            final LinkedHashMap<String, Entry> last = queue.peekLast();
+            final Entry entry = (last == null) ? null : last.get(key);
+            if (entry != null) {
+                if (!entry.write) {
+                    entry.increment += toAdd;
+                    coalesced.incrementAndGet();
+                    accepted.incrementAndGet();
+                    return true;
+                } else if ((entry.value instanceof Long) || (entry.value instanceof Integer)) {
+                    entry.value = ((Number) entry.value).longValue() + toAdd;
+                    coalesced.incrementAndGet();
+                    accepted.incrementAndGet();
+                    return true;
+                }
+            }
+            return enqueue(key, new Entry(toAdd));
+        }
+    }
+
+    /**
+     * Adds a new operation to the queue (must hold the queue's lock).
+     */
+    private boolean enqueue(final String key, final Entry entry) {
+        if (queued >= maxQueued) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        LinkedHashMap<String, Entry> last = queue.peekLast();
+        if ((last == null) || last.containsKey(key)) {
+            last = new LinkedHashMap<String, Entry>();
+            queue.add(last);
+        }
+        last.put(key, entry);
+        ++queued;
+        accepted.incrementAndGet();
+        if ((queued >= maxBatchSize) && (scheduler != null) && !flushScheduled) {
+            flushScheduled = true;
+            scheduler.execute(new Runnable() {
+                public void run() {
+                    flush();
+                }
+            });
+        }
+        return true;
+    }
+
+    /**
+     * Removes up to <tt>maxBatchSize</tt> operations of distinct keys from
+     * the queue.
+     */
+    private List<TransactionSingleOpOperation> nextBatch() {
+        synchronized (queue) {
+            flushScheduled = false;
+            final LinkedHashMap<String, Entry> first = queue.peekFirst();
+            if (first == null) {
+                return null;
+            }
+            final List<TransactionSingleOpOperation> batch =
+                    new ArrayList<TransactionSingleOpOperation>(Math.min(maxBatchSize, first.size()));
+            final Iterator<Map.Entry<String, Entry>> iter = first.entrySet().iterator();
+            while (iter.hasNext() && (batch.size() < maxBatchSize)) {
+                final Map.Entry<String, Entry> entry = iter.next();
+                batch.add(entry.getValue().toOp(entry.getKey()));
+                iter.remove();
+            }
+            if (first.isEmpty()) {
+                queue.removeFirst();
+            }
+            queued -= batch.size();
+            return batch;
+        }
+    }
+
+    /**
+     * Executes all currently queued operations (in the calling thread).
+     */
+    public void flush() {
+        // only one flush at a time to keep the order of operations
+        synchronized (flushLock) {
+            List<TransactionSingleOpOperation> batch;
+            while ((batch = nextBatch()) != null) {
+                execute(batch);
+            }
+        }
+    }
+
+    private void execute(final List<TransactionSingleOpOperation> batch) {
+        batches.incrementAndGet();
+        final TransactionSingleOp.RequestList reqs = new TransactionSingleOp.RequestList();
+        for (final TransactionSingleOpOperation op : batch) {
+            reqs.addOp(op);
+        }
+        final TransactionSingleOp.ResultList results;
+        try {
+            final Connection conn = cPool.getConnection(connTimeout);
+            if (conn == null) {
+                throw new ConnectionException("no connection available in the pool");
+            }
+            try {
+                results = new TransactionSingleOp(conn).req_list(reqs);
+            } finally {
+                cPool.releaseConnection(conn);
+            }
+        } catch (final Exception e) {
+            for (final TransactionSingleOpOperation op : batch) {
+                failed(op, e);
+            }
+            return;
+        }
+        for (int i = 0; i < batch.size(); ++i) {
+            try {
+                if (batch.get(i) instanceof WriteOp) {
+                    results.processWriteAt(i);
+                } else {
+                    results.processAddOnNrAt(i);
+                }
+                succeeded.incrementAndGet();
+            } catch (final Exception e) {
+                failed(batch.get(i), e);
+            }
+        }
+    }
+
+    private void failed(final TransactionSingleOpOperation op, final Exception e) {
+        failed.incrementAndGet();
+        final FailureCallback callback = this.callback;
+        if (callback != null) {
+            try {
+                callback.failed(op, e);
+            } catch (final RuntimeException e2) {
+                // do not let the callback stop the flush
+            }
+        }
+    }
+
+    /**
+     * Flushes the queue periodically in a background thread (and whenever
+     * <tt>maxBatchSize</tt> operations are queued).
+     *
+     * @param interval
+     *            time between two flushes in milliseconds
+     */
+    public void start(final long interval) {
+        synchronized (queue) {
+            if (scheduler != null) {
+                return;
+            }
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(final Runnable r) {
+                    final Thread t = new Thread(r, "AsyncWriteQueue");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    flush();
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops flushing in the background and flushes all remaining operations
+     * in the calling thread.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting for the background flush to
+     *             finish
+     */
+    public void stop() throws InterruptedException {
+        ScheduledExecutorService scheduler;
+        synchronized (queue) {
+            scheduler = this.scheduler;
+            this.scheduler = null;
+        }
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        flush();
+    }
+
+    /**
+     * Sets the callback for failed operations.
+     *
+     * @param callback
+     *            the callback (may be <tt>null</tt>)
+     */
+    public void setFailureCallback(final FailureCallback callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * @return the number of currently queued operations
+     */
+    public int getQueued() {
+        synchronized (queue) {
+            return queued;
+        }
+    }
+
+    /**
+     * @return the number of accepted operations (including coalesced ones)
+     */
+    public long getAccepted() {
+        return accepted.get();
+    }
+
+    /**
+     * @return the number of operations merged into an already queued
+     *         operation
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return the number of operations dropped since the queue was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the number of successfully executed (possibly coalesced)
+     *         operations
+     */
+    public long getSucceeded() {
+        return succeeded.get();
+    }
+
+    /**
+     * @return the number of failed (possibly coalesced) operations
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return the number of requests sent to Scalaris
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+/**
+ * Provides methods to interact with the auto-scaling service of Scalaris
+ * (<tt>api_autoscale</tt>) in pull mode.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class Autoscale {
+    private static final OtpErlangAtom errorAtom = new OtpErlangAtom("error");
+    private static final OtpErlangAtom lockedAtom = new OtpErlangAtom("locked");
+    private static final OtpErlangAtom notLockedAtom = new OtpErlangAtom("not_locked");
+
+    /**
+     * Connection to a Scalaris node.
+     */
+    private final Connection connection;
+
+    /**
+     * Creates a connection to the erlang VM of the given Scalaris node. Uses
+     * the connection policy of the global connection factory.
+     *
+     * @param node
+     *            Scalaris node to connect with
+     * @throws ConnectionException
+     *             if the connection fails or the connection policy is not
+     *             cloneable
+     */
+    public Autoscale(final String node) throws ConnectionException {
+        final ConnectionFactory cf = ConnectionFactory.getInstance();
+        final String fixedNode = ConnectionFactory.fixLocalhostName(node);
+        connection = cf.createConnection(new FixedNodeConnectionPolicy(fixedNode));
+    }
+
+    /**
+     * Checks whether auto-scaling is configured (in pull mode).
+     *
+     * @return <tt>true</tt> if auto-scaling requests can be pulled
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    public boolean checkConfig() throws ConnectionException, UnknownException {
+        final OtpErlangObject received_raw = connection.doRPC("api_autoscale", "check_config",
+                new OtpErlangObject[] {});
+        if (received_raw.equals(CommonErlangObjects.trueAtom)) {
+            return true;
+        } else if (received_raw.equals(CommonErlangObjects.falseAtom)) {
+            return false;
+        }
+        throw new UnknownException(received_raw);
+    }
+
+    /**
+     * Pulls the current scale request from the auto-scaling leader. If it is
+     * not 0, further requests should be locked with
+     * {@link #lockScaleRequest()} until {@link #unlockScaleRequest()} has been
+     * called.
+     *
+     * @return the number of nodes to add (positive) or remove (negative)
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if auto-scaling is not configured or the leader did not
+     *             respond or any other error occurs
+     */
+    public int pullScaleRequest() throws ConnectionException,
+            UnknownException {
+        final OtpErlangObject received_raw = connection.doRPC("api_autoscale", "pull_scale_req",
+                new OtpErlangObject[] {});
+        try {
+            final OtpErlangTuple received = (OtpErlangTuple) received_raw;
+            if ((received.arity() == 2)
+                    && received.elementAt(0).equals(CommonErlangObjects.okAtom)) {
+                return new ErlangValue(received.elementAt(1)).intValue();
+            }
+            throw new UnknownException(received_raw);
+        } catch (final ClassCastException e) {
+            throw new UnknownException(e, received_raw);
+        }
+    }
+
+    /**
+     * Locks the scale request so that it does not change while it is being
+     * satisfied.
+     *
+     * @return <tt>true</tt> if locked, <tt>false</tt> if it was already
+     *         locked
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if auto-scaling is not configured or the leader did not
+     *             respond or any other error occurs
+     */
+    public boolean lockScaleRequest() throws ConnectionException,
+            UnknownException {
+        return processLockResult(connection.doRPC("api_autoscale",
+                "lock_scale_req", new OtpErlangObject[] {}), lockedAtom);
+    }
+
+    /**
+     * Unlocks the scale request after it has been satisfied. This also resets
+     * the request.
+     *
+     * @return <tt>true</tt> if unlocked, <tt>false</tt> if it was not locked
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if auto-scaling is not configured or the leader did not
+     *             respond or any other error occurs
+     */
+    public boolean unlockScaleRequest() throws ConnectionException,
+            UnknownException {
+        return processLockResult(connection.doRPC("api_autoscale",
+                "unlock_scale_req", new OtpErlangObject[] {}), notLockedAtom);
+    }
+
+    private static boolean processLockResult(final OtpErlangObject received_raw,
+            final OtpErlangAtom failReason) throws UnknownException {
+        if (received_raw.equals(CommonErlangObjects.okAtom)) {
+            return true;
+        }
+        try {
+            final OtpErlangTuple received = (OtpErlangTuple) received_raw;
+            if ((received.arity() == 2) && received.elementAt(0).equals(errorAtom)
+                    && received.elementAt(1).equals(failReason)) {
+                return false;
+            }
+            throw new UnknownException(received_raw);
+        } catch (final ClassCastException e) {
+            throw new UnknownException(e, received_raw);
+        }
+    }
+
+    /**
+     * Closes the connection to the Scalaris node.
+     *
+     * Note: Subsequent calls to the other methods will throw
+     * {@link ConnectionException}s!
+     */
+    public void closeConnection() {
+        connection.close();
+    }
+}
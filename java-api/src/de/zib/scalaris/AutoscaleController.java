@@ -0,0 +1,523 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds or removes DHT nodes in a Scalaris VM based on the observed load.
+ *
+ * <p>
+ * In each step (see {@link #step()}), the controller first pulls the scale
+ * request of Scalaris' auto-scaling service (if given) and satisfies it.
+ * Otherwise, it decides based on the average client-side latency and
+ * throughput of the requests reported via {@link #recordRequest(long)} since
+ * the last step as well as the current service-wide latency reported by
+ * {@link Monitor#getServicePerformance()}:
+ * </p>
+ * <ul>
+ * <li>if the latency is above {@link #getHighLatency()} or the throughput is
+ * above {@link #getHighThroughput()} for {@link #getUpSteps()} consecutive
+ * steps, {@link #getStepSize()} nodes are added,</li>
+ * <li>if the latency is below {@link #getLowLatency()} and the throughput is
+ * below {@link #getLowThroughput()} for {@link #getDownSteps()} consecutive
+ * steps, {@link #getStepSize()} nodes are shut down (gracefully).</li>
+ * </ul>
+ * <p>
+ * After each scaling action, the controller waits at least
+ * {@link #getCoolDown()} milliseconds before scaling again based on its own
+ * decision. The number of nodes is kept between {@link #getMinNodes()} and
+ * {@link #getMaxNodes()}.
+ * </p>
+ *
+ * <p>
+ * Steps are executed one at a time. The RPCs to Scalaris are issued without
+ * holding the lock of this object so that the getters and setters do not
+ * block while nodes are being added or removed.
+ * </p>
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class AutoscaleController {
+    protected final ScalarisVM vm;
+    protected final Monitor monitor;
+    protected final Autoscale autoscale;
+
+    /**
+     * Average latency (in ms) above which nodes are added.
+     */
+    protected double highLatency = 100.0;
+    /**
+     * Average latency (in ms) below which nodes may be removed.
+     */
+    protected double lowLatency = 20.0;
+    /**
+     * Throughput (in requests per second) above which nodes are added.
+     */
+    protected double highThroughput = Double.MAX_VALUE;
+    /**
+     * Throughput (in requests per second) below which nodes may be removed.
+     */
+    protected double lowThroughput = Double.MAX_VALUE;
+    /**
+     * Number of consecutive overloaded steps before adding nodes.
+     */
+    protected int upSteps = 3;
+    /**
+     * Number of consecutive underloaded steps before removing nodes.
+     */
+    protected int downSteps = 6;
+    /**
+     * Minimum time in milliseconds between two scaling actions.
+     */
+    protected long coolDown = 60000;
+    /**
+     * Number of nodes to add or remove at once.
+     */
+    protected int stepSize = 1;
+    protected int minNodes = 1;
+    protected int maxNodes = 64;
+
+    // client-side statistics since the last step (guarded by statsLock):
+    private final Object statsLock = new Object();
+    private long requests = 0;
+    private long latencySum = 0;
+
+    // serialises steps, i.e. the use of the (not thread-safe) connections:
+    private final Object stepLock = new Object();
+    private long lastStep = System.currentTimeMillis();
+
+    private long lastScale = 0;
+    private int overloaded = 0;
+    private int underloaded = 0;
+    private double lastLatency = 0.0;
+    private double lastThroughput = 0.0;
+
+    private long nodesAdded = 0;
+    private long nodesRemoved = 0;
+    private volatile Exception lastError = null;
+    private ScheduledExecutorService scheduler = null;
+
+    /**
+     * Creates a new controller.
+     *
+     * @param vm
+     *            the VM to add nodes to or remove nodes from
+     * @param monitor
+     *            monitor providing the service-wide latency (may be
+     *            <tt>null</tt> to use client-side values only)
+     * @param autoscale
+     *            Scalaris' auto-scaling service to pull scale requests from
+     *            (may be <tt>null</tt> to disable)
+     *
+     * @throws IllegalArgumentException
+     *             if auto-scaling is not configured in pull mode
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    public AutoscaleController(final ScalarisVM vm, final Monitor monitor,
+            final Autoscale autoscale) throws IllegalArgumentException,
+            ConnectionException, UnknownException {
+        if ((autoscale != null) && !autoscale.checkConfig()) {
+            throw new IllegalArgumentException(
+                    "auto-scaling is not configured in pull mode");
+        }
+        this.vm = vm;
+        this.monitor = monitor;
+        this.autoscale = autoscale;
+    }
+
+    /**
+     * Reports a finished client request.
+     *
+     * @param latency
+     *            the latency of the request in milliseconds
+     */
+    public void recordRequest(final long latency) {
+        synchronized (statsLock) {
+            ++requests;
+            latencySum += latency;
+        }
+    }
+
+    /**
+     * Executes a single control step.
+     *
+     * @return the number of nodes added (positive) or removed (negative)
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    public int step() throws ConnectionException, UnknownException {
+        synchronized (stepLock) {
+            final long now = System.currentTimeMillis();
+            final long elapsed = Math.max(1, now - lastStep);
+            final double throughput;
+            double latency;
+            synchronized (statsLock) {
+                throughput = (requests * 1000.0) / elapsed;
+                latency = (requests > 0) ? ((double) latencySum / requests) : 0.0;
+                requests = 0;
+                latencySum = 0;
+            }
+            lastStep = now;
+            if (monitor != null) {
+                final Double srvLatency = Monitor.getCurrentPerfValue(monitor
+                        .getServicePerformance().latencyAvg);
+                if ((srvLatency != null) && (srvLatency > latency)) {
+                    latency = srvLatency;
+                }
+            }
+            synchronized (this) {
+                lastLatency = latency;
+                lastThroughput = throughput;
+            }
+
+            // requests from Scalaris' auto-scaling service take precedence:
+            if (autoscale != null) {
+                final int req = autoscale.pullScaleRequest();
+                if ((req != 0) && autoscale.lockScaleRequest()) {
+                    try {
+                        return scaled(now, scale(req));
+                    } finally {
+                        autoscale.unlockScaleRequest();
+                    }
+                }
+            }
+
+            final int delta;
+            synchronized (this) {
+                if ((latency > highLatency) || (throughput > highThroughput)) {
+                    ++overloaded;
+                    underloaded = 0;
+                } else if ((latency < lowLatency) && (throughput < lowThroughput)) {
+                    ++underloaded;
+                    overloaded = 0;
+                } else {
+                    overloaded = 0;
+                    underloaded = 0;
+                }
+                if ((now - lastScale) < coolDown) {
+                    return 0;
+                }
+                if (overloaded >= upSteps) {
+                    delta = stepSize;
+                } else if (underloaded >= downSteps) {
+                    delta = -stepSize;
+                } else {
+                    return 0;
+                }
+            }
+            return scaled(now, scale(delta));
+        }
+    }
+
+    private synchronized int scaled(final long now, final int delta) {
+        lastScale = now;
+        overloaded = 0;
+        underloaded = 0;
+        return delta;
+    }
+
+    /**
+     * Adds or removes the given number of nodes within the configured
+     * bounds.
+     *
+     * @param delta
+     *            number of nodes to add (positive) or remove (negative)
+     *
+     * @return the number of nodes actually added (positive) or removed
+     *         (negative)
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    protected int scale(final int delta) throws ConnectionException,
+            UnknownException {
+        final int current = vm.getNumberOfNodes();
+        final int target;
+        synchronized (this) {
+            target = Math.max(minNodes, Math.min(maxNodes, current + delta));
+        }
+        if (target > current) {
+            final int added = vm.addNodes(target - current).successful.size();
+            synchronized (this) {
+                nodesAdded += added;
+            }
+            return added;
+        } else if (target < current) {
+            final int removed = vm.shutdownNodes(current - target).size();
+            synchronized (this) {
+                nodesRemoved += removed;
+            }
+            return -removed;
+        }
+        return 0;
+    }
+
+    /**
+     * Executes {@link #step()} periodically in a background thread. Errors
+     * are available via {@link #getLastError()}.
+     *
+     * @param interval
+     *            time between two steps in milliseconds
+     */
+    public synchronized void start(final long interval) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, "AutoscaleController");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    step();
+                    lastError = null;
+                } catch (final ConnectionException e) {
+                    lastError = e;
+                } catch (final UnknownException e) {
+                    lastError = e;
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops executing steps in the background.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * @return the error of the last background step (<tt>null</tt> if it was
+     *         successful)
+     */
+    public Exception getLastError() {
+        return lastError;
+    }
+
+    /**
+     * @return the latency (in ms) the last step was based on
+     */
+    public synchronized double getLastLatency() {
+        return lastLatency;
+    }
+
+    /**
+     * @return the client-side throughput (in requests per second) the last
+     *         step was based on
+     */
+    public synchronized double getLastThroughput() {
+        return lastThroughput;
+    }
+
+    /**
+     * @return the total number of nodes added by this controller
+     */
+    public synchronized long getNodesAdded() {
+        return nodesAdded;
+    }
+
+    /**
+     * @return the total number of nodes removed by this controller
+     */
+    public synchronized long getNodesRemoved() {
+        return nodesRemoved;
+    }
+
+    /**
+     * @return the average latency (in ms) above which nodes are added
+     */
+    public synchronized double getHighLatency() {
+        return highLatency;
+    }
+
+    /**
+     * @param highLatency
+     *            the average latency (in ms) above which nodes are added
+     */
+    public synchronized void setHighLatency(final double highLatency) {
+        this.highLatency = highLatency;
+    }
+
+    /**
+     * @return the average latency (in ms) below which nodes may be removed
+     */
+    public synchronized double getLowLatency() {
+        return lowLatency;
+    }
+
+    /**
+     * @param lowLatency
+     *            the average latency (in ms) below which nodes may be removed
+     */
+    public synchronized void setLowLatency(final double lowLatency) {
+        this.lowLatency = lowLatency;
+    }
+
+    /**
+     * @return the throughput (in requests per second) above which nodes are
+     *         added
+     */
+    public synchronized double getHighThroughput() {
+        return highThroughput;
+    }
+
+    /**
+     * @param highThroughput
+     *            the throughput (in requests per second) above which nodes
+     *            are added
+     */
+    public synchronized void setHighThroughput(final double highThroughput) {
+        this.highThroughput = highThroughput;
+    }
+
+    /**
+     * @return the throughput (in requests per second) below which nodes may
+     *         be removed
+     */
+    public synchronized double getLowThroughput() {
+        return lowThroughput;
+    }
+
+    /**
+     * @param lowThroughput
+     *            the throughput (in requests per second) below which nodes
+     *            may be removed
+     */
+    public synchronized void setLowThroughput(final double lowThroughput) {
+        this.lowThroughput = lowThroughput;
+    }
+
+    /**
+     * @return the number of consecutive overloaded steps before adding nodes
+     */
+    public synchronized int getUpSteps() {
+        return upSteps;
+    }
+
+    /**
+     * @param upSteps
+     *            the number of consecutive overloaded steps before adding
+     *            nodes
+     */
+    public synchronized void setUpSteps(final int upSteps) {
+        this.upSteps = upSteps;
+    }
+
+    /**
+     * @return the number of consecutive underloaded steps before removing
+     *         nodes
+     */
+    public synchronized int getDownSteps() {
+        return downSteps;
+    }
+
+    /**
+     * @param downSteps
+     *            the number of consecutive underloaded steps before removing
+     *            nodes
+     */
+    public synchronized void setDownSteps(final int downSteps) {
+        this.downSteps = downSteps;
+    }
+
+    /**
+     * @return the minimum time in milliseconds between two scaling actions
+     */
+    public synchronized long getCoolDown() {
+        return coolDown;
+    }
+
+    /**
+     * @param coolDown
+     *            the minimum time in milliseconds between two scaling actions
+     */
+    public synchronized void setCoolDown(final long coolDown) {
+        this.coolDown = coolDown;
+    }
+
+    /**
+     * @return the number of nodes to add or remove at once
+     */
+    public synchronized int getStepSize() {
+        return stepSize;
+    }
+
+    /**
+     * @param stepSize
+     *            the number of nodes to add or remove at once
+     */
+    public synchronized void setStepSize(final int stepSize) {
+        this.stepSize = stepSize;
+    }
+
+    /**
+     * @return the minimum number of nodes in the VM
+     */
+    public synchronized int getMinNodes() {
+        return minNodes;
+    }
+
+    /**
+     * @param minNodes
+     *            the minimum number of nodes in the VM
+     */
+    public synchronized void setMinNodes(final int minNodes) {
+        this.minNodes = minNodes;
+    }
+
+    /**
+     * @return the maximum number of nodes in the VM
+     */
+    public synchronized int getMaxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     * @param maxNodes
+     *            the maximum number of nodes in the VM
+     */
+    public synchronized void setMaxNodes(final int maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+}
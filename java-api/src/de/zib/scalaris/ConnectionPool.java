@@ -24,7 +24,7 @@ import java.util.Set;
  * Implements a simple (thread-safe) connection pool for Scalaris connections.
  *
  * @author Nico Kruber, kruber@zib.de
- * @version 3.7
+ * @version 3.21
  * @since 3.7
  */
 public class ConnectionPool {
@@ -168,6 +168,38 @@ public class ConnectionPool {
         }
     }
 
+    /**
+     * Closes at most <tt>max</tt> available pooled connections to any of the
+     * given nodes. Subsequently created connections will be established
+     * according to the connection policy, so this can be used to gradually
+     * move connections away from the given nodes.
+     *
+     * NOTE: This does not include any checked out connections!
+     *
+     * @param nodes
+     *            the nodes to close connections to
+     * @param max
+     *            maximum number of connections to close
+     *
+     * @return the number of closed connections
+     *
+     * @since 3.21
+     */
+    public synchronized int closeConnectionsTo(
+            final Collection<PeerNode> nodes, final int max) {
+        int closed = 0;
+        for (final Iterator<Connection> iterator = availableConns.iterator();
+                iterator.hasNext() && (closed < max);) {
+            final Connection conn = iterator.next();
+            if (nodes.contains(conn.getRemote())) {
+                conn.close();
+                iterator.remove();
+                ++closed;
+            }
+        }
+        return closed;
+    }
+
     /* (non-Javadoc)
      * @see java.lang.Object#finalize()
      */
@@ -10,7 +10,7 @@ import com.ericsson.otp.erlang.OtpErlangList;
  * Stores the result of a delete operation.
  *
  * @author Nico Kruber, kruber@zib.de
- * @version 3.19
+ * @version 3.21
  * @since 2.2
  *
  * @see ReplicatedDHT#delete(String)
@@ -29,6 +29,15 @@ public class DeleteResult {
      */
     public int undef = 0;
 
+    /**
+     * Creates an empty delete state object, e.g. to aggregate multiple
+     * results with {@link #add(DeleteResult)}.
+     *
+     * @since 3.21
+     */
+    public DeleteResult() {
+    }
+
     /**
      * Creates a delete state object by converting the result list returned from
      * erlang.
@@ -56,6 +65,20 @@ public class DeleteResult {
         }
     }
 
+    /**
+     * Adds the counts of the given result to this result.
+     *
+     * @param other
+     *            the result to add
+     *
+     * @since 3.21
+     */
+    public void add(final DeleteResult other) {
+        ok += other.ok;
+        locks_set += other.locks_set;
+        undef += other.undef;
+    }
+
     /**
      * Checks whether the delete operation has successfully deleted all replicas
      * (replicas which did not exist are counted as successfully deleted as
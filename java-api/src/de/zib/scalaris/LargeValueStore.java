@@ -0,0 +1,628 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangException;
+
+/**
+ * Stores large binary values by splitting them into chunks which are read
+ * and written in parallel.
+ *
+ * <p>
+ * Values up to {@link #getChunkSize()} bytes are stored directly under their
+ * key. Larger values are split into chunks of at most
+ * {@link #getChunkSize()} bytes, each stored under
+ * <tt>&lt;key&gt;:chunk:&lt;write id&gt;:&lt;SHA-1 of the chunk&gt;</tt>.
+ * The key itself then stores a manifest listing the chunks' checksums which
+ * is written with a {@link Transaction} after all chunks have been written.
+ * Readers therefore either see the old or the new value. Chunks are verified
+ * against their checksums when read.
+ * </p>
+ *
+ * <p>
+ * The random write id makes the chunks of each write unique so that the
+ * chunks of a replaced value are only referenced by the old manifest and can
+ * be deleted (using {@link ReplicatedDHT}) right after the new manifest has
+ * been committed. Chunks of failed writes are deleted as well.
+ * </p>
+ *
+ * <p>
+ * Before writing any chunk, the new manifest is added to a list of pending
+ * writes at <tt>&lt;key&gt;:pending</tt> which is removed from it in the
+ * transaction committing the manifest. Chunks of writers which crashed in
+ * between can thus be found and deleted by {@link #collectGarbage(String)}.
+ * </p>
+ *
+ * <p>
+ * Note: Do not call this class' methods from tasks of the executor it uses
+ * if the executor has a bounded number of threads.
+ * </p>
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class LargeValueStore {
+    /**
+     * Marker of a manifest (first element of the manifest list).
+     */
+    protected static final String MANIFEST_V1 = "lvs1";
+
+    protected final ConnectionPool cPool;
+    protected final ExecutorService executor;
+    protected final int chunkSize;
+    protected final long connTimeout;
+    protected final Random random = new Random();
+
+    /**
+     * Number of times to retry reading a value whose chunks vanished due to a
+     * concurrent write.
+     */
+    protected int maxReadRetries = 3;
+
+    /**
+     * Creates a new store.
+     *
+     * @param cPool
+     *            the pool to get connections from
+     * @param executor
+     *            the executor to read and write chunks with
+     * @param chunkSize
+     *            the maximum number of bytes per chunk (&gt; 0)
+     * @param connTimeout
+     *            maximum time (in milliseconds) to wait for a connection from
+     *            the pool
+     */
+    public LargeValueStore(final ConnectionPool cPool,
+            final ExecutorService executor, final int chunkSize,
+            final long connTimeout) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be an integer > 0");
+        }
+        this.cPool = cPool;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.connTimeout = connTimeout;
+    }
+
+    /**
+     * Manifest of a chunked value.
+     */
+    protected static class Manifest {
+        protected final long size;
+        protected final String writeId;
+        protected final List<String> checksums;
+
+        protected Manifest(final long size, final String writeId,
+                final List<String> checksums) {
+            this.size = size;
+            this.writeId = writeId;
+            this.checksums = checksums;
+        }
+
+        protected List<Object> toList() {
+            final List<Object> result = new ArrayList<Object>(4);
+            result.add(MANIFEST_V1);
+            result.add(size);
+            result.add(writeId);
+            result.add(checksums);
+            return result;
+        }
+
+        protected static Manifest fromErlangValue(final ErlangValue value)
+                throws UnknownException {
+            try {
+                final List<ErlangValue> list = value.listValue();
+                if ((list.size() != 4) || !MANIFEST_V1.equals(list.get(0).stringValue())) {
+                    throw new UnknownException("invalid manifest: " + value);
+                }
+                return new Manifest(list.get(1).longValue(),
+                        list.get(2).stringValue(), list.get(3).stringListValue());
+            } catch (final ClassCastException e) {
+                throw new UnknownException(e, value.value());
+            }
+        }
+
+        protected List<String> getChunkKeys(final String key) {
+            final List<String> result = new ArrayList<String>(checksums.size());
+            for (final String checksum : checksums) {
+                result.add(chunkKey(key, writeId, checksum));
+            }
+            return result;
+        }
+    }
+
+    protected static String pendingKey(final String key) {
+        return key + ":pending";
+    }
+
+    protected static String chunkKey(final String key, final String writeId,
+            final String checksum) {
+        return key + ":chunk:" + writeId + ":" + checksum;
+    }
+
+    /**
+     * Computes the SHA-1 checksum of the given data.
+     *
+     * @param data
+     *            the data
+     * @param from
+     *            the first byte to include
+     * @param to
+     *            the first byte to exclude
+     *
+     * @return the checksum in hex representation
+     */
+    protected static String checksum(final byte[] data, final int from, final int to) {
+        try {
+            final MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(data, from, to - from);
+            final byte[] digest = md.digest();
+            final StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (final byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-1
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes the given value.
+     *
+     * @param key
+     *            the key to write the value to
+     * @param value
+     *            the value to write
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws AbortException
+     *             if the commit of the manifest failed
+     * @throws UnknownException
+     *             if any other error occurs
+     * @throws InterruptedException
+     *             if interrupted while waiting for the chunks to be written
+     */
+    public void write(final String key, final byte[] value)
+            throws ConnectionException, AbortException, UnknownException,
+            InterruptedException {
+        if (value.length <= chunkSize) {
+            commitValue(key, value, null);
+            return;
+        }
+
+        final String writeId;
+        synchronized (random) {
+            writeId = Long.toHexString(random.nextLong());
+        }
+        final int chunks = (int) ((value.length + (long) chunkSize - 1) / chunkSize);
+        final List<String> checksums = new ArrayList<String>(chunks);
+        final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(chunks);
+        for (int i = 0; i < chunks; ++i) {
+            final int from = i * chunkSize;
+            final int to = Math.min(value.length, from + chunkSize);
+            final String checksum = checksum(value, from, to);
+            checksums.add(checksum);
+            tasks.add(new Callable<Object>() {
+                public Object call() throws ConnectionException,
+                        AbortException, UnknownException {
+                    final Connection conn = getConnection();
+                    try {
+                        new TransactionSingleOp(conn).write(
+                                chunkKey(key, writeId, checksum),
+                                Arrays.copyOfRange(value, from, to));
+                        return null;
+                    } finally {
+                        cPool.releaseConnection(conn);
+                    }
+                }
+            });
+        }
+        final Manifest manifest = new Manifest(value.length, writeId, checksums);
+        addPending(key, manifest);
+        boolean committed = false;
+        try {
+            try {
+                invokeAll(tasks);
+            } catch (final NotFoundException e) {
+                // not possible for writes
+                throw new UnknownException(e);
+            }
+            commitValue(key, manifest.toList(), manifest);
+            committed = true;
+        } finally {
+            if (!committed) {
+                deleteChunks(manifest.getChunkKeys(key));
+                removePending(key, manifest);
+            }
+        }
+    }
+
+    /**
+     * Adds the given manifest to the pending writes of the given key.
+     */
+    private void addPending(final String key, final Manifest manifest)
+            throws ConnectionException, AbortException, UnknownException {
+        final Connection conn = getConnection();
+        try {
+            new TransactionSingleOp(conn).addDelOnList(pendingKey(key),
+                    Arrays.<Object>asList(manifest.toList()), new ArrayList<Object>(0));
+        } catch (final NotAListException e) {
+            throw new UnknownException(e);
+        } finally {
+            cPool.releaseConnection(conn);
+        }
+    }
+
+    /**
+     * Removes the given manifest from the pending writes of the given key
+     * (best effort, errors are ignored).
+     */
+    private void removePending(final String key, final Manifest manifest) {
+        try {
+            final Connection conn = getConnection();
+            try {
+                new TransactionSingleOp(conn).addDelOnList(pendingKey(key),
+                        new ArrayList<Object>(0), Arrays.<Object>asList(manifest.toList()));
+            } finally {
+                cPool.releaseConnection(conn);
+            }
+        } catch (final Exception e) {
+            // left for collectGarbage(key)
+        }
+    }
+
+    /**
+     * Reads the manifests of the pending writes of the given key.
+     */
+    private static List<ErlangValue> readPending(final Transaction t,
+            final String key) throws ConnectionException, UnknownException {
+        try {
+            return t.read(pendingKey(key)).listValue();
+        } catch (final NotFoundException e) {
+            return new ArrayList<ErlangValue>(0);
+        } catch (final ClassCastException e) {
+            throw new UnknownException(e);
+        }
+    }
+
+    private static boolean isPending(final List<ErlangValue> pending,
+            final String writeId) throws UnknownException {
+        for (final ErlangValue value : pending) {
+            if (Manifest.fromErlangValue(value).writeId.equals(writeId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the given value (or manifest) with a transaction and deletes the
+     * chunks of the previous value (if any) afterwards.
+     *
+     * <p>
+     * A manifest is only committed if it is still listed as a pending write,
+     * i.e. if its chunks have not been deleted by
+     * {@link #collectGarbage(String)} in the meantime.
+     * </p>
+     *
+     * @param key
+     *            the key to write the value to
+     * @param value
+     *            the value (or manifest) to write
+     * @param manifest
+     *            the manifest of the value or <tt>null</tt> if the value is
+     *            stored directly
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws AbortException
+     *             if the commit failed or the pending write has been collected
+     * @throws UnknownException
+     *             if any other error occurs
+     * @throws InterruptedException
+     *             if interrupted while deleting the old chunks
+     */
+    protected void commitValue(final String key, final Object value,
+            final Manifest manifest) throws ConnectionException,
+            AbortException, UnknownException, InterruptedException {
+        final Connection conn = getConnection();
+        Manifest oldManifest = null;
+        try {
+            final Transaction t = new Transaction(conn);
+            try {
+                oldManifest = toManifest(t.read(key));
+            } catch (final NotFoundException e) {
+                // new key
+            }
+            if (manifest != null) {
+                if (!isPending(readPending(t, key), manifest.writeId)) {
+                    t.abort();
+                    throw new AbortException("pending write " + manifest.writeId
+                            + " of " + key + " has been collected",
+                            Arrays.asList(pendingKey(key)));
+                }
+                try {
+                    t.addDelOnList(pendingKey(key), new ArrayList<Object>(0),
+                            Arrays.<Object>asList(manifest.toList()));
+                } catch (final NotAListException e) {
+                    throw new UnknownException(e);
+                }
+            }
+            t.write(key, value);
+            t.commit();
+        } finally {
+            cPool.releaseConnection(conn);
+        }
+        if ((oldManifest != null)
+                && ((manifest == null) || !oldManifest.writeId.equals(manifest.writeId))) {
+            deleteChunks(oldManifest.getChunkKeys(key));
+        }
+    }
+
+    private static Manifest toManifest(final ErlangValue value)
+            throws UnknownException {
+        if (value.value() instanceof OtpErlangBinary) {
+            return null;
+        }
+        return Manifest.fromErlangValue(value);
+    }
+
+    /**
+     * Reads the value stored at the given key.
+     *
+     * @param key
+     *            the key to read
+     *
+     * @return the value
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws NotFoundException
+     *             if the key does not exist
+     * @throws UnknownException
+     *             if a chunk's checksum does not match or any other error
+     *             occurs
+     * @throws InterruptedException
+     *             if interrupted while waiting for the chunks to be read
+     */
+    public byte[] read(final String key) throws ConnectionException,
+            NotFoundException, UnknownException, InterruptedException {
+        for (int attempt = 0; ; ++attempt) {
+            final ErlangValue value;
+            final Connection conn = getConnection();
+            try {
+                value = new TransactionSingleOp(conn).read(key);
+            } finally {
+                cPool.releaseConnection(conn);
+            }
+            final Manifest manifest = toManifest(value);
+            if (manifest == null) {
+                return value.binaryValue();
+            }
+            try {
+                return readChunks(key, manifest);
+            } catch (final NotFoundException e) {
+                // chunks deleted by a concurrent write -> re-read the manifest
+                if (attempt >= maxReadRetries) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private byte[] readChunks(final String key, final Manifest manifest)
+            throws ConnectionException, NotFoundException, UnknownException,
+            InterruptedException {
+        if (manifest.size > Integer.MAX_VALUE) {
+            throw new UnknownException("value too large: " + manifest.size + " bytes");
+        }
+        final List<String> chunkKeys = manifest.getChunkKeys(key);
+        final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(chunkKeys.size());
+        for (int i = 0; i < chunkKeys.size(); ++i) {
+            final String chunkKey = chunkKeys.get(i);
+            final String checksum = manifest.checksums.get(i);
+            tasks.add(new Callable<Object>() {
+                public Object call() throws ConnectionException,
+                        NotFoundException, UnknownException {
+                    final Connection conn = getConnection();
+                    final byte[] chunk;
+                    try {
+                        chunk = new TransactionSingleOp(conn).read(chunkKey).binaryValue();
+                    } finally {
+                        cPool.releaseConnection(conn);
+                    }
+                    if (!checksum.equals(checksum(chunk, 0, chunk.length))) {
+                        throw new UnknownException("checksum mismatch in " + chunkKey);
+                    }
+                    return chunk;
+                }
+            });
+        }
+        final List<Object> chunks;
+        try {
+            chunks = invokeAll(tasks);
+        } catch (final AbortException e) {
+            // not possible for reads
+            throw new UnknownException(e);
+        }
+        final byte[] result = new byte[(int) manifest.size];
+        int pos = 0;
+        for (final Object chunk : chunks) {
+            final byte[] chunkBytes = (byte[]) chunk;
+            if ((pos + chunkBytes.length) > result.length) {
+                throw new UnknownException("size mismatch in " + key);
+            }
+            System.arraycopy(chunkBytes, 0, result, pos, chunkBytes.length);
+            pos += chunkBytes.length;
+        }
+        if (pos != result.length) {
+            throw new UnknownException("size mismatch in " + key);
+        }
+        return result;
+    }
+
+    /**
+     * Deletes the given chunks (best effort, errors are ignored).
+     *
+     * @param chunkKeys
+     *            the keys of the chunks to delete
+     *
+     * @throws InterruptedException
+     *             if interrupted while deleting
+     */
+    protected void deleteChunks(final List<String> chunkKeys)
+            throws InterruptedException {
+        if (chunkKeys.isEmpty()) {
+            return;
+        }
+        // failures only leave orphaned chunks which do not harm correctness
+        ReplicatedDHT.delete(cPool, executor, chunkKeys,
+                Math.min(4, chunkKeys.size()), 2000, connTimeout);
+    }
+
+    /**
+     * Deletes the chunks of all pending writes of the given key which are not
+     * referenced by its current manifest, e.g. left over by crashed writers.
+     *
+     * <p>
+     * Note: writes of this key which are still in progress are collected as
+     * well and will fail with an {@link AbortException}.
+     * </p>
+     *
+     * @param key
+     *            the key of the value
+     *
+     * @return the number of chunks deleted
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws AbortException
+     *             if the removal of the pending writes failed
+     * @throws UnknownException
+     *             if any other error occurs
+     * @throws InterruptedException
+     *             if interrupted while deleting
+     */
+    public int collectGarbage(final String key) throws ConnectionException,
+            AbortException, UnknownException, InterruptedException {
+        final List<String> orphaned = new ArrayList<String>();
+        final Connection conn = getConnection();
+        try {
+            final Transaction t = new Transaction(conn);
+            String currentWriteId = null;
+            try {
+                final Manifest manifest = toManifest(t.read(key));
+                if (manifest != null) {
+                    currentWriteId = manifest.writeId;
+                }
+            } catch (final NotFoundException e) {
+                // no current value -> all chunks are orphaned
+            }
+            final List<ErlangValue> pending = readPending(t, key);
+            if (pending.isEmpty()) {
+                t.abort();
+                return 0;
+            }
+            for (final ErlangValue value : pending) {
+                final Manifest manifest = Manifest.fromErlangValue(value);
+                if (!manifest.writeId.equals(currentWriteId)) {
+                    orphaned.addAll(manifest.getChunkKeys(key));
+                }
+            }
+            // remove the pending writes before deleting their chunks so that
+            // writers still in progress cannot commit their manifests
+            t.write(pendingKey(key), new ArrayList<Object>(0));
+            t.commit();
+        } finally {
+            cPool.releaseConnection(conn);
+        }
+        deleteChunks(orphaned);
+        return orphaned.size();
+    }
+
+    private Connection getConnection() throws ConnectionException {
+        final Connection conn = cPool.getConnection(connTimeout);
+        if (conn == null) {
+            throw new ConnectionException("no connection available in the pool");
+        }
+        return conn;
+    }
+
+    /**
+     * Executes all tasks and returns their results in order or throws the
+     * first error (after all tasks have finished).
+     */
+    private List<Object> invokeAll(final List<Callable<Object>> tasks)
+            throws ConnectionException, AbortException, NotFoundException,
+            UnknownException, InterruptedException {
+        final List<Future<Object>> futures = executor.invokeAll(tasks);
+        final List<Object> results = new ArrayList<Object>(futures.size());
+        for (final Future<Object> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (final ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof ConnectionException) {
+                    throw (ConnectionException) cause;
+                } else if (cause instanceof AbortException) {
+                    throw (AbortException) cause;
+                } else if (cause instanceof NotFoundException) {
+                    throw (NotFoundException) cause;
+                } else if (cause instanceof UnknownException) {
+                    throw (UnknownException) cause;
+                } else if (cause instanceof OtpErlangException) {
+                    throw new UnknownException(cause);
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new UnknownException(cause);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return the maximum number of bytes per chunk
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+}
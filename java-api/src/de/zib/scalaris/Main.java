@@ -333,10 +333,15 @@ public class Main {
     private static void startJmxService(final String node, final boolean verbose) {
         try {
             final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            // poll all VMs in the background and serve attributes from its cache:
+            final de.zib.scalaris.jmx.MonitorCollector collector = new de.zib.scalaris.jmx.MonitorCollector(node);
+            collector.start(10000);
+            final ObjectName collectorName = new ObjectName("de.zib.scalaris:type=MonitorCollector");
             final ObjectName nodeMonitorName = new ObjectName("de.zib.scalaris:type=MonitorNode");
-            final de.zib.scalaris.jmx.MonitorNode nodeMonitorMbean = new de.zib.scalaris.jmx.MonitorNode(node);
+            final de.zib.scalaris.jmx.MonitorNode nodeMonitorMbean = new de.zib.scalaris.jmx.MonitorNode(collector, node);
             final ObjectName serviceMonitorName = new ObjectName("de.zib.scalaris:type=MonitorService");
-            final de.zib.scalaris.jmx.MonitorService serviceMonitorMbean = new de.zib.scalaris.jmx.MonitorService(node);
+            final de.zib.scalaris.jmx.MonitorService serviceMonitorMbean = new de.zib.scalaris.jmx.MonitorService(collector);
+            mbs.registerMBean(collector, collectorName);
             mbs.registerMBean(nodeMonitorMbean, nodeMonitorName);
             mbs.registerMBean(serviceMonitorMbean, serviceMonitorName);
             System.out.println("Waiting forever...");
@@ -347,8 +352,6 @@ public class Main {
             throw new RuntimeException(e);
         } catch (final NullPointerException e) {
             throw new RuntimeException(e);
-        } catch (final ConnectionException e) {
-            printException("JMX service failed with connection error", e, verbose);
         } catch (final InstanceAlreadyExistsException e) {
             throw new RuntimeException(e);
         } catch (final MBeanRegistrationException e) {
@@ -15,13 +15,23 @@
  */
 package de.zib.scalaris;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -33,8 +43,15 @@ import java.util.concurrent.TimeUnit;
  * then be added to the given {@link ConnectionFactory} where old nodes with
  * connection failures will be removed in favour of newly discovered nodes.
  *
+ * In adaptive mode (see {@link #setAdaptive(boolean)}), all known and newly
+ * discovered nodes are probed concurrently for their round-trip time and
+ * load in each run instead. The best {@link #getMaxNodes()} nodes are kept
+ * and nodes which are consistently not among them are gradually replaced by
+ * better ones. Pooled connections to nodes which are not among the best are
+ * gradually closed so that new connections are established to better nodes.
+ *
  * @author Nico Kruber, kruber@zib.de
- * @version 3.16
+ * @version 3.21
  * @since 3.16
  */
 public class NodeDiscovery implements Runnable {
@@ -77,6 +94,63 @@ public class NodeDiscovery implements Runnable {
      */
     protected int minAgeToRemove = 60;
 
+    /**
+     * Whether to probe nodes and keep the best ones (adaptive mode).
+     */
+    protected boolean adaptive = false;
+
+    /**
+     * Maximum number of other nodes to ask for in adaptive mode.
+     */
+    protected int maxCandidates = 50;
+
+    /**
+     * Maximum time in milliseconds to wait for all probes of a run.
+     */
+    protected long probeTimeout = 2000;
+
+    /**
+     * Weight of a node's load (its average transaction latency in ms) in
+     * relation to its round-trip time (in ms) when scoring nodes.
+     */
+    protected double loadWeight = 1.0;
+
+    /**
+     * Weight of the newest probe in the (exponentially smoothed) score of a
+     * node.
+     */
+    protected double smoothing = 0.5;
+
+    /**
+     * Number of consecutive runs a node needs to be outside the best nodes
+     * before it is replaced.
+     */
+    protected int slowRunsToReplace = 3;
+
+    /**
+     * Maximum number of nodes to replace per run.
+     */
+    protected int maxReplacements = 1;
+
+    /**
+     * Maximum number of pooled connections to close per run to rebalance
+     * connections towards the best nodes.
+     */
+    protected int maxRebalanceConnections = 2;
+
+    /**
+     * Smoothed score of each probed node (lower is better).
+     */
+    protected final HashMap<String, Double> scores = new HashMap<String, Double>();
+
+    /**
+     * Number of consecutive runs each known node was not among the best
+     * nodes.
+     */
+    private final HashMap<String, Integer> slowRuns = new HashMap<String, Integer>();
+
+    private ExecutorService probeExecutor = null;
+
     /**
      * Constructor
      *
@@ -135,9 +209,12 @@ public class NodeDiscovery implements Runnable {
      * {@link #cf}.
      */
     public void run() {
+        if (adaptive) {
+            runAdaptive();
+            return;
+        }
         try {
-            final ScalarisVM vm = new ScalarisVM(cf.getConnectionPolicy().selectNode());
-            final List<String> otherVms = vm.getOtherVMs(maxNodes);
+            final List<String> otherVms = getOtherVMs(maxNodes);
             final List<PeerNode> existingNodes = cf.getNodes();
 
             // get a mapping of node names to PeerNode objects for faster access
@@ -168,6 +245,211 @@ public class NodeDiscovery implements Runnable {
         }
     }
 
+    /**
+     * Asks a known Scalaris node for other nodes.
+     *
+     * @param max
+     *            maximum number of nodes to return
+     *
+     * @return a list of nodes
+     *
+     * @throws ConnectionException
+     *             if the connection fails
+     */
+    protected List<String> getOtherVMs(final int max) throws ConnectionException {
+        final ScalarisVM vm = new ScalarisVM(cf.getConnectionPolicy().selectNode());
+        try {
+            return vm.getOtherVMs(max);
+        } finally {
+            vm.closeConnection();
+        }
+    }
+
+    /**
+     * Executes a single run in adaptive mode, i.e. probes all known and
+     * newly discovered nodes, adds the best new nodes if there is room and
+     * replaces nodes consistently not among the best {@link #maxNodes} nodes.
+     */
+    protected void runAdaptive() {
+        final List<String> otherVms;
+        try {
+            otherVms = getOtherVMs(maxCandidates);
+        } catch (final ConnectionException e) {
+            e.printStackTrace();
+            return;
+        }
+        final List<PeerNode> existingNodes = cf.getNodes();
+        final HashMap<String, PeerNode> existingNodesMap = new HashMap<String, PeerNode>(existingNodes.size());
+        for (final PeerNode node : existingNodes) {
+            existingNodesMap.put(node.toString(), node);
+        }
+        final LinkedHashSet<String> candidates = new LinkedHashSet<String>(existingNodesMap.keySet());
+        candidates.addAll(otherVms);
+
+        final Map<String, Double> probed = probe(candidates);
+        for (final String node : candidates) {
+            final Double score = probed.get(node);
+            final Double oldScore = scores.get(node);
+            if (score == null) {
+                scores.remove(node);
+            } else if (oldScore == null) {
+                scores.put(node, score);
+            } else {
+                scores.put(node, (smoothing * score) + ((1.0 - smoothing) * oldScore));
+            }
+        }
+        scores.keySet().retainAll(candidates);
+        slowRuns.keySet().retainAll(existingNodesMap.keySet());
+
+        // rank all reachable candidates, best first:
+        final List<String> ranked = new ArrayList<String>(candidates.size());
+        for (final String node : candidates) {
+            if (scores.containsKey(node)) {
+                ranked.add(node);
+            }
+        }
+        Collections.sort(ranked, new Comparator<String>() {
+            public int compare(final String o1, final String o2) {
+                return scores.get(o1).compareTo(scores.get(o2));
+            }
+        });
+        final HashSet<String> best = new HashSet<String>(ranked.subList(0, Math.min(maxNodes, ranked.size())));
+
+        // existing nodes which may be replaced, worst first:
+        final List<String> replaceable = new ArrayList<String>();
+        for (final String node : existingNodesMap.keySet()) {
+            if (best.contains(node)) {
+                slowRuns.remove(node);
+            } else {
+                final Integer runs = slowRuns.get(node);
+                final int newRuns = (runs == null) ? 1 : (runs + 1);
+                slowRuns.put(node, newRuns);
+                if (!scores.containsKey(node) || (newRuns >= slowRunsToReplace)) {
+                    replaceable.add(node);
+                }
+            }
+        }
+        Collections.sort(replaceable, new Comparator<String>() {
+            public int compare(final String o1, final String o2) {
+                // unreachable nodes first
+                final Double s1 = scores.get(o1);
+                final Double s2 = scores.get(o2);
+                if (s1 == null) {
+                    return (s2 == null) ? 0 : -1;
+                } else if (s2 == null) {
+                    return 1;
+                }
+                return s2.compareTo(s1);
+            }
+        });
+
+        // new nodes, best first:
+        final List<String> newNodes = new ArrayList<String>();
+        for (final String node : ranked) {
+            if (!existingNodesMap.containsKey(node)) {
+                newNodes.add(node);
+            }
+        }
+        int nodeCount = existingNodes.size();
+        int replaced = 0;
+        for (final String newNode : newNodes) {
+            if (nodeCount < maxNodes) {
+                cf.addNode(new PeerNode(newNode));
+                ++nodeCount;
+            } else if ((replaced < maxReplacements) && !replaceable.isEmpty()
+                    && best.contains(newNode)) {
+                final String oldNode = replaceable.remove(0);
+                final PeerNode oldPeer = existingNodesMap.remove(oldNode);
+                cf.removeNode(oldPeer);
+                slowRuns.remove(oldNode);
+                cf.addNode(new PeerNode(newNode));
+                ++replaced;
+            } else {
+                break;
+            }
+        }
+
+        if (cPool != null) {
+            final List<PeerNode> remaining = cf.getNodes();
+            cPool.closeAllBut(new HashSet<PeerNode>(remaining));
+            // gradually move connections away from nodes not among the best:
+            final List<PeerNode> notBest = new ArrayList<PeerNode>();
+            for (final PeerNode node : remaining) {
+                if (!best.contains(node.toString())) {
+                    notBest.add(node);
+                }
+            }
+            if (!notBest.isEmpty()) {
+                cPool.closeConnectionsTo(new HashSet<PeerNode>(notBest), maxRebalanceConnections);
+            }
+        }
+    }
+
+    /**
+     * Probes the given nodes concurrently and scores them by their
+     * round-trip time plus their (weighted) load.
+     *
+     * @param nodes
+     *            the nodes to probe
+     *
+     * @return the score (lower is better) of each node which replied within
+     *         {@link #probeTimeout}
+     */
+    protected Map<String, Double> probe(final Collection<String> nodes) {
+        final List<String> nodeList = new ArrayList<String>(nodes);
+        final List<Callable<Double>> tasks = new ArrayList<Callable<Double>>(nodeList.size());
+        for (final String node : nodeList) {
+            tasks.add(new Callable<Double>() {
+                public Double call() throws ConnectionException, UnknownException {
+                    final Monitor monitor = new Monitor(node);
+                    try {
+                        final long start = System.nanoTime();
+                        monitor.getNodeInfo();
+                        final double rtt = (System.nanoTime() - start) / 1000000.0;
+                        final Double load = Monitor.getCurrentPerfValue(monitor
+                                .getNodePerformance().latencyAvg);
+                        return rtt + ((load == null) ? 0.0 : (loadWeight * load));
+                    } finally {
+                        monitor.closeConnection();
+                    }
+                }
+            });
+        }
+        final HashMap<String, Double> result = new HashMap<String, Double>(nodeList.size());
+        try {
+            final List<Future<Double>> futures = getProbeExecutor().invokeAll(
+                    tasks, probeTimeout, TimeUnit.MILLISECONDS);
+            for (int i = 0; i < futures.size(); ++i) {
+                final Future<Double> future = futures.get(i);
+                if (!future.isCancelled()) {
+                    try {
+                        result.put(nodeList.get(i), future.get());
+                    } catch (final ExecutionException e) {
+                        // node failed -> no score
+                    }
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return result;
+    }
+
+    private synchronized ExecutorService getProbeExecutor() {
+        if (probeExecutor == null) {
+            probeExecutor = Executors.newFixedThreadPool(8, new ThreadFactory() {
+                private final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+
+                public Thread newThread(final Runnable r) {
+                    final Thread t = defaultFactory.newThread(r);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return probeExecutor;
+    }
+
     /**
      * Removes nodes with failed connection attempts, without any previous
      * connections, or with connections longer than minAgeToRemove seconds ago
@@ -284,6 +566,213 @@ public class NodeDiscovery implements Runnable {
         this.minAgeToRemove = minAgeToRemove;
     }
 
+    /**
+     * Gets whether nodes are probed and the best ones are kept (adaptive
+     * mode).
+     *
+     * @return the adaptive member
+     *
+     * @since 3.21
+     */
+    public final boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Sets whether nodes are probed and the best ones are kept (adaptive
+     * mode).
+     *
+     * @param adaptive
+     *            the adaptive to set
+     *
+     * @since 3.21
+     */
+    public final void setAdaptive(final boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * Gets the maximum number of other nodes to ask for in adaptive mode.
+     *
+     * @return the maxCandidates member
+     *
+     * @since 3.21
+     */
+    public final int getMaxCandidates() {
+        return maxCandidates;
+    }
+
+    /**
+     * Sets the maximum number of other nodes to ask for in adaptive mode.
+     *
+     * @param maxCandidates
+     *            the maxCandidates to set
+     *
+     * @since 3.21
+     */
+    public final void setMaxCandidates(final int maxCandidates) {
+        this.maxCandidates = maxCandidates;
+    }
+
+    /**
+     * Gets the maximum time in milliseconds to wait for all probes of a run.
+     *
+     * @return the probeTimeout member
+     *
+     * @since 3.21
+     */
+    public final long getProbeTimeout() {
+        return probeTimeout;
+    }
+
+    /**
+     * Sets the maximum time in milliseconds to wait for all probes of a run.
+     *
+     * @param probeTimeout
+     *            the probeTimeout to set
+     *
+     * @since 3.21
+     */
+    public final void setProbeTimeout(final long probeTimeout) {
+        this.probeTimeout = probeTimeout;
+    }
+
+    /**
+     * Gets the weight of a node's load in relation to its round-trip time.
+     *
+     * @return the loadWeight member
+     *
+     * @since 3.21
+     */
+    public final double getLoadWeight() {
+        return loadWeight;
+    }
+
+    /**
+     * Sets the weight of a node's load in relation to its round-trip time.
+     *
+     * @param loadWeight
+     *            the loadWeight to set
+     *
+     * @since 3.21
+     */
+    public final void setLoadWeight(final double loadWeight) {
+        this.loadWeight = loadWeight;
+    }
+
+    /**
+     * Gets the weight of the newest probe in the (exponentially smoothed)
+     * score of a node.
+     *
+     * @return the smoothing member
+     *
+     * @since 3.21
+     */
+    public final double getSmoothing() {
+        return smoothing;
+    }
+
+    /**
+     * Sets the weight of the newest probe in the (exponentially smoothed)
+     * score of a node, i.e. a value between <tt>0</tt> (exclusive) and
+     * <tt>1</tt> (only use the newest probe). Lower values make the ranking
+     * of the nodes less sensitive to single slow probes.
+     *
+     * @param smoothing
+     *            the smoothing to set
+     *
+     * @since 3.21
+     */
+    public final void setSmoothing(final double smoothing) {
+        this.smoothing = smoothing;
+    }
+
+    /**
+     * Gets the number of consecutive runs a node needs to be outside the best
+     * nodes before it is replaced.
+     *
+     * @return the slowRunsToReplace member
+     *
+     * @since 3.21
+     */
+    public final int getSlowRunsToReplace() {
+        return slowRunsToReplace;
+    }
+
+    /**
+     * Sets the number of consecutive runs a node needs to be outside the best
+     * nodes before it is replaced.
+     *
+     * @param slowRunsToReplace
+     *            the slowRunsToReplace to set
+     *
+     * @since 3.21
+     */
+    public final void setSlowRunsToReplace(final int slowRunsToReplace) {
+        this.slowRunsToReplace = slowRunsToReplace;
+    }
+
+    /**
+     * Gets the maximum number of nodes to replace per run.
+     *
+     * @return the maxReplacements member
+     *
+     * @since 3.21
+     */
+    public final int getMaxReplacements() {
+        return maxReplacements;
+    }
+
+    /**
+     * Sets the maximum number of nodes to replace per run.
+     *
+     * @param maxReplacements
+     *            the maxReplacements to set
+     *
+     * @since 3.21
+     */
+    public final void setMaxReplacements(final int maxReplacements) {
+        this.maxReplacements = maxReplacements;
+    }
+
+    /**
+     * Gets the maximum number of pooled connections to close per run to
+     * rebalance connections towards the best nodes.
+     *
+     * @return the maxRebalanceConnections member
+     *
+     * @since 3.21
+     */
+    public final int getMaxRebalanceConnections() {
+        return maxRebalanceConnections;
+    }
+
+    /**
+     * Sets the maximum number of pooled connections to close per run to
+     * rebalance connections towards the best nodes.
+     *
+     * @param maxRebalanceConnections
+     *            the maxRebalanceConnections to set
+     *
+     * @since 3.21
+     */
+    public final void setMaxRebalanceConnections(final int maxRebalanceConnections) {
+        this.maxRebalanceConnections = maxRebalanceConnections;
+    }
+
+    /**
+     * Sets the executor to probe nodes with in adaptive mode (by default, a
+     * pool of 8 daemon threads is created on demand).
+     *
+     * @param probeExecutor
+     *            the probeExecutor to set
+     *
+     * @since 3.21
+     */
+    public final synchronized void setProbeExecutor(final ExecutorService probeExecutor) {
+        this.probeExecutor = probeExecutor;
+    }
+
     /**
      * Gets the {@link ConnectionFactory} to work with.
      *
@@ -0,0 +1,405 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+import de.zib.scalaris.operations.CommitOp;
+import de.zib.scalaris.operations.Operation;
+import de.zib.scalaris.operations.PartialReadOp;
+import de.zib.scalaris.operations.ReadOp;
+
+/**
+ * Provides means to realise read-only transactions with the scalaris ring
+ * using Java.
+ *
+ * <p>
+ * Each request list is executed as a transaction of its own: all reads of a
+ * request list are sent to Scalaris together with a commit in a single
+ * <tt>req_list</tt> call which validates that the values read are consistent.
+ * No transaction log is kept on the client. A request list with a single read
+ * does not need to be validated: its quorum read is executed like a
+ * {@link TransactionSingleOp} request and the commit is skipped.
+ * </p>
+ *
+ * <h3>Example:</h3>
+ * <pre>
+ * <code style="white-space:pre;">
+ *   ReadOnlyTransaction t = new ReadOnlyTransaction();
+ *   ReadOnlyTransaction.RequestList reqs = new ReadOnlyTransaction.RequestList();
+ *   reqs.addOp(new ReadOp(key1)).addOp(new ReadOp(key2));
+ *   ReadOnlyTransaction.ResultList results = t.req_list(reqs);
+ *   String value1 = results.processReadAt(0).stringValue();
+ *   String value2 = results.processReadAt(1).stringValue();
+ * </code>
+ * </pre>
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class ReadOnlyTransaction
+        extends
+        AbstractTransaction<de.zib.scalaris.ReadOnlyTransaction.RequestList, de.zib.scalaris.ReadOnlyTransaction.ResultList> {
+    /**
+     * Constructor, uses the default connection returned by
+     * {@link ConnectionFactory#createConnection()}.
+     *
+     * @throws ConnectionException
+     *             if the connection fails
+     */
+    public ReadOnlyTransaction() throws ConnectionException {
+        super();
+    }
+
+    /**
+     * Constructor, uses the given connection to an erlang node.
+     *
+     * @param conn
+     *            connection to use for the transaction
+     */
+    public ReadOnlyTransaction(final Connection conn) {
+        super(conn);
+    }
+
+    /**
+     * Encapsulates requests that can be used for read-only transactions in
+     * {@link ReadOnlyTransaction#req_list(RequestList)}.
+     *
+     * @author Nico Kruber, kruber@zib.de
+     * @version 3.21
+     * @since 3.21
+     */
+    public static class RequestList extends de.zib.scalaris.RequestList {
+        /**
+         * Default constructor.
+         */
+        public RequestList() {
+            super();
+        }
+
+        /**
+         * Copy constructor.
+         *
+         * @param other the request list to copy from
+         */
+        public RequestList(final RequestList other) {
+            super(other);
+        }
+
+        /**
+         * Adds a read operation to the list of requests.
+         *
+         * @param op
+         *            the operation to add
+         *
+         * @return this {@link RequestList} object
+         *
+         * @throws UnsupportedOperationException
+         *             if the operation is no read operation
+         */
+        @Override
+        public RequestList addOp(final Operation op)
+                throws UnsupportedOperationException {
+            if (!isReadOp(op)) {
+                throw new UnsupportedOperationException();
+            }
+            return (RequestList) super.addOp(op);
+        }
+
+        /**
+         * Throws an {@link UnsupportedOperationException} as the commit is
+         * added automatically.
+         *
+         * @return this {@link RequestList} object
+         *
+         * @throws UnsupportedOperationException
+         *             always thrown in this class
+         */
+        @Override
+        public RequestList addCommit() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Adds all requests of the other request list to the end of this list.
+         *
+         * @param other another request list
+         *
+         * @return this {@link RequestList} object
+         */
+        public RequestList addAll(final RequestList other) {
+            return (RequestList) super.addAll_(other);
+        }
+    }
+
+    /**
+     * Encapsulates a list of results as returned by
+     * {@link ReadOnlyTransaction#req_list(RequestList)}.
+     *
+     * @author Nico Kruber, kruber@zib.de
+     * @version 3.21
+     * @since 3.21
+     */
+    public static class ResultList extends de.zib.scalaris.ResultList {
+        /**
+         * Creates a result list from an executed request list.
+         *
+         * @param requests
+         *            request list which created this result list
+         *
+         * @throws UnknownException
+         *             if any operation in the request list does not have a
+         *             result
+         */
+        ResultList(final RequestList requests) throws UnknownException {
+            super(requests);
+        }
+
+        /**
+         * Throws an {@link UnsupportedOperationException} as there are no
+         * writes in read-only transactions.
+         *
+         * @param pos
+         *            the position in the result list (starting at 0)
+         *
+         * @throws UnsupportedOperationException
+         *             always thrown in this class
+         */
+        @Override
+        public void processWriteAt(final int pos) {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Throws an {@link UnsupportedOperationException} as there are no
+         * writes in read-only transactions.
+         *
+         * @param pos
+         *            the position in the result list (starting at 0)
+         *
+         * @throws UnsupportedOperationException
+         *             always thrown in this class
+         */
+        @Override
+        public void processAddDelOnListAt(final int pos) {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Throws an {@link UnsupportedOperationException} as there are no
+         * writes in read-only transactions.
+         *
+         * @param pos
+         *            the position in the result list (starting at 0)
+         *
+         * @throws UnsupportedOperationException
+         *             always thrown in this class
+         */
+        @Override
+        public void processAddOnNrAt(final int pos) {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Throws an {@link UnsupportedOperationException} as there are no
+         * writes in read-only transactions.
+         *
+         * @param pos
+         *            the position in the result list (starting at 0)
+         *
+         * @throws UnsupportedOperationException
+         *             always thrown in this class
+         */
+        @Override
+        public void processTestAndSetAt(final int pos) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Executes all reads in <code>req</code> and validates them with a commit
+     * in the same request to Scalaris.
+     *
+     * @param req
+     *            the requests to issue
+     *
+     * @return results of all requests in the same order as they appear in
+     *         <code>req</code>
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws AbortException
+     *             if the values read were not consistent
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    @Override
+    public ResultList req_list(final RequestList req)
+            throws ConnectionException, AbortException, UnknownException {
+        if (!req.isEmpty()) {
+            final Transaction.RequestList allReq = new Transaction.RequestList();
+            for (final Operation op : req.getRequests()) {
+                allReq.addOp(op);
+            }
+            allReq.addCommit();
+            req_list_commit(connection, module(), compressed, allReq);
+        }
+        return new ResultList(req);
+    }
+
+    @Override
+    protected RequestList newReqList() {
+        return new RequestList();
+    }
+
+    /**
+     * Checks whether the given operation only reads data.
+     *
+     * @param op
+     *            the operation to check
+     *
+     * @return <tt>true</tt> for read operations, <tt>false</tt> otherwise
+     */
+    static boolean isReadOp(final Operation op) {
+        return (op instanceof ReadOp) || (op instanceof PartialReadOp);
+    }
+
+    /**
+     * Checks whether the given request list only consists of read operations
+     * and (optionally) a commit.
+     *
+     * @param req
+     *            the request list to check
+     *
+     * @return <tt>true</tt> if read-only, <tt>false</tt> otherwise
+     */
+    static boolean isReadOnly(final de.zib.scalaris.RequestList req) {
+        for (final Operation op : req.getRequests()) {
+            if (!isReadOp(op) && !(op instanceof CommitOp)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Executes the given read-only request list ending with a commit as a new
+     * transaction without a transaction log and ignoring the transaction log
+     * returned by Scalaris.
+     *
+     * @param connection
+     *            the connection to use
+     * @param module
+     *            the API module to use
+     * @param compressed
+     *            whether the value part in the term should be encoded
+     * @param req
+     *            the requests to issue (including a commit)
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws AbortException
+     *             if the commit failed
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    static void req_list_commit(final Connection connection,
+            final String module, final boolean compressed,
+            final de.zib.scalaris.RequestList req) throws ConnectionException,
+            AbortException, UnknownException {
+        if (req.size() == 2) {
+            // a single read and the commit
+            req_list_single(connection, module, compressed, req);
+            return;
+        }
+        final OtpErlangObject received_raw = connection.doRPC(module, "req_list",
+                new OtpErlangObject[] { req.getErlangReqList(compressed) });
+        try {
+            /*
+             * possible return values:
+             *  {tx_tlog:tlog(), [{ok} | {ok, Value} | {fail, abort | timeout | not_found}]}
+             */
+            final OtpErlangTuple received = (OtpErlangTuple) received_raw;
+            if (received.arity() == 2) {
+                final OtpErlangList results = (OtpErlangList) received.elementAt(1);
+                if (results.arity() != req.size()) {
+                    throw new UnknownException("Result list size different from request list size!");
+                }
+                for (int i = 0; i < results.arity(); ++i) {
+                    req.getRequests().get(i).setResult(results.elementAt(i), compressed);
+                }
+                req.getCommit().processResult();
+                return;
+            }
+            throw new UnknownException(received_raw);
+        } catch (final ClassCastException e) {
+            // e.printStackTrace();
+            throw new UnknownException(e, received_raw);
+        }
+    }
+
+    /**
+     * Executes the given request list with a single read and a commit
+     * without the commit. A single quorum read is consistent on its own so
+     * that there is nothing to validate - the commit always succeeds.
+     *
+     * @param connection
+     *            the connection to use
+     * @param module
+     *            the API module to use
+     * @param compressed
+     *            whether the value part in the term should be encoded
+     * @param req
+     *            the requests to issue (one read and a commit)
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    private static void req_list_single(final Connection connection,
+            final String module, final boolean compressed,
+            final de.zib.scalaris.RequestList req) throws ConnectionException,
+            UnknownException {
+        final Operation read = req.getRequests().get(0);
+        final OtpErlangObject received_raw = connection.doRPC(module, "req_list_commit_each",
+                new OtpErlangObject[] { new OtpErlangList(read.getErlang(compressed)) });
+        try {
+            /*
+             * possible return values:
+             *  [api_tx:result()]
+             */
+            final OtpErlangList results = (OtpErlangList) received_raw;
+            if (results.arity() != 1) {
+                throw new UnknownException("Result list size different from request list size!");
+            }
+            read.setResult(results.elementAt(0), compressed);
+            req.getCommit().setResult(CommonErlangObjects.okTupleAtom, compressed);
+        } catch (final ClassCastException e) {
+            // e.printStackTrace();
+            throw new UnknownException(e, received_raw);
+        }
+    }
+}
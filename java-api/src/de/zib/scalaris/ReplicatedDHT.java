@@ -15,6 +15,14 @@
  */
 package de.zib.scalaris;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
 import com.ericsson.otp.erlang.OtpErlangAtom;
 import com.ericsson.otp.erlang.OtpErlangInt;
 import com.ericsson.otp.erlang.OtpErlangList;
@@ -49,6 +57,12 @@ import com.ericsson.otp.erlang.OtpErlangTuple;
  * </code>
  * </pre>
  *
+ * <h3>Deleting many values</h3>
+ *
+ * {@link #delete(ConnectionPool, ExecutorService, Iterator, int, int, long, DeleteCallback)}
+ * deletes keys from an arbitrary (e.g. streamed) source using several pooled
+ * connections concurrently and aggregates the results.
+ *
  * <h3>Connection errors</h3>
  *
  * Errors when setting up connections or trying to send/receive RPCs will be
@@ -59,10 +73,68 @@ import com.ericsson.otp.erlang.OtpErlangTuple;
  * number of automatic retries is adjustable (default: 3).
  *
  * @author Nico Kruber, kruber@zib.de
- * @version 3.19
+ * @version 3.21
  * @since 2.6
  */
 public class ReplicatedDHT {
+    /**
+     * Callback receiving the result of each key deleted by
+     * {@link ReplicatedDHT#delete(ConnectionPool, ExecutorService, Iterator, int, int, long, DeleteCallback)}.
+     * May be called concurrently by multiple threads.
+     *
+     * @author Nico Kruber, kruber@zib.de
+     * @since 3.21
+     */
+    public static interface DeleteCallback {
+        /**
+         * Called after a delete operation has finished (including delete
+         * operations with timeouts).
+         *
+         * @param key
+         *            the deleted key
+         * @param result
+         *            the result of the delete operation
+         * @param timeout
+         *            whether the delete timed out
+         */
+        public void deleted(String key, DeleteResult result, boolean timeout);
+
+        /**
+         * Called if the delete operation of a key failed.
+         *
+         * @param key
+         *            the key
+         * @param e
+         *            the error
+         */
+        public void failed(String key, Exception e);
+    }
+
+    /**
+     * Aggregated result of a batch delete operation.
+     *
+     * @author Nico Kruber, kruber@zib.de
+     * @since 3.21
+     */
+    public static class BatchDeleteResult {
+        /**
+         * Sum of the results of all delete operations.
+         */
+        public final DeleteResult total = new DeleteResult();
+        /**
+         * Number of processed keys.
+         */
+        public long keys = 0;
+        /**
+         * Number of delete operations which timed out.
+         */
+        public long timeouts = 0;
+        /**
+         * Number of delete operations which failed.
+         */
+        public long failures = 0;
+    }
+
     /**
      * Stores the result list returned by erlang during a delete operation.
      *
@@ -258,6 +330,215 @@ public class ReplicatedDHT {
         return delete(new OtpErlangString(key), timeout);
     }
 
+    /**
+     * Deletes all replicas of all given keys using <tt>concurrency</tt>
+     * connections from the given pool in parallel. Keys are taken from the
+     * iterator on demand, i.e. they may be streamed from any source.
+     *
+     * Each connection has a single delete operation in flight: replies to
+     * RPCs do not identify their request and may arrive in any order, so
+     * several outstanding deletes on one connection could not be matched
+     * with their keys. Use a higher <tt>concurrency</tt> (and pool size) to
+     * keep more operations in flight.
+     *
+     * WARNING: This function can lead to inconsistent data (e.g. deleted items
+     * can re-appear). Also when re-creating an item the version before the
+     * delete can re-appear.
+     *
+     * @param cPool
+     *            the pool to get connections from
+     * @param executor
+     *            the executor to run the delete workers with
+     * @param keys
+     *            the keys to delete (only accessed by one thread at a time)
+     * @param concurrency
+     *            maximum number of concurrent delete operations
+     * @param timeout
+     *            the time (in milliseconds) to wait for the results of each
+     *            key
+     * @param connTimeout
+     *            maximum time (in milliseconds) to wait for a connection from
+     *            the pool
+     * @param callback
+     *            receives the result of each key (may be <tt>null</tt>)
+     *
+     * @return the aggregated results (keys for which no connection could be
+     *         taken from the pool count as failures)
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting for the delete operations (the
+     *             remaining operations are cancelled)
+     *
+     * @since 3.21
+     */
+    public static BatchDeleteResult delete(final ConnectionPool cPool,
+            final ExecutorService executor, final Iterator<String> keys,
+            final int concurrency, final int timeout, final long connTimeout,
+            final DeleteCallback callback) throws InterruptedException {
+        final BatchDeleteResult result = new BatchDeleteResult();
+        final List<Future<ConnectionException>> workers = new ArrayList<Future<ConnectionException>>(concurrency);
+        for (int i = 0; i < concurrency; ++i) {
+            workers.add(executor.submit(new Callable<ConnectionException>() {
+                public ConnectionException call() {
+                    return deleteWorker(cPool, keys, timeout, connTimeout, callback, result);
+                }
+            }));
+        }
+        ConnectionException error = null;
+        try {
+            for (final Future<ConnectionException> worker : workers) {
+                try {
+                    final ConnectionException workerError = worker.get();
+                    if (error == null) {
+                        error = workerError;
+                    }
+                } catch (final ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                }
+            }
+        } catch (final InterruptedException e) {
+            for (final Future<ConnectionException> worker : workers) {
+                worker.cancel(true);
+            }
+            throw e;
+        }
+        if (error != null) {
+            // no worker got a connection for the remaining keys
+            failRemaining(keys, error, callback, result);
+        }
+        return result;
+    }
+
+    /**
+     * Deletes all replicas of all given keys, see
+     * {@link #delete(ConnectionPool, ExecutorService, Iterator, int, int, long, DeleteCallback)}.
+     *
+     * @param cPool
+     *            the pool to get connections from
+     * @param executor
+     *            the executor to run the delete workers with
+     * @param keys
+     *            the keys to delete
+     * @param concurrency
+     *            maximum number of concurrent delete operations
+     * @param timeout
+     *            the time (in milliseconds) to wait for the results of each
+     *            key
+     * @param connTimeout
+     *            maximum time (in milliseconds) to wait for a connection from
+     *            the pool
+     *
+     * @return the aggregated results (keys for which no connection could be
+     *         taken from the pool count as failures)
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting for the delete operations
+     *
+     * @since 3.21
+     */
+    public static BatchDeleteResult delete(final ConnectionPool cPool,
+            final ExecutorService executor, final Iterable<String> keys,
+            final int concurrency, final int timeout, final long connTimeout)
+            throws InterruptedException {
+        return delete(cPool, executor, keys.iterator(), concurrency, timeout,
+                connTimeout, null);
+    }
+
+    /**
+     * Deletes keys from the given iterator with a single pooled connection
+     * until the iterator is exhausted, one key at a time.
+     *
+     * @return <tt>null</tt> or the error if no connection could be taken from
+     *         the pool (no key is processed in this case)
+     */
+    private static ConnectionException deleteWorker(final ConnectionPool cPool,
+            final Iterator<String> keys, final int timeout,
+            final long connTimeout, final DeleteCallback callback,
+            final BatchDeleteResult result) {
+        Connection conn;
+        try {
+            conn = cPool.getConnection(connTimeout);
+        } catch (final ConnectionException e) {
+            return e;
+        }
+        if (conn == null) {
+            return new ConnectionException("no connection available in the pool");
+        }
+        try {
+            final ReplicatedDHT rdht = new ReplicatedDHT(conn);
+            while (!Thread.currentThread().isInterrupted()) {
+                final String key;
+                synchronized (keys) {
+                    if (!keys.hasNext()) {
+                        return null;
+                    }
+                    key = keys.next();
+                }
+                DeleteResult keyResult = null;
+                boolean timedOut = false;
+                Exception error = null;
+                try {
+                    keyResult = rdht.delete(key, timeout);
+                } catch (final TimeoutException e) {
+                    keyResult = rdht.getLastDeleteResult();
+                    timedOut = true;
+                } catch (final ConnectionException e) {
+                    error = e;
+                } catch (final UnknownException e) {
+                    error = e;
+                }
+                synchronized (result) {
+                    ++result.keys;
+                    if (keyResult != null) {
+                        result.total.add(keyResult);
+                    }
+                    if (timedOut) {
+                        ++result.timeouts;
+                    }
+                    if (error != null) {
+                        ++result.failures;
+                    }
+                }
+                if (callback != null) {
+                    if (error != null) {
+                        callback.failed(key, error);
+                    } else {
+                        callback.deleted(key, keyResult, timedOut);
+                    }
+                }
+            }
+            return null;
+        } finally {
+            cPool.releaseConnection(conn);
+        }
+    }
+
+    /**
+     * Records all keys left in the given iterator as failed.
+     */
+    private static void failRemaining(final Iterator<String> keys,
+            final ConnectionException error, final DeleteCallback callback,
+            final BatchDeleteResult result) {
+        while (!Thread.currentThread().isInterrupted()) {
+            final String key;
+            synchronized (keys) {
+                if (!keys.hasNext()) {
+                    return;
+                }
+                key = keys.next();
+            }
+            synchronized (result) {
+                ++result.keys;
+                ++result.failures;
+            }
+            if (callback != null) {
+                callback.failed(key, error);
+            }
+        }
+    }
+
     /**
      * Returns the result of the last call to {@link #delete(String)}.
      *
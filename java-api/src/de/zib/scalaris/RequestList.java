@@ -37,7 +37,7 @@ import de.zib.scalaris.operations.WriteOp;
  * Generic request list.
  *
  * @author Nico Kruber, kruber@zib.de
- * @version 3.18
+ * @version 3.21
  * @since 3.5
  */
 public abstract class RequestList {
@@ -445,14 +445,25 @@ public abstract class RequestList {
      * Adds all requests of the other request list to the end of this list.
      *
      * Use in implementation in sub-classes with according types as different
-     * request lists may not be compatible with each other.
+     * request lists may not be compatible with each other. A commit in the
+     * other list is taken over.
      *
      * @param other another request list
      *
      * @return this {@link RequestList} object
+     *
+     * @throws UnsupportedOperationException
+     *             if this list already contains a commit
      */
     protected RequestList addAll_(final RequestList other) {
+        if (isCommit() && !other.isEmpty()) {
+            throw new UnsupportedOperationException(
+                    "No further request supported after a commit!");
+        }
         requests.addAll(other.requests);
+        if (other.isCommit()) {
+            this.commitOp = other.commitOp;
+        }
         return this;
     }
 
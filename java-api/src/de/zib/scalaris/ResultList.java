@@ -15,10 +15,15 @@
  */
 package de.zib.scalaris;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
+import com.ericsson.otp.erlang.OtpErlangBinary;
 import com.ericsson.otp.erlang.OtpErlangList;
 import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
 
 import de.zib.scalaris.RequestList;
 import de.zib.scalaris.operations.Operation;
@@ -28,7 +33,7 @@ import de.zib.scalaris.operations.ReadOp;
  * Generic result list.
  *
  * @author Nico Kruber, kruber@zib.de
- * @version 3.8
+ * @version 3.21
  * @since 3.5
  */
 public abstract class ResultList {
@@ -62,6 +67,27 @@ public abstract class ResultList {
         }
     }
 
+    /**
+     * Creates a result list from a request list whose operations have already
+     * been executed, e.g. in several parts with separate requests to Scalaris.
+     *
+     * @param requests
+     *            request list which created this result list
+     *
+     * @throws UnknownException
+     *             if any operation in the request list does not have a result
+     *
+     * @since 3.21
+     */
+    protected ResultList(final RequestList requests) throws UnknownException {
+        this.operations = requests.getRequests();
+        for (final Operation op : this.operations) {
+            if (op.getResult() == null) {
+                throw new UnknownException("No result for operation " + op.toString());
+            }
+        }
+    }
+
     /**
      * Gets the number of results in the list.
      *
@@ -90,6 +116,125 @@ public abstract class ResultList {
         return operations.get(index);
     }
 
+    /**
+     * Gets all read operations whose results still need to be decoded.
+     *
+     * @return a list of read operations in the order of this result list
+     */
+    private List<ReadOp> getCompressedReads() {
+        final List<ReadOp> result = new ArrayList<ReadOp>();
+        for (final Operation op : operations) {
+            if ((op instanceof ReadOp) && op.getResultCompressed()) {
+                result.add((ReadOp) op);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the (approximate) number of bytes to decode for the given reads.
+     */
+    private static long getCompressedSize(final List<ReadOp> reads) {
+        long size = 0;
+        for (final ReadOp op : reads) {
+            final OtpErlangObject result = op.getResult();
+            if ((result instanceof OtpErlangTuple)
+                    && (((OtpErlangTuple) result).arity() == 2)) {
+                final OtpErlangObject value = ((OtpErlangTuple) result).elementAt(1);
+                if (value instanceof OtpErlangBinary) {
+                    size += ((OtpErlangBinary) value).size();
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Creates tasks decoding the given reads with up to <tt>readsPerTask</tt>
+     * reads each.
+     */
+    private static List<Callable<Object>> createDecodeTasks(
+            final List<ReadOp> reads, final int readsPerTask) {
+        final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(
+                (reads.size() + readsPerTask - 1) / readsPerTask);
+        for (int i = 0; i < reads.size(); i += readsPerTask) {
+            final List<ReadOp> taskReads = reads.subList(i,
+                    Math.min(reads.size(), i + readsPerTask));
+            tasks.add(new Callable<Object>() {
+                public Object call() {
+                    for (final ReadOp op : taskReads) {
+                        op.decodeResult();
+                    }
+                    return null;
+                }
+            });
+        }
+        return tasks;
+    }
+
+    /**
+     * Decodes the results of all read requests (which were issued in
+     * compressed mode) in parallel and waits for them to be decoded.
+     *
+     * Subsequent calls to {@link #processReadAt(int)} do not need to decode
+     * any more. If the total size of the values to decode is below
+     * <tt>minBytes</tt>, they are decoded in the calling thread since
+     * parallel decoding would not pay off.
+     *
+     * @param executor
+     *            the executor to decode with
+     * @param minBytes
+     *            minimum number of (compressed) bytes to decode in parallel
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting for the values to be decoded
+     *
+     * @since 3.21
+     */
+    public void decodeReads(final ExecutorService executor, final long minBytes)
+            throws InterruptedException {
+        final List<ReadOp> reads = getCompressedReads();
+        if (reads.isEmpty()) {
+            return;
+        }
+        if ((reads.size() == 1) || (getCompressedSize(reads) < minBytes)) {
+            for (final ReadOp op : reads) {
+                op.decodeResult();
+            }
+            return;
+        }
+        final int parallelism = Runtime.getRuntime().availableProcessors();
+        executor.invokeAll(createDecodeTasks(reads,
+                (reads.size() + parallelism - 1) / parallelism));
+    }
+
+    /**
+     * Starts decoding the results of all read requests (which were issued in
+     * compressed mode) in the background in the order of this list and
+     * returns immediately.
+     *
+     * Results can be processed while decoding proceeds: if
+     * {@link #processReadAt(int)} hits a result which is currently being
+     * decoded, it waits for it, if it hits a result which has not been
+     * decoded yet, it decodes it itself.
+     *
+     * @param executor
+     *            the executor to decode with
+     * @param readsPerTask
+     *            number of results to decode per task
+     *
+     * @since 3.21
+     */
+    public void decodeReadsInBackground(final ExecutorService executor,
+            final int readsPerTask) {
+        if (readsPerTask <= 0) {
+            throw new IllegalArgumentException("readsPerTask must be an integer > 0");
+        }
+        for (final Callable<Object> task : createDecodeTasks(getCompressedReads(), readsPerTask)) {
+            executor.submit(task);
+        }
+    }
+
     /**
      * Processes the result at the given position which originated from a read
      * request and returns the value that has been read.
@@ -0,0 +1,624 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import de.zib.scalaris.ScalarisVM.AddNodesResult;
+import de.zib.scalaris.ScalarisVM.GetInfoResult;
+
+/**
+ * Executes {@link ScalarisVM} calls on a set of Scalaris (Erlang) VMs in
+ * parallel.
+ *
+ * <p>
+ * Each fleet-wide call is sent to all VMs concurrently and waits at most
+ * {@link #getDeadline()} milliseconds for their replies. VMs which did not
+ * reply in time or failed are reported in the {@link FleetResult} instead of
+ * failing the whole call. Connections to the VMs are kept open between calls
+ * and re-established after connection failures.
+ * </p>
+ *
+ * <p>
+ * Rolling operations ({@link #rollingAddNodes(int, int)},
+ * {@link #rollingShutdownNodes(int, int)}) change at most a given number of
+ * VMs at the same time and stop changing further VMs after a failure.
+ * </p>
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class ScalarisFleet {
+    /**
+     * A call to execute on a single VM.
+     *
+     * @param <T>
+     *            the type of the result
+     *
+     * @author Nico Kruber, kruber@zib.de
+     */
+    public static interface VMCall<T> {
+        /**
+         * Executes the call on the given VM.
+         *
+         * @param vm
+         *            the VM to use
+         *
+         * @return the result of the call
+         *
+         * @throws ConnectionException
+         *             if the connection is not active or a communication
+         *             error occurs or an exit signal was received or the
+         *             remote node sends a message containing an invalid
+         *             cookie
+         * @throws UnknownException
+         *             if any other error occurs
+         */
+        public T call(ScalarisVM vm) throws ConnectionException,
+                UnknownException;
+    }
+
+    /**
+     * Results of a fleet-wide call.
+     *
+     * @param <T>
+     *            the type of the result of each VM
+     *
+     * @author Nico Kruber, kruber@zib.de
+     */
+    public static class FleetResult<T> {
+        /**
+         * Results of the VMs which replied successfully.
+         */
+        public final Map<String, T> results = new LinkedHashMap<String, T>();
+        /**
+         * Errors of the VMs which failed or did not reply in time.
+         */
+        public final Map<String, Exception> errors = new LinkedHashMap<String, Exception>();
+
+        /**
+         * Checks whether all VMs replied successfully.
+         *
+         * @return <tt>true</tt> if there were no errors
+         */
+        public boolean isComplete() {
+            return errors.isEmpty();
+        }
+    }
+
+    /**
+     * Aggregated information about all VMs, see
+     * {@link ScalarisFleet#summarizeInfo(FleetResult)}.
+     *
+     * @author Nico Kruber, kruber@zib.de
+     */
+    public static class InfoSummary {
+        /**
+         * Number of VMs which replied.
+         */
+        public final int vms;
+        /**
+         * Number of VMs per Scalaris version.
+         */
+        public final Map<String, Integer> scalarisVersions;
+        /**
+         * Number of VMs per Erlang version.
+         */
+        public final Map<String, Integer> erlangVersions;
+        /**
+         * Total amount of memory currently allocated in all VMs.
+         */
+        public final long memTotal;
+        /**
+         * Minimum uptime of all VMs.
+         */
+        public final int minUptime;
+        /**
+         * Maximum uptime of all VMs.
+         */
+        public final int maxUptime;
+
+        protected InfoSummary(final int vms,
+                final Map<String, Integer> scalarisVersions,
+                final Map<String, Integer> erlangVersions, final long memTotal,
+                final int minUptime, final int maxUptime) {
+            this.vms = vms;
+            this.scalarisVersions = scalarisVersions;
+            this.erlangVersions = erlangVersions;
+            this.memTotal = memTotal;
+            this.minUptime = minUptime;
+            this.maxUptime = maxUptime;
+        }
+    }
+
+    /**
+     * Connection to a single VM (may be <tt>null</tt> if not connected).
+     * Calls to the same VM are serialised on this object.
+     */
+    private static class VMConnection {
+        /**
+         * The cached connection, changed while holding the lock of this
+         * object except for {@link ScalarisFleet#evict(VMConnection)}.
+         */
+        volatile ScalarisVM vm = null;
+    }
+
+    protected final ExecutorService executor;
+    protected final Map<String, VMConnection> vms = new LinkedHashMap<String, VMConnection>();
+    /**
+     * Maximum time in milliseconds to wait for all VMs of a fleet-wide call.
+     */
+    protected long deadline;
+
+    /**
+     * Creates a new fleet of the given VMs.
+     *
+     * @param nodes
+     *            the Scalaris (Erlang) VMs
+     * @param executor
+     *            executor to run the calls to the VMs with
+     * @param deadline
+     *            maximum time in milliseconds to wait for all VMs of a
+     *            fleet-wide call
+     */
+    public ScalarisFleet(final Collection<String> nodes,
+            final ExecutorService executor, final long deadline) {
+        this.executor = executor;
+        this.deadline = deadline;
+        addVMs(nodes);
+    }
+
+    /**
+     * Creates a new fleet of the given VM and all VMs it knows about.
+     *
+     * @param seedNode
+     *            the Scalaris (Erlang) VM to ask for other VMs
+     * @param maxVMs
+     *            maximum number of other VMs to add (&gt; 0)
+     * @param executor
+     *            executor to run the calls to the VMs with
+     * @param deadline
+     *            maximum time in milliseconds to wait for all VMs of a
+     *            fleet-wide call
+     *
+     * @return a new fleet
+     *
+     * @throws ConnectionException
+     *             if the connection to the seed node fails
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    public static ScalarisFleet discover(final String seedNode,
+            final int maxVMs, final ExecutorService executor,
+            final long deadline) throws ConnectionException, UnknownException {
+        final ScalarisVM seed = new ScalarisVM(seedNode);
+        try {
+            final List<String> nodes = new ArrayList<String>();
+            nodes.add(seedNode);
+            nodes.addAll(seed.getOtherVMs(maxVMs));
+            return new ScalarisFleet(nodes, executor, deadline);
+        } finally {
+            seed.closeConnection();
+        }
+    }
+
+    /**
+     * Adds the given VMs to the fleet (if not already present).
+     *
+     * @param nodes
+     *            the Scalaris (Erlang) VMs
+     */
+    public synchronized void addVMs(final Collection<String> nodes) {
+        for (final String node : nodes) {
+            if (!vms.containsKey(node)) {
+                vms.put(node, new VMConnection());
+            }
+        }
+    }
+
+    /**
+     * Gets the VMs of this fleet.
+     *
+     * @return a list of node names
+     */
+    public synchronized List<String> getVMs() {
+        return new ArrayList<String>(vms.keySet());
+    }
+
+    private synchronized List<Map.Entry<String, VMConnection>> getVMConnections() {
+        return new ArrayList<Map.Entry<String, VMConnection>>(vms.entrySet());
+    }
+
+    /**
+     * Executes the given call on the given VM using its cached connection.
+     */
+    private static <T> T callVM(final String node, final VMConnection conn,
+            final VMCall<T> call) throws ConnectionException, UnknownException {
+        synchronized (conn) {
+            ScalarisVM vm = conn.vm;
+            if (vm == null) {
+                vm = new ScalarisVM(node);
+                conn.vm = vm;
+            }
+            try {
+                return call.call(vm);
+            } catch (final ConnectionException e) {
+                vm.closeConnection();
+                if (conn.vm == vm) {
+                    conn.vm = null;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Closes and removes the cached connection of a VM whose call did not
+     * finish in time. Does not wait for the lock of the connection which is
+     * still held by the call (closing the connection aborts it).
+     */
+    private static void evict(final VMConnection conn) {
+        final ScalarisVM vm = conn.vm;
+        if (vm != null) {
+            conn.vm = null;
+            vm.closeConnection();
+        }
+    }
+
+    /**
+     * Executes the given call on all VMs in parallel and waits at most
+     * {@link #getDeadline()} milliseconds for them to finish.
+     *
+     * @param <T>
+     *            the type of the result of each VM
+     * @param call
+     *            the call to execute
+     *
+     * @return the results and errors of all VMs
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting for the VMs
+     */
+    public <T> FleetResult<T> forEach(final VMCall<T> call)
+            throws InterruptedException {
+        final List<Map.Entry<String, VMConnection>> conns = getVMConnections();
+        final List<Callable<T>> tasks = new ArrayList<Callable<T>>(conns.size());
+        for (final Map.Entry<String, VMConnection> conn : conns) {
+            tasks.add(new Callable<T>() {
+                public T call() throws ConnectionException, UnknownException {
+                    return callVM(conn.getKey(), conn.getValue(), call);
+                }
+            });
+        }
+        final List<Future<T>> futures = executor.invokeAll(tasks, deadline,
+                TimeUnit.MILLISECONDS);
+        return collect(conns, futures);
+    }
+
+    private static <T> FleetResult<T> collect(
+            final List<Map.Entry<String, VMConnection>> conns,
+            final List<Future<T>> futures) throws InterruptedException {
+        final FleetResult<T> result = new FleetResult<T>();
+        for (int i = 0; i < futures.size(); ++i) {
+            final String node = conns.get(i).getKey();
+            try {
+                result.results.put(node, futures.get(i).get());
+            } catch (final CancellationException e) {
+                evict(conns.get(i).getValue());
+                result.errors.put(node, new ConnectionException("deadline exceeded"));
+            } catch (final ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    result.errors.put(node, (Exception) cause);
+                } else {
+                    result.errors.put(node, new UnknownException(cause));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets some information about all VMs.
+     *
+     * @return the information of each VM
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting for the VMs
+     *
+     * @see ScalarisVM#getInfo()
+     */
+    public FleetResult<GetInfoResult> getInfo() throws InterruptedException {
+        return forEach(new VMCall<GetInfoResult>() {
+            public GetInfoResult call(final ScalarisVM vm)
+                    throws ConnectionException, UnknownException {
+                return vm.getInfo();
+            }
+        });
+    }
+
+    /**
+     * Gets the number of nodes in all VMs.
+     *
+     * @return the number of nodes of each VM
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting for the VMs
+     *
+     * @see ScalarisVM#getNumberOfNodes()
+     */
+    public FleetResult<Integer> getNumberOfNodes() throws InterruptedException {
+        return forEach(new VMCall<Integer>() {
+            public Integer call(final ScalarisVM vm)
+                    throws ConnectionException, UnknownException {
+                return vm.getNumberOfNodes();
+            }
+        });
+    }
+
+    /**
+     * Gets the VMs known to any VM of the fleet.
+     *
+     * @param max
+     *            maximum number of nodes to return per VM (&gt; 0)
+     *
+     * @return the known VMs of each VM
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting for the VMs
+     *
+     * @see ScalarisVM#getOtherVMs(int)
+     */
+    public FleetResult<List<String>> getOtherVMs(final int max)
+            throws InterruptedException {
+        return forEach(new VMCall<List<String>>() {
+            public List<String> call(final ScalarisVM vm)
+                    throws ConnectionException, UnknownException {
+                return vm.getOtherVMs(max);
+            }
+        });
+    }
+
+    /**
+     * Shuts down the given number of nodes in all VMs at once.
+     *
+     * @param number
+     *            number of nodes to shut down per VM
+     *
+     * @return the names of the nodes shut down in each VM
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting for the VMs
+     *
+     * @see ScalarisVM#shutdownNodes(int)
+     * @see #rollingShutdownNodes(int, int)
+     */
+    public FleetResult<List<ErlangValue>> shutdownNodes(final int number)
+            throws InterruptedException {
+        return forEach(shutdownNodesCall(number));
+    }
+
+    /**
+     * Adds the given number of nodes to each VM, changing at most
+     * <tt>maxConcurrent</tt> VMs at the same time. Once a VM failed, no
+     * further VMs are changed (their errors are reported as
+     * {@link UnknownException}s). Waits for all VMs without a deadline.
+     *
+     * @param number
+     *            number of nodes to add per VM
+     * @param maxConcurrent
+     *            maximum number of VMs to change at the same time (&gt; 0)
+     *
+     * @return the result of each VM
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting for the VMs
+     *
+     * @see ScalarisVM#addNodes(int)
+     */
+    public FleetResult<AddNodesResult> rollingAddNodes(final int number,
+            final int maxConcurrent) throws InterruptedException {
+        return rolling(new VMCall<AddNodesResult>() {
+            public AddNodesResult call(final ScalarisVM vm)
+                    throws ConnectionException, UnknownException {
+                final AddNodesResult result = vm.addNodes(number);
+                if (!result.errors.isEmpty()) {
+                    throw new UnknownException(result.errors);
+                }
+                return result;
+            }
+        }, maxConcurrent);
+    }
+
+    /**
+     * Shuts down the given number of nodes in each VM, changing at most
+     * <tt>maxConcurrent</tt> VMs at the same time. Once a VM failed, no
+     * further VMs are changed (their errors are reported as
+     * {@link UnknownException}s). Waits for all VMs without a deadline.
+     *
+     * @param number
+     *            number of nodes to shut down per VM
+     * @param maxConcurrent
+     *            maximum number of VMs to change at the same time (&gt; 0)
+     *
+     * @return the names of the nodes shut down in each VM
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting for the VMs
+     *
+     * @see ScalarisVM#shutdownNodes(int)
+     */
+    public FleetResult<List<ErlangValue>> rollingShutdownNodes(
+            final int number, final int maxConcurrent)
+            throws InterruptedException {
+        return rolling(shutdownNodesCall(number), maxConcurrent);
+    }
+
+    private static VMCall<List<ErlangValue>> shutdownNodesCall(final int number) {
+        return new VMCall<List<ErlangValue>>() {
+            public List<ErlangValue> call(final ScalarisVM vm)
+                    throws ConnectionException, UnknownException {
+                return vm.shutdownNodes(number);
+            }
+        };
+    }
+
+    /**
+     * Executes the given call on all VMs with at most
+     * <tt>maxConcurrent</tt> VMs at the same time, stopping after the first
+     * failure.
+     */
+    private <T> FleetResult<T> rolling(final VMCall<T> call,
+            final int maxConcurrent) throws InterruptedException {
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("maxConcurrent must be an integer > 0");
+        }
+        final List<Map.Entry<String, VMConnection>> conns = getVMConnections();
+        final Semaphore slots = new Semaphore(maxConcurrent, true);
+        final boolean[] failed = { false };
+        final List<Future<T>> futures = new ArrayList<Future<T>>(conns.size());
+        try {
+            for (final Map.Entry<String, VMConnection> conn : conns) {
+                slots.acquire();
+                futures.add(executor.submit(new Callable<T>() {
+                    public T call() throws ConnectionException, UnknownException {
+                        try {
+                            synchronized (failed) {
+                                if (failed[0]) {
+                                    throw new UnknownException("skipped after previous failure");
+                                }
+                            }
+                            try {
+                                return callVM(conn.getKey(), conn.getValue(), call);
+                            } catch (final ConnectionException e) {
+                                synchronized (failed) {
+                                    failed[0] = true;
+                                }
+                                throw e;
+                            } catch (final UnknownException e) {
+                                synchronized (failed) {
+                                    failed[0] = true;
+                                }
+                                throw e;
+                            }
+                        } finally {
+                            slots.release();
+                        }
+                    }
+                }));
+            }
+        } catch (final InterruptedException e) {
+            for (final Future<T> future : futures) {
+                future.cancel(true);
+            }
+            throw e;
+        }
+        return collect(conns, futures);
+    }
+
+    /**
+     * Aggregates the information of all VMs.
+     *
+     * @param infos
+     *            the result of {@link #getInfo()}
+     *
+     * @return a summary of the successful replies
+     */
+    public static InfoSummary summarizeInfo(final FleetResult<GetInfoResult> infos) {
+        final Map<String, Integer> scalarisVersions = new LinkedHashMap<String, Integer>();
+        final Map<String, Integer> erlangVersions = new LinkedHashMap<String, Integer>();
+        long memTotal = 0;
+        int minUptime = Integer.MAX_VALUE;
+        int maxUptime = 0;
+        for (final GetInfoResult info : infos.results.values()) {
+            increment(scalarisVersions, info.scalarisVersion);
+            increment(erlangVersions, info.erlangVersion);
+            memTotal += info.memTotal;
+            minUptime = Math.min(minUptime, info.uptime);
+            maxUptime = Math.max(maxUptime, info.uptime);
+        }
+        if (infos.results.isEmpty()) {
+            minUptime = 0;
+        }
+        return new InfoSummary(infos.results.size(), scalarisVersions,
+                erlangVersions, memTotal, minUptime, maxUptime);
+    }
+
+    private static void increment(final Map<String, Integer> map, final String key) {
+        final Integer count = map.get(key);
+        map.put(key, (count == null) ? 1 : (count + 1));
+    }
+
+    /**
+     * Gets the union of all VMs known to any VM of the fleet (including the
+     * fleet's VMs).
+     *
+     * @param otherVMs
+     *            the result of {@link #getOtherVMs(int)}
+     *
+     * @return a set of node names
+     */
+    public Set<String> allKnownVMs(final FleetResult<List<String>> otherVMs) {
+        final Set<String> result = new LinkedHashSet<String>(getVMs());
+        for (final List<String> nodes : otherVMs.results.values()) {
+            result.addAll(nodes);
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * Closes all connections to the VMs (they are re-opened on demand).
+     */
+    public void closeConnections() {
+        for (final Map.Entry<String, VMConnection> conn : getVMConnections()) {
+            synchronized (conn.getValue()) {
+                evict(conn.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return the maximum time in milliseconds to wait for all VMs of a
+     *         fleet-wide call
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * @param deadline
+     *            the maximum time in milliseconds to wait for all VMs of a
+     *            fleet-wide call
+     */
+    public void setDeadline(final long deadline) {
+        this.deadline = deadline;
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.zib.scalaris.operations.AddOnNrOp;
+
+/**
+ * A counter whose increments are spread among several keys (shards) using
+ * {@link AddOnNrOp} and summed up on read.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ * @see AbstractShardedValue
+ */
+public class ShardedCounter extends AbstractShardedValue {
+    /**
+     * Creates a new sharded counter.
+     *
+     * @param conn
+     *            the connection to use
+     * @param key
+     *            the key of the counter
+     * @param shards
+     *            the number of shards to use unless a shard count has been
+     *            set with {@link #resize(int)}
+     */
+    public ShardedCounter(final Connection conn, final String key,
+            final int shards) {
+        super(conn, key, shards);
+    }
+
+    /**
+     * Adds the given value to the counter (at a random shard).
+     *
+     * @param toAdd
+     *            the value to add
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws NotANumberException
+     *             if a shard contains no number
+     * @throws AbortException
+     *             if the commit failed
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    public void add(final long toAdd) throws ConnectionException,
+            NotANumberException, AbortException, UnknownException {
+        add(toAdd, null);
+    }
+
+    /**
+     * Adds the given value to the counter.
+     *
+     * @param toAdd
+     *            the value to add
+     * @param belongsTo
+     *            the object to determine the shard from with hash placement
+     *            (may be <tt>null</tt> for a random shard)
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws NotANumberException
+     *             if a shard contains no number
+     * @throws AbortException
+     *             if the commit failed
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    public void add(final long toAdd, final Object belongsTo)
+            throws ConnectionException, NotANumberException, AbortException,
+            UnknownException {
+        new TransactionSingleOp(conn).addOnNr(getShardKey(selectShard(belongsTo)), toAdd);
+    }
+
+    /**
+     * Reads the counter, i.e. sums up all shards.
+     *
+     * @return the current value
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if a shard contains no number or any other error occurs
+     */
+    public long get() throws ConnectionException, UnknownException {
+        return sum(readShards());
+    }
+
+    private static long sum(final List<ErlangValue> values)
+            throws UnknownException {
+        long result = 0;
+        for (final ErlangValue value : values) {
+            if (value != null) {
+                try {
+                    result += value.longValue();
+                } catch (final ClassCastException e) {
+                    throw new UnknownException(e, value.value());
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    protected List<Object> redistribute(final List<ErlangValue> values,
+            final int writeShards, final int readShards)
+            throws UnknownException {
+        final List<Object> result = new ArrayList<Object>(readShards);
+        result.add(sum(values));
+        for (int i = 1; i < readShards; ++i) {
+            result.add(0L);
+        }
+        return result;
+    }
+}
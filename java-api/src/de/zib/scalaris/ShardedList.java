@@ -0,0 +1,305 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpOutputStream;
+
+import de.zib.scalaris.operations.AddDelOnListOp;
+import de.zib.scalaris.operations.ReadOp;
+
+/**
+ * A list whose elements are spread among several keys (shards) using
+ * {@link AddDelOnListOp} and concatenated on read.
+ *
+ * <p>
+ * Like {@link AddDelOnListOp} on a single key, each element to remove only
+ * removes one occurrence of it. With random placement (default), an element
+ * may be in any shard and removals thus read all shards first to select a
+ * shard holding the element and then modify the shards inside a transaction.
+ * With hash placement, elements are placed by the hash code of their Erlang
+ * term (see {@link #selectElementShard(OtpErlangObject, int)}) which is the
+ * same on every client and for elements read back during
+ * {@link #resize(int)}. Removals thus only go to the element's shard (unless
+ * there are shards not written to any more after shrinking).
+ * </p>
+ *
+ * <p>
+ * Note: The order of the elements is not preserved.
+ * </p>
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ * @see AbstractShardedValue
+ */
+public class ShardedList extends AbstractShardedValue {
+    /**
+     * Creates a new sharded list.
+     *
+     * @param conn
+     *            the connection to use
+     * @param key
+     *            the key of the list
+     * @param shards
+     *            the number of shards to use unless a shard count has been
+     *            set with {@link #resize(int)}
+     */
+    public ShardedList(final Connection conn, final String key,
+            final int shards) {
+        super(conn, key, shards);
+    }
+
+    /**
+     * Adds and removes the given elements with a single request (with a
+     * transaction of two requests if the elements to remove may be in
+     * several shards).
+     *
+     * @param toAdd
+     *            the elements to add
+     * @param toRemove
+     *            the elements to remove
+     *
+     * @param <T>
+     *            type of the elements
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws NotAListException
+     *             if a shard contains no list
+     * @throws AbortException
+     *             if the commit failed, e.g. due to a concurrent modification
+     *             of the shards holding elements to remove (retry in this
+     *             case)
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    public <T> void addDel(final List<T> toAdd, final List<T> toRemove)
+            throws ConnectionException, NotAListException, AbortException,
+            UnknownException {
+        final Map<Integer, List<T>> adds = new HashMap<Integer, List<T>>();
+        final Map<Integer, List<T>> removes = new HashMap<Integer, List<T>>();
+        for (final T t : toAdd) {
+            getList(adds, selectElementShard(ErlangValue.convertToErlang(t), writeShards)).add(t);
+        }
+        if (!toRemove.isEmpty() && (randomPlacement || (readShards > writeShards))) {
+            addDelTx(adds, toRemove);
+            return;
+        }
+        for (final T t : toRemove) {
+            getList(removes, selectElementShard(ErlangValue.convertToErlang(t), writeShards)).add(t);
+        }
+        final TransactionSingleOp.RequestList reqs = new TransactionSingleOp.RequestList();
+        for (final Entry<Integer, List<T>> entry : adds.entrySet()) {
+            List<T> toRemove2 = removes.remove(entry.getKey());
+            if (toRemove2 == null) {
+                toRemove2 = new ArrayList<T>(0);
+            }
+            reqs.addOp(new AddDelOnListOp(getShardKey(entry.getKey()), entry.getValue(), toRemove2));
+        }
+        for (final Entry<Integer, List<T>> entry : removes.entrySet()) {
+            reqs.addOp(new AddDelOnListOp(getShardKey(entry.getKey()), new ArrayList<T>(0), entry.getValue()));
+        }
+        if (reqs.isEmpty()) {
+            return;
+        }
+        final TransactionSingleOp.ResultList results = new TransactionSingleOp(conn).req_list(reqs);
+        for (int i = 0; i < results.size(); ++i) {
+            results.processAddDelOnListAt(i);
+        }
+    }
+
+    /**
+     * Removes each of the given elements from one shard holding it (and adds
+     * the given elements) inside a transaction.
+     *
+     * @param adds
+     *            the elements to add to each shard
+     * @param toRemove
+     *            the elements to remove
+     *
+     * @param <T>
+     *            type of the elements
+     */
+    private <T> void addDelTx(final Map<Integer, List<T>> adds,
+            final List<T> toRemove) throws ConnectionException,
+            NotAListException, AbortException, UnknownException {
+        final Transaction t = new Transaction(conn);
+        final int shards = readShards;
+        final Transaction.RequestList reads = new Transaction.RequestList();
+        for (int i = 0; i < shards; ++i) {
+            reads.addOp(new ReadOp(getShardKey(i)));
+        }
+        final Transaction.ResultList readResults = t.req_list(reads);
+        // elements of each shard after adding (removals apply afterwards)
+        final List<List<OtpErlangObject>> elements = new ArrayList<List<OtpErlangObject>>(shards);
+        for (int i = 0; i < shards; ++i) {
+            final List<OtpErlangObject> shard = new ArrayList<OtpErlangObject>();
+            try {
+                final ErlangValue value = readResults.processReadAt(i);
+                for (final ErlangValue element : value.listValue()) {
+                    shard.add(element.value());
+                }
+            } catch (final NotFoundException e) {
+                // empty shard
+            } catch (final ClassCastException e) {
+                t.abort();
+                throw new NotAListException(e);
+            }
+            final List<T> added = adds.get(i);
+            if (added != null) {
+                for (final T element : added) {
+                    shard.add(normalise(ErlangValue.convertToErlang(element)));
+                }
+            }
+            elements.add(shard);
+        }
+
+        final Map<Integer, List<T>> removes = new HashMap<Integer, List<T>>();
+        final int offset = rand.nextInt(shards);
+        for (final T element : toRemove) {
+            final OtpErlangObject erlElement = normalise(ErlangValue.convertToErlang(element));
+            for (int j = 0; j < shards; ++j) {
+                // start at a random shard to spread removals of duplicates
+                final int i = (offset + j) % shards;
+                if (elements.get(i).remove(erlElement)) {
+                    getList(removes, i).add(element);
+                    break;
+                }
+            }
+            // not in any shard -> nothing to remove
+        }
+
+        final Transaction.RequestList reqs = new Transaction.RequestList();
+        for (int i = 0; i < shards; ++i) {
+            List<T> toAdd2 = adds.get(i);
+            List<T> toRemove2 = removes.get(i);
+            if (toAdd2 == null && toRemove2 == null) {
+                continue;
+            }
+            if (toAdd2 == null) {
+                toAdd2 = new ArrayList<T>(0);
+            }
+            if (toRemove2 == null) {
+                toRemove2 = new ArrayList<T>(0);
+            }
+            reqs.addOp(new AddDelOnListOp(getShardKey(i), toAdd2, toRemove2));
+        }
+        if (reqs.isEmpty()) {
+            t.abort();
+            return;
+        }
+        reqs.addCommit();
+        final Transaction.ResultList results = t.req_list(reqs);
+        for (int i = 0; i < (results.size() - 1); ++i) {
+            results.processAddDelOnListAt(i);
+        }
+        results.processCommitAt(results.size() - 1);
+    }
+
+    /**
+     * Converts the given term into the representation it has when read back
+     * from Scalaris, e.g. strings with characters outside the Latin-1 range
+     * become an {@link com.ericsson.otp.erlang.OtpErlangList} of integers.
+     *
+     * @param term
+     *            the term to convert
+     *
+     * @return an equal term as read back from Scalaris
+     *
+     * @throws UnknownException
+     *             if the term cannot be decoded again
+     */
+    private static OtpErlangObject normalise(final OtpErlangObject term)
+            throws UnknownException {
+        final OtpOutputStream os = new OtpOutputStream();
+        os.write_any(term);
+        try {
+            return new OtpInputStream(os.toByteArray()).read_any();
+        } catch (final OtpErlangDecodeException e) {
+            throw new UnknownException(e, term);
+        }
+    }
+
+    private static <T> List<T> getList(final Map<Integer, List<T>> map,
+            final int shard) {
+        List<T> list = map.get(shard);
+        if (list == null) {
+            list = new ArrayList<T>();
+            map.put(shard, list);
+        }
+        return list;
+    }
+
+    /**
+     * Reads the list, i.e. concatenates all shards.
+     *
+     * @return the current elements
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws UnknownException
+     *             if a shard contains no list or any other error occurs
+     */
+    public List<ErlangValue> get() throws ConnectionException,
+            UnknownException {
+        return concat(readShards());
+    }
+
+    private static List<ErlangValue> concat(final List<ErlangValue> values)
+            throws UnknownException {
+        final List<ErlangValue> result = new ArrayList<ErlangValue>();
+        for (final ErlangValue value : values) {
+            if (value != null) {
+                try {
+                    result.addAll(value.listValue());
+                } catch (final ClassCastException e) {
+                    throw new UnknownException(e, value.value());
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    protected List<Object> redistribute(final List<ErlangValue> values,
+            final int writeShards, final int readShards)
+            throws UnknownException {
+        final List<Object> result = new ArrayList<Object>(readShards);
+        for (int i = 0; i < readShards; ++i) {
+            result.add(new ArrayList<ErlangValue>());
+        }
+        for (final ErlangValue element : concat(values)) {
+            @SuppressWarnings("unchecked")
+            final List<ErlangValue> shard = (List<ErlangValue>) result.get(
+                    selectElementShard(element.value(), writeShards));
+            shard.add(element);
+        }
+        return result;
+    }
+}
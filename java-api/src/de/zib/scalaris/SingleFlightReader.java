@@ -0,0 +1,227 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads values with {@link TransactionSingleOp#read(String)} collapsing
+ * concurrent reads of the same key into a single request.
+ *
+ * <p>
+ * The first thread reading a key issues the request while any other thread
+ * reading the same key in the meantime waits for and gets the same result
+ * (or exception). Optionally, read values are put into a cache which is
+ * checked before reading.
+ * </p>
+ *
+ * <p>
+ * Note: A read collapsed into an in-flight read may return a value which was
+ * overwritten after the in-flight read was issued but before the collapsed
+ * read was started. Do not use this class if this is not acceptable.
+ * </p>
+ *
+ * <p>
+ * Instances of this class are thread-safe.
+ * </p>
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class SingleFlightReader {
+    private final ConnectionPool cPool;
+    private final long connTimeout;
+    private final ConcurrentMap<String, ErlangValue> cache;
+    private final ConcurrentMap<String, FutureTask<ErlangValue>> inFlight =
+            new ConcurrentHashMap<String, FutureTask<ErlangValue>>();
+
+    private final AtomicLong reads = new AtomicLong(0);
+    private final AtomicLong requests = new AtomicLong(0);
+    private final AtomicLong collapsedReads = new AtomicLong(0);
+    private final AtomicLong cacheHits = new AtomicLong(0);
+
+    /**
+     * Creates a new reader without a cache.
+     *
+     * @param cPool
+     *            the pool to get connections from
+     * @param connTimeout
+     *            maximum time (in milliseconds) to wait for a connection from
+     *            the pool
+     */
+    public SingleFlightReader(final ConnectionPool cPool, final long connTimeout) {
+        this(cPool, connTimeout, null);
+    }
+
+    /**
+     * Creates a new reader.
+     *
+     * @param cPool
+     *            the pool to get connections from
+     * @param connTimeout
+     *            maximum time (in milliseconds) to wait for a connection from
+     *            the pool
+     * @param cache
+     *            the cache to put read values in and to look values up in
+     *            before reading (may be <tt>null</tt>), any eviction policy
+     *            is up to the implementation of this map
+     */
+    public SingleFlightReader(final ConnectionPool cPool,
+            final long connTimeout, final ConcurrentMap<String, ErlangValue> cache) {
+        this.cPool = cPool;
+        this.connTimeout = connTimeout;
+        this.cache = cache;
+    }
+
+    /**
+     * Gets the value stored under the given key.
+     *
+     * @param key
+     *            the key to look up
+     *
+     * @return the value stored under the given key
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie or if
+     *             interrupted while waiting for another thread's read
+     * @throws NotFoundException
+     *             if the requested key does not exist
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    public ErlangValue read(final String key) throws ConnectionException,
+            NotFoundException, UnknownException {
+        reads.incrementAndGet();
+        if (cache != null) {
+            final ErlangValue value = cache.get(key);
+            if (value != null) {
+                cacheHits.incrementAndGet();
+                return value;
+            }
+        }
+
+        final FutureTask<ErlangValue> task = new FutureTask<ErlangValue>(
+                new Callable<ErlangValue>() {
+                    public ErlangValue call() throws ConnectionException,
+                            NotFoundException, UnknownException {
+                        return doRead(key);
+                    }
+                });
+        FutureTask<ErlangValue> existing = inFlight.putIfAbsent(key, task);
+        if (existing == null) {
+            task.run();
+            ErlangValue value = null;
+            try {
+                value = task.get();
+            } catch (final Exception e) {
+                // handled below
+            }
+            synchronized (this) {
+                // do not cache the value if invalidated in the meantime
+                if (inFlight.remove(key, task) && (cache != null) && (value != null)) {
+                    cache.put(key, value);
+                }
+            }
+            existing = task;
+        } else {
+            collapsedReads.incrementAndGet();
+        }
+        try {
+            return existing.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectionException(e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof ConnectionException) {
+                throw (ConnectionException) cause;
+            } else if (cause instanceof NotFoundException) {
+                throw (NotFoundException) cause;
+            } else if (cause instanceof UnknownException) {
+                throw (UnknownException) cause;
+            }
+            throw new UnknownException(cause);
+        }
+    }
+
+    private ErlangValue doRead(final String key) throws ConnectionException,
+            NotFoundException, UnknownException {
+        requests.incrementAndGet();
+        final Connection conn = cPool.getConnection(connTimeout);
+        if (conn == null) {
+            throw new ConnectionException("no connection available in the pool");
+        }
+        try {
+            return new TransactionSingleOp(conn).read(key);
+        } finally {
+            cPool.releaseConnection(conn);
+        }
+    }
+
+    /**
+     * Removes the given key from the cache (if present), e.g. after writing
+     * it. Reads started afterwards will not collapse into a currently
+     * in-flight read of this key.
+     *
+     * @param key
+     *            the key to remove
+     */
+    public void invalidate(final String key) {
+        synchronized (this) {
+            inFlight.remove(key);
+            if (cache != null) {
+                cache.remove(key);
+            }
+        }
+    }
+
+    /**
+     * @return the number of calls to {@link #read(String)}
+     */
+    public long getReads() {
+        return reads.get();
+    }
+
+    /**
+     * @return the number of read requests sent to Scalaris
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return the number of reads which waited for another thread's request
+     *         of the same key
+     */
+    public long getCollapsedReads() {
+        return collapsedReads.get();
+    }
+
+    /**
+     * @return the number of reads served from the cache
+     */
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+}
@@ -15,11 +15,14 @@
  */
 package de.zib.scalaris;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 
 import com.ericsson.otp.erlang.OtpErlangDouble;
+import com.ericsson.otp.erlang.OtpErlangException;
 import com.ericsson.otp.erlang.OtpErlangList;
 import com.ericsson.otp.erlang.OtpErlangLong;
 import com.ericsson.otp.erlang.OtpErlangObject;
@@ -106,8 +109,19 @@ import de.zib.scalaris.operations.WriteOp;
  * by classifying nodes as good or bad depending on their previous state. The
  * number of automatic retries is adjustable (default: 3).
  *
+ * <h3>Buffered mode</h3>
+ *
+ * In buffered mode (see {@link #setBuffered(boolean)}), write, add_del_on_list
+ * and add_on_nr operations are not sent to Scalaris immediately but kept in a
+ * client-side buffer. Repeated writes to the same key are collapsed, reads of
+ * keys with a locally known value are answered without contacting Scalaris
+ * and the buffered operations are sent together with the next request
+ * accessing their keys or with the commit. Errors of buffered operations whose
+ * outcome cannot be determined locally, e.g. an add_on_nr on a value which is
+ * no number, are therefore only reported when they are sent.
+ *
  * @author Nico Kruber, kruber@zib.de
- * @version 3.18
+ * @version 3.21
  * @since 2.0
  */
 public class Transaction extends
@@ -117,6 +131,19 @@ public class Transaction extends
      */
     protected final Translog transLog = getTranslogImpl();
 
+    /**
+     * Buffered operations (in buffered mode).
+     */
+    protected final TransactionWriteBuffer writeBuffer = new TransactionWriteBuffer();
+
+    /**
+     * Whether to buffer write operations locally until the next request
+     * accessing their keys or the commit.
+     *
+     * @since 3.21
+     */
+    protected boolean buffered = false;
+
     /**
      * Gets the {@link Translog} implementation to use for {@link #transLog}.
      * Will be executed only once during construction of the object!
@@ -235,6 +262,23 @@ public class Transaction extends
             super(results, compressed, requests);
         }
 
+        /**
+         * Creates a result list from a request list whose operations have
+         * already been executed.
+         *
+         * @param requests
+         *            request list which created this result list
+         *
+         * @throws UnknownException
+         *             if any operation in the request list does not have a
+         *             result
+         *
+         * @since 3.21
+         */
+        ResultList(final RequestList requests) throws UnknownException {
+            super(requests);
+        }
+
         /**
          * Processes the result at the given position which originated from
          * a write request.
@@ -527,6 +571,12 @@ public class Transaction extends
      * another request.
      * </p>
      *
+     * <p>
+     * Buffered operations sent along with the requests are only removed from
+     * the buffer after Scalaris added them to the transaction log, i.e. they
+     * are still buffered if a {@link ConnectionException} is thrown.
+     * </p>
+     *
      * @param req
      *            the requests to issue
      *
@@ -545,9 +595,80 @@ public class Transaction extends
     @Override
     public ResultList req_list(final RequestList req)
             throws ConnectionException, AbortException, UnknownException {
+        if (writeBuffer.isEmpty()) {
+            return req_list_(req, null);
+        }
+        final List<OtpErlangString> keys;
+        if (req.isCommit()) {
+            keys = writeBuffer.getKeys();
+        } else {
+            keys = new ArrayList<OtpErlangString>(req.size());
+            for (final Operation op : req.getRequests()) {
+                keys.add(op.getKey());
+            }
+        }
+        final List<Operation> flushed = writeBuffer.getOps(keys);
+        if (flushed.isEmpty()) {
+            return req_list_(req, null);
+        }
+
+        // send buffered operations in front of the actual requests:
+        final RequestList allReq = new RequestList();
+        for (final Operation op : flushed) {
+            allReq.addOp(op);
+        }
+        allReq.addAll(req);
+        req_list_(allReq, keys);
+        for (final Operation op : flushed) {
+            try {
+                op.processResult();
+            } catch (final UnknownException e) {
+                throw e;
+            } catch (final OtpErlangException e) {
+                // error of a buffered operation, e.g. not_a_number
+                throw new UnknownException(e);
+            }
+        }
+        return new ResultList(req);
+    }
+
+    /**
+     * Executes all requests in <code>req</code> without looking at the
+     * buffered operations.
+     *
+     * @param req
+     *            the requests to issue
+     * @param flushedKeys
+     *            keys whose buffered operations are included in
+     *            <code>req</code> and are removed from the buffer once
+     *            Scalaris returned a transaction log (or <tt>null</tt>)
+     *
+     * @return results of all requests in the same order as they appear in
+     *         <code>req</code>
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws AbortException
+     *             if the commit failed
+     * @throws UnknownException
+     *             if any other error occurs
+     *
+     * @see #req_list(RequestList)
+     */
+    private ResultList req_list_(final RequestList req,
+            final Collection<OtpErlangString> flushedKeys)
+            throws ConnectionException, AbortException, UnknownException {
         if (req.isEmpty()) {
             return new ResultList(new OtpErlangList(), compressed, req);
         }
+        if (transLog.isEmpty() && req.isCommit()
+                && ReadOnlyTransaction.isReadOnly(req)) {
+            // read-only transaction in a single request: no need to keep a log
+            ReadOnlyTransaction.req_list_commit(connection, module(), compressed, req);
+            return new ResultList(req);
+        }
         OtpErlangObject received_raw = null;
         final OtpErlangList erlangReqList = req.getErlangReqList(compressed);
         if (transLog.isEmpty()) {
@@ -564,6 +685,10 @@ public class Transaction extends
              */
             final OtpErlangTuple received = (OtpErlangTuple) received_raw;
             transLog.merge(received.elementAt(0));
+            if (flushedKeys != null) {
+                // the buffered operations are part of the transaction log now
+                writeBuffer.remove(flushedKeys);
+            }
             if (received.arity() == 2) {
                 final ResultList result = new ResultList((OtpErlangList) received.elementAt(1), compressed, req);
                 if (req.isCommit()) {
@@ -620,6 +745,64 @@ public class Transaction extends
      */
     public void abort() {
         transLog.reset();
+        writeBuffer.reset();
+    }
+
+    /**
+     * Checks whether write operations are buffered locally.
+     *
+     * @return <tt>true</tt> if operations are buffered
+     *
+     * @since 3.21
+     */
+    public boolean isBuffered() {
+        return buffered;
+    }
+
+    /**
+     * Sets whether to buffer write, add_del_on_list and add_on_nr operations
+     * locally until the next request accessing their keys or the commit.
+     *
+     * Note: disabling the buffered mode does not drop already buffered
+     * operations - they will still be sent with the next request accessing
+     * their keys or the commit.
+     *
+     * @param buffered
+     *            <tt>true</tt> to buffer operations, <tt>false</tt> to send
+     *            them to Scalaris immediately
+     *
+     * @since 3.21
+     */
+    public void setBuffered(final boolean buffered) {
+        this.buffered = buffered;
+    }
+
+    /**
+     * Gets the value stored under the given <code>key</code>. In buffered
+     * mode, a locally known value is returned without contacting Scalaris.
+     *
+     * @param key
+     *            the key to look up
+     *
+     * @return the value stored under the given <code>key</code>
+     *
+     * @throws ConnectionException
+     *             if the connection is not active or a communication error
+     *             occurs or an exit signal was received or the remote node
+     *             sends a message containing an invalid cookie
+     * @throws NotFoundException
+     *             if the requested key does not exist
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    @Override
+    public ErlangValue read(final OtpErlangString key)
+            throws ConnectionException, NotFoundException, UnknownException {
+        final OtpErlangObject value = writeBuffer.getValue(key);
+        if (value != null) {
+            return new ErlangValue(value);
+        }
+        return super.read(key);
     }
 
     @Override
@@ -633,6 +816,10 @@ public class Transaction extends
     @Override
     public void write(final OtpErlangString key, final OtpErlangObject value)
             throws ConnectionException, UnknownException {
+        if (buffered) {
+            writeBuffer.write(key, value);
+            return;
+        }
         try {
             super.write(key, value);
         } catch (final AbortException e) {
@@ -656,6 +843,10 @@ public class Transaction extends
     public void addDelOnList(final OtpErlangString key,
             final OtpErlangList toAdd, final OtpErlangList toRemove)
             throws ConnectionException, NotAListException, UnknownException {
+        if (buffered) {
+            writeBuffer.addDelOnList(key, toAdd, toRemove);
+            return;
+        }
         try {
             super.addDelOnList(key, toAdd, toRemove);
         } catch (final AbortException e) {
@@ -679,6 +870,10 @@ public class Transaction extends
     @Override
     public void addOnNr(final OtpErlangString key, final OtpErlangLong toAdd)
             throws ConnectionException, NotANumberException, UnknownException {
+        if (buffered) {
+            writeBuffer.addOnNr(key, toAdd);
+            return;
+        }
         try {
             super.addOnNr(key, toAdd);
         } catch (final AbortException e) {
@@ -690,6 +885,10 @@ public class Transaction extends
     @Override
     public void addOnNr(final OtpErlangString key, final OtpErlangDouble toAdd)
             throws ConnectionException, NotANumberException, UnknownException {
+        if (buffered) {
+            writeBuffer.addOnNr(key, toAdd);
+            return;
+        }
         try {
             super.addOnNr(key, toAdd);
         } catch (final AbortException e) {
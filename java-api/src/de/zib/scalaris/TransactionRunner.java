@@ -0,0 +1,361 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.ericsson.otp.erlang.OtpErlangException;
+
+import de.zib.scalaris.jmx.TransactionStatistics;
+
+/**
+ * Executes a user-defined transaction and re-executes it if the commit is
+ * aborted due to conflicting transactions.
+ *
+ * <p>
+ * Retries are delayed with a randomised (jittered) exponential backoff, i.e.
+ * the <tt>n</tt>th retry waits a random time between <tt>0</tt> and
+ * <tt>min(maxDelay, baseDelay * 2<sup>n-1</sup>)</tt> milliseconds.
+ * </p>
+ *
+ * <p>
+ * In addition to the maximum number of retries per transaction, retries are
+ * limited by a retry budget shared by all transactions of this runner: each
+ * retry costs one token, each successful commit adds
+ * {@link #getBudgetRatio()} tokens (up to {@link #getMaxBudget()}). Under
+ * heavy contention, transactions are thus given up early instead of
+ * re-executing them in vain.
+ * </p>
+ *
+ * <p>
+ * Statistics about commits, aborts and the keys involved in aborts are
+ * collected in a {@link TransactionStatistics} object which can be registered
+ * as a JMX MBean.
+ * </p>
+ *
+ * <p>
+ * Note: A runner is not thread-safe since all transactions are executed on
+ * the same {@link Transaction} object. Concurrent calls of
+ * {@link #run(TransactionCallback)} are rejected with an
+ * {@link IllegalStateException}. Use one runner per thread instead; they may
+ * share a {@link TransactionStatistics} object.
+ * </p>
+ *
+ * <h3>Example:</h3>
+ * <pre>
+ * <code style="white-space:pre;">
+ *   TransactionRunner runner = new TransactionRunner(new Transaction());
+ *   Long newValue = runner.run(new TransactionRunner.TransactionCallback&lt;Long&gt;() {
+ *       public Long execute(Transaction tx) throws OtpErlangException {
+ *           long value = tx.read("key").longValue() + 1;
+ *           tx.write("key", value);
+ *           return value;
+ *       }
+ *   });
+ * </code>
+ * </pre>
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class TransactionRunner {
+    /**
+     * Callback executing the user-defined operations of a transaction.
+     *
+     * @param <T>
+     *            the type of the result of the transaction
+     *
+     * @author Nico Kruber, kruber@zib.de
+     */
+    public static interface TransactionCallback<T> {
+        /**
+         * Executes the operations of the transaction (excluding the commit)
+         * on the given transaction object. May be called multiple times and
+         * should thus not have any side-effects outside of the transaction.
+         *
+         * @param tx
+         *            the transaction to use
+         *
+         * @return the result of the transaction
+         *
+         * @throws OtpErlangException
+         *             if any error occurs (an {@link AbortException} will be
+         *             handled like an aborted commit)
+         * @throws UnknownException
+         *             if any other error occurs
+         */
+        public T execute(Transaction tx) throws OtpErlangException,
+                UnknownException;
+    }
+
+    protected final Transaction tx;
+    protected final TransactionStatistics statistics;
+    protected final Random random = new Random();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * Maximum number of retries per transaction.
+     */
+    protected int maxRetries = 5;
+    /**
+     * Base delay in milliseconds for the exponential backoff.
+     */
+    protected long baseDelay = 10;
+    /**
+     * Maximum delay in milliseconds between two attempts.
+     */
+    protected long maxDelay = 1000;
+    /**
+     * Number of retry tokens to add per successful commit.
+     */
+    protected double budgetRatio = 0.1;
+    /**
+     * Maximum number of retry tokens.
+     */
+    protected double maxBudget = 10.0;
+    /**
+     * Currently available retry tokens.
+     */
+    private double budget;
+
+    /**
+     * Creates a new runner executing transactions on the given transaction
+     * object.
+     *
+     * @param tx
+     *            the transaction object to use
+     */
+    public TransactionRunner(final Transaction tx) {
+        this(tx, new TransactionStatistics());
+    }
+
+    /**
+     * Creates a new runner executing transactions on the given transaction
+     * object.
+     *
+     * @param tx
+     *            the transaction object to use
+     * @param statistics
+     *            the statistics object to record transaction statistics in
+     *            (may be shared among runners)
+     */
+    public TransactionRunner(final Transaction tx,
+            final TransactionStatistics statistics) {
+        this.tx = tx;
+        this.statistics = statistics;
+        this.budget = maxBudget;
+    }
+
+    /**
+     * Executes the given transaction and commits it. Re-executes the
+     * transaction if the commit was aborted unless the maximum number of
+     * retries has been reached or the retry budget has been exhausted.
+     *
+     * @param <T>
+     *            the type of the result of the transaction
+     * @param callback
+     *            the transaction to execute
+     *
+     * @return the result of the (successful) transaction
+     *
+     * @throws AbortException
+     *             if the last attempt to commit the transaction failed
+     * @throws OtpErlangException
+     *             if any other error occurs inside the transaction (it is not
+     *             retried in this case)
+     * @throws UnknownException
+     *             if any other error occurs
+     * @throws IllegalStateException
+     *             if the runner is already executing a transaction
+     */
+    public <T> T run(final TransactionCallback<T> callback)
+            throws AbortException, OtpErlangException, UnknownException {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("runner is already in use");
+        }
+        try {
+            return runAttempts(callback);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private <T> T runAttempts(final TransactionCallback<T> callback)
+            throws AbortException, OtpErlangException, UnknownException {
+        for (int attempt = 0; ; ++attempt) {
+            try {
+                final T result = callback.execute(tx);
+                tx.commit();
+                statistics.addCommit();
+                addBudget();
+                return result;
+            } catch (final AbortException e) {
+                tx.abort();
+                statistics.addAbort(e.getFailedKeys());
+                if (attempt >= maxRetries) {
+                    statistics.addFailure();
+                    throw e;
+                }
+                if (!takeBudget()) {
+                    statistics.addRetryDenied();
+                    statistics.addFailure();
+                    throw e;
+                }
+                statistics.addRetry();
+                backoff(attempt);
+            } catch (final OtpErlangException e) {
+                tx.abort();
+                throw e;
+            } catch (final RuntimeException e) {
+                tx.abort();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Waits a random time before the given retry.
+     *
+     * @param attempt
+     *            the number of the failed attempt (starting at 0)
+     */
+    protected void backoff(final int attempt) {
+        final long maxWait = getMaxWait(attempt);
+        if (maxWait <= 0) {
+            return;
+        }
+        final long wait = (long) (random.nextDouble() * maxWait);
+        try {
+            Thread.sleep(wait);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the upper bound of the random wait time before the given retry,
+     * i.e. <tt>min(maxDelay, baseDelay * 2<sup>attempt</sup>)</tt>.
+     *
+     * @param attempt
+     *            the number of the failed attempt (starting at 0)
+     *
+     * @return the maximum wait time in milliseconds
+     */
+    protected long getMaxWait(final int attempt) {
+        // clamp before shifting so that the shift cannot overflow
+        if (attempt >= Long.SIZE - 1 || baseDelay > (maxDelay >> attempt)) {
+            return maxDelay;
+        }
+        return baseDelay << attempt;
+    }
+
+    private void addBudget() {
+        budget = Math.min(maxBudget, budget + budgetRatio);
+    }
+
+    private boolean takeBudget() {
+        if (budget >= 1.0) {
+            budget -= 1.0;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the statistics of this runner
+     */
+    public TransactionStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @return the maximum number of retries per transaction
+     */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * @param maxRetries
+     *            the maximum number of retries per transaction to set
+     */
+    public void setMaxRetries(final int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * @return the base delay in milliseconds for the exponential backoff
+     */
+    public long getBaseDelay() {
+        return baseDelay;
+    }
+
+    /**
+     * @param baseDelay
+     *            the base delay in milliseconds for the exponential backoff
+     */
+    public void setBaseDelay(final long baseDelay) {
+        this.baseDelay = baseDelay;
+    }
+
+    /**
+     * @return the maximum delay in milliseconds between two attempts
+     */
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * @param maxDelay
+     *            the maximum delay in milliseconds between two attempts
+     */
+    public void setMaxDelay(final long maxDelay) {
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * @return the number of retry tokens added per successful commit
+     */
+    public double getBudgetRatio() {
+        return budgetRatio;
+    }
+
+    /**
+     * @param budgetRatio
+     *            the number of retry tokens to add per successful commit
+     */
+    public void setBudgetRatio(final double budgetRatio) {
+        this.budgetRatio = budgetRatio;
+    }
+
+    /**
+     * @return the maximum number of retry tokens
+     */
+    public double getMaxBudget() {
+        return maxBudget;
+    }
+
+    /**
+     * @param maxBudget
+     *            the maximum number of retry tokens
+     */
+    public void setMaxBudget(final double maxBudget) {
+        this.maxBudget = maxBudget;
+        this.budget = Math.min(budget, maxBudget);
+    }
+}
@@ -106,7 +106,7 @@ import de.zib.scalaris.operations.WriteOp;
  * state. The number of automatic retries is adjustable (default: 3).
  *
  * @author Nico Kruber, kruber@zib.de
- * @version 3.18
+ * @version 3.21
  * @since 2.0
  */
 public class TransactionSingleOp extends
@@ -212,7 +212,7 @@ public class TransactionSingleOp extends
      * {@link TransactionSingleOp#req_list(RequestList)}.
      *
      * @author Nico Kruber, kruber@zib.de
-     * @version 3.8
+     * @version 3.21
      * @since 3.5
      */
     public static class ResultList extends de.zib.scalaris.ResultList {
@@ -232,6 +232,24 @@ public class TransactionSingleOp extends
             super(results, compressed, requests);
         }
 
+        /**
+         * Creates a result list from a request list whose operations have
+         * already been executed, e.g. in several parts on different
+         * connections.
+         *
+         * @param requests
+         *            request list which created this result list
+         *
+         * @throws UnknownException
+         *             if any operation in the request list does not have a
+         *             result
+         *
+         * @since 3.21
+         */
+        public ResultList(final RequestList requests) throws UnknownException {
+            super(requests);
+        }
+
         /**
          * Processes the result at the given position which originated from
          * a write request.
@@ -0,0 +1,286 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+import com.ericsson.otp.erlang.OtpErlangDouble;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangString;
+
+import de.zib.scalaris.operations.AddDelOnListOp;
+import de.zib.scalaris.operations.AddOnNrOp;
+import de.zib.scalaris.operations.Operation;
+import de.zib.scalaris.operations.WriteOp;
+
+/**
+ * Client-side buffer for write, add_del_on_list and add_on_nr operations of
+ * a {@link Transaction} in buffered mode.
+ *
+ * For each key, either the value after all buffered operations is known
+ * locally (after a write) or the operations are kept in order. Repeated
+ * writes to the same key are collapsed into a single write, list and number
+ * changes of a locally known value are applied locally and consecutive
+ * increments are combined.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+class TransactionWriteBuffer {
+    /**
+     * Buffered state of a single key.
+     */
+    private static class KeyState {
+        /**
+         * The value after all buffered operations if known locally.
+         */
+        OtpErlangObject value = null;
+        /**
+         * Buffered operations if the value is not known locally.
+         */
+        final List<Operation> pending = new LinkedList<Operation>();
+        /**
+         * The increment of the last pending operation if it is an
+         * add_on_nr.
+         */
+        OtpErlangObject lastInc = null;
+    }
+
+    private final LinkedHashMap<OtpErlangString, KeyState> entries = new LinkedHashMap<OtpErlangString, KeyState>();
+
+    private KeyState getOrCreate(final OtpErlangString key) {
+        KeyState entry = entries.get(key);
+        if (entry == null) {
+            entry = new KeyState();
+            entries.put(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Buffers a write operation.
+     *
+     * @param key
+     *            the key to write the value to
+     * @param value
+     *            the value to write
+     */
+    public void write(final OtpErlangString key, final OtpErlangObject value) {
+        final KeyState entry = getOrCreate(key);
+        entry.value = value;
+        entry.pending.clear();
+        entry.lastInc = null;
+    }
+
+    /**
+     * Buffers an add_del_on_list operation.
+     *
+     * @param key
+     *            the key to write the value to
+     * @param toAdd
+     *            a list of values to add to a list
+     * @param toRemove
+     *            a list of values to remove from a list
+     *
+     * @throws NotAListException
+     *             if the locally known value is no list
+     */
+    public void addDelOnList(final OtpErlangString key,
+            final OtpErlangList toAdd, final OtpErlangList toRemove)
+            throws NotAListException {
+        final KeyState entry = getOrCreate(key);
+        if (entry.value != null) {
+            // Scalaris prepends the new elements: lists:append(ToAdd, Old)
+            final List<OtpErlangObject> list = new ArrayList<OtpErlangObject>(
+                    Arrays.asList(toAdd.elements()));
+            list.addAll(Arrays.asList(toList(entry.value).elements()));
+            // remove the first occurrence of each element (like Scalaris)
+            for (final OtpErlangObject elem : toRemove.elements()) {
+                list.remove(elem);
+            }
+            entry.value = new OtpErlangList(list.toArray(new OtpErlangObject[list.size()]));
+        } else {
+            entry.pending.add(new AddDelOnListOp(key, toAdd, toRemove));
+            entry.lastInc = null;
+        }
+    }
+
+    /**
+     * Buffers an add_on_nr operation.
+     *
+     * @param key
+     *            the key to write the value to
+     * @param toAdd
+     *            the number to add (an {@link OtpErlangLong} or
+     *            {@link OtpErlangDouble})
+     *
+     * @throws NotANumberException
+     *             if the locally known value is no number
+     */
+    public void addOnNr(final OtpErlangString key, final OtpErlangObject toAdd)
+            throws NotANumberException {
+        final KeyState entry = getOrCreate(key);
+        if (entry.value != null) {
+            entry.value = add(entry.value, toAdd);
+        } else {
+            if (entry.lastInc != null) {
+                // combine with the previous increment
+                entry.pending.remove(entry.pending.size() - 1);
+                entry.lastInc = add(entry.lastInc, toAdd);
+            } else {
+                entry.lastInc = toAdd;
+            }
+            if (entry.lastInc instanceof OtpErlangLong) {
+                entry.pending.add(new AddOnNrOp(key, (OtpErlangLong) entry.lastInc));
+            } else {
+                entry.pending.add(new AddOnNrOp(key, (OtpErlangDouble) entry.lastInc));
+            }
+        }
+    }
+
+    /**
+     * Gets the value of the given key after all buffered operations if it is
+     * known locally.
+     *
+     * @param key
+     *            the key to look up
+     *
+     * @return the value or <tt>null</tt> if not known locally
+     */
+    public OtpErlangObject getValue(final OtpErlangString key) {
+        final KeyState entry = entries.get(key);
+        return (entry == null) ? null : entry.value;
+    }
+
+    /**
+     * Checks whether there are buffered operations on the given key.
+     *
+     * @param key
+     *            the key to check
+     *
+     * @return <tt>true</tt> if there is a buffered operation,
+     *         <tt>false</tt> otherwise
+     */
+    public boolean contains(final OtpErlangString key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Gets the keys with buffered operations.
+     *
+     * @return a copy of the buffered keys
+     */
+    public List<OtpErlangString> getKeys() {
+        return new ArrayList<OtpErlangString>(entries.keySet());
+    }
+
+    /**
+     * Gets the buffered operations of all given keys as operations to send to
+     * Scalaris. The operations remain in the buffer until they are removed
+     * with {@link #remove(Collection)}.
+     *
+     * @param keys
+     *            the keys to flush
+     *
+     * @return a list of operations
+     */
+    public List<Operation> getOps(final Collection<OtpErlangString> keys) {
+        final List<Operation> result = new ArrayList<Operation>();
+        for (final OtpErlangString key : keys) {
+            final KeyState entry = entries.get(key);
+            if (entry != null) {
+                addOps(key, entry, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes the buffered operations of all given keys, e.g. after they
+     * have been sent to Scalaris.
+     *
+     * @param keys
+     *            the keys to remove
+     */
+    public void remove(final Collection<OtpErlangString> keys) {
+        for (final OtpErlangString key : keys) {
+            entries.remove(key);
+        }
+    }
+
+    private static void addOps(final OtpErlangString key, final KeyState entry,
+            final List<Operation> result) {
+        if (entry.value != null) {
+            result.add(new WriteOp(key, entry.value));
+        } else {
+            result.addAll(entry.pending);
+        }
+    }
+
+    /**
+     * Checks whether the buffer is empty.
+     *
+     * @return <tt>true</tt> if empty
+     */
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Drops all buffered operations.
+     */
+    public void reset() {
+        entries.clear();
+    }
+
+    private static OtpErlangList toList(final OtpErlangObject value)
+            throws NotAListException {
+        if (value instanceof OtpErlangList) {
+            return (OtpErlangList) value;
+        } else if (value instanceof OtpErlangString) {
+            // strings are lists of characters in Erlang
+            return new OtpErlangList(((OtpErlangString) value).stringValue());
+        }
+        throw new NotAListException(value);
+    }
+
+    private static OtpErlangObject add(final OtpErlangObject a,
+            final OtpErlangObject b) throws NotANumberException {
+        if ((a instanceof OtpErlangLong) && (b instanceof OtpErlangLong)) {
+            return new OtpErlangLong(((OtpErlangLong) a).bigIntegerValue()
+                    .add(((OtpErlangLong) b).bigIntegerValue()));
+        }
+        return new OtpErlangDouble(toDouble(a) + toDouble(b));
+    }
+
+    private static double toDouble(final OtpErlangObject value)
+            throws NotANumberException {
+        if (value instanceof OtpErlangLong) {
+            return ((OtpErlangLong) value).bigIntegerValue().doubleValue();
+        } else if (value instanceof OtpErlangDouble) {
+            return ((OtpErlangDouble) value).doubleValue();
+        }
+        throw new NotANumberException(value);
+    }
+}
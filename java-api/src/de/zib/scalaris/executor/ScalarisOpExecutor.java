@@ -1,6 +1,9 @@
 package de.zib.scalaris.executor;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
 import com.ericsson.otp.erlang.OtpErlangException;
 
 import de.zib.scalaris.RequestList;
@@ -11,8 +14,14 @@ import de.zib.scalaris.UnknownException;
  * Executes multiple {@link ScalarisOp} operations in multiple phases only
  * sending requests to Scalaris once per work phase.
  *
+ * Operations may depend on other (previously added) operations, see
+ * {@link #addOp(ScalarisOp, ScalarisOp...)}. A dependent operation starts in
+ * the work phase in which all of its dependencies have verified their results.
+ * All operations are then executed as late as possible so that independent
+ * operations share as many requests to Scalaris as possible.
+ *
  * @author Nico Kruber, kruber@zib.de
- * @version 3.13
+ * @version 3.21
  * @since 3.13
  */
 public abstract class ScalarisOpExecutor {
@@ -21,6 +30,18 @@ public abstract class ScalarisOpExecutor {
      * All operations to be executed.
      */
     protected final ArrayList<ScalarisOp> ops = new ArrayList<ScalarisOp>();
+    /**
+     * The indices of the dependencies of each operation in {@link #ops}.
+     */
+    protected final ArrayList<int[]> opDependencies = new ArrayList<int[]>();
+    /**
+     * The earliest work phase each operation in {@link #ops} may start in.
+     */
+    protected final ArrayList<Integer> opEarliestStart = new ArrayList<Integer>();
+    /**
+     * Maps each operation to its index in {@link #ops}.
+     */
+    protected final IdentityHashMap<ScalarisOp, Integer> opIndex = new IdentityHashMap<ScalarisOp, Integer>();
     /**
      * The highest work phase id.
      */
@@ -34,10 +55,50 @@ public abstract class ScalarisOpExecutor {
      *            the operation to add
      */
     public void addOp(final ScalarisOp op) {
-        if (op.workPhases() > workPhases) {
-            workPhases = op.workPhases();
+        addOp(op, new ScalarisOp[0]);
+    }
+
+    /**
+     * Adds the given operation to be executed after all of the given
+     * operations have finished, i.e. verified their results.
+     *
+     * @param op
+     *            the operation to add
+     * @param dependsOn
+     *            operations which need to finish before <tt>op</tt> starts
+     *
+     * @throws IllegalArgumentException
+     *             if any of the dependencies has not been added to this
+     *             executor before or if <tt>op</tt> has already been added
+     *             (this way, dependencies can never form a cycle)
+     *
+     * @since 3.21
+     */
+    public void addOp(final ScalarisOp op, final ScalarisOp... dependsOn)
+            throws IllegalArgumentException {
+        if (opIndex.containsKey(op)) {
+            throw new IllegalArgumentException("operation added twice: " + op);
+        }
+        final int[] deps = new int[dependsOn.length];
+        int earliestStart = 0;
+        for (int i = 0; i < dependsOn.length; ++i) {
+            final Integer depIdx = opIndex.get(dependsOn[i]);
+            if (depIdx == null) {
+                throw new IllegalArgumentException("unknown dependency: " + dependsOn[i]);
+            }
+            deps[i] = depIdx;
+            final int depEnd = opEarliestStart.get(depIdx) + dependsOn[i].workPhases();
+            if (depEnd > earliestStart) {
+                earliestStart = depEnd;
+            }
+        }
+        if ((earliestStart + op.workPhases()) > workPhases) {
+            workPhases = earliestStart + op.workPhases();
         }
+        opIndex.put(op, ops.size());
         ops.add(op);
+        opDependencies.add(deps);
+        opEarliestStart.add(earliestStart);
     }
 
     /**
@@ -45,6 +106,9 @@ public abstract class ScalarisOpExecutor {
      */
     public void reset() {
         ops.clear();
+        opDependencies.clear();
+        opEarliestStart.clear();
+        opIndex.clear();
         workPhases = 0;
     }
 
@@ -59,16 +123,19 @@ public abstract class ScalarisOpExecutor {
      *             operations
      */
     public void run() throws OtpErlangException, UnknownException {
+        final int[] opStart = scheduleOps();
+        // position of each operation's first request in the previous phase
+        final int[] opFirstResult = new int[ops.size()];
         ResultList results = null;
         for (int phase = 0; phase <= workPhases; ++phase) {
             final RequestList requests = newRequestList();
-            int curOp = 0;
-            for (final ScalarisOp op : ops) {
-                // translate the global phase into an operation-specific phase,
-                // execute operations as late as possible
-                final int opPhase = phase - (workPhases - op.workPhases());
-                if ((opPhase >= 0) && (opPhase <= op.workPhases())) {
-                    curOp += op.doPhase(opPhase, curOp, results, requests);
+            for (int i = 0; i < ops.size(); ++i) {
+                // translate the global phase into an operation-specific phase
+                final int opPhase = phase - opStart[i];
+                if ((opPhase >= 0) && (opPhase <= ops.get(i).workPhases())) {
+                    final int firstRequest = requests.size();
+                    doOpPhase(i, opPhase, opFirstResult[i], results, requests);
+                    opFirstResult[i] = firstRequest;
                 }
             }
             endWorkPhase(phase, requests);
@@ -78,6 +145,65 @@ public abstract class ScalarisOpExecutor {
         }
     }
 
+    /**
+     * Determines the work phase each operation starts in. Operations are
+     * scheduled as late as possible, i.e. an operation without dependent
+     * operations finishes in the last work phase and any other operation
+     * finishes right before its first dependent operation starts.
+     *
+     * @return the start phase for each operation in {@link #ops}
+     *
+     * @since 3.21
+     */
+    protected int[] scheduleOps() {
+        final int[] latestEnd = new int[ops.size()];
+        for (int i = 0; i < latestEnd.length; ++i) {
+            latestEnd[i] = workPhases;
+        }
+        final int[] opStart = new int[ops.size()];
+        // dependencies are always added before their dependent operations
+        for (int i = ops.size() - 1; i >= 0; --i) {
+            opStart[i] = latestEnd[i] - ops.get(i).workPhases();
+            for (final int dep : opDependencies.get(i)) {
+                if (opStart[i] < latestEnd[dep]) {
+                    latestEnd[dep] = opStart[i];
+                }
+            }
+        }
+        return opStart;
+    }
+
+    /**
+     * Executes the given phase of a single operation.
+     *
+     * @param opIdx
+     *            index of the operation in {@link #ops}
+     * @param opPhase
+     *            the operation-specific work phase
+     * @param firstOp
+     *            the operation's index in the result list
+     * @param results
+     *            the results from the previous phase
+     *            (may be <tt>null</tt> if there was none)
+     * @param requests
+     *            the requests for the next phase
+     *
+     * @throws OtpErlangException
+     *             if an error occurred verifying a result from previous
+     *             operations
+     * @throws UnknownException
+     *             if an error occurred verifying a result from previous
+     *             operations
+     *
+     * @since 3.21
+     */
+    protected void doOpPhase(final int opIdx, final int opPhase,
+            final int firstOp, final ResultList results,
+            final RequestList requests) throws OtpErlangException,
+            UnknownException {
+        ops.get(opIdx).doPhase(opPhase, firstOp, results, requests);
+    }
+
     /**
      * This method is called at the end of each work phase and allows
      * implementing sub-classes to add additional operations.
@@ -133,4 +259,31 @@ public abstract class ScalarisOpExecutor {
     public ArrayList<ScalarisOp> getOps() {
         return ops;
     }
+
+    /**
+     * Gets the operations the given operation depends on.
+     *
+     * @param op
+     *            an operation previously added to this executor
+     *
+     * @return a list of operations (may be empty)
+     *
+     * @throws IllegalArgumentException
+     *             if the operation has not been added to this executor
+     *
+     * @since 3.21
+     */
+    public List<ScalarisOp> getDependencies(final ScalarisOp op)
+            throws IllegalArgumentException {
+        final Integer idx = opIndex.get(op);
+        if (idx == null) {
+            throw new IllegalArgumentException("unknown operation: " + op);
+        }
+        final int[] deps = opDependencies.get(idx);
+        final List<ScalarisOp> result = new ArrayList<ScalarisOp>(deps.length);
+        for (final int dep : deps) {
+            result.add(ops.get(dep));
+        }
+        return result;
+    }
 }
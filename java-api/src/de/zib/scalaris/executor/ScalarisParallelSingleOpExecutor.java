@@ -0,0 +1,236 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris.executor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.ericsson.otp.erlang.OtpErlangString;
+
+import de.zib.scalaris.Connection;
+import de.zib.scalaris.ConnectionException;
+import de.zib.scalaris.ConnectionPool;
+import de.zib.scalaris.RequestList;
+import de.zib.scalaris.TransactionSingleOp;
+import de.zib.scalaris.TransactionSingleOp.ResultList;
+import de.zib.scalaris.UnknownException;
+import de.zib.scalaris.operations.Operation;
+
+/**
+ * Executes multiple {@link ScalarisOp} operations in multiple phases only
+ * sending requests to Scalaris once per work phase. Uses
+ * {@link TransactionSingleOp} on connections from a {@link ConnectionPool}.
+ *
+ * Each phase's request list with more than {@link #getMaxShardSize()}
+ * requests is split into several shards which are executed concurrently on
+ * different connections. Requests on the same key always end up in the same
+ * shard. The results are merged in the order of the original request list
+ * so that {@link ScalarisOp#doPhase(int, int, de.zib.scalaris.ResultList, RequestList)}
+ * can process them as if they were executed at once. If any shard fails,
+ * e.g. because no connection is available or the executor service has been
+ * shut down, the whole phase fails after all other shards have finished.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class ScalarisParallelSingleOpExecutor extends ScalarisOpExecutor {
+    protected final ConnectionPool cPool;
+    protected final ExecutorService executor;
+    /**
+     * Maximum number of requests in a single shard.
+     */
+    protected final int maxShardSize;
+    /**
+     * Number of milliseconds to wait at most for a pooled connection.
+     */
+    protected final long connTimeout;
+
+    /**
+     * Creates a new executor.
+     *
+     * @param cPool
+     *            the pool to get Scalaris connections from
+     * @param executor
+     *            the executor service to run the shards with
+     * @param maxShardSize
+     *            maximum number of requests in a single shard
+     * @param connTimeout
+     *            number of milliseconds to wait at most for a pooled
+     *            connection
+     */
+    public ScalarisParallelSingleOpExecutor(final ConnectionPool cPool,
+            final ExecutorService executor, final int maxShardSize,
+            final long connTimeout) {
+        if (maxShardSize <= 0) {
+            throw new IllegalArgumentException("maxShardSize must be positive");
+        }
+        this.cPool = cPool;
+        this.executor = executor;
+        this.maxShardSize = maxShardSize;
+        this.connTimeout = connTimeout;
+        reset();
+    }
+
+    @Override
+    protected ResultList executeRequests(final RequestList requests)
+            throws ConnectionException, UnknownException {
+        final List<TransactionSingleOp.RequestList> shards = createShards(requests);
+        if (shards.size() <= 1) {
+            return executeShard((TransactionSingleOp.RequestList) requests);
+        }
+
+        final List<Future<ResultList>> futures = new ArrayList<Future<ResultList>>(shards.size());
+        Throwable firstError = null;
+        for (final TransactionSingleOp.RequestList shard : shards) {
+            try {
+                futures.add(executor.submit(new Callable<ResultList>() {
+                    public ResultList call() throws ConnectionException,
+                            UnknownException {
+                        return executeShard(shard);
+                    }
+                }));
+            } catch (final RejectedExecutionException e) {
+                // e.g. the executor service has been shut down
+                firstError = e;
+                break;
+            }
+        }
+
+        // wait for all shards, even if one fails, so that no pooled
+        // connection is used after returning from here
+        for (final Future<ResultList> future : futures) {
+            try {
+                future.get();
+            } catch (final ExecutionException e) {
+                if (firstError == null) {
+                    firstError = e.getCause();
+                }
+            } catch (final CancellationException e) {
+                if (firstError == null) {
+                    firstError = e;
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (firstError == null) {
+                    firstError = e;
+                }
+            }
+        }
+        if (firstError instanceof ConnectionException) {
+            throw (ConnectionException) firstError;
+        } else if (firstError instanceof UnknownException) {
+            throw (UnknownException) firstError;
+        } else if (firstError != null) {
+            throw new UnknownException(firstError);
+        }
+
+        // all operations in the original request list now contain a result
+        return new ResultList((TransactionSingleOp.RequestList) requests);
+    }
+
+    /**
+     * Splits the given request list into shards of at most
+     * {@link #maxShardSize} requests (unless more requests for a single key
+     * exist). All requests on the same key are put into the same shard.
+     *
+     * @param requests
+     *            the requests to split
+     *
+     * @return a list of shards (at least one)
+     */
+    protected List<TransactionSingleOp.RequestList> createShards(
+            final RequestList requests) {
+        final List<TransactionSingleOp.RequestList> shards = new ArrayList<TransactionSingleOp.RequestList>();
+        if (requests.size() <= maxShardSize) {
+            shards.add((TransactionSingleOp.RequestList) requests);
+            return shards;
+        }
+
+        final Map<OtpErlangString, List<Operation>> opsByKey = new LinkedHashMap<OtpErlangString, List<Operation>>();
+        for (final Operation op : requests.getRequests()) {
+            List<Operation> keyOps = opsByKey.get(op.getKey());
+            if (keyOps == null) {
+                keyOps = new ArrayList<Operation>(1);
+                opsByKey.put(op.getKey(), keyOps);
+            }
+            keyOps.add(op);
+        }
+
+        TransactionSingleOp.RequestList curShard = new TransactionSingleOp.RequestList();
+        for (final List<Operation> keyOps : opsByKey.values()) {
+            if (!curShard.isEmpty()
+                    && ((curShard.size() + keyOps.size()) > maxShardSize)) {
+                shards.add(curShard);
+                curShard = new TransactionSingleOp.RequestList();
+            }
+            for (final Operation op : keyOps) {
+                curShard.addOp(op);
+            }
+        }
+        if (!curShard.isEmpty()) {
+            shards.add(curShard);
+        }
+        return shards;
+    }
+
+    /**
+     * Executes a single shard on a connection from the pool.
+     *
+     * @param shard
+     *            the requests to execute
+     *
+     * @return the results from executing the requests
+     *
+     * @throws ConnectionException
+     *             if no connection could be obtained from the pool or a
+     *             communication error occurs
+     * @throws UnknownException
+     *             if any other error occurs
+     */
+    protected ResultList executeShard(final TransactionSingleOp.RequestList shard)
+            throws ConnectionException, UnknownException {
+        final Connection conn = cPool.getConnection(connTimeout);
+        if (conn == null) {
+            throw new ConnectionException("no connection available in the pool");
+        }
+        try {
+            return new TransactionSingleOp(conn).req_list(shard);
+        } finally {
+            cPool.releaseConnection(conn);
+        }
+    }
+
+    @Override
+    protected RequestList newRequestList() {
+        return new TransactionSingleOp.RequestList();
+    }
+
+    /**
+     * @return the maximum number of requests in a single shard
+     */
+    public int getMaxShardSize() {
+        return maxShardSize;
+    }
+}
@@ -26,8 +26,12 @@ import de.zib.scalaris.UnknownException;
  * Executes multiple {@link ScalarisOp} operations in multiple phases only
  * sending requests to Scalaris once per work phase. Uses {@link Transaction}.
  *
+ * If all operations only read data and are executed in a single request
+ * including the commit, the transaction does not keep a transaction log, see
+ * {@link de.zib.scalaris.ReadOnlyTransaction}.
+ *
  * @author Nico Kruber, kruber@zib.de
- * @version 3.13
+ * @version 3.21
  * @since 3.13
  */
 public class ScalarisTxOpExecutor extends ScalarisOpExecutor {
@@ -0,0 +1,638 @@
+package de.zib.scalaris.jmx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import de.zib.scalaris.ConnectionException;
+import de.zib.scalaris.Monitor;
+import de.zib.scalaris.Monitor.GetNodeInfoResult;
+import de.zib.scalaris.Monitor.GetNodePerformanceResult;
+import de.zib.scalaris.Monitor.GetServiceInfoResult;
+import de.zib.scalaris.Monitor.GetServicePerformanceResult;
+import de.zib.scalaris.ScalarisVM;
+import de.zib.scalaris.UnknownException;
+
+/**
+ * Periodically collects monitoring values from all known Scalaris (Erlang)
+ * VMs and caches them locally.
+ *
+ * All VMs are polled concurrently in each poll round. Performance values are
+ * kept in {@link TimeSeries} ring buffers so that values which have already
+ * been dropped by the server are still available. Other VMs are discovered
+ * via {@link ScalarisVM#getOtherVMs(int)} of the seed node in each poll round.
+ *
+ * VMs (other than the seed node) which did not respond or did not host any
+ * DHT node, i.e. left the ring, in {@link #getMaxMissedRounds()} consecutive
+ * poll rounds are removed again.
+ *
+ * {@link MonitorNode} and {@link MonitorService} objects created with a
+ * collector serve their attributes from this cache instead of issuing a
+ * request for each attribute.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class MonitorCollector implements MonitorCollectorMBean {
+    /**
+     * Cached state of a single VM.
+     */
+    protected class NodeState {
+        protected final String node;
+        /**
+         * Connection to the VM, changed while holding the lock of this object
+         * except when a poll timed out (see {@link MonitorCollector#poll()}).
+         */
+        protected volatile Monitor monitor = null;
+        protected volatile GetNodeInfoResult info = null;
+        protected final TimeSeries latencyAvg = new TimeSeries(capacity);
+        protected final TimeSeries latencyStddev = new TimeSeries(capacity);
+        protected volatile Exception lastError = null;
+        protected volatile boolean polled = false;
+        /**
+         * Number of consecutive poll rounds in which the VM did not respond
+         * or did not host any DHT node.
+         */
+        protected volatile int missedRounds = 0;
+
+        protected NodeState(final String node) {
+            this.node = node;
+        }
+    }
+
+    protected final String seedNode;
+    protected final int capacity;
+    protected final ConcurrentHashMap<String, NodeState> nodes = new ConcurrentHashMap<String, NodeState>();
+    protected final ExecutorService pollExecutor;
+    private final boolean ownExecutor;
+    private ScheduledExecutorService scheduler = null;
+    private ScalarisVM seedVM = null;
+
+    private volatile GetServiceInfoResult serviceInfo = null;
+    private final TimeSeries srvLatencyAvg;
+    private final TimeSeries srvLatencyStddev;
+
+    /**
+     * Maximum number of other VMs to discover (0 to disable discovery).
+     */
+    protected int maxOtherVMs = 100;
+    /**
+     * Maximum time in milliseconds to wait for all VMs in a poll round.
+     */
+    protected long pollTimeout = 5000;
+    /**
+     * Number of consecutive missed poll rounds after which a VM is removed
+     * (0 to never remove VMs).
+     */
+    protected int maxMissedRounds = 3;
+
+    private volatile long pollRounds = 0;
+    private volatile long lastPollDuration = 0;
+
+    /**
+     * Creates a collector with a thread pool of 16 threads and keeping the
+     * latest 60 performance values of each VM.
+     *
+     * @param seedNode
+     *            Scalaris node to connect with (also provides the
+     *            service-wide values)
+     */
+    public MonitorCollector(final String seedNode) {
+        this(seedNode, Executors.newFixedThreadPool(16, new DaemonThreadFactory()), 60, true);
+    }
+
+    /**
+     * Creates a collector using the given executor for polling the VMs.
+     *
+     * @param seedNode
+     *            Scalaris node to connect with (also provides the
+     *            service-wide values)
+     * @param pollExecutor
+     *            executor to poll the VMs with (not shut down by
+     *            {@link #stop()})
+     * @param capacity
+     *            number of performance values to keep for each VM
+     */
+    public MonitorCollector(final String seedNode,
+            final ExecutorService pollExecutor, final int capacity) {
+        this(seedNode, pollExecutor, capacity, false);
+    }
+
+    private MonitorCollector(final String seedNode,
+            final ExecutorService pollExecutor, final int capacity,
+            final boolean ownExecutor) {
+        this.seedNode = seedNode;
+        this.capacity = capacity;
+        this.pollExecutor = pollExecutor;
+        this.ownExecutor = ownExecutor;
+        this.srvLatencyAvg = new TimeSeries(capacity);
+        this.srvLatencyStddev = new TimeSeries(capacity);
+        addNode(seedNode);
+    }
+
+    /**
+     * Creates daemon threads so that a collector does not prevent the JVM
+     * from exiting.
+     */
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+
+        public Thread newThread(final Runnable r) {
+            final Thread t = defaultFactory.newThread(r);
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+    /**
+     * Adds a VM to poll.
+     *
+     * @param node
+     *            Scalaris node to connect with
+     *
+     * @return the state of the node
+     */
+    protected NodeState addNode(final String node) {
+        NodeState state = nodes.get(node);
+        if (state == null) {
+            final NodeState newState = new NodeState(node);
+            state = nodes.putIfAbsent(node, newState);
+            if (state == null) {
+                state = newState;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Starts polling all VMs in the given interval.
+     *
+     * @param interval
+     *            time between two poll rounds in milliseconds
+     */
+    public synchronized void start(final long interval) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory());
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    poll();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops polling and closes all connections.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        if (ownExecutor) {
+            pollExecutor.shutdownNow();
+        }
+        if (seedVM != null) {
+            seedVM.closeConnection();
+            seedVM = null;
+        }
+        for (final NodeState state : nodes.values()) {
+            synchronized (state) {
+                closeMonitor(state);
+            }
+        }
+    }
+
+    /**
+     * Executes a single poll round, i.e. discovers new VMs and polls all
+     * known VMs concurrently.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting for the VMs
+     */
+    public void poll() throws InterruptedException {
+        final long start = System.currentTimeMillis();
+        discover();
+        final List<NodeState> states = new ArrayList<NodeState>(nodes.values());
+        final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(states.size());
+        for (final NodeState state : states) {
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    pollNode(state);
+                    return null;
+                }
+            });
+        }
+        final List<Future<Void>> futures = pollExecutor.invokeAll(tasks,
+                pollTimeout, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < futures.size(); ++i) {
+            if (futures.get(i).isCancelled()) {
+                final NodeState state = states.get(i);
+                state.lastError = new ConnectionException("poll timed out");
+                // note: the poll may still hold the state's lock - closing
+                //       the connection aborts it
+                closeMonitor(state);
+            }
+        }
+        evictNodes(states);
+        lastPollDuration = System.currentTimeMillis() - start;
+        ++pollRounds;
+    }
+
+    /**
+     * Adds other VMs known to the seed node.
+     */
+    protected synchronized void discover() {
+        if (maxOtherVMs <= 0) {
+            return;
+        }
+        try {
+            if (seedVM == null) {
+                seedVM = new ScalarisVM(seedNode);
+            }
+            for (final String node : seedVM.getOtherVMs(maxOtherVMs)) {
+                addNode(node);
+            }
+        } catch (final ConnectionException e) {
+            closeSeedVM();
+        } catch (final UnknownException e) {
+            closeSeedVM();
+        }
+    }
+
+    /**
+     * Removes VMs which did not respond or did not host any DHT node in the
+     * last {@link #maxMissedRounds} poll rounds. The seed node is never
+     * removed.
+     *
+     * @param states
+     *            the states of the VMs polled in this round
+     */
+    protected void evictNodes(final List<NodeState> states) {
+        if (maxMissedRounds <= 0) {
+            return;
+        }
+        for (final NodeState state : states) {
+            if (state.node.equals(seedNode)) {
+                continue;
+            }
+            final GetNodeInfoResult info = state.info;
+            if ((state.lastError != null) || (info != null && info.dhtNodes == 0)) {
+                if ((++state.missedRounds >= maxMissedRounds)
+                        && nodes.remove(state.node, state)) {
+                    closeMonitor(state);
+                }
+            } else {
+                state.missedRounds = 0;
+            }
+        }
+    }
+
+    private void closeSeedVM() {
+        if (seedVM != null) {
+            seedVM.closeConnection();
+            seedVM = null;
+        }
+    }
+
+    /**
+     * Polls the given VM (and the service-wide values if it is the seed node)
+     * and updates its state. Polls of the same VM are serialised.
+     *
+     * @param state
+     *            the VM's state
+     */
+    protected void pollNode(final NodeState state) {
+        synchronized (state) {
+            try {
+                Monitor monitor = state.monitor;
+                if (monitor == null) {
+                    monitor = new Monitor(state.node);
+                    state.monitor = monitor;
+                }
+                state.info = monitor.getNodeInfo();
+                final GetNodePerformanceResult perf = monitor.getNodePerformance();
+                state.latencyAvg.addAll(perf.latencyAvg);
+                state.latencyStddev.addAll(perf.latencyStddev);
+                if (state.node.equals(seedNode)) {
+                    serviceInfo = monitor.getServiceInfo();
+                    final GetServicePerformanceResult srvPerf = monitor.getServicePerformance();
+                    srvLatencyAvg.addAll(srvPerf.latencyAvg);
+                    srvLatencyStddev.addAll(srvPerf.latencyStddev);
+                }
+                state.lastError = null;
+            } catch (final ConnectionException e) {
+                state.lastError = e;
+                closeMonitor(state);
+            } catch (final UnknownException e) {
+                state.lastError = e;
+                closeMonitor(state);
+            } finally {
+                state.polled = true;
+            }
+        }
+    }
+
+    private static void closeMonitor(final NodeState state) {
+        final Monitor monitor = state.monitor;
+        if (monitor != null) {
+            state.monitor = null;
+            monitor.closeConnection();
+        }
+    }
+
+    /**
+     * Gets the state of the given VM, polling it if it has not been polled
+     * yet.
+     *
+     * @param node
+     *            Scalaris node
+     *
+     * @return the state of the VM
+     */
+    protected NodeState getPolledState(final String node) {
+        final NodeState state = addNode(node);
+        if (!state.polled) {
+            pollNode(state);
+        }
+        return state;
+    }
+
+    private static void throwError(final Exception e)
+            throws ConnectionException, UnknownException {
+        if (e instanceof ConnectionException) {
+            throw (ConnectionException) e;
+        } else if (e instanceof UnknownException) {
+            throw (UnknownException) e;
+        }
+        throw new UnknownException(e);
+    }
+
+    /**
+     * Gets the cached information about the given VM.
+     *
+     * @param node
+     *            Scalaris node
+     *
+     * @return VM information
+     *
+     * @throws ConnectionException
+     *             if the VM has never been polled successfully due to a
+     *             connection error
+     * @throws UnknownException
+     *             if the VM has never been polled successfully due to any
+     *             other error
+     */
+    public GetNodeInfoResult getNodeInfo(final String node)
+            throws ConnectionException, UnknownException {
+        final NodeState state = getPolledState(node);
+        final GetNodeInfoResult info = state.info;
+        if (info == null) {
+            throwError(state.lastError);
+        }
+        return info;
+    }
+
+    /**
+     * Gets the cached performance values of the given VM.
+     *
+     * @param node
+     *            Scalaris node
+     *
+     * @return performance values
+     *
+     * @throws ConnectionException
+     *             if the VM has never been polled successfully due to a
+     *             connection error
+     * @throws UnknownException
+     *             if the VM has never been polled successfully due to any
+     *             other error
+     */
+    public GetNodePerformanceResult getNodePerformance(final String node)
+            throws ConnectionException, UnknownException {
+        final NodeState state = getPolledState(node);
+        if (state.info == null) {
+            throwError(state.lastError);
+        }
+        return new GetNodePerformanceResult(state.latencyAvg.toMap(),
+                state.latencyStddev.toMap());
+    }
+
+    /**
+     * Gets the cached service-wide information.
+     *
+     * @return service information
+     *
+     * @throws ConnectionException
+     *             if the seed node has never been polled successfully due to
+     *             a connection error
+     * @throws UnknownException
+     *             if the seed node has never been polled successfully due to
+     *             any other error
+     */
+    public GetServiceInfoResult getServiceInfo() throws ConnectionException,
+            UnknownException {
+        final NodeState state = getPolledState(seedNode);
+        final GetServiceInfoResult info = serviceInfo;
+        if (info == null) {
+            throwError(state.lastError);
+        }
+        return info;
+    }
+
+    /**
+     * Gets the cached service-wide performance values.
+     *
+     * @return performance values
+     *
+     * @throws ConnectionException
+     *             if the seed node has never been polled successfully due to
+     *             a connection error
+     * @throws UnknownException
+     *             if the seed node has never been polled successfully due to
+     *             any other error
+     */
+    public GetServicePerformanceResult getServicePerformance()
+            throws ConnectionException, UnknownException {
+        getServiceInfo();
+        return new GetServicePerformanceResult(srvLatencyAvg.toMap(),
+                srvLatencyStddev.toMap());
+    }
+
+    /**
+     * Computes the given percentiles (nearest rank) of the given values.
+     *
+     * @param values
+     *            the values (will be sorted)
+     *
+     * @return map of percentile names to values (empty if there are no
+     *         values)
+     */
+    protected static Map<String, Double> getPercentiles(final List<Double> values) {
+        final LinkedHashMap<String, Double> result = new LinkedHashMap<String, Double>();
+        if (values.isEmpty()) {
+            return result;
+        }
+        Collections.sort(values);
+        final int n = values.size();
+        result.put("min", values.get(0));
+        result.put("p50", values.get(percentileIndex(50, n)));
+        result.put("p90", values.get(percentileIndex(90, n)));
+        result.put("p99", values.get(percentileIndex(99, n)));
+        result.put("max", values.get(n - 1));
+        return result;
+    }
+
+    private static int percentileIndex(final int percentile, final int n) {
+        return Math.max(0, ((percentile * n) + 99) / 100 - 1);
+    }
+
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.MonitorCollectorMBean#getKnownNodes()
+     */
+    public List<String> getKnownNodes() {
+        return new ArrayList<String>(nodes.keySet());
+    }
+
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.MonitorCollectorMBean#getFailedNodes()
+     */
+    public List<String> getFailedNodes() {
+        final List<String> result = new ArrayList<String>();
+        for (final NodeState state : nodes.values()) {
+            if (state.lastError != null) {
+                result.add(state.node);
+            }
+        }
+        return result;
+    }
+
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.MonitorCollectorMBean#getPollRounds()
+     */
+    public long getPollRounds() {
+        return pollRounds;
+    }
+
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.MonitorCollectorMBean#getLastPollDuration()
+     */
+    public long getLastPollDuration() {
+        return lastPollDuration;
+    }
+
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.MonitorCollectorMBean#getDhtNodes()
+     */
+    public int getDhtNodes() {
+        int result = 0;
+        for (final NodeState state : nodes.values()) {
+            final GetNodeInfoResult info = state.info;
+            if (info != null) {
+                result += info.dhtNodes;
+            }
+        }
+        return result;
+    }
+
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.MonitorCollectorMBean#getNodeCurLatencyAvg()
+     */
+    public Map<String, Double> getNodeCurLatencyAvg() {
+        final Map<String, Double> result = new LinkedHashMap<String, Double>();
+        for (final NodeState state : nodes.values()) {
+            final Double value = state.latencyAvg.getLatest();
+            if (value != null) {
+                result.put(state.node, value);
+            }
+        }
+        return result;
+    }
+
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.MonitorCollectorMBean#getClusterLatencyAvgPercentiles()
+     */
+    public Map<String, Double> getClusterLatencyAvgPercentiles() {
+        return getPercentiles(new ArrayList<Double>(getNodeCurLatencyAvg().values()));
+    }
+
+    /* (non-Javadoc)
+     * @see de.zib.scalaris.jmx.MonitorCollectorMBean#getClusterLatencyStddevPercentiles()
+     */
+    public Map<String, Double> getClusterLatencyStddevPercentiles() {
+        final List<Double> values = new ArrayList<Double>();
+        for (final NodeState state : nodes.values()) {
+            final Double value = state.latencyStddev.getLatest();
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        return getPercentiles(values);
+    }
+
+    /**
+     * @return the maximum number of other VMs to discover
+     */
+    public int getMaxOtherVMs() {
+        return maxOtherVMs;
+    }
+
+    /**
+     * @param maxOtherVMs
+     *            the maximum number of other VMs to discover (0 to disable
+     *            discovery)
+     */
+    public void setMaxOtherVMs(final int maxOtherVMs) {
+        this.maxOtherVMs = maxOtherVMs;
+    }
+
+    /**
+     * @return the number of consecutive missed poll rounds after which a VM
+     *         is removed
+     */
+    public int getMaxMissedRounds() {
+        return maxMissedRounds;
+    }
+
+    /**
+     * @param maxMissedRounds
+     *            the number of consecutive missed poll rounds after which a
+     *            VM is removed (0 to never remove VMs)
+     */
+    public void setMaxMissedRounds(final int maxMissedRounds) {
+        this.maxMissedRounds = maxMissedRounds;
+    }
+
+    /**
+     * @return the maximum time in milliseconds to wait for all VMs in a poll
+     *         round
+     */
+    public long getPollTimeout() {
+        return pollTimeout;
+    }
+
+    /**
+     * @param pollTimeout
+     *            the maximum time in milliseconds to wait for all VMs in a
+     *            poll round
+     */
+    public void setPollTimeout(final long pollTimeout) {
+        this.pollTimeout = pollTimeout;
+    }
+}
@@ -0,0 +1,79 @@
+package de.zib.scalaris.jmx;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Provides cluster-wide monitoring values collected by a
+ * {@link MonitorCollector} via JMX.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public interface MonitorCollectorMBean {
+
+    /**
+     * Gets the names of all Scalaris (Erlang) VMs known to the collector.
+     *
+     * @return list of node names
+     */
+    public abstract List<String> getKnownNodes();
+
+    /**
+     * Gets the names of all Scalaris (Erlang) VMs which failed to respond in
+     * the latest poll.
+     *
+     * @return list of node names
+     */
+    public abstract List<String> getFailedNodes();
+
+    /**
+     * Gets the number of poll rounds so far.
+     *
+     * @return number of poll rounds
+     */
+    public abstract long getPollRounds();
+
+    /**
+     * Gets the duration of the latest poll round.
+     *
+     * @return duration in milliseconds
+     */
+    public abstract long getLastPollDuration();
+
+    /**
+     * Gets the total number of DHT nodes in all known VMs (as of the latest
+     * successful poll of each VM).
+     *
+     * @return number of DHT nodes
+     */
+    public abstract int getDhtNodes();
+
+    /**
+     * Gets the current, i.e. latest, average latency of each known VM.
+     *
+     * @return map of node names to their latest average latency
+     */
+    public abstract Map<String, Double> getNodeCurLatencyAvg();
+
+    /**
+     * Gets percentiles of the current average latencies of all known VMs.
+     *
+     * @return map of percentile names (<tt>min</tt>, <tt>p50</tt>,
+     *         <tt>p90</tt>, <tt>p99</tt>, <tt>max</tt>) to latencies (empty
+     *         if there are no values)
+     */
+    public abstract Map<String, Double> getClusterLatencyAvgPercentiles();
+
+    /**
+     * Gets percentiles of the current standard deviation of the latencies of
+     * all known VMs.
+     *
+     * @return map of percentile names (<tt>min</tt>, <tt>p50</tt>,
+     *         <tt>p90</tt>, <tt>p99</tt>, <tt>max</tt>) to latency (standard)
+     *         deviations (empty if there are no values)
+     */
+    public abstract Map<String, Double> getClusterLatencyStddevPercentiles();
+
+}
@@ -4,17 +4,21 @@ import java.util.Map;
 
 import de.zib.scalaris.ConnectionException;
 import de.zib.scalaris.Monitor;
+import de.zib.scalaris.Monitor.GetNodeInfoResult;
+import de.zib.scalaris.Monitor.GetNodePerformanceResult;
 import de.zib.scalaris.UnknownException;
 
 /**
  * Provides methods to monitor a specific Scalaris (Erlang) VM via JMX.
  *
  * @author Nico Kruber, kruber@zib.de
- * @version 3.15
+ * @version 3.21
  * @since 3.15
  */
 public class MonitorNode implements MonitorNodeMBean {
     protected final de.zib.scalaris.Monitor monitor;
+    protected final MonitorCollector collector;
+    protected final String node;
 
     /**
      * Creates a connection to the erlang VM of the given Scalaris node. Uses
@@ -28,49 +32,82 @@ public class MonitorNode implements MonitorNodeMBean {
      */
     public MonitorNode(final String node) throws ConnectionException {
         this.monitor = new de.zib.scalaris.Monitor(node);
+        this.collector = null;
+        this.node = node;
+    }
+
+    /**
+     * Serves the monitoring values of the given Scalaris node from the cache
+     * of the given collector instead of requesting them for each attribute.
+     *
+     * @param collector
+     *            the collector polling the node
+     * @param node
+     *            Scalaris node to monitor
+     *
+     * @since 3.21
+     */
+    public MonitorNode(final MonitorCollector collector, final String node) {
+        this.monitor = null;
+        this.collector = collector;
+        this.node = node;
+    }
+
+    private GetNodeInfoResult getNodeInfo() throws ConnectionException, UnknownException {
+        if (collector != null) {
+            return collector.getNodeInfo(node);
+        }
+        return monitor.getNodeInfo();
+    }
+
+    private GetNodePerformanceResult getNodePerformance() throws ConnectionException, UnknownException {
+        if (collector != null) {
+            return collector.getNodePerformance(node);
+        }
+        return monitor.getNodePerformance();
     }
 
     /* (non-Javadoc)
      * @see jmx.MonitorNodeMBean#getScalarisVersion()
      */
     public String getScalarisVersion() throws ConnectionException, UnknownException {
-        return monitor.getNodeInfo().scalarisVersion;
+        return getNodeInfo().scalarisVersion;
     }
     /* (non-Javadoc)
      * @see jmx.MonitorNodeMBean#getErlangVersion()
      */
     public String getErlangVersion() throws ConnectionException, UnknownException {
-        return monitor.getNodeInfo().erlangVersion;
+        return getNodeInfo().erlangVersion;
     }
     /* (non-Javadoc)
      * @see jmx.MonitorNodeMBean#getDhtNodes()
      */
     public int getDhtNodes() throws ConnectionException, UnknownException {
-        return monitor.getNodeInfo().dhtNodes;
+        return getNodeInfo().dhtNodes;
     }
     /* (non-Javadoc)
      * @see jmx.MonitorNodeMBean#getLatencyAvg()
      */
     public Map<Long, Double> getLatencyAvg() throws ConnectionException, UnknownException {
-        return monitor.getNodePerformance().latencyAvg;
+        return getNodePerformance().latencyAvg;
     }
     /* (non-Javadoc)
      * @see jmx.MonitorNodeMBean#getLatencyStddev()
      */
     public Map<Long, Double> getLatencyStddev() throws ConnectionException, UnknownException {
-        return monitor.getNodePerformance().latencyStddev;
+        return getNodePerformance().latencyStddev;
     }
     /* (non-Javadoc)
      * @see jmx.MonitorNodeMBean#getCurLatencyAvg()
      */
     public Double getCurLatencyAvg() throws ConnectionException, UnknownException {
-        return Monitor.getCurrentPerfValue(monitor.getNodePerformance().latencyAvg);
+        return Monitor.getCurrentPerfValue(getNodePerformance().latencyAvg);
     }
     /* (non-Javadoc)
      * @see jmx.MonitorNodeMBean#getCurLatencyStddev()
      */
     public Double getCurLatencyStddev() throws ConnectionException, UnknownException {
-        return Monitor.getCurrentPerfValue(monitor.getNodePerformance().latencyStddev);
+        return Monitor.getCurrentPerfValue(getNodePerformance().latencyStddev);
     }
 
 }
@@ -4,17 +4,20 @@ import java.util.Map;
 
 import de.zib.scalaris.ConnectionException;
 import de.zib.scalaris.Monitor;
+import de.zib.scalaris.Monitor.GetServiceInfoResult;
+import de.zib.scalaris.Monitor.GetServicePerformanceResult;
 import de.zib.scalaris.UnknownException;
 
 /**
  * Provides methods to monitor a specific Scalaris (Erlang) VM via JMX.
  *
  * @author Nico Kruber, kruber@zib.de
- * @version 3.15
+ * @version 3.21
  * @since 3.15
  */
 public class MonitorService implements MonitorServiceMBean {
     protected final de.zib.scalaris.Monitor monitor;
+    protected final MonitorCollector collector;
 
     /**
      * Creates a connection to the erlang VM of the given Scalaris node. Uses
@@ -28,42 +31,72 @@ public class MonitorService implements MonitorServiceMBean {
      */
     public MonitorService(final String node) throws ConnectionException {
         this.monitor = new de.zib.scalaris.Monitor(node);
+        this.collector = null;
     }
+
+    /**
+     * Serves the service-wide monitoring values from the cache of the given
+     * collector instead of requesting them for each attribute.
+     *
+     * @param collector
+     *            the collector polling the Scalaris nodes
+     *
+     * @since 3.21
+     */
+    public MonitorService(final MonitorCollector collector) {
+        this.monitor = null;
+        this.collector = collector;
+    }
+
+    private GetServiceInfoResult getServiceInfo() throws ConnectionException, UnknownException {
+        if (collector != null) {
+            return collector.getServiceInfo();
+        }
+        return monitor.getServiceInfo();
+    }
+
+    private GetServicePerformanceResult getServicePerformance() throws ConnectionException, UnknownException {
+        if (collector != null) {
+            return collector.getServicePerformance();
+        }
+        return monitor.getServicePerformance();
+    }
+
     /* (non-Javadoc)
      * @see jmx.MonitorServiceMBean#getTotalLoad()
      */
     public Long getTotalLoad() throws ConnectionException, UnknownException {
-        return monitor.getServiceInfo().totalLoad;
+        return getServiceInfo().totalLoad;
     }
     /* (non-Javadoc)
      * @see jmx.MonitorServiceMBean#getNodes()
      */
     public Long getNodes() throws ConnectionException, UnknownException {
-        return monitor.getServiceInfo().nodes;
+        return getServiceInfo().nodes;
     }
     /* (non-Javadoc)
      * @see jmx.MonitorServiceMBean#getLatencyAvg()
      */
     public Map<Long, Double> getLatencyAvg() throws ConnectionException, UnknownException {
-        return monitor.getServicePerformance().latencyAvg;
+        return getServicePerformance().latencyAvg;
     }
     /* (non-Javadoc)
      * @see jmx.MonitorServiceMBean#getLatencyStddev()
      */
     public Map<Long, Double> getLatencyStddev() throws ConnectionException, UnknownException {
-        return monitor.getServicePerformance().latencyStddev;
+        return getServicePerformance().latencyStddev;
     }
     /* (non-Javadoc)
      * @see jmx.MonitorServiceMBean#getCurLatencyAvg()
      */
     public Double getCurLatencyAvg() throws ConnectionException, UnknownException {
-        return Monitor.getCurrentPerfValue(monitor.getServicePerformance().latencyAvg);
+        return Monitor.getCurrentPerfValue(getServicePerformance().latencyAvg);
     }
     /* (non-Javadoc)
      * @see jmx.MonitorServiceMBean#getCurLatencyStddev()
      */
     public Double getCurLatencyStddev() throws ConnectionException, UnknownException {
-        return Monitor.getCurrentPerfValue(monitor.getServicePerformance().latencyStddev);
+        return Monitor.getCurrentPerfValue(getServicePerformance().latencyStddev);
     }
 
 }
@@ -0,0 +1,144 @@
+package de.zib.scalaris.jmx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fixed-size time series of double values backed by a ring buffer (similar to
+ * Scalaris' <tt>rrd</tt> module). Once full, the oldest value is overwritten.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class TimeSeries {
+    private final long[] times;
+    private final double[] values;
+    /**
+     * Position of the next value to write.
+     */
+    private int next = 0;
+    private int size = 0;
+
+    /**
+     * Creates a new time series.
+     *
+     * @param capacity
+     *            maximum number of values to keep (&gt; 0)
+     */
+    public TimeSeries(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be an integer > 0");
+        }
+        times = new long[capacity];
+        values = new double[capacity];
+    }
+
+    /**
+     * Adds a new value. Values older than or as old as the latest value are
+     * ignored.
+     *
+     * @param time
+     *            the timestamp of the value
+     * @param value
+     *            the value
+     *
+     * @return whether the value was added
+     */
+    public synchronized boolean add(final long time, final double value) {
+        if ((size > 0) && (time <= getLatestTime_())) {
+            return false;
+        }
+        times[next] = time;
+        values[next] = value;
+        next = (next + 1) % times.length;
+        if (size < times.length) {
+            ++size;
+        }
+        return true;
+    }
+
+    /**
+     * Adds all values of the given map which are newer than the latest value
+     * in this time series, e.g. the result of a
+     * {@link de.zib.scalaris.Monitor#getNodePerformance()} call.
+     *
+     * @param map
+     *            a map of timestamps to values (in any order)
+     *
+     * @return the number of values added
+     */
+    public synchronized int addAll(final Map<Long, Double> map) {
+        final List<Long> newTimes = new ArrayList<Long>(map.size());
+        for (final Long time : map.keySet()) {
+            if ((size == 0) || (time > getLatestTime_())) {
+                newTimes.add(time);
+            }
+        }
+        Collections.sort(newTimes);
+        for (final Long time : newTimes) {
+            add(time, map.get(time));
+        }
+        return newTimes.size();
+    }
+
+    private long getLatestTime_() {
+        return times[(next + times.length - 1) % times.length];
+    }
+
+    /**
+     * Gets the latest value.
+     *
+     * @return the latest value or <tt>null</tt> if there is none
+     */
+    public synchronized Double getLatest() {
+        if (size == 0) {
+            return null;
+        }
+        return values[(next + times.length - 1) % times.length];
+    }
+
+    /**
+     * Converts the time series into a map of timestamps to values with the
+     * latest value first (like in {@link de.zib.scalaris.Monitor}'s results).
+     *
+     * @return a map of timestamps to values
+     */
+    public synchronized Map<Long, Double> toMap() {
+        final LinkedHashMap<Long, Double> result = new LinkedHashMap<Long, Double>(size);
+        for (int i = 1; i <= size; ++i) {
+            final int pos = (next + times.length - i) % times.length;
+            result.put(times[pos], values[pos]);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of values currently stored.
+     *
+     * @return the number of values
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Gets the maximum number of values to store.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return times.length;
+    }
+
+    /**
+     * Removes all values.
+     */
+    public synchronized void clear() {
+        next = 0;
+        size = 0;
+    }
+}
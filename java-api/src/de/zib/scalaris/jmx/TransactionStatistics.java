@@ -0,0 +1,191 @@
+package de.zib.scalaris.jmx;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects statistics about transactions executed by a
+ * {@link de.zib.scalaris.TransactionRunner} including the keys most often
+ * involved in aborts.
+ *
+ * At most {@link #getMaxKeys()} keys are tracked. If more keys are involved
+ * in aborts, all counters are halved and keys with no remaining aborts are
+ * removed, i.e. old conflicts fade out over time.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class TransactionStatistics implements TransactionStatisticsMBean {
+    protected final AtomicLong commits = new AtomicLong(0);
+    protected final AtomicLong aborts = new AtomicLong(0);
+    protected final AtomicLong retries = new AtomicLong(0);
+    protected final AtomicLong retriesDenied = new AtomicLong(0);
+    protected final AtomicLong failures = new AtomicLong(0);
+    /**
+     * Number of shown hot keys.
+     */
+    protected final int topKeys;
+    /**
+     * Maximum number of tracked keys.
+     */
+    protected final int maxKeys;
+    /**
+     * Number of aborts per key.
+     */
+    protected final HashMap<String, Long> conflictKeys = new HashMap<String, Long>();
+
+    /**
+     * Creates a new statistics object tracking at most 1000 keys and showing
+     * the 20 hottest ones.
+     */
+    public TransactionStatistics() {
+        this(20, 1000);
+    }
+
+    /**
+     * Creates a new statistics object.
+     *
+     * @param topKeys
+     *            number of hottest keys to show
+     * @param maxKeys
+     *            maximum number of keys to track
+     */
+    public TransactionStatistics(final int topKeys, final int maxKeys) {
+        this.topKeys = topKeys;
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Records a successful commit.
+     */
+    public void addCommit() {
+        commits.incrementAndGet();
+    }
+
+    /**
+     * Records an aborted transaction attempt.
+     *
+     * @param keys
+     *            the keys responsible for the abort
+     */
+    public void addAbort(final Collection<String> keys) {
+        aborts.incrementAndGet();
+        synchronized (conflictKeys) {
+            for (final String key : keys) {
+                final Long count = conflictKeys.get(key);
+                conflictKeys.put(key, count == null ? 1l : (count + 1));
+            }
+            while (conflictKeys.size() > maxKeys) {
+                decay();
+            }
+        }
+    }
+
+    /**
+     * Halves all abort counters and removes keys with no aborts left.
+     */
+    private void decay() {
+        for (final Iterator<Entry<String, Long>> it = conflictKeys.entrySet().iterator(); it.hasNext();) {
+            final Entry<String, Long> entry = it.next();
+            final long newCount = entry.getValue() / 2;
+            if (newCount == 0) {
+                it.remove();
+            } else {
+                entry.setValue(newCount);
+            }
+        }
+    }
+
+    /**
+     * Records a retry after an abort.
+     */
+    public void addRetry() {
+        retries.incrementAndGet();
+    }
+
+    /**
+     * Records a retry which was denied due to an exhausted retry budget.
+     */
+    public void addRetryDenied() {
+        retriesDenied.incrementAndGet();
+    }
+
+    /**
+     * Records a failed transaction, i.e. which was given up after an abort.
+     */
+    public void addFailure() {
+        failures.incrementAndGet();
+    }
+
+    public long getCommits() {
+        return commits.get();
+    }
+
+    public long getAborts() {
+        return aborts.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public long getRetriesDenied() {
+        return retriesDenied.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public Map<String, Long> getHotConflictKeys() {
+        final List<Entry<String, Long>> entries;
+        synchronized (conflictKeys) {
+            entries = new ArrayList<Entry<String, Long>>(conflictKeys.size());
+            for (final Entry<String, Long> entry : conflictKeys.entrySet()) {
+                entries.add(new AbstractMap.SimpleImmutableEntry<String, Long>(entry));
+            }
+        }
+        Collections.sort(entries, new Comparator<Entry<String, Long>>() {
+            public int compare(final Entry<String, Long> o1, final Entry<String, Long> o2) {
+                return o2.getValue().compareTo(o1.getValue());
+            }
+        });
+        final LinkedHashMap<String, Long> result = new LinkedHashMap<String, Long>(topKeys);
+        for (final Entry<String, Long> entry : entries) {
+            if (result.size() >= topKeys) {
+                break;
+            }
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    public void reset() {
+        commits.set(0);
+        aborts.set(0);
+        retries.set(0);
+        retriesDenied.set(0);
+        failures.set(0);
+        synchronized (conflictKeys) {
+            conflictKeys.clear();
+        }
+    }
+
+    /**
+     * @return the maximum number of tracked keys
+     */
+    public int getMaxKeys() {
+        return maxKeys;
+    }
+}
@@ -0,0 +1,64 @@
+package de.zib.scalaris.jmx;
+
+import java.util.Map;
+
+/**
+ * Provides methods to monitor the transactions executed by a
+ * {@link de.zib.scalaris.TransactionRunner} via JMX.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public interface TransactionStatisticsMBean {
+    /**
+     * Gets the number of successfully committed transactions.
+     *
+     * @return number of commits
+     */
+    public abstract long getCommits();
+
+    /**
+     * Gets the number of aborted transaction attempts.
+     *
+     * @return number of aborts
+     */
+    public abstract long getAborts();
+
+    /**
+     * Gets the number of transaction attempts which were retried after an
+     * abort.
+     *
+     * @return number of retries
+     */
+    public abstract long getRetries();
+
+    /**
+     * Gets the number of aborted transactions which were not retried because
+     * the retry budget was exhausted.
+     *
+     * @return number of denied retries
+     */
+    public abstract long getRetriesDenied();
+
+    /**
+     * Gets the number of transactions which failed, i.e. were given up after
+     * an abort.
+     *
+     * @return number of failed transactions
+     */
+    public abstract long getFailures();
+
+    /**
+     * Gets the keys most often involved in aborted transactions.
+     *
+     * @return map of keys to the (decayed) number of aborts they were
+     *         involved in, sorted by decreasing number of aborts
+     */
+    public abstract Map<String, Long> getHotConflictKeys();
+
+    /**
+     * Resets all counters and the hot key statistics.
+     */
+    public abstract void reset();
+}
@@ -33,7 +33,7 @@ import de.zib.scalaris.UnknownException;
  * Operation reading a value.
  *
  * @author Nico Kruber, kruber@zib.de
- * @version 3.14
+ * @version 3.21
  * @since 3.14
  */
 public class ReadOp implements TransactionOperation, TransactionSingleOpOperation {
@@ -69,20 +69,50 @@ public class ReadOp implements TransactionOperation, TransactionSingleOpOperatio
         return key;
     }
 
-    public void setResult(final OtpErlangObject resultRaw, final boolean compressed) {
+    public synchronized void setResult(final OtpErlangObject resultRaw, final boolean compressed) {
         this.resultRaw = resultRaw;
         this.resultCompressed = compressed;
     }
 
-    public OtpErlangObject getResult() {
+    public synchronized OtpErlangObject getResult() {
         return this.resultRaw;
     }
 
-    public boolean getResultCompressed() {
+    public synchronized boolean getResultCompressed() {
         return this.resultCompressed;
     }
 
-    public ErlangValue processResult() throws NotFoundException,
+    /**
+     * Decodes a compressed result in place so that a later
+     * {@link #processResult()} does not need to decode it any more. This may
+     * be called from any thread, e.g. to decode results in parallel.
+     *
+     * Errors are not reported here but by {@link #processResult()}.
+     *
+     * @since 3.21
+     */
+    public synchronized void decodeResult() {
+        if (!resultCompressed || (resultRaw == null)) {
+            return;
+        }
+        try {
+            final OtpErlangTuple received = (OtpErlangTuple) resultRaw;
+            if ((received.arity() == 2)
+                    && received.elementAt(0).equals(CommonErlangObjects.okAtom)) {
+                resultRaw = new OtpErlangTuple(new OtpErlangObject[] {
+                        CommonErlangObjects.okAtom,
+                        CommonErlangObjects.decode(received.elementAt(1)) });
+            }
+            // other results do not contain a compressed value
+            resultCompressed = false;
+        } catch (final ClassCastException e) {
+            // reported by processResult()
+        } catch (final OtpErlangDecodeException e) {
+            // reported by processResult()
+        }
+    }
+
+    public synchronized ErlangValue processResult() throws NotFoundException,
             UnknownException {
         /*
          * possible return values:
@@ -0,0 +1,116 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import de.zib.scalaris.operations.TransactionSingleOpOperation;
+
+/**
+ * Test class for {@link AsyncWriteQueue}.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class AsyncWriteQueueTest {
+    private final static long testTime = System.currentTimeMillis();
+
+    static {
+        // determine good/bad nodes:
+        final ConnectionFactory cf = ConnectionFactory.getInstance();
+        cf.testAllNodes();
+        // set not to automatically try reconnects (auto-retries prevent ConnectionException tests from working):
+        ((DefaultConnectionPolicy) cf.getConnectionPolicy()).setMaxRetries(0);
+    }
+
+    /**
+     * Test method for {@link AsyncWriteQueue#write(String, Object)},
+     * {@link AsyncWriteQueue#addOnNr(String, long)} and
+     * {@link AsyncWriteQueue#flush()}.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testFlush1() throws Exception {
+        final String key = "_AsyncWriteQueue_testFlush1_" + testTime;
+        final ConnectionPool pool = new ConnectionPool(ConnectionFactory.getInstance(), 1);
+        final TransactionSingleOp t = new TransactionSingleOp();
+        try {
+            final AsyncWriteQueue queue = new AsyncWriteQueue(pool, 10000, 10, 100);
+            final AtomicInteger failures = new AtomicInteger(0);
+            queue.setFailureCallback(new AsyncWriteQueue.FailureCallback() {
+                public void failed(final TransactionSingleOpOperation op, final Exception e) {
+                    failures.incrementAndGet();
+                }
+            });
+            for (int i = 0; i < 10; ++i) {
+                assertTrue(queue.addOnNr(key + "_counter", 1));
+            }
+            assertTrue(queue.write(key + "_string", "value"));
+            // increment on a string fails:
+            assertTrue(queue.addOnNr(key + "_string", 1));
+            assertEquals(3, queue.getQueued());
+            queue.flush();
+
+            assertEquals(0, queue.getQueued());
+            assertEquals(12, queue.getAccepted());
+            assertEquals(9, queue.getCoalesced());
+            assertEquals(2, queue.getSucceeded());
+            assertEquals(1, queue.getFailed());
+            assertEquals(1, failures.get());
+            assertEquals(10, t.read(key + "_counter").longValue());
+            assertEquals("value", t.read(key + "_string").stringValue());
+        } finally {
+            t.closeConnection();
+            pool.closeAll();
+        }
+    }
+
+    /**
+     * Test method for {@link AsyncWriteQueue#start(long)} and
+     * {@link AsyncWriteQueue#stop()} with a full queue.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testStartStop1() throws Exception {
+        final String key = "_AsyncWriteQueue_testStartStop1_" + testTime;
+        final ConnectionPool pool = new ConnectionPool(ConnectionFactory.getInstance(), 1);
+        final TransactionSingleOp t = new TransactionSingleOp();
+        try {
+            final AsyncWriteQueue queue = new AsyncWriteQueue(pool, 10000, 5, 10);
+            queue.start(100000);
+            int accepted = 0;
+            for (int i = 0; i < 20; ++i) {
+                if (queue.write(key + i, i)) {
+                    ++accepted;
+                }
+            }
+            queue.stop();
+            assertEquals(accepted, queue.getSucceeded());
+            assertEquals(20 - accepted, queue.getDropped());
+            assertEquals(0, t.read(key + 0).intValue());
+        } finally {
+            t.closeConnection();
+            pool.closeAll();
+        }
+    }
+}
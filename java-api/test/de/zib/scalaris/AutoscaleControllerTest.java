@@ -0,0 +1,134 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Test class for {@link AutoscaleController}.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class AutoscaleControllerTest {
+    final static String scalarisNode;
+
+    static {
+        // determine good/bad nodes:
+        final ConnectionFactory cf = ConnectionFactory.getInstance();
+        cf.testAllNodes();
+        // set not to automatically try reconnects (auto-retries prevent ConnectionException tests from working):
+        final DefaultConnectionPolicy cp = ((DefaultConnectionPolicy) cf.getConnectionPolicy());
+        cp.setMaxRetries(0);
+        scalarisNode = cp.selectNode().toString();
+    }
+
+    /**
+     * Test method for {@link AutoscaleController#step()} with a constantly
+     * high latency, i.e. adding nodes up to the maximum number of nodes.
+     *
+     * @throws ConnectionException
+     * @throws UnknownException
+     * @throws InterruptedException
+     */
+    @Test
+    public final void testStepUp() throws ConnectionException,
+            UnknownException, InterruptedException {
+        final ScalarisVM vm = new ScalarisVM(scalarisNode);
+        try {
+            final int size = vm.getNumberOfNodes();
+            final AutoscaleController controller = new AutoscaleController(vm, null, null);
+            controller.setHighLatency(10);
+            controller.setUpSteps(2);
+            controller.setCoolDown(0);
+            controller.setMaxNodes(size + 1);
+
+            controller.recordRequest(100);
+            assertEquals(0, controller.step());
+            controller.recordRequest(100);
+            assertEquals(1, controller.step());
+            Thread.sleep(1000);
+            assertEquals(size + 1, vm.getNumberOfNodes());
+
+            // maximum number of nodes reached:
+            controller.recordRequest(100);
+            controller.step();
+            controller.recordRequest(100);
+            assertEquals(0, controller.step());
+            assertEquals(1, controller.getNodesAdded());
+
+            vm.shutdownNodes(1);
+        } finally {
+            vm.closeConnection();
+        }
+    }
+
+    /**
+     * Test method for {@link AutoscaleController#step()} with a high latency
+     * but a cool-down preventing nodes from being added.
+     *
+     * @throws ConnectionException
+     * @throws UnknownException
+     */
+    @Test
+    public final void testStepCoolDown() throws ConnectionException,
+            UnknownException {
+        final ScalarisVM vm = new ScalarisVM(scalarisNode);
+        try {
+            final AutoscaleController controller = new AutoscaleController(vm, null, null);
+            controller.setHighLatency(10);
+            controller.setUpSteps(1);
+            controller.setCoolDown(Long.MAX_VALUE);
+
+            controller.recordRequest(100);
+            assertEquals(0, controller.step());
+            assertEquals(0, controller.getNodesAdded());
+            assertEquals(100.0, controller.getLastLatency(), 0.0);
+        } finally {
+            vm.closeConnection();
+        }
+    }
+
+    /**
+     * Test method for
+     * {@link AutoscaleController#AutoscaleController(ScalarisVM, Monitor, Autoscale)}
+     * which should reject an auto-scaling service not in pull mode.
+     *
+     * @throws ConnectionException
+     * @throws UnknownException
+     */
+    @Test
+    public final void testAutoscalePullMode() throws ConnectionException,
+            UnknownException {
+        final ScalarisVM vm = new ScalarisVM(scalarisNode);
+        final Autoscale autoscale = new Autoscale(scalarisNode);
+        try {
+            final boolean pullMode = autoscale.checkConfig();
+            try {
+                new AutoscaleController(vm, null, autoscale);
+                assertTrue(pullMode);
+            } catch (final IllegalArgumentException e) {
+                assertFalse(pullMode);
+            }
+        } finally {
+            autoscale.closeConnection();
+            vm.closeConnection();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+/**
+ * Test class for {@link LargeValueStore}.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class LargeValueStoreTest {
+    private final static long testTime = System.currentTimeMillis();
+
+    static {
+        // determine good/bad nodes:
+        final ConnectionFactory cf = ConnectionFactory.getInstance();
+        cf.testAllNodes();
+        // set not to automatically try reconnects (auto-retries prevent ConnectionException tests from working):
+        ((DefaultConnectionPolicy) cf.getConnectionPolicy()).setMaxRetries(0);
+    }
+
+    private static byte[] randomBytes(final int size) {
+        final byte[] result = new byte[size];
+        new Random(testTime).nextBytes(result);
+        return result;
+    }
+
+    /**
+     * Test method for {@link LargeValueStore#write(String, byte[])} and
+     * {@link LargeValueStore#read(String)} with small and large values
+     * overwriting each other.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testWriteRead1() throws Exception {
+        final String key = "_LargeValueStore_testWriteRead1_" + testTime;
+        final ConnectionPool pool = new ConnectionPool(ConnectionFactory.getInstance(), 4);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final LargeValueStore store = new LargeValueStore(pool, executor, 1000, 10000);
+            final byte[] small = randomBytes(10);
+            final byte[] large = randomBytes(10500);
+
+            store.write(key, large);
+            assertArrayEquals(large, store.read(key));
+            store.write(key, small);
+            assertArrayEquals(small, store.read(key));
+            store.write(key, large);
+            assertArrayEquals(large, store.read(key));
+        } finally {
+            executor.shutdown();
+            pool.closeAll();
+        }
+    }
+
+    /**
+     * Test method for {@link LargeValueStore#collectGarbage(String)} after a
+     * writer crashed between writing the chunks and committing the manifest.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testCollectGarbage1() throws Exception {
+        final String key = "_LargeValueStore_testCollectGarbage1_" + testTime;
+        final ConnectionPool pool = new ConnectionPool(ConnectionFactory.getInstance(), 4);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final LargeValueStore store = new LargeValueStore(pool, executor, 1000, 10000);
+            final byte[] small = randomBytes(10);
+            final byte[] large = randomBytes(10500);
+            store.write(key, small);
+
+            // a writer crashing before the commit leaves its chunks behind:
+            final List<String> chunkKeys = new ArrayList<String>();
+            final LargeValueStore crashing = new LargeValueStore(pool, executor, 1000, 10000) {
+                @Override
+                protected void commitValue(final String key, final Object value,
+                        final Manifest manifest) throws AbortException {
+                    chunkKeys.addAll(manifest.getChunkKeys(key));
+                    throw new AbortException("simulated crash", Arrays.asList(key));
+                }
+
+                @Override
+                protected void deleteChunks(final List<String> chunkKeys) {
+                    // crashed -> no clean-up
+                }
+            };
+            try {
+                crashing.write(key, large);
+                fail("expected AbortException");
+            } catch (final AbortException e) {
+            }
+            assertEquals(11, chunkKeys.size());
+            final TransactionSingleOp t = new TransactionSingleOp();
+            try {
+                for (final String chunkKey : chunkKeys) {
+                    t.read(chunkKey);
+                }
+            } finally {
+                t.closeConnection();
+            }
+
+            assertEquals(chunkKeys.size(), store.collectGarbage(key));
+            assertArrayEquals(small, store.read(key));
+            final TransactionSingleOp t2 = new TransactionSingleOp();
+            try {
+                for (final String chunkKey : chunkKeys) {
+                    try {
+                        t2.read(chunkKey);
+                        fail("chunk " + chunkKey + " not deleted");
+                    } catch (final NotFoundException e) {
+                    }
+                }
+            } finally {
+                t2.closeConnection();
+            }
+
+            // committed values are not collected:
+            store.write(key, large);
+            assertEquals(0, store.collectGarbage(key));
+            assertArrayEquals(large, store.read(key));
+        } finally {
+            executor.shutdown();
+            pool.closeAll();
+        }
+    }
+
+    /**
+     * Test method for {@link LargeValueStore#read(String)} with a non-existing
+     * key.
+     *
+     * @throws Exception
+     */
+    @Test(expected = NotFoundException.class)
+    public final void testRead1() throws Exception {
+        final ConnectionPool pool = new ConnectionPool(ConnectionFactory.getInstance(), 1);
+        final ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            new LargeValueStore(pool, executor, 1000, 10000).read(
+                    "_LargeValueStore_testRead1_" + testTime);
+        } finally {
+            executor.shutdown();
+            pool.closeAll();
+        }
+    }
+}
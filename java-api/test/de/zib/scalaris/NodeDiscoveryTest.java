@@ -0,0 +1,202 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+/**
+ * Unit test for the adaptive mode of the {@link NodeDiscovery} class.
+ *
+ * Other nodes and probe results are given by the test instead of asking
+ * Scalaris nodes.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class NodeDiscoveryTest {
+    /**
+     * Node discovery with fixed other nodes and probe results.
+     */
+    private static class TestNodeDiscovery extends NodeDiscovery {
+        final List<String> otherVMs = new ArrayList<String>();
+        final Map<String, Double> probes = new HashMap<String, Double>();
+
+        TestNodeDiscovery(final ConnectionFactory cf) {
+            super(cf);
+            setAdaptive(true);
+        }
+
+        @Override
+        protected List<String> getOtherVMs(final int max) {
+            return new ArrayList<String>(otherVMs.subList(0, Math.min(max, otherVMs.size())));
+        }
+
+        @Override
+        protected Map<String, Double> probe(final Collection<String> nodes) {
+            final Map<String, Double> result = new HashMap<String, Double>();
+            for (final String node : nodes) {
+                if (probes.containsKey(node)) {
+                    result.put(node, probes.get(node));
+                }
+            }
+            return result;
+        }
+
+        void probes(final Object... nodeScores) {
+            probes.clear();
+            for (int i = 0; i < nodeScores.length; i += 2) {
+                probes.put((String) nodeScores[i], ((Number) nodeScores[i + 1]).doubleValue());
+            }
+        }
+    }
+
+    private static ConnectionFactory createFactory(final String nodes) {
+        final Properties properties = new Properties();
+        properties.setProperty("scalaris.node", nodes);
+        return new ConnectionFactory(properties);
+    }
+
+    private static TreeSet<String> getNodes(final ConnectionFactory cf) {
+        final TreeSet<String> nodes = new TreeSet<String>();
+        for (final PeerNode node : cf.getNodes()) {
+            nodes.add(node.toString());
+        }
+        return nodes;
+    }
+
+    private static TreeSet<String> set(final String... nodes) {
+        final TreeSet<String> set = new TreeSet<String>();
+        for (final String node : nodes) {
+            set.add(node);
+        }
+        return set;
+    }
+
+    /**
+     * Test method for {@link NodeDiscovery#getSmoothing()} and
+     * {@link NodeDiscovery#setSmoothing(double)}.
+     */
+    @Test
+    public void testSmoothing() {
+        final TestNodeDiscovery nd = new TestNodeDiscovery(createFactory("a@h"));
+        assertEquals(0.5, nd.getSmoothing(), 0.0);
+
+        nd.probes("a@h", 100);
+        nd.run();
+        assertEquals(100.0, nd.scores.get("a@h"), 1e-9);
+        nd.probes("a@h", 20);
+        nd.run();
+        assertEquals(60.0, nd.scores.get("a@h"), 1e-9);
+
+        nd.setSmoothing(0.25);
+        assertEquals(0.25, nd.getSmoothing(), 0.0);
+        nd.run();
+        assertEquals(50.0, nd.scores.get("a@h"), 1e-9);
+
+        // only use the newest probe:
+        nd.setSmoothing(1.0);
+        nd.probes("a@h", 7);
+        nd.run();
+        assertEquals(7.0, nd.scores.get("a@h"), 1e-9);
+
+        // unreachable nodes lose their score and start over:
+        nd.probes();
+        nd.run();
+        assertNull(nd.scores.get("a@h"));
+        nd.setSmoothing(0.5);
+        nd.probes("a@h", 30);
+        nd.run();
+        assertEquals(30.0, nd.scores.get("a@h"), 1e-9);
+    }
+
+    /**
+     * Test method for {@link NodeDiscovery#run()} in adaptive mode adding the
+     * best new nodes while there is room and replacing nodes only after they
+     * were not among the best ones for several runs.
+     */
+    @Test
+    public void testRanking() {
+        final ConnectionFactory cf = createFactory("a@h b@h");
+        final TestNodeDiscovery nd = new TestNodeDiscovery(cf);
+        nd.setMaxNodes(3);
+        nd.setSlowRunsToReplace(3);
+        nd.otherVMs.add("c@h");
+        nd.otherVMs.add("d@h");
+        nd.otherVMs.add("e@h");
+        nd.probes("a@h", 50, "b@h", 10, "c@h", 20, "d@h", 5, "e@h", 100);
+
+        // room for one more node -> the best new one is added
+        nd.run();
+        assertEquals(set("a@h", "b@h", "d@h"), getNodes(cf));
+
+        // a is not among the best three (d, b, c) but only replaced after
+        // the third run
+        nd.run();
+        assertEquals(set("a@h", "b@h", "d@h"), getNodes(cf));
+        nd.run();
+        assertEquals(set("b@h", "c@h", "d@h"), getNodes(cf));
+        // nodes worse than the existing ones do not replace any
+        for (int i = 0; i < 5; ++i) {
+            nd.run();
+        }
+        assertEquals(set("b@h", "c@h", "d@h"), getNodes(cf));
+
+        // unreachable nodes are replaced immediately, even by slow ones
+        nd.probes("b@h", 10, "d@h", 5, "e@h", 100);
+        nd.run();
+        assertEquals(set("b@h", "d@h", "e@h"), getNodes(cf));
+    }
+
+    /**
+     * Test method for {@link NodeDiscovery#run()} in adaptive mode where a
+     * single slow probe must not change the ranking of the nodes unless the
+     * smoothing only uses the newest probe.
+     */
+    @Test
+    public void testRankingSmoothing() {
+        final ConnectionFactory cf = createFactory("a@h b@h");
+        final TestNodeDiscovery nd = new TestNodeDiscovery(cf);
+        nd.setMaxNodes(2);
+        nd.setSlowRunsToReplace(1);
+        nd.setSmoothing(0.1);
+        nd.otherVMs.add("c@h");
+        nd.probes("a@h", 10, "b@h", 20, "c@h", 30);
+        nd.run();
+        assertEquals(set("a@h", "b@h"), getNodes(cf));
+
+        // a single slow probe of a: 0.1 * 100 + 0.9 * 10 = 19 < 30
+        nd.probes("a@h", 100, "b@h", 20, "c@h", 30);
+        nd.run();
+        assertEquals(19.0, nd.scores.get("a@h"), 1e-9);
+        assertEquals(set("a@h", "b@h"), getNodes(cf));
+
+        // without smoothing, a is replaced by c
+        nd.setSmoothing(1.0);
+        nd.run();
+        assertEquals(set("b@h", "c@h"), getNodes(cf));
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangException;
+
+import de.zib.scalaris.operations.ReadOp;
+import de.zib.scalaris.operations.WriteOp;
+
+/**
+ * Unit test for the {@link ReadOnlyTransaction} class.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class ReadOnlyTransactionTest {
+    private final static long testTime = System.currentTimeMillis();
+
+    static {
+        // determine good/bad nodes:
+        final ConnectionFactory cf = ConnectionFactory.getInstance();
+        cf.testAllNodes();
+        // set not to automatically try reconnects (auto-retries prevent ConnectionException tests from working):
+        ((DefaultConnectionPolicy) cf.getConnectionPolicy()).setMaxRetries(0);
+    }
+
+    /**
+     * Test method for
+     * {@link ReadOnlyTransaction#req_list(ReadOnlyTransaction.RequestList)}
+     * reading existing and non-existing keys.
+     *
+     * @throws OtpErlangException
+     */
+    @Test
+    public void testReqList1() throws OtpErlangException {
+        final String key = testTime + "_testReqList1";
+        final ReadOnlyTransaction t = new ReadOnlyTransaction();
+        final TransactionSingleOp writer = new TransactionSingleOp();
+        try {
+            writer.write(key + "_1", "value1");
+            writer.write(key + "_2", "value2");
+
+            final ReadOnlyTransaction.RequestList reqs = new ReadOnlyTransaction.RequestList();
+            reqs.addOp(new ReadOp(key + "_1")).addOp(new ReadOp(key + "_2"))
+                    .addOp(new ReadOp(key + "_3"));
+            final ReadOnlyTransaction.ResultList results = t.req_list(reqs);
+            assertEquals(3, results.size());
+            assertEquals("value1", results.processReadAt(0).stringValue());
+            assertEquals("value2", results.processReadAt(1).stringValue());
+            try {
+                results.processReadAt(2);
+                fail("expected a NotFoundException");
+            } catch (final NotFoundException e) {
+                // ok
+            }
+        } finally {
+            t.closeConnection();
+            writer.closeConnection();
+        }
+    }
+
+    /**
+     * Test method for
+     * {@link ReadOnlyTransaction#req_list(ReadOnlyTransaction.RequestList)}
+     * with a single read which is executed without a commit.
+     *
+     * @throws OtpErlangException
+     */
+    @Test
+    public void testReqList2() throws OtpErlangException {
+        final String key = testTime + "_testReqList2";
+        final ReadOnlyTransaction t = new ReadOnlyTransaction();
+        final TransactionSingleOp writer = new TransactionSingleOp();
+        try {
+            final ReadOnlyTransaction.RequestList reqs = new ReadOnlyTransaction.RequestList();
+            reqs.addOp(new ReadOp(key));
+            try {
+                t.req_list(reqs).processReadAt(0);
+                fail("expected a NotFoundException");
+            } catch (final NotFoundException e) {
+                // ok
+            }
+
+            writer.write(key, "value");
+            final ReadOnlyTransaction.ResultList results = t.req_list(reqs);
+            assertEquals(1, results.size());
+            assertEquals("value", results.processReadAt(0).stringValue());
+        } finally {
+            t.closeConnection();
+            writer.closeConnection();
+        }
+    }
+
+    /**
+     * Test method for
+     * {@link ReadOnlyTransaction.RequestList#addOp(de.zib.scalaris.operations.Operation)}
+     * with a write operation.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testAddOp1() {
+        new ReadOnlyTransaction.RequestList().addOp(new WriteOp(testTime + "_testAddOp1", "value"));
+    }
+
+    /**
+     * Test method for {@link Transaction#req_list(Transaction.RequestList)}
+     * with a read-only request list including a commit.
+     *
+     * @throws OtpErlangException
+     */
+    @Test
+    public void testTransactionReadOnly1() throws OtpErlangException {
+        final String key = testTime + "_testTransactionReadOnly1";
+        final Transaction t = new Transaction();
+        final TransactionSingleOp writer = new TransactionSingleOp();
+        try {
+            writer.write(key, "value");
+
+            final Transaction.RequestList reqs = new Transaction.RequestList();
+            reqs.addOp(new ReadOp(key)).addCommit();
+            final Transaction.ResultList results = t.req_list(reqs);
+            assertEquals("value", results.processReadAt(0).stringValue());
+            results.processCommitAt(1);
+        } finally {
+            t.closeConnection();
+            writer.closeConnection();
+        }
+    }
+}
@@ -17,6 +17,14 @@ package de.zib.scalaris;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Test;
 
@@ -24,7 +32,7 @@ import org.junit.Test;
  * Unit test for the {@link ReplicatedDHT} class.
  *
  * @author Nico Kruber, kruber@zib.de
- * @version 2.6
+ * @version 3.21
  * @since 2.6
  */
 public class ReplicatedDHTTest {
@@ -284,4 +292,97 @@ public class ReplicatedDHTTest {
             c.close();
         }
     }
+
+    /**
+     * Test method for
+     * {@link ReplicatedDHT#delete(ConnectionPool, ExecutorService, Iterable, int, int, long)}.
+     *
+     * @throws ConnectionException
+     * @throws TimeoutException
+     * @throws UnknownException
+     * @throws AbortException
+     * @throws InterruptedException
+     */
+    @Test
+    public void testDeleteBatch1() throws ConnectionException,
+            TimeoutException, UnknownException, AbortException,
+            InterruptedException {
+        final String key = "_DeleteBatch1";
+        final Connection c = ConnectionFactory.getInstance().createConnection("test");
+        final TransactionSingleOp sc = new TransactionSingleOp(c);
+        final RoutingTable rt = new RoutingTable(c);
+        final int r = rt.getReplicationFactor();
+        final ConnectionPool pool = new ConnectionPool(ConnectionFactory.getInstance(), 4);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            final List<String> keys = new ArrayList<String>(testData.length);
+            for (int i = 0; i < testData.length; ++i) {
+                sc.write(testTime + key + i, testData[i]);
+                keys.add(testTime + key + i);
+            }
+
+            final ReplicatedDHT.BatchDeleteResult result = ReplicatedDHT
+                    .delete(pool, executor, keys, 4, 2000, 10000);
+            assertEquals(testData.length, result.keys);
+            assertEquals(0, result.timeouts);
+            assertEquals(0, result.failures);
+            assertEquals(r * testData.length, result.total.ok);
+            assertEquals(0, result.total.locks_set);
+            assertEquals(0, result.total.undef);
+
+            // make sure the keys do not exist afterwards:
+            for (final String k : keys) {
+                checkKeyDoesNotExist(k);
+            }
+        } finally {
+            executor.shutdown();
+            pool.closeAll();
+            c.close();
+        }
+    }
+
+    /**
+     * Test method for
+     * {@link ReplicatedDHT#delete(ConnectionPool, ExecutorService, java.util.Iterator, int, int, long, ReplicatedDHT.DeleteCallback)}
+     * without any connection available in the pool. All keys should be
+     * reported as failed instead of throwing.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void testDeleteBatchNoConnection() throws InterruptedException {
+        final ConnectionPool pool = new ConnectionPool(ConnectionFactory.getInstance(), 4) {
+            @Override
+            public Connection getConnection(final long timeout) {
+                return null;
+            }
+        };
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final List<String> failed = Collections.synchronizedList(new ArrayList<String>());
+
+        try {
+            final List<String> keys = Arrays.asList("k0", "k1", "k2", "k3", "k4");
+            final ReplicatedDHT.BatchDeleteResult result = ReplicatedDHT.delete(
+                    pool, executor, keys.iterator(), 2, 2000, 0,
+                    new ReplicatedDHT.DeleteCallback() {
+                        public void deleted(final String key,
+                                final DeleteResult result, final boolean timeout) {
+                            fail("unexpected result for " + key);
+                        }
+
+                        public void failed(final String key, final Exception e) {
+                            assertTrue(e instanceof ConnectionException);
+                            failed.add(key);
+                        }
+                    });
+            assertEquals(keys.size(), result.keys);
+            assertEquals(keys.size(), result.failures);
+            assertEquals(0, result.timeouts);
+            assertEquals(0, result.total.ok);
+            assertEquals(keys, failed);
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
@@ -0,0 +1,147 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import de.zib.scalaris.ScalarisFleet.FleetResult;
+import de.zib.scalaris.ScalarisVM.GetInfoResult;
+
+/**
+ * Test class for {@link ScalarisFleet}.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class ScalarisFleetTest {
+    final static String scalarisNode;
+
+    static {
+        // determine good/bad nodes:
+        final ConnectionFactory cf = ConnectionFactory.getInstance();
+        cf.testAllNodes();
+        // set not to automatically try reconnects (auto-retries prevent ConnectionException tests from working):
+        final DefaultConnectionPolicy cp = ((DefaultConnectionPolicy) cf.getConnectionPolicy());
+        cp.setMaxRetries(0);
+        scalarisNode = cp.selectNode().toString();
+    }
+
+    /**
+     * Test method for {@link ScalarisFleet#getInfo()} with a reachable and an
+     * unreachable VM.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public final void testGetInfo1() throws InterruptedException {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final ScalarisFleet fleet = new ScalarisFleet(Arrays.asList(scalarisNode,
+                "non-existing@localhost"), executor, 10000);
+        try {
+            final FleetResult<GetInfoResult> infos = fleet.getInfo();
+            assertEquals(1, infos.results.size());
+            assertTrue(infos.results.containsKey(scalarisNode));
+            assertTrue(infos.errors.containsKey("non-existing@localhost"));
+            assertFalse(infos.isComplete());
+
+            final ScalarisFleet.InfoSummary summary = ScalarisFleet.summarizeInfo(infos);
+            assertEquals(1, summary.vms);
+            assertEquals(Integer.valueOf(1),
+                    summary.scalarisVersions.get(infos.results.get(scalarisNode).scalarisVersion));
+        } finally {
+            fleet.closeConnections();
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test method for {@link ScalarisFleet#getNumberOfNodes()} and
+     * {@link ScalarisFleet#rollingAddNodes(int, int)}.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public final void testRollingAddNodes1() throws InterruptedException {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final ScalarisFleet fleet = new ScalarisFleet(Arrays.asList(scalarisNode), executor, 10000);
+        try {
+            final int size = fleet.getNumberOfNodes().results.get(scalarisNode);
+            assertTrue(fleet.rollingAddNodes(1, 1).isComplete());
+            Thread.sleep(1000);
+            assertEquals(Integer.valueOf(size + 1), fleet.getNumberOfNodes().results.get(scalarisNode));
+            final List<ErlangValue> removed = fleet.rollingShutdownNodes(1, 1).results.get(scalarisNode);
+            assertEquals(1, removed.size());
+        } finally {
+            fleet.closeConnections();
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test method for {@link ScalarisFleet#forEach(ScalarisFleet.VMCall)}
+     * with a call exceeding the deadline: its connection must be dropped and
+     * the next call must use a new one.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public final void testDeadline1() throws InterruptedException {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final ScalarisFleet fleet = new ScalarisFleet(Arrays.asList(scalarisNode), executor, 500);
+        final List<ScalarisVM> usedVMs = new ArrayList<ScalarisVM>();
+        final ScalarisFleet.VMCall<Integer> call = new ScalarisFleet.VMCall<Integer>() {
+            public Integer call(final ScalarisVM vm)
+                    throws ConnectionException, UnknownException {
+                synchronized (usedVMs) {
+                    usedVMs.add(vm);
+                }
+                return vm.getNumberOfNodes();
+            }
+        };
+        try {
+            assertTrue(fleet.forEach(call).isComplete());
+            final FleetResult<Integer> result = fleet.forEach(new ScalarisFleet.VMCall<Integer>() {
+                public Integer call(final ScalarisVM vm)
+                        throws ConnectionException, UnknownException {
+                    try {
+                        Thread.sleep(5000);
+                    } catch (final InterruptedException e) {
+                        // cancelled
+                    }
+                    return 0;
+                }
+            });
+            assertTrue(result.errors.get(scalarisNode) instanceof ConnectionException);
+
+            fleet.setDeadline(10000);
+            assertTrue(fleet.forEach(call).isComplete());
+            assertEquals(2, usedVMs.size());
+            assertNotSame(usedVMs.get(0), usedVMs.get(1));
+        } finally {
+            fleet.closeConnections();
+            executor.shutdown();
+        }
+    }
+}
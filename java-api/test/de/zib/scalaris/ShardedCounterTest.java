@@ -0,0 +1,80 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Test class for {@link ShardedCounter}.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class ShardedCounterTest {
+    private final static long testTime = System.currentTimeMillis();
+
+    static {
+        // determine good/bad nodes:
+        final ConnectionFactory cf = ConnectionFactory.getInstance();
+        cf.testAllNodes();
+        // set not to automatically try reconnects (auto-retries prevent ConnectionException tests from working):
+        ((DefaultConnectionPolicy) cf.getConnectionPolicy()).setMaxRetries(0);
+    }
+
+    /**
+     * Test method for {@link ShardedCounter#add(long)},
+     * {@link ShardedCounter#get()} and {@link ShardedCounter#resize(int)}.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testAddGet1() throws Exception {
+        final Connection conn = ConnectionFactory.getInstance().createConnection();
+        try {
+            final ShardedCounter counter = new ShardedCounter(conn,
+                    "_ShardedCounter_testAddGet1_" + testTime, 4);
+            assertEquals(0, counter.get());
+            for (int i = 1; i <= 10; ++i) {
+                counter.add(i);
+            }
+            assertEquals(55, counter.get());
+
+            counter.resize(8);
+            assertEquals(8, counter.getWriteShards());
+            counter.add(5);
+            assertEquals(60, counter.get());
+
+            counter.resize(2);
+            assertEquals(2, counter.getWriteShards());
+            assertEquals(8, counter.getReadShards());
+            counter.add(-10);
+            assertEquals(50, counter.get());
+            counter.trim();
+            assertEquals(2, counter.getReadShards());
+            assertEquals(50, counter.get());
+
+            // a second client picks up the new shard counts on read:
+            final ShardedCounter counter2 = new ShardedCounter(conn, counter.getKey(), 16);
+            assertEquals(50, counter2.get());
+            assertEquals(2, counter2.getWriteShards());
+        } finally {
+            conn.close();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpOutputStream;
+
+/**
+ * Test class for {@link ShardedList}.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class ShardedListTest {
+    private final static long testTime = System.currentTimeMillis();
+
+    static {
+        // determine good/bad nodes:
+        final ConnectionFactory cf = ConnectionFactory.getInstance();
+        cf.testAllNodes();
+        // set not to automatically try reconnects (auto-retries prevent ConnectionException tests from working):
+        ((DefaultConnectionPolicy) cf.getConnectionPolicy()).setMaxRetries(0);
+    }
+
+    private static List<String> sorted(final List<ErlangValue> values) {
+        final List<String> result = new ArrayList<String>(values.size());
+        for (final ErlangValue value : values) {
+            result.add(value.stringValue());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    private static void testAddDel(final ShardedList list) throws Exception {
+        final List<String> none = new ArrayList<String>(0);
+        assertTrue(list.get().isEmpty());
+        list.addDel(Arrays.asList("a", "b", "c", "d"), none);
+        assertEquals(Arrays.asList("a", "b", "c", "d"), sorted(list.get()));
+        list.addDel(Arrays.asList("e"), Arrays.asList("b"));
+        assertEquals(Arrays.asList("a", "c", "d", "e"), sorted(list.get()));
+
+        list.resize(2);
+        list.addDel(none, Arrays.asList("c"));
+        assertEquals(Arrays.asList("a", "d", "e"), sorted(list.get()));
+        list.resize(6);
+        list.addDel(Arrays.asList("f"), Arrays.asList("a"));
+        assertEquals(Arrays.asList("d", "e", "f"), sorted(list.get()));
+    }
+
+    /**
+     * Test method for {@link ShardedList#addDel(List, List)},
+     * {@link ShardedList#get()} and {@link ShardedList#resize(int)} with
+     * random placement.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testAddDelRandom() throws Exception {
+        final Connection conn = ConnectionFactory.getInstance().createConnection();
+        try {
+            testAddDel(new ShardedList(conn, "_ShardedList_testAddDelRandom_" + testTime, 4));
+        } finally {
+            conn.close();
+        }
+    }
+
+    /**
+     * Test method for {@link ShardedList#addDel(List, List)},
+     * {@link ShardedList#get()} and {@link ShardedList#resize(int)} with
+     * hash placement.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testAddDelHash() throws Exception {
+        final Connection conn = ConnectionFactory.getInstance().createConnection();
+        try {
+            final ShardedList list = new ShardedList(conn, "_ShardedList_testAddDelHash_" + testTime, 4);
+            list.setRandomPlacement(false);
+            testAddDel(list);
+        } finally {
+            conn.close();
+        }
+    }
+
+    /**
+     * Test method for {@link ShardedList#addDel(List, List)} with random
+     * placement and duplicate elements which must only be removed once per
+     * element to remove, like on a single key.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testAddDelRandomDuplicates() throws Exception {
+        final Connection conn = ConnectionFactory.getInstance().createConnection();
+        try {
+            final ShardedList list = new ShardedList(conn, "_ShardedList_testAddDelRandomDuplicates_" + testTime, 4);
+            final List<String> none = new ArrayList<String>(0);
+            final String unicode = "\u00e4\u7ae0";
+            for (int i = 0; i < 8; ++i) {
+                // separate requests to spread the duplicates among the shards
+                list.addDel(Arrays.asList("x", unicode), none);
+            }
+            list.addDel(none, Arrays.asList("x", unicode));
+            assertEquals(7, Collections.frequency(sorted(list.get()), "x"));
+            assertEquals(7, Collections.frequency(sorted(list.get()), unicode));
+            list.addDel(none, Arrays.asList("x", "x", "z"));
+            assertEquals(5, Collections.frequency(sorted(list.get()), "x"));
+            assertEquals(12, list.get().size());
+
+            // removals also apply to elements added in the same request
+            list.addDel(Arrays.asList("y"), Arrays.asList("y", "x"));
+            final List<String> values = sorted(list.get());
+            assertEquals(4, Collections.frequency(values, "x"));
+            assertFalse(values.contains("y"));
+        } finally {
+            conn.close();
+        }
+    }
+
+    /**
+     * Converts the given elements like a list stored in and read back from
+     * Scalaris, i.e. strings with non-Latin-1 characters become lists of
+     * integers.
+     */
+    private static ErlangValue readBack(final List<String> elements) {
+        final OtpOutputStream os = new OtpOutputStream();
+        os.write_any(ErlangValue.convertToErlang(elements));
+        try {
+            return new ErlangValue(new OtpInputStream(os.toByteArray()).read_any());
+        } catch (final OtpErlangDecodeException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Test method for {@link ShardedList#redistribute(List, int, int)} with
+     * hash placement. Elements read back from Scalaris need to be placed on
+     * the same shard as they would have been written to.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testRedistributeHash() throws Exception {
+        final ShardedList list = new ShardedList(null, "_ShardedList_testRedistributeHash_" + testTime, 4);
+        list.setRandomPlacement(false);
+        final List<String> elements = Arrays.asList("a", "b", "\u00e4\u00f6",
+                "\u20ac", "x\u20acy", "\u65e5\u672c", "", "abcdef");
+        final List<ErlangValue> values = new ArrayList<ErlangValue>();
+        values.add(readBack(elements.subList(0, 4)));
+        values.add(null);
+        values.add(readBack(elements.subList(4, elements.size())));
+
+        final List<Object> newValues = list.redistribute(values, 3, 5);
+        assertEquals(5, newValues.size());
+        final List<String> all = new ArrayList<String>();
+        for (int i = 0; i < newValues.size(); ++i) {
+            @SuppressWarnings("unchecked")
+            final List<ErlangValue> shard = (List<ErlangValue>) newValues.get(i);
+            for (final ErlangValue element : shard) {
+                final String str = element.stringValue();
+                all.add(str);
+                assertEquals(str, list.selectElementShard(
+                        ErlangValue.convertToErlang(str), 3), i);
+            }
+        }
+        Collections.sort(all);
+        final List<String> expected = new ArrayList<String>(elements);
+        Collections.sort(expected);
+        assertEquals(expected, all);
+    }
+
+    /**
+     * Test method for {@link ShardedList#addDel(List, List)},
+     * {@link ShardedList#get()} and {@link ShardedList#resize(int)} with
+     * hash placement and strings which are read back differently from the
+     * way they are written. Removals after a resize only go to the element's
+     * shard and thus fail if the element has been moved elsewhere.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testResizeHashStrings() throws Exception {
+        final Connection conn = ConnectionFactory.getInstance().createConnection();
+        try {
+            final ShardedList list = new ShardedList(conn, "_ShardedList_testResizeHashStrings_" + testTime, 4);
+            list.setRandomPlacement(false);
+            final List<String> elements = Arrays.asList("a", "\u00e4\u00f6",
+                    "\u20ac", "x\u20acy", "\u65e5\u672c");
+            list.addDel(elements, new ArrayList<String>(0));
+            list.resize(3);
+            list.trim();
+            assertEquals(elements.size(), list.get().size());
+            list.addDel(new ArrayList<String>(0), elements);
+            assertTrue(list.get().isEmpty());
+        } finally {
+            conn.close();
+        }
+    }
+}
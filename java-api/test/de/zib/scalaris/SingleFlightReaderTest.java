@@ -0,0 +1,118 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Test class for {@link SingleFlightReader}.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class SingleFlightReaderTest {
+    private final static long testTime = System.currentTimeMillis();
+
+    static {
+        // determine good/bad nodes:
+        final ConnectionFactory cf = ConnectionFactory.getInstance();
+        cf.testAllNodes();
+        // set not to automatically try reconnects (auto-retries prevent ConnectionException tests from working):
+        ((DefaultConnectionPolicy) cf.getConnectionPolicy()).setMaxRetries(0);
+    }
+
+    /**
+     * Test method for {@link SingleFlightReader#read(String)} with many
+     * concurrent reads of the same key.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testRead1() throws Exception {
+        final String key = "_SingleFlightReader_testRead1_" + testTime;
+        final ConnectionPool pool = new ConnectionPool(ConnectionFactory.getInstance(), 4);
+        final ExecutorService executor = Executors.newFixedThreadPool(20);
+        try {
+            final TransactionSingleOp t = new TransactionSingleOp();
+            t.write(key, "value");
+            t.closeConnection();
+
+            final SingleFlightReader reader = new SingleFlightReader(pool, 10000);
+            final List<Callable<ErlangValue>> tasks = new ArrayList<Callable<ErlangValue>>();
+            for (int i = 0; i < 100; ++i) {
+                tasks.add(new Callable<ErlangValue>() {
+                    public ErlangValue call() throws Exception {
+                        return reader.read(key);
+                    }
+                });
+            }
+            for (final Future<ErlangValue> result : executor.invokeAll(tasks)) {
+                assertEquals("value", result.get().stringValue());
+            }
+            assertEquals(100, reader.getReads());
+            assertEquals(100, reader.getRequests() + reader.getCollapsedReads());
+        } finally {
+            executor.shutdown();
+            pool.closeAll();
+        }
+    }
+
+    /**
+     * Test method for {@link SingleFlightReader#read(String)} with a cache
+     * and {@link SingleFlightReader#invalidate(String)}.
+     *
+     * @throws Exception
+     */
+    @Test
+    public final void testReadCache1() throws Exception {
+        final String key = "_SingleFlightReader_testReadCache1_" + testTime;
+        final ConnectionPool pool = new ConnectionPool(ConnectionFactory.getInstance(), 1);
+        try {
+            final SingleFlightReader reader = new SingleFlightReader(pool,
+                    10000, new ConcurrentHashMap<String, ErlangValue>());
+            try {
+                reader.read(key);
+                fail("expected a NotFoundException");
+            } catch (final NotFoundException e) {
+                // ok
+            }
+            final TransactionSingleOp t = new TransactionSingleOp();
+            t.write(key, "value");
+            assertEquals("value", reader.read(key).stringValue());
+            assertEquals("value", reader.read(key).stringValue());
+            assertEquals(1, reader.getCacheHits());
+
+            t.write(key, "value2");
+            t.closeConnection();
+            reader.invalidate(key);
+            assertEquals("value2", reader.read(key).stringValue());
+            assertEquals(3, reader.getRequests());
+        } finally {
+            pool.closeAll();
+        }
+    }
+}
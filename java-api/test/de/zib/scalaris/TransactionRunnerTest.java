@@ -0,0 +1,207 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangException;
+
+/**
+ * Unit test for the {@link TransactionRunner} class.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class TransactionRunnerTest {
+    private final static long testTime = System.currentTimeMillis();
+
+    static {
+        // determine good/bad nodes:
+        final ConnectionFactory cf = ConnectionFactory.getInstance();
+        cf.testAllNodes();
+        // set not to automatically try reconnects (auto-retries prevent ConnectionException tests from working):
+        ((DefaultConnectionPolicy) cf.getConnectionPolicy()).setMaxRetries(0);
+    }
+
+    /**
+     * Test method for {@link TransactionRunner#run(TransactionRunner.TransactionCallback)}
+     * without any conflicts.
+     *
+     * @throws OtpErlangException
+     */
+    @Test
+    public void testRun1() throws OtpErlangException {
+        final String key = testTime + "_testRun1";
+        final Transaction t = new Transaction();
+        try {
+            final TransactionRunner runner = new TransactionRunner(t);
+            final Long result = runner.run(new TransactionRunner.TransactionCallback<Long>() {
+                public Long execute(final Transaction tx) throws OtpErlangException {
+                    tx.write(key, 1l);
+                    return 1l;
+                }
+            });
+            assertEquals(Long.valueOf(1l), result);
+            assertEquals(1, runner.getStatistics().getCommits());
+            assertEquals(0, runner.getStatistics().getAborts());
+            assertEquals(1l, new TransactionSingleOp().read(key).longValue());
+        } finally {
+            t.closeConnection();
+        }
+    }
+
+    /**
+     * Test method for {@link TransactionRunner#run(TransactionRunner.TransactionCallback)}
+     * with a conflicting write during the first attempt.
+     *
+     * @throws OtpErlangException
+     */
+    @Test
+    public void testRun2() throws OtpErlangException {
+        final String key = testTime + "_testRun2";
+        final Transaction t = new Transaction();
+        final TransactionSingleOp other = new TransactionSingleOp();
+        try {
+            other.write(key, 1l);
+            final TransactionRunner runner = new TransactionRunner(t);
+            final int[] attempts = {0};
+            final Long result = runner.run(new TransactionRunner.TransactionCallback<Long>() {
+                public Long execute(final Transaction tx) throws OtpErlangException {
+                    final long value = tx.read(key).longValue() + 1;
+                    if (attempts[0]++ == 0) {
+                        // concurrent modification -> abort
+                        other.write(key, 10l);
+                    }
+                    tx.write(key, value);
+                    return value;
+                }
+            });
+            assertEquals(2, attempts[0]);
+            assertEquals(Long.valueOf(11l), result);
+            assertEquals(1, runner.getStatistics().getCommits());
+            assertEquals(1, runner.getStatistics().getAborts());
+            assertEquals(1, runner.getStatistics().getRetries());
+            assertTrue(runner.getStatistics().getHotConflictKeys().containsKey(key));
+            assertEquals(11l, other.read(key).longValue());
+        } finally {
+            t.closeConnection();
+            other.closeConnection();
+        }
+    }
+
+    /**
+     * Test method for {@link TransactionRunner#run(TransactionRunner.TransactionCallback)}
+     * with constant conflicts exceeding the maximum number of retries.
+     *
+     * @throws OtpErlangException
+     */
+    @Test
+    public void testRun3() throws OtpErlangException {
+        final String key = testTime + "_testRun3";
+        final Transaction t = new Transaction();
+        final TransactionSingleOp other = new TransactionSingleOp();
+        try {
+            other.write(key, 1l);
+            final TransactionRunner runner = new TransactionRunner(t);
+            runner.setMaxRetries(2);
+            try {
+                runner.run(new TransactionRunner.TransactionCallback<Long>() {
+                    public Long execute(final Transaction tx) throws OtpErlangException {
+                        final long value = tx.read(key).longValue();
+                        other.write(key, value + 1);
+                        tx.write(key, 0l);
+                        return value;
+                    }
+                });
+                // an AbortException must be thrown
+                assertTrue(false);
+            } catch (final AbortException e) {
+            }
+            assertEquals(0, runner.getStatistics().getCommits());
+            assertEquals(3, runner.getStatistics().getAborts());
+            assertEquals(2, runner.getStatistics().getRetries());
+            assertEquals(1, runner.getStatistics().getFailures());
+        } finally {
+            t.closeConnection();
+            other.closeConnection();
+        }
+    }
+
+    /**
+     * Test method for {@link TransactionRunner#run(TransactionRunner.TransactionCallback)}
+     * which must reject being used while already executing a transaction.
+     *
+     * @throws OtpErlangException
+     */
+    @Test
+    public void testRunInUse1() throws OtpErlangException {
+        final Transaction t = new Transaction();
+        try {
+            final TransactionRunner runner = new TransactionRunner(t);
+            final TransactionRunner.TransactionCallback<Long> inner = new TransactionRunner.TransactionCallback<Long>() {
+                public Long execute(final Transaction tx) {
+                    return 1l;
+                }
+            };
+            try {
+                runner.run(new TransactionRunner.TransactionCallback<Long>() {
+                    public Long execute(final Transaction tx) throws OtpErlangException {
+                        return runner.run(inner);
+                    }
+                });
+                fail("expected IllegalStateException");
+            } catch (final IllegalStateException e) {
+            }
+            // usable again afterwards:
+            assertEquals(Long.valueOf(1l), runner.run(inner));
+        } finally {
+            t.closeConnection();
+        }
+    }
+
+    /**
+     * Test method for {@link TransactionRunner#getMaxWait(int)} which must
+     * not overflow for large attempts or delays.
+     */
+    @Test
+    public void testGetMaxWait() {
+        final TransactionRunner runner = new TransactionRunner(null);
+        runner.setBaseDelay(10);
+        runner.setMaxDelay(1000);
+        assertEquals(10, runner.getMaxWait(0));
+        assertEquals(20, runner.getMaxWait(1));
+        assertEquals(640, runner.getMaxWait(6));
+        assertEquals(1000, runner.getMaxWait(7));
+        assertEquals(1000, runner.getMaxWait(31));
+        assertEquals(1000, runner.getMaxWait(63));
+        assertEquals(1000, runner.getMaxWait(Integer.MAX_VALUE));
+
+        // base delay larger than the maximum delay:
+        runner.setBaseDelay(2000);
+        assertEquals(1000, runner.getMaxWait(0));
+
+        // shifting the base delay by 30 would overflow:
+        runner.setBaseDelay(1l << 40);
+        runner.setMaxDelay(Long.MAX_VALUE);
+        assertEquals(1l << 40, runner.getMaxWait(0));
+        assertEquals(1l << 62, runner.getMaxWait(22));
+        assertEquals(Long.MAX_VALUE, runner.getMaxWait(23));
+        assertEquals(Long.MAX_VALUE, runner.getMaxWait(30));
+    }
+}
@@ -24,6 +24,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -42,7 +44,7 @@ import de.zib.scalaris.operations.WriteOp;
  * Unit test for the {@link TransactionSingleOp} class.
  *
  * @author Nico Kruber, kruber@zib.de
- * @version 3.2
+ * @version 3.21
  * @since 2.0
  */
 public class TransactionSingleOpTest {
@@ -1213,4 +1215,52 @@ public class TransactionSingleOpTest {
         assertEquals(op, resultList.get(0));
         op.processResultSingle();
     }
+
+    /**
+     * Test method for
+     * {@link de.zib.scalaris.ResultList#decodeReads(ExecutorService, long)}
+     * and
+     * {@link de.zib.scalaris.ResultList#decodeReadsInBackground(ExecutorService, int)}
+     * in compressed mode.
+     *
+     * @throws Exception
+     *
+     * @since 3.21
+     */
+    @Test
+    public void testDecodeReads1() throws Exception {
+        final String key = "_DecodeReads1_";
+        final TransactionSingleOp conn = new TransactionSingleOp();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            conn.setCompressed(true);
+            for (int i = 0; i < testData.length; ++i) {
+                conn.write(testTime + key + i, testData[i]);
+            }
+            for (int mode = 0; mode < 3; ++mode) {
+                final RequestList readRequests = new RequestList();
+                for (int i = 0; i < testData.length; ++i) {
+                    readRequests.addOp(new ReadOp(testTime + key + i));
+                }
+                final ResultList results = conn.req_list(readRequests);
+                switch (mode) {
+                    case 0:
+                        results.decodeReads(executor, 0);
+                        break;
+                    case 1:
+                        results.decodeReads(executor, Long.MAX_VALUE);
+                        break;
+                    default:
+                        results.decodeReadsInBackground(executor, 2);
+                        break;
+                }
+                for (int i = 0; i < testData.length; ++i) {
+                    assertEquals(testData[i], results.processReadAt(i).stringValue());
+                }
+            }
+        } finally {
+            executor.shutdown();
+            conn.closeConnection();
+        }
+    }
 }
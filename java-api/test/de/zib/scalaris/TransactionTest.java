@@ -18,12 +18,15 @@ package de.zib.scalaris;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.TreeSet;
 
 import org.junit.Test;
 
+import com.ericsson.otp.erlang.OtpErlangString;
+
 import de.zib.scalaris.Transaction.RequestList;
 import de.zib.scalaris.Transaction.ResultList;
 import de.zib.scalaris.operations.ReadOp;
@@ -34,7 +37,7 @@ import de.zib.scalaris.operations.WriteOp;
  * Unit test for the {@link Transaction} class.
  *
  * @author Nico Kruber, kruber@zib.de
- * @version 3.17
+ * @version 3.21
  * @since 2.0
  */
 public class TransactionTest {
@@ -1183,6 +1186,177 @@ public class TransactionTest {
         }
     }
 
+    /**
+     * Test method for {@link Transaction#setBuffered(boolean)}: writes,
+     * increments and list changes are buffered locally, read back from the
+     * buffer and only visible to others after the commit.
+     *
+     * @throws ConnectionException
+     * @throws NotFoundException
+     * @throws UnknownException
+     * @throws AbortException
+     * @throws NotANumberException
+     * @throws NotAListException
+     *
+     * @since 3.21
+     */
+    @Test
+    public void testBuffered1() throws ConnectionException, NotFoundException,
+            UnknownException, AbortException, NotANumberException,
+            NotAListException {
+        final String key = "_testBuffered1_";
+        final Transaction t = new Transaction();
+        try {
+            t.setBuffered(true);
+            for (int i = 0; i < testData.length; ++i) {
+                t.write(testTime + key + i, testData[i]);
+                t.write(testTime + key + i, testData[i] + "2");
+            }
+            t.write(testTime + key + "nr", 1);
+            t.addOnNr(testTime + key + "nr", 2);
+            t.addOnNr(testTime + key + "nr2", 2);
+            t.addOnNr(testTime + key + "nr2", 3);
+            final List<String> list = new ArrayList<String>();
+            list.add(testData[0]);
+            t.write(testTime + key + "list", list);
+            list.add(testData[1]);
+            t.addDelOnList(testTime + key + "list", list, new ArrayList<String>(0));
+
+            // read from the buffer:
+            for (int i = 0; i < testData.length; ++i) {
+                assertEquals(testData[i] + "2", t.read(testTime + key + i).stringValue());
+            }
+            assertEquals(3, t.read(testTime + key + "nr").intValue());
+            // Scalaris prepends the added elements:
+            final List<String> expList = new ArrayList<String>(list);
+            expList.add(testData[0]);
+            assertEquals(expList, t.read(testTime + key + "list").stringListValue());
+            // not in the buffer -> flushed with the read
+            assertEquals(5, t.read(testTime + key + "nr2").intValue());
+
+            // nothing visible to other transactions yet:
+            final TransactionSingleOp t2 = new TransactionSingleOp();
+            try {
+                try {
+                    t2.read(testTime + key + 0);
+                    // a not found exception must be thrown
+                    assertTrue(false);
+                } catch (final NotFoundException e) {
+                }
+
+                t.commit();
+
+                for (int i = 0; i < testData.length; ++i) {
+                    assertEquals(testData[i] + "2", t2.read(testTime + key + i).stringValue());
+                }
+                assertEquals(3, t2.read(testTime + key + "nr").intValue());
+                assertEquals(5, t2.read(testTime + key + "nr2").intValue());
+                assertEquals(expList, t2.read(testTime + key + "list").stringListValue());
+            } finally {
+                t2.closeConnection();
+            }
+        } finally {
+            t.closeConnection();
+        }
+    }
+
+    /**
+     * Test method for {@link Transaction#setBuffered(boolean)}: list changes
+     * applied to the buffered value must yield the same list as the one
+     * Scalaris stores with the commit.
+     *
+     * @throws ConnectionException
+     * @throws NotFoundException
+     * @throws UnknownException
+     * @throws AbortException
+     * @throws NotAListException
+     *
+     * @since 3.21
+     */
+    @Test
+    public void testBuffered2() throws ConnectionException, NotFoundException,
+            UnknownException, AbortException, NotAListException {
+        final String key = "_testBuffered2_";
+        final Transaction t = new Transaction();
+        try {
+            t.setBuffered(true);
+            final List<String> list = new ArrayList<String>();
+            list.add(testData[0]);
+            list.add(testData[1]);
+            list.add(testData[2]);
+            t.write(testTime + key, list);
+            final List<String> toAdd = new ArrayList<String>();
+            toAdd.add(testData[3]);
+            toAdd.add(testData[1]);
+            final List<String> toDel = new ArrayList<String>();
+            toDel.add(testData[1]);
+            toDel.add(testData[4]);
+            t.addDelOnList(testTime + key, toAdd, toDel);
+            t.addDelOnList(testTime + key, toDel, new ArrayList<String>(0));
+
+            final List<String> buffered = t.read(testTime + key).stringListValue();
+            t.commit();
+
+            final TransactionSingleOp t2 = new TransactionSingleOp();
+            try {
+                assertEquals(t2.read(testTime + key).stringListValue(), buffered);
+            } finally {
+                t2.closeConnection();
+            }
+        } finally {
+            t.closeConnection();
+        }
+    }
+
+    /**
+     * Test method for {@link Transaction#setBuffered(boolean)}: buffered
+     * operations must not be lost if flushing them fails, so that they are
+     * still part of the transaction when the commit is retried.
+     *
+     * @throws ConnectionException
+     * @throws NotFoundException
+     * @throws UnknownException
+     * @throws AbortException
+     * @throws NotANumberException
+     * @throws NotAListException
+     *
+     * @since 3.21
+     */
+    @Test
+    public void testBuffered3() throws ConnectionException, NotFoundException,
+            UnknownException, AbortException, NotANumberException,
+            NotAListException {
+        final String key = "_testBuffered3_";
+        final Transaction t = new Transaction();
+        try {
+            t.setBuffered(true);
+            t.write(testTime + key + "1", testData[0]);
+            t.addOnNr(testTime + key + "nr", 2);
+            t.closeConnection();
+
+            // flushing with a read:
+            try {
+                t.read(testTime + key + "nr");
+                fail("expected ConnectionException");
+            } catch (final ConnectionException e) {
+            }
+            assertTrue(t.writeBuffer.contains(new OtpErlangString(testTime + key + "nr")));
+
+            // flushing with the commit:
+            try {
+                t.commit();
+                fail("expected ConnectionException");
+            } catch (final ConnectionException e) {
+            }
+            assertEquals(2, t.writeBuffer.getKeys().size());
+            assertEquals(testData[0], t.read(testTime + key + "1").stringValue());
+            assertEquals(1, t.writeBuffer.getOps(
+                    Arrays.asList(new OtpErlangString(testTime + key + "nr"))).size());
+        } finally {
+            t.closeConnection();
+        }
+    }
+
     /**
      * Test method for {@link Transaction#req_list(RequestList)} with an empty
      * request list.
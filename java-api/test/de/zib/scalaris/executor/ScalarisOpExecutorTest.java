@@ -0,0 +1,264 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris.executor;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangException;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+import de.zib.scalaris.CommonErlangObjects;
+import de.zib.scalaris.RequestList;
+import de.zib.scalaris.ResultList;
+import de.zib.scalaris.TransactionSingleOp;
+import de.zib.scalaris.UnknownException;
+import de.zib.scalaris.operations.Operation;
+import de.zib.scalaris.operations.ReadOp;
+
+/**
+ * Test class for the scheduling of dependent operations in
+ * {@link ScalarisOpExecutor}.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class ScalarisOpExecutorTest {
+
+    /**
+     * Executor which answers every request locally with the key of the
+     * request.
+     */
+    private static class TestExecutor extends ScalarisOpExecutor {
+        int phase = -1;
+        int executed = 0;
+
+        @Override
+        protected RequestList newRequestList() {
+            // called once at the beginning of each work phase
+            ++phase;
+            return new TransactionSingleOp.RequestList();
+        }
+
+        @Override
+        protected ResultList executeRequests(final RequestList requests)
+                throws UnknownException {
+            for (final Operation op : requests.getRequests()) {
+                op.setResult(new OtpErlangTuple(new OtpErlangObject[] {
+                        CommonErlangObjects.okAtom, op.getKey() }), false);
+            }
+            ++executed;
+            return new TransactionSingleOp.ResultList(
+                    (TransactionSingleOp.RequestList) requests);
+        }
+    }
+
+    /**
+     * Operation which issues one read per work phase and records the global
+     * work phases it has been executed in.
+     */
+    private static class MockOp implements ScalarisOp {
+        final String name;
+        final int workPhases;
+        final TestExecutor executor;
+        final List<MockOp> dependsOn;
+        final List<Integer> phases = new ArrayList<Integer>();
+
+        MockOp(final String name, final int workPhases,
+                final TestExecutor executor, final MockOp... dependsOn) {
+            this.name = name;
+            this.workPhases = workPhases;
+            this.executor = executor;
+            this.dependsOn = Arrays.asList(dependsOn);
+        }
+
+        public int workPhases() {
+            return workPhases;
+        }
+
+        public int doPhase(final int phase, final int firstOp,
+                final ResultList results, final RequestList requests)
+                throws OtpErlangException, UnknownException,
+                IllegalArgumentException {
+            assertEquals(name, phases.size(), phase);
+            if (phase == 0) {
+                for (final MockOp dep : dependsOn) {
+                    assertTrue(name + " started before " + dep.name, dep.isDone());
+                }
+            } else {
+                // the result of our own request from the previous phase
+                assertEquals(name + ":" + (phase - 1),
+                        results.get(firstOp).getKey().stringValue());
+            }
+            phases.add(executor.phase);
+            if (phase < workPhases) {
+                requests.addOp(new ReadOp(name + ":" + phase));
+            }
+            return (phase == 0) ? 0 : 1;
+        }
+
+        boolean isDone() {
+            return phases.size() == (workPhases + 1);
+        }
+
+        int getStart() {
+            return phases.get(0);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Test method for {@link ScalarisOpExecutor#run()} with independent
+     * operations which all need to finish in the last work phase.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testNoDependencies() throws Exception {
+        final TestExecutor executor = new TestExecutor();
+        final MockOp a = new MockOp("a", 1, executor);
+        final MockOp b = new MockOp("b", 2, executor);
+        final MockOp c = new MockOp("c", 3, executor);
+        executor.addOp(a);
+        executor.addOp(b);
+        executor.addOp(c);
+        assertEquals(3, executor.getWorkPhases());
+        executor.run();
+
+        assertEquals(Arrays.asList(2, 3), a.phases);
+        assertEquals(Arrays.asList(1, 2, 3), b.phases);
+        assertEquals(Arrays.asList(0, 1, 2, 3), c.phases);
+        assertEquals(3, executor.executed);
+    }
+
+    /**
+     * Test method for {@link ScalarisOpExecutor#run()} with a chain of
+     * dependent operations and an independent one.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testChain() throws Exception {
+        final TestExecutor executor = new TestExecutor();
+        final MockOp a = new MockOp("a", 1, executor);
+        final MockOp b = new MockOp("b", 2, executor, a);
+        final MockOp c = new MockOp("c", 1, executor, b);
+        final MockOp d = new MockOp("d", 1, executor);
+        executor.addOp(a);
+        executor.addOp(b, a);
+        executor.addOp(c, b);
+        executor.addOp(d);
+        assertEquals(4, executor.getWorkPhases());
+        executor.run();
+
+        assertEquals(0, a.getStart());
+        assertEquals(1, b.getStart());
+        assertEquals(3, c.getStart());
+        // scheduled as late as possible to share c's requests
+        assertEquals(3, d.getStart());
+        for (final MockOp op : Arrays.asList(a, b, c, d)) {
+            assertTrue(op.name, op.isDone());
+        }
+        assertEquals(4, executor.executed);
+    }
+
+    /**
+     * Test method for {@link ScalarisOpExecutor#run()} with dependencies
+     * forming a diamond, i.e. <tt>d</tt> depends on <tt>b</tt> and
+     * <tt>c</tt> which both depend on <tt>a</tt>.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDiamond() throws Exception {
+        final TestExecutor executor = new TestExecutor();
+        final MockOp a = new MockOp("a", 1, executor);
+        final MockOp b = new MockOp("b", 1, executor, a);
+        final MockOp c = new MockOp("c", 2, executor, a);
+        final MockOp d = new MockOp("d", 1, executor, b, c);
+        executor.addOp(a);
+        executor.addOp(b, a);
+        executor.addOp(c, a);
+        executor.addOp(d, b, c);
+        assertEquals(4, executor.getWorkPhases());
+        assertEquals(Arrays.<ScalarisOp>asList(b, c), executor.getDependencies(d));
+        assertEquals(Arrays.<ScalarisOp>asList(a), executor.getDependencies(b));
+        executor.run();
+
+        // a needs to finish before the (longer) c starts
+        assertEquals(0, a.getStart());
+        assertEquals(1, c.getStart());
+        // b can be delayed until right before d
+        assertEquals(2, b.getStart());
+        assertEquals(3, d.getStart());
+        for (final MockOp op : Arrays.asList(a, b, c, d)) {
+            assertTrue(op.name, op.isDone());
+        }
+    }
+
+    /**
+     * Test method for {@link ScalarisOpExecutor#addOp(ScalarisOp, ScalarisOp...)}
+     * rejecting dependencies which may create a cycle.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCycleRejection() throws Exception {
+        final TestExecutor executor = new TestExecutor();
+        final MockOp a = new MockOp("a", 1, executor);
+        final MockOp b = new MockOp("b", 1, executor, a);
+
+        // unknown dependencies, including the operation itself:
+        try {
+            executor.addOp(a, b);
+            fail("expected IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+        }
+        try {
+            executor.addOp(a, a);
+            fail("expected IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+        }
+        assertTrue(executor.getOps().isEmpty());
+
+        // re-adding an operation with a dependency on a later one:
+        executor.addOp(a);
+        executor.addOp(b, a);
+        try {
+            executor.addOp(a, b);
+            fail("expected IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+        }
+        assertEquals(Arrays.<ScalarisOp>asList(a, b), executor.getOps());
+        assertEquals(2, executor.getWorkPhases());
+
+        // the executor is still usable
+        executor.run();
+        assertEquals(Arrays.asList(0, 1), a.phases);
+        assertEquals(Arrays.asList(1, 2), b.phases);
+    }
+}
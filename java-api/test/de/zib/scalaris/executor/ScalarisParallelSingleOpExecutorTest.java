@@ -0,0 +1,216 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris.executor;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+import de.zib.scalaris.CommonErlangObjects;
+import de.zib.scalaris.ConnectionException;
+import de.zib.scalaris.TransactionSingleOp;
+import de.zib.scalaris.TransactionSingleOp.ResultList;
+import de.zib.scalaris.UnknownException;
+import de.zib.scalaris.operations.Operation;
+
+/**
+ * Test class for {@link ScalarisParallelSingleOpExecutor}.
+ *
+ * The shards are executed locally instead of sending them to Scalaris.
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class ScalarisParallelSingleOpExecutorTest {
+    private ExecutorService executorService;
+
+    /**
+     * Executor which answers every request locally with the key of the
+     * request and records all executed shards.
+     */
+    private static class TestExecutor extends ScalarisParallelSingleOpExecutor {
+        final List<List<String>> shards = Collections.synchronizedList(new ArrayList<List<String>>());
+        final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+        final AtomicInteger finished = new AtomicInteger(0);
+
+        TestExecutor(final ExecutorService executor, final int maxShardSize) {
+            super(null, executor, maxShardSize, 0);
+        }
+
+        @Override
+        protected ResultList executeShard(final TransactionSingleOp.RequestList shard)
+                throws ConnectionException, UnknownException {
+            final List<String> keys = new ArrayList<String>(shard.size());
+            for (final Operation op : shard.getRequests()) {
+                keys.add(op.getKey().stringValue());
+            }
+            shards.add(keys);
+            threads.add(Thread.currentThread());
+            if (keys.contains("fail")) {
+                throw new ConnectionException("no connection available in the pool");
+            }
+            try {
+                // let the failing shard finish first
+                Thread.sleep(50);
+            } catch (final InterruptedException e) {
+                throw new UnknownException(e);
+            }
+            for (final Operation op : shard.getRequests()) {
+                op.setResult(new OtpErlangTuple(new OtpErlangObject[] {
+                        CommonErlangObjects.okAtom, op.getKey() }), false);
+            }
+            finished.incrementAndGet();
+            return new ResultList(shard);
+        }
+    }
+
+    /**
+     * Creates the executor service to run the shards with.
+     */
+    @Before
+    public void setUp() {
+        executorService = Executors.newFixedThreadPool(4);
+    }
+
+    /**
+     * Shuts the executor service down.
+     */
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    private static List<ScalarisReadOp> addReads(final ScalarisOpExecutor executor,
+            final String... keys) {
+        final List<ScalarisReadOp> ops = new ArrayList<ScalarisReadOp>(keys.length);
+        for (final String key : keys) {
+            final ScalarisReadOp op = new ScalarisReadOp(key);
+            executor.addOp(op);
+            ops.add(op);
+        }
+        return ops;
+    }
+
+    /**
+     * Test method for {@link ScalarisParallelSingleOpExecutor#run()} splitting
+     * the requests into shards executed in parallel.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSplit1() throws Exception {
+        final TestExecutor executor = new TestExecutor(executorService, 2);
+        final List<ScalarisReadOp> ops = addReads(executor, "k0", "k1", "k0",
+                "k2", "k3", "k4");
+        executor.run();
+
+        assertEquals(3, executor.shards.size());
+        final Set<String> executedKeys = new HashSet<String>();
+        for (final List<String> shard : executor.shards) {
+            assertTrue(shard.toString(), shard.size() <= 2);
+            executedKeys.addAll(shard);
+            // requests on the same key end up in the same shard
+            if (shard.contains("k0")) {
+                assertEquals(2, Collections.frequency(shard, "k0"));
+            }
+        }
+        assertEquals(5, executedKeys.size());
+        assertFalse(executor.threads.contains(Thread.currentThread()));
+        // results are merged in the order of the original requests
+        for (final ScalarisReadOp op : ops) {
+            assertEquals(op.getKey(), op.getValue().stringValue());
+        }
+    }
+
+    /**
+     * Test method for {@link ScalarisParallelSingleOpExecutor#run()} with
+     * fewer requests than the maximum shard size which should not be split.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSplit2() throws Exception {
+        final TestExecutor executor = new TestExecutor(executorService, 10);
+        final List<ScalarisReadOp> ops = addReads(executor, "k0", "k1", "k2");
+        executor.run();
+
+        assertEquals(1, executor.shards.size());
+        assertTrue(executor.threads.contains(Thread.currentThread()));
+        for (final ScalarisReadOp op : ops) {
+            assertEquals(op.getKey(), op.getValue().stringValue());
+        }
+    }
+
+    /**
+     * Test method for {@link ScalarisParallelSingleOpExecutor#run()} with one
+     * failing shard. The error should be propagated after all other shards
+     * have finished.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testShardError1() throws Exception {
+        final TestExecutor executor = new TestExecutor(executorService, 1);
+        addReads(executor, "k0", "fail", "k1", "k2");
+        try {
+            executor.run();
+            fail("expected ConnectionException");
+        } catch (final ConnectionException e) {
+        }
+        assertEquals(4, executor.shards.size());
+        assertEquals(3, executor.finished.get());
+    }
+
+    /**
+     * Test method for {@link ScalarisParallelSingleOpExecutor#run()} after the
+     * executor service has been shut down.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testShutdown1() throws Exception {
+        final TestExecutor executor = new TestExecutor(executorService, 1);
+        addReads(executor, "k0", "k1", "k2");
+        executorService.shutdown();
+        try {
+            executor.run();
+            fail("expected UnknownException");
+        } catch (final UnknownException e) {
+        }
+        assertTrue(executor.shards.isEmpty());
+
+        // requests which do not need to be split are executed directly
+        executor.reset();
+        final List<ScalarisReadOp> ops = addReads(executor, "k0");
+        executor.run();
+        assertEquals("k0", ops.get(0).getValue().stringValue());
+    }
+}
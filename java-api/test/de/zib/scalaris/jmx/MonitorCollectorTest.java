@@ -0,0 +1,171 @@
+/**
+ *  Copyright 2016 Zuse Institute Berlin
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package de.zib.scalaris.jmx;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.zib.scalaris.ConnectionException;
+import de.zib.scalaris.Monitor.GetNodeInfoResult;
+
+/**
+ * Unit test for the {@link MonitorCollector} class.
+ *
+ * VMs are not contacted, instead each poll reports the number of DHT nodes
+ * given by the test (or fails if there is none).
+ *
+ * @author Nico Kruber, kruber@zib.de
+ * @version 3.21
+ * @since 3.21
+ */
+public class MonitorCollectorTest {
+    private final static String seed = "seed@localhost";
+
+    private ExecutorService executor;
+
+    /**
+     * Collector with fixed poll results.
+     */
+    private static class TestMonitorCollector extends MonitorCollector {
+        /**
+         * Number of DHT nodes of each responding VM.
+         */
+        final Map<String, Integer> dhtNodes = new ConcurrentHashMap<String, Integer>();
+
+        TestMonitorCollector(final ExecutorService pollExecutor) {
+            super(seed, pollExecutor, 10);
+            setMaxOtherVMs(0);
+        }
+
+        @Override
+        protected void pollNode(final NodeState state) {
+            synchronized (state) {
+                final Integer nodes = dhtNodes.get(state.node);
+                if (nodes == null) {
+                    state.lastError = new ConnectionException("not responding");
+                } else {
+                    state.info = new GetNodeInfoResult("1.0", "R16", nodes);
+                    state.lastError = null;
+                }
+                state.polled = true;
+            }
+        }
+    }
+
+    /**
+     * Creates the executor to poll with.
+     */
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    /**
+     * Stops the executor to poll with.
+     */
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static List<String> getKnownNodes(final MonitorCollector collector) {
+        final List<String> nodes = collector.getKnownNodes();
+        Collections.sort(nodes);
+        return nodes;
+    }
+
+    /**
+     * Test method for {@link MonitorCollector#poll()} removing VMs which do
+     * not respond or left the ring.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void testEvictNodes() throws InterruptedException {
+        final TestMonitorCollector collector = new TestMonitorCollector(executor);
+        assertEquals(3, collector.getMaxMissedRounds());
+        collector.addNode("a@localhost");
+        collector.addNode("b@localhost");
+        collector.addNode("c@localhost");
+        collector.dhtNodes.put("a@localhost", 2);
+        // b does not respond, c hosts no DHT node any more (and neither
+        // does the seed node which is never removed)
+        collector.dhtNodes.put("c@localhost", 0);
+        collector.dhtNodes.put(seed, 0);
+
+        collector.poll();
+        collector.poll();
+        assertEquals(Arrays.asList("a@localhost", "b@localhost", "c@localhost", seed),
+                getKnownNodes(collector));
+        assertEquals(Arrays.asList("b@localhost"), collector.getFailedNodes());
+        collector.poll();
+        assertEquals(Arrays.asList("a@localhost", seed), getKnownNodes(collector));
+        assertEquals(2, collector.getDhtNodes());
+        assertTrue(collector.getFailedNodes().isEmpty());
+
+        // a VM responding again in between is not removed
+        collector.dhtNodes.remove("a@localhost");
+        collector.poll();
+        collector.poll();
+        collector.dhtNodes.put("a@localhost", 1);
+        collector.poll();
+        collector.dhtNodes.remove("a@localhost");
+        collector.poll();
+        collector.poll();
+        assertEquals(Arrays.asList("a@localhost", seed), getKnownNodes(collector));
+        collector.poll();
+        assertEquals(Arrays.asList(seed), getKnownNodes(collector));
+
+        // the seed node is kept even if it does not respond
+        collector.dhtNodes.remove(seed);
+        for (int i = 0; i < 5; ++i) {
+            collector.poll();
+        }
+        assertEquals(Arrays.asList(seed), getKnownNodes(collector));
+        assertEquals(Arrays.asList(seed), collector.getFailedNodes());
+    }
+
+    /**
+     * Test method for {@link MonitorCollector#setMaxMissedRounds(int)} with
+     * a value of <tt>0</tt>, i.e. never removing VMs.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void testEvictNodesDisabled() throws InterruptedException {
+        final TestMonitorCollector collector = new TestMonitorCollector(executor);
+        collector.setMaxMissedRounds(0);
+        assertEquals(0, collector.getMaxMissedRounds());
+        collector.addNode("a@localhost");
+        collector.dhtNodes.put(seed, 1);
+        for (int i = 0; i < 5; ++i) {
+            collector.poll();
+        }
+        assertEquals(Arrays.asList("a@localhost", seed), getKnownNodes(collector));
+        assertEquals(Arrays.asList("a@localhost"), collector.getFailedNodes());
+    }
+}